@@ -0,0 +1,68 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+import org.junit.Test;
+import org.openlmis.notification.domain.FailedNotification;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.service.NotificationChannel;
+import org.openlmis.notification.testutils.FailedNotificationDataBuilder;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.repository.CrudRepository;
+
+public class FailedNotificationRepositoryIntegrationTest
+    extends BaseCrudRepositoryIntegrationTest<FailedNotification, UUID> {
+
+  @Autowired
+  private FailedNotificationRepository repository;
+
+  @Autowired
+  private NotificationRepository notificationRepository;
+
+  @Override
+  CrudRepository<FailedNotification, UUID> getRepository() {
+    return repository;
+  }
+
+  @Override
+  FailedNotification generateInstance() {
+    Notification notification = new NotificationDataBuilder()
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .buildAsNew();
+
+    notificationRepository.saveAndFlush(notification);
+
+    return new FailedNotificationDataBuilder()
+        .withNotification(notification)
+        .buildAsNew();
+  }
+
+  @Test
+  public void shouldFindPageOfFailedNotifications() {
+    FailedNotification failed = repository.saveAndFlush(generateInstance());
+
+    Page<FailedNotification> page = repository.findAll(new PageRequest(0, 10));
+
+    assertThat(page.getContent()).contains(failed);
+  }
+
+}
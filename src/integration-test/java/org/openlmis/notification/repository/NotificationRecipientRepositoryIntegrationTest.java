@@ -0,0 +1,81 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.NotificationRecipient;
+import org.openlmis.notification.domain.NotificationRecipient.NotificationRecipientId;
+import org.openlmis.notification.service.NotificationChannel;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.repository.CrudRepository;
+
+public class NotificationRecipientRepositoryIntegrationTest
+    extends BaseCrudRepositoryIntegrationTest<NotificationRecipient, NotificationRecipientId> {
+
+  @Autowired
+  private NotificationRecipientRepository repository;
+
+  @Autowired
+  private NotificationRepository notificationRepository;
+
+  @Override
+  CrudRepository<NotificationRecipient, NotificationRecipientId> getRepository() {
+    return repository;
+  }
+
+  @Override
+  NotificationRecipient generateInstance() {
+    return new NotificationRecipient(saveNotification().getId(), UUID.randomUUID());
+  }
+
+  @Override
+  protected void assertBefore(NotificationRecipient instance) {
+    assertThat(instance.getId()).isNotNull();
+  }
+
+  @Test
+  public void shouldFindRecipientsToExpand() {
+    Notification notification = saveNotification();
+    repository.saveAndFlush(new NotificationRecipient(notification.getId(), UUID.randomUUID()));
+    repository.saveAndFlush(new NotificationRecipient(notification.getId(), UUID.randomUUID()));
+    repository.saveAndFlush(new NotificationRecipient(notification.getId(), UUID.randomUUID()));
+
+    List<NotificationRecipient> found = repository.findRecipientsToExpand(2);
+    assertThat(found).hasSize(2);
+
+    found.forEach(NotificationRecipient::expand);
+    repository.save(found);
+    repository.flush();
+
+    assertThat(repository.findRecipientsToExpand(10))
+        .hasSize(1)
+        .doesNotContainAnyElementsOf(found);
+  }
+
+  private Notification saveNotification() {
+    return notificationRepository.saveAndFlush(new NotificationDataBuilder()
+        .withUserId(null)
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .buildAsNew());
+  }
+
+}
@@ -27,7 +27,9 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.openlmis.notification.domain.IdempotentRequest;
 import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.NotificationRecipient;
 import org.openlmis.notification.repository.custom.NotificationRepositoryCustom;
 import org.openlmis.notification.service.NotificationChannel;
 import org.openlmis.notification.util.NotificationDataBuilder;
@@ -41,12 +43,18 @@ import org.springframework.data.repository.CrudRepository;
 public class NotificationRepositoryIntegrationTest 
     extends BaseCrudRepositoryIntegrationTest<Notification, UUID> {
 
+  private static final String CALLER = "caller";
+  private static final String PAYLOAD_HASH = "hash";
+
   @Rule
   public ExpectedException expectedException = ExpectedException.none();
 
   @Autowired
   private NotificationRepository repository;
 
+  @Autowired
+  private NotificationRecipientRepository recipientRepository;
+
   private Pageable pageable;
   private UUID userId1 = UUID.randomUUID();
   private UUID userId2 = UUID.randomUUID();
@@ -123,6 +131,29 @@ public class NotificationRepositoryIntegrationTest
     assertThat(search.getContent()).contains(Arrays.copyOfRange(notifications, 0, 10));
   }
 
+  @Test
+  public void shouldFindNotificationsSentToUserAsOneOfRecipients() {
+    Notification multiRecipient = repository.saveAndFlush(generateInstance(null));
+    recipientRepository.saveAndFlush(
+        new NotificationRecipient(multiRecipient.getId(), userId1));
+    recipientRepository.saveAndFlush(
+        new NotificationRecipient(multiRecipient.getId(), userId2));
+
+    NotificationRepositoryCustom.SearchParams searchParams =
+        new TestSearchParams(userId1, null, null);
+
+    Page<Notification> search = repository.search(searchParams, pageable);
+    assertThat(search.getTotalElements()).isEqualTo(11);
+    assertThat(search.getContent())
+        .contains(multiRecipient)
+        .contains(Arrays.copyOfRange(notifications, 0, 10));
+
+    searchParams = new TestSearchParams(userId3, null, null);
+
+    search = repository.search(searchParams, pageable);
+    assertThat(search.getContent()).doesNotContain(multiRecipient);
+  }
+
   @Test
   public void shouldFindNotificationsAfterDate() {
     int startIndex = 14;
@@ -175,6 +206,59 @@ public class NotificationRepositoryIntegrationTest
         .contains(Arrays.copyOfRange(notifications, 10, 17));
   }
 
+  @Test
+  public void shouldFindIdempotentRequestByCallerAndKey() {
+    notifications[3].setIdempotencyKey(CALLER, "key", PAYLOAD_HASH);
+    repository.saveAndFlush(notifications[3]);
+
+    assertThat(repository.findIdempotentRequest(CALLER, "key"))
+        .isEqualTo(new IdempotentRequest(notifications[3].getId(), PAYLOAD_HASH));
+    assertThat(repository.findIdempotentRequest(CALLER, "other")).isNull();
+    assertThat(repository.findIdempotentRequest("other", "key")).isNull();
+  }
+
+  @Test
+  public void shouldNotAllowDuplicateIdempotencyKeysOfCaller() {
+    expectedException.expect(DataIntegrityViolationException.class);
+    expectedException.expectMessage("notifications_idempotencycaller_idempotencykey_unique_idx");
+
+    notifications[3].setIdempotencyKey(CALLER, "key", PAYLOAD_HASH);
+    repository.saveAndFlush(notifications[3]);
+
+    Notification duplicate = generateInstance();
+    duplicate.setIdempotencyKey(CALLER, "key", PAYLOAD_HASH);
+    repository.saveAndFlush(duplicate);
+  }
+
+  @Test
+  public void shouldAllowTheSameIdempotencyKeyForDifferentCallers() {
+    notifications[3].setIdempotencyKey(CALLER, "key", PAYLOAD_HASH);
+    repository.saveAndFlush(notifications[3]);
+
+    Notification other = generateInstance();
+    other.setIdempotencyKey("other", "key", PAYLOAD_HASH);
+    repository.saveAndFlush(other);
+
+    assertThat(repository.findIdempotentRequest("other", "key").getNotificationId())
+        .isEqualTo(other.getId());
+  }
+
+  @Test
+  public void shouldRemoveIdempotencyKeysCreatedBeforeDate() {
+    notifications[3].setIdempotencyKey(CALLER, "old", PAYLOAD_HASH);
+    notifications[20].setIdempotencyKey(CALLER, "new", PAYLOAD_HASH);
+    repository.save(Arrays.asList(notifications[3], notifications[20]));
+    repository.flush();
+
+    int removed = repository
+        .removeIdempotencyKeysCreatedBefore(notifications[10].getCreatedDate());
+
+    assertThat(removed).isEqualTo(1);
+    assertThat(repository.findIdempotentRequest(CALLER, "old")).isNull();
+    assertThat(repository.findIdempotentRequest(CALLER, "new").getNotificationId())
+        .isEqualTo(notifications[20].getId());
+  }
+
   @Getter
   @AllArgsConstructor
   private static final class TestSearchParams
@@ -17,6 +17,9 @@ package org.openlmis.notification.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
@@ -26,18 +29,27 @@ import javax.persistence.EntityManager;
 import org.junit.Before;
 import org.junit.Test;
 import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.NotificationPriority;
 import org.openlmis.notification.domain.PendingNotification;
 import org.openlmis.notification.domain.PendingNotification.PendingNotificationId;
+import org.openlmis.notification.domain.PendingNotification.Status;
 import org.openlmis.notification.service.NotificationChannel;
 import org.openlmis.notification.testutils.PendingNotificationDataBuilder;
 import org.openlmis.notification.util.NotificationDataBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.test.util.ReflectionTestUtils;
 
 public class PendingNotificationRepositoryIntegrationTest
     extends BaseCrudRepositoryIntegrationTest<PendingNotification, PendingNotificationId> {
 
   private static final int COUNT = 5;
+  private static final long CLAIM_TIMEOUT = 300;
+  private static final String NORMAL = NotificationPriority.NORMAL.name();
+  private static final List<String> ALL_CHANNELS = Arrays
+      .stream(NotificationChannel.values())
+      .map(NotificationChannel::name)
+      .collect(Collectors.toList());
 
   @Autowired
   private PendingNotificationRepository repository;
@@ -95,4 +107,115 @@ public class PendingNotificationRepositoryIntegrationTest
     assertThat(notificationExists).isTrue();
   }
 
+  @Test
+  public void shouldFindPendingNotificationsToClaim() {
+    List<PendingNotification> found = repository
+        .findPendingNotificationsToClaim(NORMAL, ALL_CHANNELS, COUNT - 2, CLAIM_TIMEOUT);
+
+    assertThat(found)
+        .hasSize(COUNT - 2)
+        .isSubsetOf(pendingNotifications);
+  }
+
+  @Test
+  public void shouldNotFindRecentlyClaimedNotifications() {
+    PendingNotification claimed = pendingNotifications.get(0);
+    claimed.claim();
+    repository.saveAndFlush(claimed);
+
+    List<PendingNotification> found = repository
+        .findPendingNotificationsToClaim(NORMAL, ALL_CHANNELS, COUNT, CLAIM_TIMEOUT);
+
+    assertThat(found)
+        .hasSize(COUNT - 1)
+        .doesNotContain(claimed);
+  }
+
+  @Test
+  public void shouldFindNotificationsWithStaleClaim() {
+    PendingNotification claimed = pendingNotifications.get(0);
+    claimed.claim();
+    ReflectionTestUtils.setField(claimed, "claimedDate",
+        ZonedDateTime.now().minusSeconds(CLAIM_TIMEOUT * 2));
+    repository.saveAndFlush(claimed);
+
+    List<PendingNotification> found = repository
+        .findPendingNotificationsToClaim(NORMAL, ALL_CHANNELS, COUNT, CLAIM_TIMEOUT);
+
+    assertThat(found)
+        .hasSize(COUNT)
+        .contains(claimed);
+  }
+
+  @Test
+  public void shouldNotFindNotificationsWaitingForNextAttempt() {
+    PendingNotification failed = pendingNotifications.get(0);
+    failed.retryLater(ZonedDateTime.now().plusMinutes(10));
+    repository.saveAndFlush(failed);
+
+    List<PendingNotification> found = repository
+        .findPendingNotificationsToClaim(NORMAL, ALL_CHANNELS, COUNT, CLAIM_TIMEOUT);
+
+    assertThat(found)
+        .hasSize(COUNT - 1)
+        .doesNotContain(failed);
+  }
+
+  @Test
+  public void shouldFindNotificationsReadyForNextAttempt() {
+    PendingNotification failed = pendingNotifications.get(0);
+    failed.retryLater(ZonedDateTime.now().minusMinutes(10));
+    repository.saveAndFlush(failed);
+
+    List<PendingNotification> found = repository
+        .findPendingNotificationsToClaim(NORMAL, ALL_CHANNELS, COUNT, CLAIM_TIMEOUT);
+
+    assertThat(found)
+        .hasSize(COUNT)
+        .contains(failed);
+  }
+
+  @Test
+  public void shouldFindOnlyNotificationsWithGivenPriority() {
+    Notification notification = new NotificationDataBuilder()
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .withPriority(NotificationPriority.HIGH)
+        .buildAsNew();
+    notificationRepository.saveAndFlush(notification);
+
+    PendingNotification high = repository.saveAndFlush(new PendingNotificationDataBuilder()
+        .buildForEmailChannel(notification));
+
+    assertThat(repository
+        .findPendingNotificationsToClaim(NotificationPriority.HIGH.name(), ALL_CHANNELS, COUNT,
+            CLAIM_TIMEOUT))
+        .containsExactly(high);
+    assertThat(repository
+        .findPendingNotificationsToClaim(NORMAL, ALL_CHANNELS, COUNT + 1, CLAIM_TIMEOUT))
+        .hasSize(COUNT)
+        .doesNotContain(high);
+  }
+
+  @Test
+  public void shouldFindOnlyNotificationsOfGivenChannels() {
+    assertThat(repository.findPendingNotificationsToClaim(NORMAL,
+        Collections.singletonList(NotificationChannel.SMS.name()), COUNT, CLAIM_TIMEOUT))
+        .isEmpty();
+    assertThat(repository.findPendingNotificationsToClaim(NORMAL,
+        Collections.singletonList(NotificationChannel.EMAIL.name()), COUNT, CLAIM_TIMEOUT))
+        .hasSize(COUNT);
+  }
+
+  @Test
+  public void shouldCountNotificationsByPriorityAndStatus() {
+    PendingNotification claimed = pendingNotifications.get(0);
+    claimed.claim();
+    repository.saveAndFlush(claimed);
+
+    assertThat(repository.countByPriorityAndStatus(NotificationPriority.NORMAL, Status.PENDING))
+        .isEqualTo(COUNT - 1);
+    assertThat(repository.countByPriorityAndStatus(NotificationPriority.HIGH, Status.PENDING))
+        .isZero();
+  }
+
 }
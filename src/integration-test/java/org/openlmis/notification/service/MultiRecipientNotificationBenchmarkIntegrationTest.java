@@ -0,0 +1,147 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.repository.NotificationRecipientRepository;
+import org.openlmis.notification.repository.NotificationRepository;
+import org.openlmis.notification.repository.PendingNotificationRepository;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Compares notifications for many users sent one per user and as one multi-recipient notification.
+ */
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "notificationToSend.autoStartup=false")
+public class MultiRecipientNotificationBenchmarkIntegrationTest {
+
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(MultiRecipientNotificationBenchmarkIntegrationTest.class);
+
+  private static final int RECIPIENTS = 1000;
+  private static final int EXPANSION_CHUNK_SIZE = 100;
+  private static final String BODY = "Your requisition has been approved and is ready to be "
+      + "converted to an order. Please review it before the end of the reporting period.";
+
+  // the size of the rows themselves, so the result does not depend on free space in the pages
+  private static final String STORAGE_QUERY = "SELECT"
+      + " (SELECT COALESCE(SUM(pg_column_size(n.*)), 0)"
+      + "   FROM notification.notifications AS n)"
+      + " + (SELECT COALESCE(SUM(pg_column_size(m.*)), 0)"
+      + "   FROM notification.notification_messages AS m)"
+      + " + (SELECT COALESCE(SUM(pg_column_size(r.*)), 0)"
+      + "   FROM notification.notification_recipients AS r)"
+      + " + (SELECT COALESCE(SUM(pg_column_size(p.*)), 0)"
+      + "   FROM notification.pending_notifications AS p)";
+
+  @Autowired
+  private PendingNotificationService pendingNotificationService;
+
+  @Autowired
+  private NotificationRepository notificationRepository;
+
+  @Autowired
+  private NotificationRecipientRepository notificationRecipientRepository;
+
+  @Autowired
+  private PendingNotificationRepository pendingNotificationRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private List<UUID> recipientIds = IntStream
+      .range(0, RECIPIENTS)
+      .mapToObj(idx -> UUID.randomUUID())
+      .collect(Collectors.toList());
+
+  @After
+  public void tearDown() {
+    pendingNotificationRepository.deleteAll();
+    notificationRecipientRepository.deleteAll();
+    notificationRepository.deleteAll();
+  }
+
+  @Test
+  public void shouldStoreMultiRecipientNotificationInLessSpace() {
+    // given
+    long baseline = measureStorage();
+
+    // when
+    long start = System.nanoTime();
+    pendingNotificationService.enqueue(recipientIds
+        .stream()
+        .map(this::createNotification)
+        .collect(Collectors.toList()));
+    final long perUserTime = System.nanoTime() - start;
+    final long perUserStorage = measureStorage() - baseline;
+
+    tearDown();
+
+    start = System.nanoTime();
+    pendingNotificationService.enqueue(createNotification(null), recipientIds);
+    long multiRecipientTime = System.nanoTime() - start;
+    long multiRecipientStorage = measureStorage() - baseline;
+
+    // pending notifications are created in chunks while the queue is processed
+    int chunks = 0;
+    while (pendingNotificationService.expandRecipients(EXPANSION_CHUNK_SIZE) > 0) {
+      chunks++;
+    }
+    long expandedStorage = measureStorage() - baseline;
+
+    // then
+    LOGGER.info("Accepting a notification for {} users as one notification per user took {} ms"
+        + " and {} bytes", RECIPIENTS, perUserTime / 1_000_000, perUserStorage);
+    LOGGER.info("Accepting a notification for {} users as a multi-recipient notification took"
+        + " {} ms and {} bytes, {} bytes after all recipients were expanded in {} chunks",
+        RECIPIENTS, multiRecipientTime / 1_000_000, multiRecipientStorage, expandedStorage,
+        chunks);
+
+    assertThat(chunks).isEqualTo(RECIPIENTS / EXPANSION_CHUNK_SIZE);
+    assertThat(pendingNotificationRepository.count()).isEqualTo(RECIPIENTS);
+    assertThat(multiRecipientStorage).isLessThan(perUserStorage);
+    assertThat(expandedStorage).isLessThan(perUserStorage);
+  }
+
+  private long measureStorage() {
+    return jdbcTemplate.queryForObject(STORAGE_QUERY, Long.class);
+  }
+
+  private Notification createNotification(UUID userId) {
+    return new NotificationDataBuilder()
+        .withUserId(userId)
+        .withMessage(NotificationChannel.EMAIL, BODY, "Requisition approved")
+        .buildAsNew();
+  }
+
+}
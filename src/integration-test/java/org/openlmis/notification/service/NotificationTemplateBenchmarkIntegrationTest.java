@@ -0,0 +1,182 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.commons.lang3.text.StrSubstitutor;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.NotificationMessage;
+import org.openlmis.notification.domain.NotificationTemplate;
+import org.openlmis.notification.repository.NotificationRepository;
+import org.openlmis.notification.repository.NotificationTemplateRepository;
+import org.openlmis.notification.repository.PendingNotificationRepository;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Compares notifications sent with the full text and with a template and parameters.
+ */
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "notificationToSend.autoStartup=false")
+public class NotificationTemplateBenchmarkIntegrationTest {
+
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(NotificationTemplateBenchmarkIntegrationTest.class);
+
+  private static final int NOTIFICATIONS = 500;
+  private static final int RENDERS = 5_000;
+  private static final String SUBJECT = "Requisition ${requisition} approved";
+  private static final String BODY = "Dear ${firstName},\n\nrequisition ${requisition} for "
+      + "${facility} has been approved and is ready to be converted to an order. Please review "
+      + "it before the end of the reporting period and contact your supervisor if any of the "
+      + "approved quantities differ from what was requested.\n\nThank you,\nOpenLMIS";
+
+  // the size of the rows themselves, so the result does not depend on free space in the pages
+  private static final String STORAGE_QUERY = "SELECT"
+      + " (SELECT COALESCE(SUM(pg_column_size(n.*)), 0)"
+      + "   FROM notification.notifications AS n)"
+      + " + (SELECT COALESCE(SUM(pg_column_size(m.*)), 0)"
+      + "   FROM notification.notification_messages AS m)"
+      + " + (SELECT COALESCE(SUM(pg_column_size(p.*)), 0)"
+      + "   FROM notification.notification_parameters AS p)"
+      + " + (SELECT COALESCE(SUM(pg_column_size(t.*)), 0)"
+      + "   FROM notification.notification_templates AS t)";
+
+  @Autowired
+  private PendingNotificationService pendingNotificationService;
+
+  @Autowired
+  private NotificationTemplateService notificationTemplateService;
+
+  @Autowired
+  private NotificationRepository notificationRepository;
+
+  @Autowired
+  private PendingNotificationRepository pendingNotificationRepository;
+
+  @Autowired
+  private NotificationTemplateRepository notificationTemplateRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @After
+  public void tearDown() {
+    pendingNotificationRepository.deleteAll();
+    notificationRepository.deleteAll();
+    notificationTemplateRepository.deleteAll();
+  }
+
+  @Test
+  public void shouldStoreTemplatedNotificationsInLessSpace() {
+    // given
+    long baseline = measureStorage();
+
+    // when
+    pendingNotificationService.enqueue(IntStream
+        .range(0, NOTIFICATIONS)
+        .mapToObj(idx -> {
+          Map<String, String> parameters = getParameters(idx);
+          return new NotificationDataBuilder()
+              .withMessage(NotificationChannel.EMAIL, StrSubstitutor.replace(BODY, parameters),
+                  StrSubstitutor.replace(SUBJECT, parameters))
+              .buildAsNew();
+        })
+        .collect(Collectors.toList()));
+    final long rawStorage = measureStorage() - baseline;
+
+    pendingNotificationRepository.deleteAll();
+    notificationRepository.deleteAll();
+
+    NotificationTemplate template = notificationTemplateService.create(
+        new NotificationTemplate("approved", SUBJECT, BODY, ZonedDateTime.now()));
+
+    pendingNotificationService.enqueue(IntStream
+        .range(0, NOTIFICATIONS)
+        .mapToObj(idx -> {
+          Notification notification = new NotificationDataBuilder()
+              .withMessage(new NotificationMessage(NotificationChannel.EMAIL, null, null, null,
+                  template.getId()))
+              .buildAsNew();
+          notification.getParameters().putAll(getParameters(idx));
+          return notification;
+        })
+        .collect(Collectors.toList()));
+    long templatedStorage = measureStorage() - baseline;
+
+    // then
+    LOGGER.info("Storing {} notifications with the full text took {} bytes, with a template"
+        + " and parameters {} bytes", NOTIFICATIONS, rawStorage, templatedStorage);
+
+    assertThat(templatedStorage).isLessThan(rawStorage);
+  }
+
+  @Test
+  public void shouldRenderTheSameTextWithCompiledTemplate() {
+    // given
+    List<Map<String, String>> parameters = IntStream
+        .range(0, RENDERS)
+        .mapToObj(this::getParameters)
+        .collect(Collectors.toList());
+    CompiledTemplate compiled = CompiledTemplate.compile(BODY);
+
+    // when
+    long start = System.nanoTime();
+    long compiledLength = parameters.stream().map(compiled::render).mapToLong(String::length).sum();
+    final long compiledTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    long substitutorLength = parameters
+        .stream()
+        .map(values -> StrSubstitutor.replace(BODY, values))
+        .mapToLong(String::length)
+        .sum();
+    long substitutorTime = System.nanoTime() - start;
+
+    // then
+    LOGGER.info("Rendering a template {} times took {} ms with a compiled template and {} ms"
+        + " with StrSubstitutor", RENDERS, compiledTime / 1_000_000, substitutorTime / 1_000_000);
+
+    assertThat(compiledLength).isEqualTo(substitutorLength);
+  }
+
+  private long measureStorage() {
+    return jdbcTemplate.queryForObject(STORAGE_QUERY, Long.class);
+  }
+
+  private Map<String, String> getParameters(int idx) {
+    return ImmutableMap.of("firstName", "User " + idx, "requisition", "RNR-" + idx,
+        "facility", "Health Center " + idx % 50);
+  }
+
+}
@@ -20,6 +20,7 @@ import static org.awaitility.Awaitility.await;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -27,6 +28,7 @@ import static org.openlmis.notification.service.NotificationToSendRetriever.CHAN
 import static org.openlmis.notification.service.NotificationToSendRetriever.IMPORTANT_HEADER;
 import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_HEADER;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
@@ -50,6 +52,7 @@ import org.openlmis.notification.repository.DigestSubscriptionRepository;
 import org.openlmis.notification.repository.NotificationRepository;
 import org.openlmis.notification.repository.PendingNotificationRepository;
 import org.openlmis.notification.repository.UserContactDetailsRepository;
+import org.openlmis.notification.service.referencedata.TogglzFeatureCache;
 import org.openlmis.notification.service.referencedata.TogglzFeatureDto;
 import org.openlmis.notification.service.referencedata.TogglzReferenceDataService;
 import org.openlmis.notification.testutils.DigestConfigurationDataBuilder;
@@ -74,7 +77,8 @@ import org.springframework.transaction.support.TransactionTemplate;
 @ActiveProfiles("test")
 @RunWith(SpringRunner.class)
 @SuppressWarnings("PMD.TooManyMethods")
-@SpringBootTest(properties = {"notificationToSend.autoStartup=false"})
+@SpringBootTest(properties = {
+    "notificationToSend.autoStartup=false", "notificationToSend.batchSize=1"})
 public class NotificationToSendFlowIntegrationTest {
 
   private static final String SUBJECT = "subject";
@@ -98,6 +102,9 @@ public class NotificationToSendFlowIntegrationTest {
   @MockBean
   private TogglzReferenceDataService togglzReferenceDataService;
 
+  @Autowired
+  private TogglzFeatureCache togglzFeatureCache;
+
   @Autowired
   private NotificationRepository notificationRepository;
 
@@ -116,6 +123,9 @@ public class NotificationToSendFlowIntegrationTest {
   @Autowired
   private NotificationToSendRetriever retriever;
 
+  @Autowired
+  private NotificationToSendDispatcher dispatcher;
+
   @Autowired
   private EntityManager entityManager;
 
@@ -137,6 +147,7 @@ public class NotificationToSendFlowIntegrationTest {
   private DigestConfiguration configuration;
   private List<DigestSubscription> subscriptions = Lists.newArrayList();
 
+  private List<PendingNotification> claimed;
   private Message<Notification> message;
   private UserContactDetails correctContactDetails;
   private PendingNotification correctPendingNotification;
@@ -149,6 +160,8 @@ public class NotificationToSendFlowIntegrationTest {
     template.execute(new DatabaseInitializer());
 
     given(togglzReferenceDataService.findAll()).willReturn(Lists.newArrayList(digestFeature));
+    given(emailSender.sendMails(anyListOf(EmailMessage.class))).willAnswer(invocation ->
+        Collections.nCopies(invocation.getArgumentAt(0, List.class).size(), null));
   }
 
   @After
@@ -161,14 +174,18 @@ public class NotificationToSendFlowIntegrationTest {
   public void shouldSendEmail() {
     // given
     digestFeature.setEnabled(false);
+    togglzFeatureCache.refresh();
 
     // when
-    startChannel.send(message);
+    dispatcher.dispatch(claimed);
 
-    // then
-    verify(emailSender).sendMail(correctContactDetails.getEmailAddress(), SUBJECT, BODY);
+    // the notification is sent by the email thread pool
+    await().atMost(60, TimeUnit.SECONDS).until(() -> !pendingNotificationRepository
+        .exists(correctPendingNotification.getId()));
 
-    assertThat(pendingNotificationRepository.exists(correctPendingNotification.getId())).isFalse();
+    // then
+    verify(emailSender).sendMails(Lists.newArrayList(
+        new EmailMessage(correctContactDetails.getEmailAddress(), SUBJECT, BODY)));
 
     assertThat(userContactDetailsRepository.count()).isEqualTo(userContactDetails.size());
     assertThat(notificationRepository.count()).isEqualTo(emailNotifications.size());
@@ -193,6 +210,7 @@ public class NotificationToSendFlowIntegrationTest {
       .build();
     // given
     digestFeature.setEnabled(false);
+    togglzFeatureCache.refresh();
 
     // when
     startChannel.send(message);
@@ -200,12 +218,12 @@ public class NotificationToSendFlowIntegrationTest {
     // then
     verify(emailSender).sendMail(correctContactDetails.getEmailAddress(), subject, body);
 
-    assertThat(pendingNotificationRepository.exists(correctPendingNotification.getId())).isFalse();
+    assertThat(pendingNotificationRepository.exists(correctPendingNotification.getId())).isTrue();
 
     assertThat(userContactDetailsRepository.count()).isEqualTo(userContactDetails.size());
     assertThat(notificationRepository.count()).isEqualTo(emailNotifications.size());
     assertThat(pendingNotificationRepository.count())
-      .isEqualTo(pendingEmailNotifications.size() - 1L);
+      .isEqualTo(pendingEmailNotifications.size());
 
   }
 
@@ -213,6 +231,7 @@ public class NotificationToSendFlowIntegrationTest {
   public void shouldSendDigestEmail() {
     // given
     digestFeature.setEnabled(true);
+    togglzFeatureCache.refresh();
 
     willAnswer(invocation -> {
       digestMessageSent.set(true);
@@ -220,17 +239,17 @@ public class NotificationToSendFlowIntegrationTest {
     }).given(emailSender).sendMail(correctContactDetails.getEmailAddress(), SUBJECT, EXPECTED_MSG);
 
     // when
-    startChannel.send(message);
+    dispatcher.dispatch(claimed);
 
     // we have to wait at least 15 seconds because of cron expression from subscription.
     // The digest feature happens in a new thread so we have to wait until it completes the job.
     await().atMost(60, TimeUnit.SECONDS).untilTrue(digestMessageSent);
+    await().atMost(60, TimeUnit.SECONDS).until(() -> !pendingNotificationRepository
+        .exists(correctPendingNotification.getId()));
 
     // then
     verify(emailSender).sendMail(correctContactDetails.getEmailAddress(), SUBJECT, EXPECTED_MSG);
 
-    assertThat(pendingNotificationRepository.exists(correctPendingNotification.getId())).isFalse();
-
     assertThat(userContactDetailsRepository.count())
             .isEqualTo(userContactDetails.size() + INITIAL_USER_CONTACT_DETAILS_COUNT);
     assertThat(notificationRepository.count()).isEqualTo(emailNotifications.size());
@@ -254,12 +273,14 @@ public class NotificationToSendFlowIntegrationTest {
 
     // given
     digestFeature.setEnabled(false);
+    togglzFeatureCache.refresh();
 
     // when
     startChannel.send(message);
 
     verify(emailSender, never()).sendMail(anyString(), anyString(), any());
     verify(smsSender, never()).sendMessage(anyString(), anyString());
+    verify(smsSender, never()).sendMessageAsync(anyListOf(String.class), anyString());
   }
 
   @Test
@@ -280,18 +301,19 @@ public class NotificationToSendFlowIntegrationTest {
 
     // given
     digestFeature.setEnabled(false);
+    togglzFeatureCache.refresh();
 
     // when
     startChannel.send(message);
 
     verify(emailSender).sendMail(correctContactDetails.getEmailAddress(), subject, body);
 
-    assertThat(pendingNotificationRepository.exists(correctPendingNotification.getId())).isFalse();
+    assertThat(pendingNotificationRepository.exists(correctPendingNotification.getId())).isTrue();
 
     assertThat(userContactDetailsRepository.count()).isEqualTo(userContactDetails.size());
     assertThat(notificationRepository.count()).isEqualTo(emailNotifications.size());
     assertThat(pendingNotificationRepository.count())
-        .isEqualTo(pendingEmailNotifications.size() - 1L);
+        .isEqualTo(pendingEmailNotifications.size());
   }
 
   private final class DatabaseDestroyer extends TransactionCallbackWithoutResult {
@@ -324,7 +346,9 @@ public class NotificationToSendFlowIntegrationTest {
     }
 
     private void retrieveFirstPendingNotification() {
-      message = retriever.retrieve();
+      retriever.wakeUp();
+      claimed = retriever.retrieve().getPayload();
+      message = NotificationToSendDispatcher.createMessage(claimed.get(0));
 
       correctContactDetails = userContactDetails
           .stream()
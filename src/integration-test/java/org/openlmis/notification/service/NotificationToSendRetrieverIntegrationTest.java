@@ -0,0 +1,160 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.notification.domain.PendingNotification;
+import org.openlmis.notification.domain.PendingNotification.PendingNotificationId;
+import org.openlmis.notification.repository.NotificationRepository;
+import org.openlmis.notification.repository.PendingNotificationRepository;
+import org.openlmis.notification.testutils.PendingNotificationDataBuilder;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+    "notificationToSend.autoStartup=false",
+    "notificationToSend.batchSize=" + NotificationToSendRetrieverIntegrationTest.BATCH_SIZE})
+public class NotificationToSendRetrieverIntegrationTest {
+
+  static final int BATCH_SIZE = 6;
+
+  private static final int COUNT = 10;
+  private static final long TIMEOUT = 30;
+
+  @Autowired
+  private NotificationToSendRetriever retriever;
+
+  @Autowired
+  private NotificationRepository notificationRepository;
+
+  @Autowired
+  private PendingNotificationRepository pendingNotificationRepository;
+
+  @Autowired
+  private PendingNotificationService pendingNotificationService;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  private CountDownLatch firstClaimed = new CountDownLatch(1);
+  private CountDownLatch secondClaimed = new CountDownLatch(1);
+
+  @Before
+  public void setUp() {
+    new TransactionTemplate(transactionManager).execute(status -> {
+      IntStream
+          .range(0, COUNT)
+          .mapToObj(idx -> new NotificationDataBuilder()
+              .withEmptyMessage(NotificationChannel.EMAIL)
+              .buildAsNew())
+          .map(notificationRepository::saveAndFlush)
+          .map(new PendingNotificationDataBuilder()::buildForEmailChannel)
+          .forEach(pendingNotificationRepository::saveAndFlush);
+
+      return null;
+    });
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+
+    new TransactionTemplate(transactionManager).execute(status -> {
+      pendingNotificationRepository.deleteAll();
+      notificationRepository.deleteAll();
+
+      return null;
+    });
+  }
+
+  @Test
+  public void shouldNotClaimTheSameNotificationsByConcurrentClaimers() throws Exception {
+    // when
+    Future<List<PendingNotificationId>> first = executor.submit(() -> claim(() -> {
+      firstClaimed.countDown();
+      // keep the claimed rows locked until the second claimer is done
+      secondClaimed.await(TIMEOUT, TimeUnit.SECONDS);
+    }));
+
+    firstClaimed.await(TIMEOUT, TimeUnit.SECONDS);
+
+    Future<List<PendingNotificationId>> second = executor
+        .submit(() -> claim(secondClaimed::countDown));
+
+    List<PendingNotificationId> secondIds = second.get(TIMEOUT, TimeUnit.SECONDS);
+    List<PendingNotificationId> firstIds = first.get(TIMEOUT, TimeUnit.SECONDS);
+
+    // then
+    assertThat(firstIds).hasSize(BATCH_SIZE);
+    assertThat(secondIds).hasSize(COUNT - BATCH_SIZE);
+    assertThat(firstIds).doesNotContainAnyElementsOf(secondIds);
+
+    assertThat(pendingNotificationRepository.count()).isEqualTo(COUNT);
+    assertThat(pendingNotificationService.claim(COUNT)).isEmpty();
+  }
+
+  private List<PendingNotificationId> claim(ClaimCallback callback) {
+    return new TransactionTemplate(transactionManager).execute(status -> {
+      retriever.wakeUp();
+      Message<List<PendingNotification>> message = retriever.retrieve();
+      List<PendingNotificationId> ids = message
+          .getPayload()
+          .stream()
+          .map(PendingNotification::getId)
+          .collect(Collectors.toList());
+
+      try {
+        callback.afterClaim();
+      } catch (InterruptedException exp) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(exp);
+      }
+
+      return ids;
+    });
+  }
+
+  @FunctionalInterface
+  private interface ClaimCallback {
+
+    void afterClaim() throws InterruptedException;
+
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyInt;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.NotificationRecipient;
+import org.openlmis.notification.repository.NotificationRecipientRepository;
+import org.openlmis.notification.repository.NotificationRepository;
+import org.openlmis.notification.repository.PendingNotificationRepository;
+import org.openlmis.notification.testutils.PendingNotificationDataBuilder;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+    "notificationToSend.autoStartup=false",
+    "notificationToSend.fallbackPollInterval=3600000"})
+public class PendingNotificationListenerIntegrationTest {
+
+  private static final long TIMEOUT = 30;
+
+  @MockBean
+  private PendingNotificationService pendingNotificationService;
+
+  @Autowired
+  private PendingNotificationListener listener;
+
+  @Autowired
+  private NotificationToSendRetriever retriever;
+
+  @Autowired
+  private NotificationRepository notificationRepository;
+
+  @Autowired
+  private PendingNotificationRepository pendingNotificationRepository;
+
+  @Autowired
+  private NotificationRecipientRepository notificationRecipientRepository;
+
+  private AtomicInteger claims = new AtomicInteger();
+
+  @Before
+  public void setUp() {
+    given(pendingNotificationService.claim(anyInt())).willAnswer(invocation -> {
+      claims.incrementAndGet();
+      return Collections.emptyList();
+    });
+
+    listener.start();
+    await().atMost(TIMEOUT, TimeUnit.SECONDS).until(listener::isListening);
+
+    // consume wake ups that happened before the test
+    retriever.retrieve();
+    claims.set(0);
+  }
+
+  @After
+  public void tearDown() {
+    listener.stop();
+
+    pendingNotificationRepository.deleteAll();
+    notificationRecipientRepository.deleteAll();
+    notificationRepository.deleteAll();
+  }
+
+  @Test
+  public void shouldWakeUpRetrieverWhenPendingNotificationIsAdded() {
+    // when
+    Notification notification = notificationRepository.save(new NotificationDataBuilder()
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .buildAsNew());
+    pendingNotificationRepository
+        .save(new PendingNotificationDataBuilder().buildForEmailChannel(notification));
+
+    // then
+    await().atMost(TIMEOUT, TimeUnit.SECONDS).until(() -> {
+      retriever.retrieve();
+      return claims.get() > 0;
+    });
+  }
+
+  @Test
+  public void shouldWakeUpRetrieverWhenNotificationRecipientIsAdded() {
+    // when
+    Notification notification = notificationRepository.save(new NotificationDataBuilder()
+        .withUserId(null)
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .buildAsNew());
+    notificationRecipientRepository
+        .save(new NotificationRecipient(notification.getId(), UUID.randomUUID()));
+
+    // then
+    await().atMost(TIMEOUT, TimeUnit.SECONDS).until(() -> {
+      retriever.retrieve();
+      return claims.get() > 0;
+    });
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Checks that a router moves requests from a broken and a slow stub gateway to a fast one.
+ */
+public class ProviderRouterBenchmarkIntegrationTest {
+
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(ProviderRouterBenchmarkIntegrationTest.class);
+
+  private static final int REQUESTS = 40;
+  private static final long SLOW_DELAY = 50;
+
+  private RestTemplate restTemplate = new RestTemplate();
+  private List<HttpServer> servers = Lists.newArrayList();
+
+  private AtomicInteger slowRequests = new AtomicInteger();
+  private AtomicInteger brokenRequests = new AtomicInteger();
+  private AtomicInteger fastRequests = new AtomicInteger();
+
+  private String slowUrl;
+  private String brokenUrl;
+  private String fastUrl;
+
+  @Before
+  public void setUp() throws IOException {
+    slowUrl = startServer(slowRequests, 200, SLOW_DELAY);
+    brokenUrl = startServer(brokenRequests, 503, 0);
+    fastUrl = startServer(fastRequests, 200, 0);
+  }
+
+  @After
+  public void tearDown() {
+    servers.forEach(server -> server.stop(0));
+  }
+
+  @Test
+  public void shouldMoveRequestsToFastestHealthyGateway() {
+    // given
+    ProviderRouter router = newRouter(slowUrl, brokenUrl, fastUrl);
+    ProviderRouter baseline = newRouter(slowUrl);
+
+    // when
+    long routedTime = send(router);
+    int slowRouted = slowRequests.getAndSet(0);
+    long baselineTime = send(baseline);
+
+    // then
+    LOGGER.info("Sending {} requests took {} ms with routing over three gateways and {} ms to"
+        + " the slow gateway only, {} failovers", REQUESTS, routedTime, baselineTime,
+        router.getFailovers());
+
+    assertThat(fastRequests.get()).isGreaterThanOrEqualTo(REQUESTS - 2);
+    assertThat(slowRouted).isLessThanOrEqualTo(1);
+    assertThat(brokenRequests.get()).isEqualTo(1);
+    assertThat(router.getFailovers()).isEqualTo(1);
+  }
+
+  private ProviderRouter newRouter(String... urls) {
+    return new ProviderRouter("sms", Lists.newArrayList(urls),
+        name -> new CircuitBreaker(name, 1, 100, 60000, 1), 0.3, 60000);
+  }
+
+  private long send(ProviderRouter router) {
+    long start = System.nanoTime();
+
+    for (int i = 0; i < REQUESTS; ++i) {
+      router.execute(url -> restTemplate.postForEntity(url, "message", String.class));
+    }
+
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  private String startServer(AtomicInteger requests, int status, long delay)
+      throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/broadcasts", exchange -> {
+      requests.incrementAndGet();
+
+      try {
+        TimeUnit.MILLISECONDS.sleep(delay);
+      } catch (InterruptedException exp) {
+        Thread.currentThread().interrupt();
+      }
+
+      exchange.sendResponseHeaders(status, -1);
+      exchange.close();
+    });
+    server.start();
+    servers.add(server);
+
+    return "http://localhost:" + server.getAddress().getPort() + "/broadcasts";
+  }
+
+}
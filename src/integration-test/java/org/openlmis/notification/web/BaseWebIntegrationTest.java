@@ -40,6 +40,7 @@ import org.junit.Rule;
 import org.junit.runner.RunWith;
 import org.openlmis.notification.repository.DigestConfigurationRepository;
 import org.openlmis.notification.repository.DigestSubscriptionRepository;
+import org.openlmis.notification.repository.FailedNotificationRepository;
 import org.openlmis.notification.repository.PendingNotificationRepository;
 import org.openlmis.notification.repository.UserContactDetailsRepository;
 import org.openlmis.notification.service.PermissionService;
@@ -89,6 +90,9 @@ public abstract class BaseWebIntegrationTest {
   @MockBean
   protected PendingNotificationRepository pendingNotificationRepository;
 
+  @MockBean
+  protected FailedNotificationRepository failedNotificationRepository;
+
   @MockBean
   protected UserContactDetailsRepository userContactDetailsRepository;
 
@@ -0,0 +1,190 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.web.failednotification;
+
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_FAILED_NOTIFICATION_NOT_FOUND;
+
+import guru.nidi.ramltester.junit.RamlMatchers;
+import java.util.UUID;
+import org.apache.http.HttpStatus;
+import org.assertj.core.util.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.notification.domain.FailedNotification;
+import org.openlmis.notification.domain.PendingNotification;
+import org.openlmis.notification.testutils.FailedNotificationDataBuilder;
+import org.openlmis.notification.web.BaseWebIntegrationTest;
+import org.openlmis.notification.web.MissingPermissionException;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+public class FailedNotificationControllerIntegrationTest extends BaseWebIntegrationTest {
+
+  private static final String RESOURCE_URL = "/api/failedNotifications";
+  private static final String ID_RESOURCE_URL = RESOURCE_URL + "/{id}";
+  private static final String REQUEUE_URL = ID_RESOURCE_URL + "/requeue";
+  private static final String ID = "id";
+
+  private FailedNotification failed = new FailedNotificationDataBuilder().build();
+  private UUID failedId = failed.getId();
+
+  @Before
+  public void setUp() {
+    given(failedNotificationRepository.findAll(any(Pageable.class)))
+        .willReturn(new PageImpl<>(Lists.newArrayList(failed)));
+    given(failedNotificationRepository.findOne(failedId)).willReturn(failed);
+  }
+
+  @Test
+  public void shouldGetFailedNotifications() {
+    // when
+    startUserRequest()
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("content", hasSize(1))
+        .body("content.id", hasItems(failedId.toString()));
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnForbiddenForGetFailedNotificationsIfUserHasNoRight() {
+    // given
+    willThrow(new MissingPermissionException("USERS_MANAGE"))
+        .given(permissionService).canManageSendingQueue();
+
+    // when
+    startUserRequest()
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_FORBIDDEN);
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForGetFailedNotificationsIfTokenIsInvalid() {
+    // when
+    startRequest(null)
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldGetFailedNotification() {
+    // when
+    startUserRequest()
+        .pathParam(ID, failedId)
+        .when()
+        .get(ID_RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(ID, is(failedId.toString()))
+        .body("notificationId", is(failed.getNotification().getId().toString()))
+        .body("attempts", is(failed.getAttempts()));
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnNotFoundForGetFailedNotificationIfItDoesNotExist() {
+    // given
+    given(failedNotificationRepository.findOne(failedId)).willReturn(null);
+
+    // when
+    startUserRequest()
+        .pathParam(ID, failedId)
+        .when()
+        .get(ID_RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND)
+        .body(MESSAGE_KEY, is(ERROR_FAILED_NOTIFICATION_NOT_FOUND));
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldRequeueFailedNotification() {
+    // when
+    startUserRequest()
+        .pathParam(ID, failedId)
+        .when()
+        .post(REQUEUE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+
+    verify(failedNotificationRepository).delete(failed);
+    verify(pendingNotificationRepository).save(any(PendingNotification.class));
+  }
+
+  @Test
+  public void shouldReturnNotFoundForRequeueIfFailedNotificationDoesNotExist() {
+    // given
+    given(failedNotificationRepository.findOne(failedId)).willReturn(null);
+
+    // when
+    startUserRequest()
+        .pathParam(ID, failedId)
+        .when()
+        .post(REQUEUE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND)
+        .body(MESSAGE_KEY, is(ERROR_FAILED_NOTIFICATION_NOT_FOUND));
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+
+    verify(pendingNotificationRepository, never()).save(any(PendingNotification.class));
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForRequeueIfTokenIsInvalid() {
+    // when
+    startRequest(null)
+        .pathParam(ID, failedId)
+        .when()
+        .post(REQUEUE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+}
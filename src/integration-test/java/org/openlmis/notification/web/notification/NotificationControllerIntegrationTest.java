@@ -16,18 +16,28 @@
 package org.openlmis.notification.web.notification;
 
 import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_IDEMPOTENCY_KEY_REUSED;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED;
 import static org.openlmis.notification.i18n.MessageKeys.PERMISSION_MISSING_GENERIC;
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.jayway.restassured.response.Response;
 import guru.nidi.ramltester.junit.RamlMatchers;
+import java.util.List;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
@@ -52,6 +62,7 @@ import org.springframework.http.MediaType;
 @SuppressWarnings("PMD.TooManyMethods")
 public class NotificationControllerIntegrationTest extends BaseWebIntegrationTest {
   private static final String RESOURCE_URL = "/api/notifications";
+  private static final String BULK_URL = RESOURCE_URL + "/bulk";
   private static final UUID USER_ID = UUID.randomUUID();
   private static final String SUBJECT = "subject";
   private static final String CONTENT = "content";
@@ -80,12 +91,22 @@ public class NotificationControllerIntegrationTest extends BaseWebIntegrationTes
     
     given(userContactDetailsRepository.findOne(USER_ID)).willReturn(contactDetails);
     given(userReferenceDataService.findOne(USER_ID)).willReturn(user);
+
+    user.setId(USER_ID);
+    given(userContactDetailsRepository.findAll(anyCollectionOf(UUID.class)))
+        .willReturn(Lists.newArrayList(contactDetails));
+    given(userReferenceDataService.findByIds(anyCollectionOf(UUID.class)))
+        .willReturn(Lists.newArrayList(user));
+    given(notificationRepository.save(anyListOf(Notification.class)))
+        .willAnswer(invocation -> {
+          List<Notification> notifications = invocation.getArgumentAt(0, List.class);
+          notifications.forEach(saved -> saved.setId(UUID.randomUUID()));
+          return notifications;
+        });
   }
 
   @Test
   public void shouldSendMessageForValidNotification() {
-    given(notificationRepository.save(any(Notification.class))).willReturn(notification);
-    
     send(SERVICE_ACCESS_TOKEN_HEADER)
         .then()
         .statusCode(200);
@@ -93,6 +114,99 @@ public class NotificationControllerIntegrationTest extends BaseWebIntegrationTes
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
+  @Test
+  public void shouldReportChannelsThatCannotBeDelivered() {
+    contactDetails.getEmailDetails().setEmailVerified(false);
+
+    send(SERVICE_ACCESS_TOKEN_HEADER)
+        .then()
+        .statusCode(200)
+        .body("skippedChannels", hasItems(NotificationChannel.EMAIL.name()));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldAcceptMessageInAsyncMode() {
+    given(userReferenceDataService.findOne(USER_ID)).willReturn(null);
+
+    startRequest(SERVICE_ACCESS_TOKEN_HEADER)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .queryParam("async", true)
+        .body(exportToDto())
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(202)
+        .body("notificationId", is(notNullValue()));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnOriginalNotificationForRepeatedIdempotencyKey() {
+    String idempotencyKey = UUID.randomUUID().toString();
+
+    String notificationId = sendWithIdempotencyKey(exportToDto(), idempotencyKey)
+        .then()
+        .statusCode(202)
+        .extract()
+        .path("notificationId");
+
+    sendWithIdempotencyKey(exportToDto(), idempotencyKey)
+        .then()
+        .statusCode(202)
+        .body("notificationId", is(notificationId));
+
+    verify(notificationRepository, times(1)).save(anyListOf(Notification.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldRejectIdempotencyKeyReusedForDifferentBody() {
+    String idempotencyKey = UUID.randomUUID().toString();
+
+    sendWithIdempotencyKey(exportToDto(), idempotencyKey)
+        .then()
+        .statusCode(202);
+
+    NotificationDto body = exportToDto();
+    body.setImportant(true);
+
+    sendWithIdempotencyKey(body, idempotencyKey)
+        .then()
+        .statusCode(422)
+        .body(MESSAGE_KEY, is(ERROR_IDEMPOTENCY_KEY_REUSED));
+
+    verify(notificationRepository, times(1)).save(anyListOf(Notification.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldAcceptMessageForManyRecipients() {
+    NotificationDto body = exportToDto();
+    body.setUserId(null);
+    body.setRecipientIds(Sets.newHashSet(USER_ID, UUID.randomUUID()));
+
+    given(notificationRepository.save(any(Notification.class)))
+        .willAnswer(invocation -> {
+          Notification saved = invocation.getArgumentAt(0, Notification.class);
+          saved.setId(UUID.randomUUID());
+          return saved;
+        });
+
+    startRequest(SERVICE_ACCESS_TOKEN_HEADER)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .body(body)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(202)
+        .body("notificationId", is(notNullValue()));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
   @Test
   public void shouldNotSendMessageForInvalidNotification() {
     notification = new NotificationDataBuilder()
@@ -171,15 +285,70 @@ public class NotificationControllerIntegrationTest extends BaseWebIntegrationTes
             .statusCode(400);
   }
 
-  private Response send(String token) {
-    NotificationDto body = new NotificationDto();
-    notification.export(body);
+  @Test
+  public void shouldSendNotificationsInBulk() {
+    Notification invalid = new NotificationDataBuilder()
+        .withUserId(USER_ID)
+        .withMessage(NotificationChannel.EMAIL, null, SUBJECT)
+        .build();
+
+    sendBulk(SERVICE_ACCESS_TOKEN_HEADER, notification, invalid)
+        .then()
+        .statusCode(200)
+        .body("[0].notificationId", is(notNullValue()))
+        .body("[1].error.messageKey", is(ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED));
 
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldNotSendNotificationsInBulkForUserRequest() {
+    sendBulk(USER_ACCESS_TOKEN_HEADER, notification)
+        .then()
+        .statusCode(403)
+        .body(MESSAGE_KEY, is(PERMISSION_MISSING_GENERIC));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.validates());
+  }
+
+  private Response sendBulk(String token, Notification... notifications) {
+    List<NotificationDto> body = Lists.newArrayList();
+
+    for (Notification item : notifications) {
+      NotificationDto dto = new NotificationDto();
+      item.export(dto);
+      body.add(dto);
+    }
+
+    return startRequest(token)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .body(body)
+        .when()
+        .post(BULK_URL);
+  }
+
+  private Response send(String token) {
     return startRequest(token)
         .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .body(exportToDto())
+        .when()
+        .post(RESOURCE_URL);
+  }
+
+  private Response sendWithIdempotencyKey(NotificationDto body, String idempotencyKey) {
+    return startRequest(SERVICE_ACCESS_TOKEN_HEADER)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .header("Idempotency-Key", idempotencyKey)
+        .queryParam("async", true)
         .body(body)
         .when()
         .post(RESOURCE_URL);
   }
 
+  private NotificationDto exportToDto() {
+    NotificationDto body = new NotificationDto();
+    notification.export(body);
+    return body;
+  }
+
 }
@@ -0,0 +1,166 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.web.notificationtemplate;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Matchers.any;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_TEMPLATE_FIELD_REQUIRED;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND;
+
+import guru.nidi.ramltester.junit.RamlMatchers;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import org.apache.http.HttpStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.notification.domain.NotificationTemplate;
+import org.openlmis.notification.repository.NotificationTemplateRepository;
+import org.openlmis.notification.web.BaseWebIntegrationTest;
+import org.openlmis.notification.web.MissingPermissionException;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+
+public class NotificationTemplateControllerIntegrationTest extends BaseWebIntegrationTest {
+
+  private static final String RESOURCE_URL = "/api/notificationTemplates";
+  private static final String ID_RESOURCE_URL = RESOURCE_URL + "/{id}";
+  private static final String ID = "id";
+
+  @MockBean
+  private NotificationTemplateRepository notificationTemplateRepository;
+
+  private NotificationTemplate template = new NotificationTemplate("welcome",
+      "Welcome ${firstName}", "Dear ${firstName}, your account is ready.", ZonedDateTime.now());
+
+  private NotificationTemplateDto request = new NotificationTemplateDto();
+
+  @Before
+  public void setUp() {
+    template.setId(UUID.randomUUID());
+    template.export(request);
+    request.setId(null);
+    request.setCreatedDate(null);
+
+    given(notificationTemplateRepository.findOne(template.getId())).willReturn(template);
+    given(notificationTemplateRepository.save(any(NotificationTemplate.class)))
+        .willReturn(template);
+  }
+
+  @Test
+  public void shouldCreateNotificationTemplate() {
+    // when
+    startUserRequest()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .body(request)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED)
+        .body(ID, is(template.getId().toString()))
+        .body("name", is(template.getName()))
+        .body("body", is(template.getBody()));
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnBadRequestForCreateNotificationTemplateWithoutBody() {
+    // given
+    request.setBody(null);
+
+    // when
+    startUserRequest()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .body(request)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST)
+        .body(MESSAGE_KEY, is(ERROR_NOTIFICATION_TEMPLATE_FIELD_REQUIRED));
+  }
+
+  @Test
+  public void shouldReturnForbiddenForCreateNotificationTemplateIfUserHasNoRight() {
+    // given
+    willThrow(new MissingPermissionException("SEND_NOTIFICATION"))
+        .given(permissionService).canSendNotification();
+
+    // when
+    startUserRequest()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .body(request)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_FORBIDDEN);
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldGetNotificationTemplate() {
+    // when
+    startUserRequest()
+        .pathParam(ID, template.getId())
+        .when()
+        .get(ID_RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(ID, is(template.getId().toString()))
+        .body("subject", is(template.getSubject()));
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnNotFoundForGetNotificationTemplateIfItDoesNotExist() {
+    // given
+    given(notificationTemplateRepository.findOne(template.getId())).willReturn(null);
+
+    // when
+    startUserRequest()
+        .pathParam(ID, template.getId())
+        .when()
+        .get(ID_RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND)
+        .body(MESSAGE_KEY, is(ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND));
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForGetNotificationTemplateIfTokenIsInvalid() {
+    // when
+    startRequest(null)
+        .pathParam(ID, template.getId())
+        .when()
+        .get(ID_RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+
+    // then
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+}
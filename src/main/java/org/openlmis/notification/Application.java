@@ -15,11 +15,8 @@
 
 package org.openlmis.notification;
 
-import com.google.common.collect.Lists;
-import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
-import org.aopalliance.aop.Advice;
 import org.flywaydb.core.api.callback.FlywayCallback;
 import org.openlmis.notification.domain.Identifiable;
 import org.openlmis.notification.i18n.ExposedMessageSourceImpl;
@@ -30,17 +27,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
 import org.springframework.integration.config.EnableIntegration;
 import org.springframework.integration.scheduling.PollerMetadata;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.support.PeriodicTrigger;
-import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.interceptor.MatchAlwaysTransactionAttributeSource;
-import org.springframework.transaction.interceptor.TransactionInterceptor;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.LocaleResolver;
 import org.springframework.web.servlet.i18n.CookieLocaleResolver;
 
@@ -48,6 +41,7 @@ import org.springframework.web.servlet.i18n.CookieLocaleResolver;
 @EntityScan(basePackageClasses = {Identifiable.class})
 @EnableAsync
 @EnableIntegration
+@EnableScheduling
 public class Application {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Application.class);
@@ -110,27 +104,18 @@ public class Application {
   }
 
   /**
-   * Creates a metadata that will be used to create a default poller.
+   * Creates a metadata that will be used to create a default poller. The poller does not open
+   * a transaction, so no database connection is held while notifications are being sent.
    */
   @Bean(name = PollerMetadata.DEFAULT_POLLER)
-  public PollerMetadata defaultPoller(PlatformTransactionManager transactionManager) {
-    List<Advice> adviceChain = Lists.newArrayList();
-    adviceChain.add(new TransactionInterceptor(transactionManager,
-        new MatchAlwaysTransactionAttributeSource()));
-
-    PeriodicTrigger trigger = new PeriodicTrigger(1, TimeUnit.SECONDS);
+  public PollerMetadata defaultPoller(@Value("${notificationToSend.pollInterval}") long interval) {
+    PeriodicTrigger trigger = new PeriodicTrigger(interval, TimeUnit.MILLISECONDS);
     trigger.setFixedRate(false);
     trigger.setInitialDelay(0);
 
     PollerMetadata metadata = new PollerMetadata();
-    metadata.setAdviceChain(adviceChain);
     metadata.setTrigger(trigger);
 
     return metadata;
   }
-
-  @Bean
-  public RestTemplate restTemplate(RestTemplateBuilder builder) {
-    return builder.build();
-  }
 }
@@ -0,0 +1,184 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.openlmis.notification.service.request.HttpClientMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Configures the HTTP client that is shared by all outbound calls (referencedata, auth and SMS).
+ * Connections are pooled per host and kept alive between requests, and every request has
+ * a connect and read timeout, so a hung endpoint does not hold up threads forever. Calls that
+ * should not hold a thread while they wait for the response (SMS) can use the non-blocking
+ * client, which serves all of its connections with a few I/O threads.
+ */
+@Configuration
+public class HttpClientConfiguration {
+
+  @Value("${http.client.maxTotal}")
+  private int maxTotal;
+
+  @Value("${http.client.maxPerRoute}")
+  private int maxPerRoute;
+
+  @Value("${http.client.connectTimeout}")
+  private int connectTimeout;
+
+  @Value("${http.client.readTimeout}")
+  private int readTimeout;
+
+  @Value("${http.client.connectionRequestTimeout}")
+  private int connectionRequestTimeout;
+
+  @Value("${http.client.keepAlive}")
+  private long keepAlive;
+
+  @Value("${http.asyncClient.ioThreads}")
+  private int asyncIoThreads;
+
+  @Value("${http.asyncClient.maxTotal}")
+  private int asyncMaxTotal;
+
+  @Value("${http.asyncClient.maxPerRoute}")
+  private int asyncMaxPerRoute;
+
+  /**
+   * Creates the pool of connections to outbound hosts.
+   */
+  @Bean
+  public PoolingHttpClientConnectionManager httpClientConnectionManager() {
+    PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(
+        keepAlive, TimeUnit.MILLISECONDS);
+    manager.setMaxTotal(maxTotal);
+    manager.setDefaultMaxPerRoute(maxPerRoute);
+
+    return manager;
+  }
+
+  /**
+   * Creates the HTTP client that uses the shared connection pool. Connections are kept alive for
+   * as long as the server allows, but no longer than the configured keep alive time.
+   */
+  @Bean
+  public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager) {
+    RequestConfig requestConfig = RequestConfig
+        .custom()
+        .setConnectTimeout(connectTimeout)
+        .setSocketTimeout(readTimeout)
+        .setConnectionRequestTimeout(connectionRequestTimeout)
+        .build();
+
+    ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+      long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+          .getKeepAliveDuration(response, context);
+
+      return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+    };
+
+    return HttpClients
+        .custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(keepAliveStrategy)
+        .evictExpiredConnections()
+        .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  @Bean
+  public ClientHttpRequestFactory clientHttpRequestFactory(CloseableHttpClient httpClient) {
+    return new HttpComponentsClientHttpRequestFactory(httpClient);
+  }
+
+  /**
+   * Creates the rest template that is used by all outbound calls.
+   */
+  @Bean
+  public RestTemplate restTemplate(RestTemplateBuilder builder,
+      ClientHttpRequestFactory clientHttpRequestFactory, HttpClientMetrics httpClientMetrics) {
+    return builder
+        .requestFactory(clientHttpRequestFactory)
+        .additionalInterceptors(httpClientMetrics)
+        .build();
+  }
+
+  /**
+   * Creates the non-blocking HTTP client. Its connections are pooled and kept alive like the
+   * connections of the blocking client, and it is started right away.
+   */
+  @Bean
+  public CloseableHttpAsyncClient httpAsyncClient() throws IOReactorException {
+    IOReactorConfig ioReactorConfig = IOReactorConfig
+        .custom()
+        .setIoThreadCount(asyncIoThreads)
+        .setConnectTimeout(connectTimeout)
+        .setSoTimeout(readTimeout)
+        .build();
+
+    PoolingNHttpClientConnectionManager connectionManager =
+        new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+    connectionManager.setMaxTotal(asyncMaxTotal);
+    connectionManager.setDefaultMaxPerRoute(asyncMaxPerRoute);
+
+    RequestConfig requestConfig = RequestConfig
+        .custom()
+        .setConnectTimeout(connectTimeout)
+        .setSocketTimeout(readTimeout)
+        .setConnectionRequestTimeout(connectionRequestTimeout)
+        .build();
+
+    CloseableHttpAsyncClient client = HttpAsyncClients
+        .custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .build();
+    client.start();
+
+    return client;
+  }
+
+  /**
+   * Creates the rest template for calls that should not wait for the response.
+   */
+  @Bean
+  public AsyncRestTemplate asyncRestTemplate(CloseableHttpClient httpClient,
+      CloseableHttpAsyncClient httpAsyncClient) {
+    return new AsyncRestTemplate(
+        new HttpComponentsAsyncClientHttpRequestFactory(httpClient, httpAsyncClient));
+  }
+
+}
@@ -21,12 +21,17 @@ import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.openlmis.notification.security.CachingTokenServices;
 import org.openlmis.notification.security.CustomUserAuthenticationConverter;
+import org.openlmis.notification.service.request.HttpClientMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -37,8 +42,9 @@ import org.springframework.security.oauth2.provider.authentication.BearerTokenEx
 import org.springframework.security.oauth2.provider.authentication.TokenExtractor;
 import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
-import org.springframework.security.oauth2.provider.token.RemoteTokenServices;
 import org.springframework.security.web.authentication.preauth.AbstractPreAuthenticatedProcessingFilter;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -58,6 +64,21 @@ public class ResourceServerSecurityConfiguration implements ResourceServerConfig
   @Value("${cors.allowedMethods}")
   private String[] allowedMethods;
 
+  @Value("${auth.tokenCache.size}")
+  private long tokenCacheSize;
+
+  @Value("${auth.tokenCache.ttl}")
+  private long tokenCacheTtl;
+
+  @Value("${auth.tokenCache.invalidTokenTtl}")
+  private long invalidTokenCacheTtl;
+
+  @Autowired
+  private ClientHttpRequestFactory clientHttpRequestFactory;
+
+  @Autowired
+  private HttpClientMetrics httpClientMetrics;
+
   @Override
   public void configure(ResourceServerSecurityConfigurer resources) throws Exception {
     resources.resourceId("notification");
@@ -94,7 +115,9 @@ public class ResourceServerSecurityConfiguration implements ResourceServerConfig
   }
 
   /**
-   * RemoteTokenServices bean initializer.
+   * Token services bean initializer. Tokens are checked with the shared HTTP client, so
+   * the calls to the auth service use pooled connections and have timeouts. The results of the
+   * checks are cached, so a token is not checked on each request.
    * @param checkTokenUrl url to check tokens against
    * @param clientId client's id
    * @param clientSecret client's secret
@@ -102,16 +125,33 @@ public class ResourceServerSecurityConfiguration implements ResourceServerConfig
    */
   @Bean
   @Autowired
-  public RemoteTokenServices remoteTokenServices(@Value("${auth.server.url}") String checkTokenUrl,
-                                                 @Value("${auth.server.clientId}") String clientId,
-                                                 @Value("${auth.server.clientSecret}")
-                                                       String clientSecret) {
-    final RemoteTokenServices remoteTokenServices = new RemoteTokenServices();
-    remoteTokenServices.setCheckTokenEndpointUrl(checkTokenUrl);
-    remoteTokenServices.setClientId(clientId);
-    remoteTokenServices.setClientSecret(clientSecret);
-    remoteTokenServices.setAccessTokenConverter(accessTokenConverter());
-    return remoteTokenServices;
+  public CachingTokenServices tokenServices(@Value("${auth.server.url}") String checkTokenUrl,
+      @Value("${auth.server.clientId}") String clientId,
+      @Value("${auth.server.clientSecret}") String clientSecret) {
+    final CachingTokenServices tokenServices = new CachingTokenServices(
+        tokenCacheSize, tokenCacheTtl, invalidTokenCacheTtl);
+    tokenServices.setCheckTokenEndpointUrl(checkTokenUrl);
+    tokenServices.setClientId(clientId);
+    tokenServices.setClientSecret(clientSecret);
+    tokenServices.setAccessTokenConverter(accessTokenConverter());
+    tokenServices.setRestTemplate(checkTokenRestTemplate());
+    return tokenServices;
+  }
+
+  private RestTemplate checkTokenRestTemplate() {
+    RestTemplate restTemplate = new RestTemplate(clientHttpRequestFactory);
+    restTemplate.getInterceptors().add(httpClientMetrics);
+    // the same as in RemoteTokenServices: an invalid token is reported with 400 and a body
+    restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+      @Override
+      public void handleError(ClientHttpResponse response) throws IOException {
+        if (response.getRawStatusCode() != HttpStatus.BAD_REQUEST.value()) {
+          super.handleError(response);
+        }
+      }
+    });
+
+    return restTemplate;
   }
 
   /**
@@ -0,0 +1,121 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.domain;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.openlmis.notification.service.NotificationChannel;
+
+/**
+ * A notification that could not be sent by the given channel within the allowed number of
+ * attempts. It stays here until it is inspected and requeued.
+ */
+@Getter
+@Entity
+@Table(name = "failed_notifications")
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true, exclude = "notification")
+public class FailedNotification extends BaseEntity {
+
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "notificationId", nullable = false)
+  private Notification notification;
+
+  @Column(nullable = false)
+  private UUID recipientId;
+
+  @Column(nullable = false)
+  @Enumerated(value = EnumType.STRING)
+  private NotificationChannel channel;
+
+  @Column(nullable = false)
+  private int attempts;
+
+  @Column(columnDefinition = TEXT_COLUMN_DEFINITION)
+  private String lastError;
+
+  @Column(columnDefinition = "timestamp with time zone", nullable = false)
+  private ZonedDateTime createdDate;
+
+  @Column(columnDefinition = "timestamp with time zone", nullable = false)
+  private ZonedDateTime failedDate;
+
+  /**
+   * Creates a new instance based on a pending notification whose last attempt failed.
+   */
+  public static FailedNotification newInstance(PendingNotification pending, String lastError) {
+    return new FailedNotification(pending.getNotification(), pending.getRecipientId(),
+        pending.getChannel(), pending.getAttempts() + 1, lastError, pending.getCreatedDate(),
+        ZonedDateTime.now());
+  }
+
+  /**
+   * Creates a new pending notification, so the notification will be sent again.
+   */
+  public PendingNotification requeue() {
+    return new PendingNotification(notification, channel, recipientId);
+  }
+
+  /**
+   * Exports current status of the object.
+   */
+  public void export(Exporter exporter) {
+    exporter.setId(getId());
+    exporter.setNotificationId(notification.getId());
+    exporter.setRecipientId(recipientId);
+    exporter.setChannel(channel);
+    exporter.setAttempts(attempts);
+    exporter.setLastError(lastError);
+    exporter.setCreatedDate(createdDate);
+    exporter.setFailedDate(failedDate);
+  }
+
+  public interface Exporter {
+
+    void setId(UUID id);
+
+    void setNotificationId(UUID notificationId);
+
+    void setRecipientId(UUID recipientId);
+
+    void setChannel(NotificationChannel channel);
+
+    void setAttempts(int attempts);
+
+    void setLastError(String lastError);
+
+    void setCreatedDate(ZonedDateTime createdDate);
+
+    void setFailedDate(ZonedDateTime failedDate);
+
+  }
+
+}
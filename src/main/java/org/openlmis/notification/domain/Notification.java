@@ -15,18 +15,33 @@
 
 package org.openlmis.notification.domain;
 
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
+
 import java.time.ZonedDateTime;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import javax.persistence.CascadeType;
+import javax.persistence.CollectionTable;
 import javax.persistence.Column;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
+import javax.persistence.JoinColumn;
+import javax.persistence.MapKeyColumn;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import org.openlmis.notification.service.NotificationChannel;
 
 @Entity
 @Table(name = "notifications")
@@ -34,7 +49,7 @@ import lombok.NoArgsConstructor;
 @EqualsAndHashCode(callSuper = true)
 public class Notification extends BaseEntity {
 
-  @Column(nullable = false)
+  // null for a notification sent to many users, whose recipients are stored separately
   @Getter
   private UUID userId;
 
@@ -45,11 +60,39 @@ public class Notification extends BaseEntity {
 
   @Getter
   private Boolean important;
+
+  @Column(nullable = false)
+  @Enumerated(value = EnumType.STRING)
+  @Getter
+  private NotificationPriority priority;
   
   @Column(columnDefinition = "timestamp with time zone", nullable = false)
   @Getter
   private ZonedDateTime createdDate;
 
+  @Column(nullable = false)
+  @Getter
+  private boolean recipientVerified = true;
+
+  @Getter
+  private String idempotencyKey;
+
+  @Getter
+  private String idempotencyCaller;
+
+  @Getter
+  private String idempotencyPayloadHash;
+
+  // loaded with a separate query, so the messages are not multiplied by a join
+  @ElementCollection(fetch = FetchType.EAGER)
+  @Fetch(FetchMode.SELECT)
+  @CollectionTable(name = "notification_parameters",
+      joinColumns = @JoinColumn(name = "notificationId"))
+  @MapKeyColumn(name = "name")
+  @Column(name = "value", columnDefinition = TEXT_COLUMN_DEFINITION, nullable = false)
+  @Getter
+  private Map<String, String> parameters = new HashMap<>();
+
   /**
    * Default constructor.
    * 
@@ -58,13 +101,68 @@ public class Notification extends BaseEntity {
    * @param important important flag
    */
   public Notification(UUID userId, List<NotificationMessage> messages, Boolean important) {
+    this(userId, messages, important, null);
+  }
+
+  /**
+   * Creates a new notification with the given priority. If the priority is not set, important
+   * notifications get the high priority and the rest get the normal one.
+   *
+   * @param userId user id
+   * @param messages messages list
+   * @param important important flag
+   * @param priority priority lane in the sending queue
+   */
+  public Notification(UUID userId, List<NotificationMessage> messages, Boolean important,
+      NotificationPriority priority) {
     this.userId = userId;
     this.messages = messages;
     this.messages.forEach(notificationMessage -> notificationMessage.setNotification(this));
     this.important = important;
+    this.priority = null == priority ? NotificationPriority.getDefault(important) : priority;
     this.createdDate = ZonedDateTime.now();
   }
 
+  /**
+   * Marks that it was not checked yet whether the recipient exists and is active. The check
+   * is made in the sending flow instead.
+   */
+  public void deferRecipientVerification() {
+    this.recipientVerified = false;
+  }
+
+  /**
+   * Assigns the idempotency key of the request that created the notification. The key is unique
+   * only together with the caller that sent the request.
+   *
+   * @param caller the user or the service client that sent the request
+   * @param key the idempotency key of the request
+   * @param payloadHash the hash of the request body, to tell a repeated request from another one
+   */
+  public void setIdempotencyKey(String caller, String key, String payloadHash) {
+    this.idempotencyCaller = caller;
+    this.idempotencyKey = key;
+    this.idempotencyPayloadHash = payloadHash;
+  }
+
+  /**
+   * Returns the channels of messages that can't be delivered to the user with the given contact
+   * details. If the contact details are not known, all messages are assumed to be deliverable.
+   */
+  public Set<NotificationChannel> getUndeliverableChannels(UserContactDetails contactDetails) {
+    Set<NotificationChannel> channels = EnumSet.noneOf(NotificationChannel.class);
+
+    if (null != contactDetails) {
+      messages
+          .stream()
+          .map(NotificationMessage::getChannel)
+          .filter(channel -> !contactDetails.canReceive(channel, isTrue(important)))
+          .forEach(channels::add);
+    }
+
+    return channels;
+  }
+
   /**
    * Construct new notification based on an importer (DTO).
    *
@@ -72,7 +170,19 @@ public class Notification extends BaseEntity {
    * @return new notification
    */
   public static Notification newInstance(Importer importer) {
-    return new Notification(importer.getUserId(), importer.getMessages(), importer.getImportant());
+    Notification notification = new Notification(importer.getUserId(), importer.getMessages(),
+        importer.getImportant(), importer.getPriority());
+
+    if (null != importer.getParameters()) {
+      // a missing value leaves the placeholder in the rendered text, like a missing parameter
+      importer.getParameters().forEach((name, value) -> {
+        if (null != value) {
+          notification.parameters.put(name, value);
+        }
+      });
+    }
+
+    return notification;
   }
 
   /**
@@ -84,7 +194,9 @@ public class Notification extends BaseEntity {
     exporter.setUserId(userId);
     exporter.setMessages(messages);
     exporter.setImportant(important);
+    exporter.setPriority(priority);
     exporter.setCreatedDate(createdDate);
+    exporter.setParameters(new HashMap<>(parameters));
   }
   
   public interface Importer {
@@ -94,6 +206,10 @@ public class Notification extends BaseEntity {
     List<NotificationMessage> getMessages();
     
     Boolean getImportant();
+
+    NotificationPriority getPriority();
+
+    Map<String, String> getParameters();
   }
 
   public interface Exporter {
@@ -103,7 +219,11 @@ public class Notification extends BaseEntity {
     void setMessages(List<NotificationMessage> messages);
     
     void setImportant(Boolean important);
+
+    void setPriority(NotificationPriority priority);
     
     void setCreatedDate(ZonedDateTime createdDate);
+
+    void setParameters(Map<String, String> parameters);
   }
 }
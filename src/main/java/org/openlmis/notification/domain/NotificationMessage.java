@@ -15,6 +15,7 @@
 
 package org.openlmis.notification.domain;
 
+import java.util.UUID;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
@@ -51,7 +52,7 @@ public class NotificationMessage extends BaseEntity {
   @Enumerated(value = EnumType.STRING)
   private NotificationChannel channel;
 
-  @Column(columnDefinition = TEXT_COLUMN_DEFINITION, nullable = false)
+  @Column(columnDefinition = TEXT_COLUMN_DEFINITION)
   private String body;
 
   @Column(columnDefinition = TEXT_COLUMN_DEFINITION)
@@ -60,6 +61,9 @@ public class NotificationMessage extends BaseEntity {
   @Getter
   private String tag;
 
+  @Type(type = UUID_TYPE)
+  private UUID templateId;
+
   /**
    * Default constructor.
    *
@@ -83,6 +87,19 @@ public class NotificationMessage extends BaseEntity {
 
   public NotificationMessage(NotificationChannel channel, String body,
       String subject, String tag) {
-    this(null, channel, body, subject, tag);
+    this(channel, body, subject, tag, null);
+  }
+
+  /**
+   * Creates a message whose subject and body are rendered from the given template when the
+   * message is sent. The body and the subject are not used then.
+   */
+  public NotificationMessage(NotificationChannel channel, String body,
+      String subject, String tag, UUID templateId) {
+    this(null, channel, body, subject, tag, templateId);
+  }
+
+  public boolean isTemplated() {
+    return null != templateId;
   }
 }
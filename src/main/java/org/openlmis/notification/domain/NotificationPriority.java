@@ -0,0 +1,39 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Priority lanes of the sending queue. Higher lanes get a bigger share of each claimed batch,
+ * but every lane gets its share eventually, so the lower lanes are not starved by a backlog in
+ * the higher ones.
+ */
+@Getter
+@AllArgsConstructor
+public enum NotificationPriority {
+  HIGH(6), NORMAL(3), LOW(1);
+
+  private final int weight;
+
+  /**
+   * Returns the priority that should be used for a notification that has no priority set.
+   */
+  public static NotificationPriority getDefault(Boolean important) {
+    return Boolean.TRUE.equals(important) ? HIGH : NORMAL;
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.domain;
+
+import java.io.Serializable;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.openlmis.notification.domain.NotificationRecipient.NotificationRecipientId;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * One of the users that a multi-recipient notification is sent to. The notification itself is
+ * stored once, and each recipient is expanded into pending notifications only when the sending
+ * queue gets to it.
+ */
+@Getter
+@Entity
+@Table(name = "notification_recipients")
+@NoArgsConstructor
+@EqualsAndHashCode(of = "id")
+@ToString
+public class NotificationRecipient
+    implements Identifiable<NotificationRecipientId>, Persistable<NotificationRecipientId> {
+
+  @EmbeddedId
+  private NotificationRecipientId id;
+
+  @Column(nullable = false)
+  private boolean expanded;
+
+  // the id is assigned, so without this flag each new row would be looked up before the insert
+  @Transient
+  private boolean persisted;
+
+  public NotificationRecipient(UUID notificationId, UUID userId) {
+    this.id = new NotificationRecipientId(notificationId, userId);
+  }
+
+  /**
+   * Marks that pending notifications were already created for the recipient.
+   */
+  public void expand() {
+    this.expanded = true;
+  }
+
+  @Override
+  public boolean isNew() {
+    return !persisted;
+  }
+
+  @PostLoad
+  @PostPersist
+  void markPersisted() {
+    this.persisted = true;
+  }
+
+  public UUID getNotificationId() {
+    return id.notificationId;
+  }
+
+  public UUID getUserId() {
+    return id.userId;
+  }
+
+  @Embeddable
+  @NoArgsConstructor
+  @AllArgsConstructor
+  @EqualsAndHashCode
+  @ToString
+  public static final class NotificationRecipientId implements Serializable {
+
+    private UUID notificationId;
+
+    private UUID userId;
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.domain;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A stored subject and body of notification messages with {@code ${name}} placeholders that are
+ * replaced by the parameters of each notification when it is sent. Templates can't be changed,
+ * so notifications waiting in the queue are always sent with the text they were created with;
+ * a new template has to be created instead.
+ */
+@Getter
+@Entity
+@Table(name = "notification_templates")
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class NotificationTemplate extends BaseEntity {
+
+  @Column(nullable = false)
+  private String name;
+
+  @Column(columnDefinition = TEXT_COLUMN_DEFINITION)
+  private String subject;
+
+  @Column(columnDefinition = TEXT_COLUMN_DEFINITION, nullable = false)
+  private String body;
+
+  @Column(columnDefinition = "timestamp with time zone", nullable = false)
+  private ZonedDateTime createdDate;
+
+  /**
+   * Creates a new instance based on data from the importer.
+   */
+  public static NotificationTemplate newInstance(Importer importer) {
+    return new NotificationTemplate(importer.getName(), importer.getSubject(),
+        importer.getBody(), ZonedDateTime.now());
+  }
+
+  /**
+   * Exports current status of the object.
+   */
+  public void export(Exporter exporter) {
+    exporter.setId(getId());
+    exporter.setName(name);
+    exporter.setSubject(subject);
+    exporter.setBody(body);
+    exporter.setCreatedDate(createdDate);
+  }
+
+  public interface Importer {
+
+    String getName();
+
+    String getSubject();
+
+    String getBody();
+
+  }
+
+  public interface Exporter {
+
+    void setId(UUID id);
+
+    void setName(String name);
+
+    void setSubject(String subject);
+
+    void setBody(String body);
+
+    void setCreatedDate(ZonedDateTime createdDate);
+
+  }
+
+}
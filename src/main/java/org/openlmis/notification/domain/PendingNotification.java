@@ -26,11 +26,12 @@ import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
 import javax.persistence.MapsId;
-import javax.persistence.NamedQueries;
-import javax.persistence.NamedQuery;
-import javax.persistence.OneToOne;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -38,6 +39,7 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 import org.openlmis.notification.domain.PendingNotification.PendingNotificationId;
 import org.openlmis.notification.service.NotificationChannel;
+import org.springframework.data.domain.Persistable;
 
 @Getter
 @Entity
@@ -45,37 +47,97 @@ import org.openlmis.notification.service.NotificationChannel;
 @NoArgsConstructor
 @EqualsAndHashCode(of = "id")
 @ToString(exclude = "notification")
-@NamedQueries({
-    @NamedQuery(name = "PendingNotification.getPendingNotifications",
-        query = "SELECT p"
-            + " FROM PendingNotification p"
-            + " INNER JOIN FETCH p.notification"
-            + " ORDER BY p.createdDate ASC")
-})
-public class PendingNotification implements Identifiable<PendingNotificationId> {
-
-  public static final String GET_PENDING_NOTIFICATIONS_NAMED_QUERY =
-      "PendingNotification.getPendingNotifications";
+public class PendingNotification
+    implements Identifiable<PendingNotificationId>, Persistable<PendingNotificationId> {
 
   @EmbeddedId
   private PendingNotificationId id;
 
   @MapsId("notificationId")
-  @OneToOne(fetch = FetchType.LAZY)
-  @JoinColumn(name = "notificationId", unique = true, nullable = false)
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "notificationId", nullable = false)
   private Notification notification;
 
   @Column(columnDefinition = "timestamp with time zone", nullable = false)
   @Getter
   private ZonedDateTime createdDate;
 
+  @Column(nullable = false)
+  @Enumerated(value = EnumType.STRING)
+  private Status status;
+
+  @Column(columnDefinition = "timestamp with time zone")
+  private ZonedDateTime claimedDate;
+
+  @Column(nullable = false)
+  @Enumerated(value = EnumType.STRING)
+  private NotificationPriority priority;
+
+  @Column(nullable = false)
+  private int attempts;
+
+  @Column(columnDefinition = "timestamp with time zone")
+  private ZonedDateTime nextAttemptDate;
+
+  // the id is assigned, so without this flag each new row would be looked up before the insert
+  @Transient
+  private boolean persisted;
+
   /**
    * Creates a new instance based on passed parameters.
    */
   public PendingNotification(Notification notification, NotificationChannel channel) {
-    this.id = new PendingNotificationId(notification.getId(), channel);
+    this(notification, channel, notification.getUserId());
+  }
+
+  /**
+   * Creates a new instance for one of the recipients of a multi-recipient notification.
+   */
+  public PendingNotification(Notification notification, NotificationChannel channel,
+      UUID recipientId) {
+    this.id = new PendingNotificationId(notification.getId(), channel, recipientId);
     this.notification = notification;
+    this.priority = notification.getPriority();
     this.createdDate = ZonedDateTime.now();
+    this.status = Status.PENDING;
+  }
+
+  /**
+   * Marks the notification as being processed by a service instance. Other instances will not
+   * claim it until the claim becomes stale.
+   */
+  public void claim() {
+    this.status = Status.PROCESSING;
+    this.claimedDate = ZonedDateTime.now();
+  }
+
+  /**
+   * Puts the notification back to the sending queue.
+   */
+  public void release() {
+    this.status = Status.PENDING;
+    this.claimedDate = null;
+  }
+
+  /**
+   * Records a failed attempt to send the notification and puts it back to the sending queue.
+   * The notification will not be claimed again before the given date.
+   */
+  public void retryLater(ZonedDateTime nextAttemptDate) {
+    this.attempts += 1;
+    this.nextAttemptDate = nextAttemptDate;
+    release();
+  }
+
+  @Override
+  public boolean isNew() {
+    return !persisted;
+  }
+
+  @PostLoad
+  @PostPersist
+  void markPersisted() {
+    this.persisted = true;
   }
 
   public UUID getNotificationId() {
@@ -86,10 +148,19 @@ public class PendingNotification implements Identifiable<PendingNotificationId>
     return id.channel;
   }
 
+  public UUID getRecipientId() {
+    return id.recipientId;
+  }
+
+  public enum Status {
+    PENDING, PROCESSING
+  }
+
   @Embeddable
   @NoArgsConstructor
   @AllArgsConstructor
   @EqualsAndHashCode
+  @ToString
   public static final class PendingNotificationId implements Serializable {
 
     private UUID notificationId;
@@ -97,6 +168,8 @@ public class PendingNotification implements Identifiable<PendingNotificationId>
     @Column(nullable = false)
     @Enumerated(value = EnumType.STRING)
     private NotificationChannel channel;
+
+    private UUID recipientId;
   }
 
 }
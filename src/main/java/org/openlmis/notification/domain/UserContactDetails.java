@@ -30,6 +30,7 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import org.hibernate.annotations.Type;
+import org.openlmis.notification.service.NotificationChannel;
 
 @Entity
 @ToString
@@ -125,6 +126,22 @@ public class UserContactDetails implements Identifiable<UUID> {
     return isTrue(allowNotify);
   }
 
+  /**
+   * Checks whether a message of the given channel can be delivered to the user. An email needs
+   * an email address that is verified, unless the message is important, and an SMS needs a phone
+   * number.
+   */
+  public boolean canReceive(NotificationChannel channel, boolean important) {
+    switch (channel) {
+      case EMAIL:
+        return hasEmailAddress() && (important || isEmailAddressVerified());
+      case SMS:
+        return isNotBlank(phoneNumber);
+      default:
+        return true;
+    }
+  }
+
   @Override
   public UUID getId() {
     return getReferenceDataUserId();
@@ -27,11 +27,14 @@ public abstract class MessageKeys {
   private static final String TOKEN = "token";
   private static final String EMAIL = "email";
   private static final String MESSAGES = "messages";
+  private static final String RECIPIENT_IDS = "recipientIds";
   private static final String NOTIFICATION_CHANNEL = "notificationChannel";
   private static final String NOTIFICATION = "notification";
   private static final String SEARCH = "search";
   private static final String DIGEST_CONFIGURATION = "digestConfiguration";
   private static final String DIGEST_SUBSCRIPTION = "digestSubscription";
+  private static final String FAILED_NOTIFICATION = "failedNotification";
+  private static final String NOTIFICATION_TEMPLATE = "notificationTemplate";
 
 
   private static final String AUTHENTICATION = "authentication";
@@ -64,6 +67,20 @@ public abstract class MessageKeys {
       join(NOTIFICATION_REQUEST, "fieldRequired");
   public static final String ERROR_NOTIFICATION_REQUEST_MESSAGES_EMPTY =
       join(NOTIFICATION_REQUEST, MESSAGES, "empty");
+  public static final String ERROR_NOTIFICATION_REQUEST_TOO_MANY =
+      join(NOTIFICATION_REQUEST, "tooMany");
+  public static final String ERROR_NOTIFICATION_REQUEST_USER_ID_AND_RECIPIENT_IDS =
+      join(NOTIFICATION_REQUEST, "userIdAndRecipientIds");
+  public static final String ERROR_NOTIFICATION_REQUEST_TOO_MANY_RECIPIENTS =
+      join(NOTIFICATION_REQUEST, RECIPIENT_IDS, "tooMany");
+  public static final String ERROR_NOTIFICATION_REQUEST_RECIPIENT_IDS_IN_BULK =
+      join(NOTIFICATION_REQUEST, RECIPIENT_IDS, "bulk");
+
+  public static final String ERROR_IDEMPOTENCY_KEY_TOO_LONG =
+      join(NOTIFICATION_REQUEST, "idempotencyKey", "tooLong");
+
+  public static final String ERROR_IDEMPOTENCY_KEY_REUSED =
+      join(NOTIFICATION_REQUEST, "idempotencyKey", "reused");
 
   public static final String ERROR_UNSUPPORTED_NOTIFICATION_CHANNEL =
       join(NOTIFICATION_REQUEST, NOTIFICATION_CHANNEL, UNSUPPORTED);
@@ -117,6 +134,9 @@ public abstract class MessageKeys {
   public static final String ERROR_SEND_SMS_FAILURE =
       join(ERROR_PREFIX, "sendSms", "failure");
 
+  public static final String ERROR_CIRCUIT_BREAKER_OPEN =
+      join(ERROR_PREFIX, "circuitBreaker", "open");
+
   public static final String EMAIL_VERIFICATION_SUCCESS =
       join(SERVICE_PREFIX, VERIFICATIONS, EMAIL, "success");
 
@@ -141,6 +161,14 @@ public abstract class MessageKeys {
   public static final String ERROR_DIGEST_CONFIGURATION_NOT_FOUND =
       join(ERROR_PREFIX, DIGEST_CONFIGURATION, NOT_FOUND);
 
+  public static final String ERROR_FAILED_NOTIFICATION_NOT_FOUND =
+      join(ERROR_PREFIX, FAILED_NOTIFICATION, NOT_FOUND);
+
+  public static final String ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND =
+      join(ERROR_PREFIX, NOTIFICATION_TEMPLATE, NOT_FOUND);
+  public static final String ERROR_NOTIFICATION_TEMPLATE_FIELD_REQUIRED =
+      join(ERROR_PREFIX, NOTIFICATION_TEMPLATE, "fieldRequired");
+
   public static final String ERROR_DIGEST_SUBSCRIPTION_INVALID_CHANNEL_FOR_DIGEST =
       join(ERROR_PREFIX, DIGEST_SUBSCRIPTION, INVALID_CHANNEL_FOR_DIGEST);
 
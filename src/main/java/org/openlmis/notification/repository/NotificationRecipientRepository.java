@@ -0,0 +1,43 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.repository;
+
+import java.util.List;
+import org.openlmis.notification.domain.NotificationRecipient;
+import org.openlmis.notification.domain.NotificationRecipient.NotificationRecipientId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface NotificationRecipientRepository
+    extends JpaRepository<NotificationRecipient, NotificationRecipientId> {
+
+  /**
+   * Locks and returns recipients of the oldest multi-recipient notifications that were not
+   * expanded into pending notifications yet. Rows that are already locked by another transaction
+   * are skipped, so several service instances can expand recipients at the same time.
+   */
+  @Query(value = "SELECT r.*"
+      + " FROM notification.notification_recipients AS r"
+      + "   INNER JOIN notification.notifications AS n ON n.id = r.notificationId"
+      + " WHERE r.expanded = false"
+      + " ORDER BY n.createdDate ASC"
+      + " LIMIT :chunkSize"
+      + " FOR UPDATE OF r SKIP LOCKED",
+      nativeQuery = true)
+  List<NotificationRecipient> findRecipientsToExpand(@Param("chunkSize") int chunkSize);
+
+}
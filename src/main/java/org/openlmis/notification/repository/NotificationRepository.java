@@ -15,12 +15,35 @@
 
 package org.openlmis.notification.repository;
 
+import java.time.ZonedDateTime;
 import java.util.UUID;
+import org.openlmis.notification.domain.IdempotentRequest;
 import org.openlmis.notification.domain.Notification;
 import org.openlmis.notification.repository.custom.NotificationRepositoryCustom;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface NotificationRepository
     extends JpaRepository<Notification, UUID>, NotificationRepositoryCustom {
 
+  @Query("SELECT new org.openlmis.notification.domain.IdempotentRequest("
+      + "n.id, n.idempotencyPayloadHash) FROM Notification AS n"
+      + " WHERE n.idempotencyCaller = :caller AND n.idempotencyKey = :idempotencyKey")
+  IdempotentRequest findIdempotentRequest(@Param("caller") String caller,
+      @Param("idempotencyKey") String idempotencyKey);
+
+  /**
+   * Removes idempotency keys from notifications created before the given date, so the keys can
+   * be used again.
+   *
+   * @return the number of removed keys
+   */
+  @Modifying
+  @Query("UPDATE Notification AS n SET n.idempotencyKey = NULL, n.idempotencyCaller = NULL,"
+      + " n.idempotencyPayloadHash = NULL"
+      + " WHERE n.idempotencyKey IS NOT NULL AND n.createdDate < :date")
+  int removeIdempotencyKeysCreatedBefore(@Param("date") ZonedDateTime date);
+
 }
@@ -15,11 +15,44 @@
 
 package org.openlmis.notification.repository;
 
+import java.util.Collection;
+import java.util.List;
+import org.openlmis.notification.domain.NotificationPriority;
 import org.openlmis.notification.domain.PendingNotification;
 import org.openlmis.notification.domain.PendingNotification.PendingNotificationId;
+import org.openlmis.notification.domain.PendingNotification.Status;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface PendingNotificationRepository
     extends JpaRepository<PendingNotification, PendingNotificationId> {
 
+  /**
+   * Locks and returns the oldest pending notifications with the given priority that should be
+   * sent by one of the given channels. Rows that are
+   * already locked by another transaction are skipped instead of waited for, so several service
+   * instances can claim notifications at the same time without blocking each other.
+   * Notifications that were claimed more than {@code claimTimeout} seconds ago are treated as
+   * pending again, so a crashed instance does not hold them forever. Notifications that wait for
+   * their next attempt are skipped, so they do not block the rest of the queue.
+   */
+  @Query(value = "SELECT p.*"
+      + " FROM notification.pending_notifications AS p"
+      + " WHERE p.priority = :priority"
+      + "   AND p.channel IN (:channels)"
+      + "   AND ((p.status = 'PENDING'"
+      + "       AND (p.nextAttemptDate IS NULL OR p.nextAttemptDate <= now()))"
+      + "     OR (p.status = 'PROCESSING'"
+      + "       AND p.claimedDate < now() - :claimTimeout * INTERVAL '1 second'))"
+      + " ORDER BY p.createdDate ASC"
+      + " LIMIT :batchSize"
+      + " FOR UPDATE SKIP LOCKED",
+      nativeQuery = true)
+  List<PendingNotification> findPendingNotificationsToClaim(@Param("priority") String priority,
+      @Param("channels") Collection<String> channels, @Param("batchSize") int batchSize,
+      @Param("claimTimeout") long claimTimeout);
+
+  long countByPriorityAndStatus(NotificationPriority priority, Status status);
+
 }
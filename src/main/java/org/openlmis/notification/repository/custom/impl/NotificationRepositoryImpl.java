@@ -17,11 +17,14 @@ package org.openlmis.notification.repository.custom.impl;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
 import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.NotificationRecipient;
 import org.openlmis.notification.repository.custom.NotificationRepositoryCustom;
 import org.openlmis.notification.util.Pagination;
 import org.springframework.data.domain.Page;
@@ -65,7 +68,7 @@ public class NotificationRepositoryImpl
       query = (CriteriaQuery<T>) countQuery.select(builder.count(root));
     }
 
-    query.where(getFilters(builder, root, searchParams));
+    query.where(getFilters(builder, query, root, searchParams));
 
     if (!count) {
       query.orderBy(getOrderBy(builder, root, pageable));
@@ -74,15 +77,32 @@ public class NotificationRepositoryImpl
     return query;
   }
 
-  private Predicate getFilters(CriteriaBuilder builder, Root<Notification> root,
-      SearchParams searchParams) {
+  private Predicate getFilters(CriteriaBuilder builder, CriteriaQuery<?> query,
+      Root<Notification> root, SearchParams searchParams) {
 
     Predicate predicate = builder.conjunction();
-    predicate = addEqualFilter(predicate, builder, root, "userId", searchParams.getUserId());
+    predicate = addUserFilter(predicate, builder, query, root, searchParams.getUserId());
     predicate = addDateRangeFilter(predicate, builder, root, "createdDate",
         searchParams.getSendingDateFrom(), searchParams.getSendingDateTo());
 
     return predicate;
   }
 
+  // multi-recipient notifications have no userId, their users are in notification_recipients
+  private Predicate addUserFilter(Predicate predicate, CriteriaBuilder builder,
+      CriteriaQuery<?> query, Root<Notification> root, UUID userId) {
+    if (null == userId) {
+      return predicate;
+    }
+
+    Subquery<NotificationRecipient> recipients = query.subquery(NotificationRecipient.class);
+    Root<NotificationRecipient> recipient = recipients.from(NotificationRecipient.class);
+    recipients.select(recipient).where(
+        builder.equal(recipient.get("id").get("notificationId"), root.get("id")),
+        builder.equal(recipient.get("id").get("userId"), userId));
+
+    return builder.and(predicate, builder.or(
+        builder.equal(root.get("userId"), userId), builder.exists(recipients)));
+  }
+
 }
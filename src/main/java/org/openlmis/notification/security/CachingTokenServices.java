@@ -0,0 +1,215 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.security;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.binary.Base64;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestOperations;
+
+/**
+ * Checks access tokens against the check token endpoint of the auth service, like
+ * {@link org.springframework.security.oauth2.provider.token.RemoteTokenServices}, and caches the
+ * results, so a token is not sent to the auth service on each request. Valid tokens are cached
+ * for the configured time, but never after they expire. Invalid tokens are cached for a shorter
+ * time. Failures to reach the auth service are not cached. The cache keys are hashes of the
+ * tokens, so the tokens themselves are not kept in memory.
+ */
+public class CachingTokenServices implements ResourceServerTokenServices, PublicMetrics {
+
+  private static final String TOKEN = "token";
+  private static final String ERROR = "error";
+  private static final String CLIENT_ID = "client_id";
+  private static final String METRIC_PREFIX = "auth.tokenCache.";
+
+  private final Cache<String, CheckedToken> validTokens;
+  private final Cache<String, Boolean> invalidTokens;
+
+  private RestOperations restTemplate;
+  private String checkTokenEndpointUrl;
+  private String clientId;
+  private String clientSecret;
+  private AccessTokenConverter accessTokenConverter;
+
+  /**
+   * Creates token services with the given limits of the cached tokens.
+   *
+   * @param cacheSize        the maximum number of cached valid and invalid tokens each
+   * @param cacheTtl         the number of milliseconds for which a valid token is cached
+   * @param invalidTokenTtl  the number of milliseconds for which an invalid token is cached
+   */
+  public CachingTokenServices(long cacheSize, long cacheTtl, long invalidTokenTtl) {
+    validTokens = CacheBuilder
+        .newBuilder()
+        .maximumSize(cacheSize)
+        .expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build();
+    invalidTokens = CacheBuilder
+        .newBuilder()
+        .maximumSize(cacheSize)
+        .expireAfterWrite(invalidTokenTtl, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build();
+  }
+
+  public void setRestTemplate(RestOperations restTemplate) {
+    this.restTemplate = restTemplate;
+  }
+
+  public void setCheckTokenEndpointUrl(String checkTokenEndpointUrl) {
+    this.checkTokenEndpointUrl = checkTokenEndpointUrl;
+  }
+
+  public void setClientId(String clientId) {
+    this.clientId = clientId;
+  }
+
+  public void setClientSecret(String clientSecret) {
+    this.clientSecret = clientSecret;
+  }
+
+  public void setAccessTokenConverter(AccessTokenConverter accessTokenConverter) {
+    this.accessTokenConverter = accessTokenConverter;
+  }
+
+  /**
+   * Returns the authentication of the given token from the cache, or checks the token in the
+   * auth service if it is not cached. Concurrent checks of the same token that is not cached
+   * wait for a single request.
+   *
+   * @throws InvalidTokenException if the auth service rejected the token
+   */
+  @Override
+  public OAuth2Authentication loadAuthentication(String accessToken)
+      throws AuthenticationException {
+    String key = Hashing.sha256().hashString(accessToken, StandardCharsets.UTF_8).toString();
+
+    if (null != invalidTokens.getIfPresent(key)) {
+      throw new InvalidTokenException(accessToken);
+    }
+
+    CheckedToken cached = validTokens.asMap().get(key);
+
+    if (null != cached && cached.isExpired(System.currentTimeMillis())) {
+      // the token expired before its cache entry, so the auth service has to check it again
+      validTokens.asMap().remove(key, cached);
+    }
+
+    return getValidToken(key, accessToken).authentication;
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String accessToken) {
+    throw new UnsupportedOperationException("Not supported: read access token");
+  }
+
+  private CheckedToken getValidToken(String key, String accessToken) {
+    try {
+      return validTokens.get(key, () -> checkToken(accessToken));
+    } catch (ExecutionException | UncheckedExecutionException exp) {
+      if (exp.getCause() instanceof InvalidTokenException) {
+        invalidTokens.put(key, Boolean.TRUE);
+      }
+
+      Throwables.throwIfUnchecked(exp.getCause());
+      throw new IllegalStateException(exp);
+    }
+  }
+
+  private CheckedToken checkToken(String accessToken) {
+    MultiValueMap<String, String> formData = new LinkedMultiValueMap<>();
+    formData.add(TOKEN, accessToken);
+
+    byte[] credentials = (clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8);
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.AUTHORIZATION, "Basic " + Base64.encodeBase64String(credentials));
+    headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+    Map<String, Object> map = restTemplate
+        .exchange(checkTokenEndpointUrl, HttpMethod.POST, new HttpEntity<>(formData, headers),
+            Map.class)
+        .getBody();
+
+    if (null == map || map.containsKey(ERROR)) {
+      throw new InvalidTokenException(accessToken);
+    }
+
+    if (!map.containsKey(CLIENT_ID)) {
+      throw new IllegalStateException("Client id must be present in response from auth server");
+    }
+
+    Object exp = map.get(AccessTokenConverter.EXP);
+    long expiresAt = exp instanceof Number
+        ? TimeUnit.SECONDS.toMillis(((Number) exp).longValue())
+        : Long.MAX_VALUE;
+
+    return new CheckedToken(accessTokenConverter.extractAuthentication(map), expiresAt);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    CacheStats stats = validTokens.stats();
+    List<Metric<?>> metrics = Lists.newArrayList();
+    metrics.add(new Metric<>(METRIC_PREFIX + "size", validTokens.size()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "hits", stats.hitCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "misses", stats.missCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "invalid.size", invalidTokens.size()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "invalid.hits",
+        invalidTokens.stats().hitCount()));
+
+    return metrics;
+  }
+
+  private static final class CheckedToken {
+    private final OAuth2Authentication authentication;
+    private final long expiresAt;
+
+    CheckedToken(OAuth2Authentication authentication, long expiresAt) {
+      this.authentication = authentication;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long time) {
+      return time >= expiresAt;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.apache.commons.lang3.BooleanUtils.isNotFalse;
+import static org.openlmis.notification.service.AllowNotifyFilter.ALLOW_NOTIFY_CHANNEL;
+import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_VERIFIED_HEADER;
+
+import java.util.UUID;
+import org.openlmis.notification.service.referencedata.UserDto;
+import org.openlmis.notification.service.referencedata.UserReferenceDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.integration.annotation.Filter;
+import org.springframework.integration.annotation.MessageEndpoint;
+import org.springframework.messaging.handler.annotation.Header;
+
+@MessageEndpoint
+public class ActiveUserFilter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ActiveUserFilter.class);
+
+  static final String ACTIVE_USER_CHANNEL = "notificationToSend.activeUser";
+
+  @Autowired
+  private UserReferenceDataService userReferenceDataService;
+
+  /**
+   * Checks if the user exists and is active. The check is skipped if it was already made when
+   * the notification was received.
+   */
+  @Filter(inputChannel = ALLOW_NOTIFY_CHANNEL, outputChannel = ACTIVE_USER_CHANNEL)
+  public boolean accept(@Header(RECIPIENT_HEADER) UUID recipient,
+      @Header(value = RECIPIENT_VERIFIED_HEADER, required = false) Boolean recipientVerified) {
+    if (isNotFalse(recipientVerified)) {
+      LOGGER.debug("The user {} was verified when the notification was received", recipient);
+      return true;
+    }
+
+    UserDto user = userReferenceDataService.findOne(recipient);
+
+    if (null == user || !user.isActive()) {
+      LOGGER.warn("Can't send notification to a user with id {}"
+          + " because the user is not active or does not exist", recipient);
+      return false;
+    }
+
+    return true;
+  }
+
+}
@@ -17,23 +17,40 @@ package org.openlmis.notification.service;
 
 import static org.openlmis.notification.service.request.RequestHelper.createUri;
 
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.codec.binary.Base64;
 import org.openlmis.notification.service.request.RequestParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 
+/**
+ * Obtains the service access token from the auth service and keeps it until it expires. The
+ * token is refreshed in the background shortly before it expires, so requests to other
+ * services do not wait for the auth service. Only one refresh runs at a time and concurrent
+ * callers that need a token while it is refreshed wait for that refresh.
+ */
 @Service
-public class AuthService {
+public class AuthService implements PublicMetrics {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AuthService.class);
   private static final String ACCESS_TOKEN = "access_token";
+  private static final String EXPIRES_IN = "expires_in";
+  private static final String METRIC_PREFIX = "auth.token.";
 
   @Value("${auth.server.clientId}")
   private String clientId;
@@ -44,15 +61,80 @@ public class AuthService {
   @Value("${auth.server.authorizationUrl}")
   private String authorizationUrl;
 
-  private RestOperations restTemplate = new RestTemplate();
+  @Value("${auth.token.refreshMargin}")
+  private long refreshMargin;
+
+  @Autowired
+  private RestOperations restTemplate;
+
+  private final Object refreshLock = new Object();
+  private final AtomicLong refreshes = new AtomicLong();
+  private final AtomicLong refreshFailures = new AtomicLong();
+  private volatile AccessToken token;
 
   /**
-   * Retrieves access token from the auth service.
+   * Returns the current access token. The token is retrieved from the auth service only if
+   * there is no token yet or it has expired.
    *
    * @return token.
    */
-  @Cacheable("token")
   public String obtainAccessToken() {
+    AccessToken current = token;
+
+    if (null == current || current.isExpired(System.currentTimeMillis())) {
+      current = refresh(current);
+    }
+
+    return current.value;
+  }
+
+  /**
+   * Retrieves a new access token if the current one expires within the refresh margin. A
+   * failure is logged and the current token is used until it expires.
+   */
+  @Scheduled(fixedDelayString = "${auth.token.refreshCheckInterval}")
+  public void refreshIfExpiring() {
+    AccessToken current = token;
+
+    if (null == current
+        || !current.isExpired(System.currentTimeMillis() + refreshMargin)) {
+      return;
+    }
+
+    try {
+      refresh(current);
+    } catch (RuntimeException exp) {
+      refreshFailures.incrementAndGet();
+      LOGGER.warn("Could not refresh the access token, the current one is kept", exp);
+    }
+  }
+
+  /**
+   * Removes the current access token, so the next call retrieves a new one. It should be called
+   * when the token was rejected.
+   */
+  public void clearTokenCache() {
+    token = null;
+  }
+
+  private AccessToken refresh(AccessToken stale) {
+    synchronized (refreshLock) {
+      AccessToken current = token;
+
+      if (null != current && current != stale) {
+        // another thread has already refreshed the token
+        return current;
+      }
+
+      current = requestToken();
+      token = current;
+      refreshes.incrementAndGet();
+
+      return current;
+    }
+  }
+
+  private AccessToken requestToken() {
     String plainCreds = clientId + ":" + clientSecret;
     byte[] plainCredsBytes = plainCreds.getBytes();
     byte[] base64CredsBytes = Base64.encodeBase64(plainCredsBytes);
@@ -71,11 +153,40 @@ public class AuthService {
         createUri(authorizationUrl, params), HttpMethod.POST, request, Object.class
     );
 
-    return ((Map<String, String>) response.getBody()).get(ACCESS_TOKEN);
+    Map<String, Object> body = (Map<String, Object>) response.getBody();
+    Object expiresIn = body.get(EXPIRES_IN);
+    long expiresAt = expiresIn instanceof Number
+        ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(((Number) expiresIn).longValue())
+        : Long.MAX_VALUE;
+
+    return new AccessToken((String) body.get(ACCESS_TOKEN), expiresAt);
   }
 
-  @CacheEvict(cacheNames = "token", allEntries = true)
-  public void clearTokenCache() {
-    // Intentionally blank
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+    AccessToken current = token;
+
+    metrics.add(new Metric<>(METRIC_PREFIX + "timeToExpiry", null == current
+        || Long.MAX_VALUE == current.expiresAt
+        ? -1 : Math.max(0, current.expiresAt - System.currentTimeMillis())));
+    metrics.add(new Metric<>(METRIC_PREFIX + "refreshes", refreshes.get()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "refreshFailures", refreshFailures.get()));
+
+    return metrics;
+  }
+
+  private static final class AccessToken {
+    private final String value;
+    private final long expiresAt;
+
+    AccessToken(String value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long time) {
+      return time >= expiresAt;
+    }
   }
 }
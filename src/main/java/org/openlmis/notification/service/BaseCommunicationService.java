@@ -24,28 +24,36 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.StringUtils;
 import org.openlmis.notification.service.request.RequestHeaders;
 import org.openlmis.notification.service.request.RequestHelper;
 import org.openlmis.notification.service.request.RequestParameters;
+import org.openlmis.notification.util.DynamicPageTypeReference;
 import org.openlmis.notification.util.Merger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Page;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestOperations;
-import org.springframework.web.client.RestTemplate;
 
 @SuppressWarnings("PMD.TooManyMethods")
 public abstract class BaseCommunicationService<T> {
 
-  protected RestOperations restTemplate = new RestTemplate();
+  @Autowired
+  protected RestOperations restTemplate;
 
   @Autowired
   protected AuthService authService;
 
+  @Autowired
+  protected CircuitBreakers circuitBreakers;
+
   @Value("${request.maxUrlLength}")
   private int maxUrlLength;
 
@@ -110,17 +118,74 @@ public abstract class BaseCommunicationService<T> {
     return new ResponseEntity<>(body, HttpStatus.OK);
   }
 
-  protected <P> ResponseEntity<P> runWithTokenRetry(HttpTask<P> task) {
+  /**
+   * Return a page of reference data T objects. If the request URL would be too long, the request
+   * is split into several ones and their pages are merged.
+   *
+   * @param resourceUrl Endpoint url.
+   * @param parameters  Map of query parameters.
+   * @return a page of reference data T objects.
+   */
+  protected Page<T> getPage(String resourceUrl, RequestParameters parameters) {
+    String url = getServiceUrl() + getUrl() + resourceUrl;
+
     try {
-      return task.run();
+      ResponseEntity<PageDto<T>> responseEntity = runWithTokenRetry(
+          () -> doPageRequest(url, parameters, getResultClass())
+      );
+
+      return responseEntity.getBody();
     } catch (HttpStatusCodeException ex) {
-      if (HttpStatus.UNAUTHORIZED == ex.getStatusCode()) {
-        // the token has (most likely) expired - clear the cache and retry once
-        authService.clearTokenCache();
+      throw buildDataRetrievalException(ex);
+    }
+  }
+
+  private <E> ResponseEntity<PageDto<E>> doPageRequest(String url,
+      RequestParameters parameters, Class<E> type) {
+    HttpEntity<Object> entity = createEntity();
+    ParameterizedTypeReference<PageDto<E>> parameterizedType =
+        new DynamicPageTypeReference<>(type);
+    List<PageDto<E>> pages = new ArrayList<>();
+
+    for (URI uri : RequestHelper.splitRequest(url, parameters, maxUrlLength)) {
+      pages.add(restTemplate.exchange(uri, HttpMethod.GET, entity, parameterizedType).getBody());
+    }
+
+    PageDto<E> body = Merger
+        .ofPages(pages)
+        .withDefaultValue(PageDto::new)
+        .merge();
+
+    return new ResponseEntity<>(body, HttpStatus.OK);
+  }
+
+  protected <P> ResponseEntity<P> runWithTokenRetry(HttpTask<P> task) {
+    return callService(() -> {
+      try {
         return task.run();
+      } catch (HttpStatusCodeException ex) {
+        if (HttpStatus.UNAUTHORIZED == ex.getStatusCode()) {
+          // the token has (most likely) expired - clear the cache and retry once
+          authService.clearTokenCache();
+          return task.run();
+        }
+        throw ex;
       }
-      throw ex;
-    }
+    });
+  }
+
+  /**
+   * Makes the given call through the circuit breaker of this service, so calls fail fast while
+   * the service is down.
+   *
+   * @throws CircuitBreakerOpenException if the circuit breaker is open
+   */
+  protected <P> P callService(Supplier<P> call) {
+    return circuitBreakers.get(getCircuitBreakerName()).execute(call);
+  }
+
+  protected String getCircuitBreakerName() {
+    return StringUtils.uncapitalize(getClass().getSimpleName());
   }
 
   @FunctionalInterface
@@ -0,0 +1,243 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+/**
+ * Stops calls to a service that keeps failing. The outcomes of the last calls are recorded and
+ * once the share of failures reaches the threshold, the breaker opens and rejects calls right
+ * away instead of letting them wait for a timeout. After the open duration the breaker lets a
+ * few trial calls through. It closes if all of them succeed and opens again if any fails.
+ */
+public final class CircuitBreaker {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  // client errors that are not caused by the request, but by the credentials or the call rate
+  private static final Set<HttpStatus> CALLER_ERRORS = EnumSet.of(
+      HttpStatus.UNAUTHORIZED, HttpStatus.FORBIDDEN, HttpStatus.TOO_MANY_REQUESTS);
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+  private final int failureRateThreshold;
+  private final long openDuration;
+  private final int halfOpenCalls;
+  private final LongSupplier clock;
+
+  // outcomes of the last calls, true marks a failure
+  private final boolean[] outcomes;
+  private int recorded;
+  private int next;
+  private int failures;
+
+  private State state = State.CLOSED;
+  private long openedAt;
+  private int trialPermits;
+  private int trialSuccesses;
+  private long notPermittedCalls;
+
+  CircuitBreaker(String name, int slidingWindowSize, int failureRateThreshold,
+      long openDuration, int halfOpenCalls) {
+    this(name, slidingWindowSize, failureRateThreshold, openDuration, halfOpenCalls,
+        System::nanoTime);
+  }
+
+  CircuitBreaker(String name, int slidingWindowSize, int failureRateThreshold,
+      long openDuration, int halfOpenCalls, LongSupplier clock) {
+    this.name = name;
+    this.outcomes = new boolean[Math.max(1, slidingWindowSize)];
+    this.failureRateThreshold = failureRateThreshold;
+    this.openDuration = TimeUnit.MILLISECONDS.toNanos(openDuration);
+    this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    this.clock = clock;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the current state. An open breaker whose open duration has elapsed is reported as
+   * half-open, because the next call will be let through.
+   */
+  public synchronized State getState() {
+    return State.OPEN == state && isOpenDurationElapsed() ? State.HALF_OPEN : state;
+  }
+
+  /**
+   * Returns the percentage of failed calls among the recorded ones.
+   */
+  public synchronized int getFailureRate() {
+    return recorded == 0 ? 0 : failures * 100 / recorded;
+  }
+
+  public synchronized long getNotPermittedCalls() {
+    return notPermittedCalls;
+  }
+
+  /**
+   * Checks whether a call would be let through, without taking a trial permit.
+   */
+  public synchronized boolean isCallPermitted() {
+    switch (state) {
+      case OPEN:
+        return isOpenDurationElapsed();
+      case HALF_OPEN:
+        return trialPermits > 0;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Checks whether the given error is a client error (4xx response) caused by the content of the
+   * request. Such an error means that the service works. Rejected credentials and too many
+   * requests are not request errors, because every following call would fail the same way.
+   */
+  public static boolean isRequestError(Throwable error) {
+    return error instanceof HttpClientErrorException
+        && !CALLER_ERRORS.contains(((HttpClientErrorException) error).getStatusCode());
+  }
+
+  /**
+   * Makes the given call if the breaker lets it through and records its outcome. Request errors
+   * (see {@link #isRequestError(Throwable)}) are not counted as failures.
+   *
+   * @throws CircuitBreakerOpenException if the breaker rejected the call
+   */
+  public <T> T execute(Supplier<T> call) {
+    acquirePermission();
+
+    T result;
+
+    try {
+      result = call.get();
+    } catch (RuntimeException exp) {
+      if (isRequestError(exp)) {
+        onSuccess();
+      } else {
+        onFailure();
+      }
+
+      throw exp;
+    }
+
+    onSuccess();
+    return result;
+  }
+
+  /**
+   * Lets a call through or rejects it. A call that was let through has to report its outcome
+   * with {@link #onSuccess()} or {@link #onFailure()}.
+   *
+   * @throws CircuitBreakerOpenException if the breaker rejected the call
+   */
+  public synchronized void acquirePermission() {
+    if (State.OPEN == state && isOpenDurationElapsed()) {
+      LOGGER.info("Circuit breaker {} is half-open, trying {} calls", name, halfOpenCalls);
+      state = State.HALF_OPEN;
+      trialPermits = halfOpenCalls;
+      trialSuccesses = 0;
+    }
+
+    if (State.OPEN == state || State.HALF_OPEN == state && trialPermits <= 0) {
+      ++notPermittedCalls;
+      throw new CircuitBreakerOpenException(name);
+    }
+
+    if (State.HALF_OPEN == state) {
+      --trialPermits;
+    }
+  }
+
+  /**
+   * Records a successful call.
+   */
+  public synchronized void onSuccess() {
+    if (State.HALF_OPEN == state) {
+      if (++trialSuccesses >= halfOpenCalls) {
+        LOGGER.info("Circuit breaker {} is closed", name);
+        state = State.CLOSED;
+        reset();
+      }
+    } else if (State.CLOSED == state) {
+      record(false);
+    }
+  }
+
+  /**
+   * Records a failed call.
+   */
+  public synchronized void onFailure() {
+    if (State.HALF_OPEN == state) {
+      open();
+    } else if (State.CLOSED == state) {
+      record(true);
+
+      if (recorded == outcomes.length && getFailureRate() >= failureRateThreshold) {
+        open();
+      }
+    }
+  }
+
+  private void record(boolean failure) {
+    if (recorded == outcomes.length) {
+      if (outcomes[next]) {
+        --failures;
+      }
+    } else {
+      ++recorded;
+    }
+
+    outcomes[next] = failure;
+    next = (next + 1) % outcomes.length;
+
+    if (failure) {
+      ++failures;
+    }
+  }
+
+  private void open() {
+    LOGGER.warn("Circuit breaker {} is open, calls are rejected for {} ms", name,
+        TimeUnit.NANOSECONDS.toMillis(openDuration));
+    state = State.OPEN;
+    openedAt = clock.getAsLong();
+    reset();
+  }
+
+  private void reset() {
+    recorded = 0;
+    next = 0;
+    failures = 0;
+  }
+
+  private boolean isOpenDurationElapsed() {
+    return clock.getAsLong() - openedAt >= openDuration;
+  }
+
+}
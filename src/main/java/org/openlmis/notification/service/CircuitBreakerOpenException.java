@@ -0,0 +1,38 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_CIRCUIT_BREAKER_OPEN;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+/**
+ * Signals that a call was not made because the circuit breaker of the called service is open.
+ */
+public class CircuitBreakerOpenException extends NotificationException {
+
+  public CircuitBreakerOpenException(String name) {
+    super(ERROR_CIRCUIT_BREAKER_OPEN, name);
+  }
+
+  /**
+   * Checks whether the given exception was caused by an open circuit breaker.
+   */
+  public static boolean isCauseOf(Throwable exp) {
+    return ExceptionUtils.indexOfType(exp, CircuitBreakerOpenException.class) >= 0;
+  }
+
+}
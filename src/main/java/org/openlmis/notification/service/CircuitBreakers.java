@@ -0,0 +1,83 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a circuit breaker for each delivery provider and each called service. All breakers
+ * share the same settings. The state of each breaker is exposed by the metrics endpoint.
+ */
+@Component
+public class CircuitBreakers implements PublicMetrics {
+
+  private static final String METRIC_PREFIX = "circuitBreaker.";
+
+  @Value("${circuitBreaker.slidingWindowSize}")
+  private int slidingWindowSize;
+
+  @Value("${circuitBreaker.failureRateThreshold}")
+  private int failureRateThreshold;
+
+  @Value("${circuitBreaker.openDuration}")
+  private long openDuration;
+
+  @Value("${circuitBreaker.halfOpenCalls}")
+  private int halfOpenCalls;
+
+  private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the circuit breaker of the provider of the given channel.
+   */
+  public CircuitBreaker get(NotificationChannel channel) {
+    return get(channel.name().toLowerCase(Locale.ENGLISH));
+  }
+
+  /**
+   * Returns the circuit breaker with the given name. It is created when it is used for the
+   * first time.
+   */
+  public CircuitBreaker get(String name) {
+    return breakers.computeIfAbsent(name, key -> new CircuitBreaker(key, slidingWindowSize,
+        failureRateThreshold, openDuration, halfOpenCalls));
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+
+    for (CircuitBreaker breaker : breakers.values()) {
+      String prefix = METRIC_PREFIX + breaker.getName() + '.';
+      // 0 - closed, 1 - open, 2 - half-open
+      metrics.add(new Metric<>(prefix + "state", breaker.getState().ordinal()));
+      metrics.add(new Metric<>(prefix + "failureRate", breaker.getFailureRate()));
+      metrics.add(new Metric<>(prefix + "notPermittedCalls", breaker.getNotPermittedCalls()));
+    }
+
+    return metrics;
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template text split into literal parts and placeholders once, so rendering only appends
+ * the parts instead of scanning the whole text for each notification. Placeholders have the
+ * {@code ${name}} form like in digest messages, {@code $${name}} is rendered as {@code ${name}}
+ * and placeholders without a parameter are left as they are. Parameter values are inserted as
+ * they are, they are not searched for placeholders.
+ */
+final class CompiledTemplate {
+
+  private static final String PREFIX = "${";
+  private static final char SUFFIX = '}';
+  private static final char ESCAPE = '$';
+  private static final int PARAMETER_LENGTH_ESTIMATE = 16;
+
+  // parts[i] is a parameter name if parameters[i] is true, otherwise it is literal text
+  private final String[] parts;
+  private final boolean[] parameters;
+  private final int lengthEstimate;
+
+  private CompiledTemplate(List<String> parts, List<Boolean> parameters) {
+    this.parts = parts.toArray(new String[parts.size()]);
+    this.parameters = new boolean[parts.size()];
+
+    int length = 0;
+
+    for (int i = 0; i < this.parts.length; ++i) {
+      this.parameters[i] = parameters.get(i);
+      length += this.parameters[i] ? PARAMETER_LENGTH_ESTIMATE : this.parts[i].length();
+    }
+
+    this.lengthEstimate = length;
+  }
+
+  /**
+   * Splits the given text into literal parts and placeholders.
+   *
+   * @return the compiled template or null if the text is null.
+   */
+  static CompiledTemplate compile(String text) {
+    if (null == text) {
+      return null;
+    }
+
+    List<String> parts = new ArrayList<>();
+    List<Boolean> parameters = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    int position = 0;
+
+    while (position < text.length()) {
+      int start = text.indexOf(PREFIX, position);
+      int end = start < 0 ? -1 : text.indexOf(SUFFIX, start + PREFIX.length());
+
+      if (end < 0) {
+        literal.append(text, position, text.length());
+        break;
+      }
+
+      if (start > position && text.charAt(start - 1) == ESCAPE) {
+        // drop the escape character and keep the placeholder prefix as text
+        literal.append(text, position, start - 1).append(PREFIX);
+        position = start + PREFIX.length();
+        continue;
+      }
+
+      literal.append(text, position, start);
+
+      if (literal.length() > 0) {
+        parts.add(literal.toString());
+        parameters.add(false);
+        literal.setLength(0);
+      }
+
+      parts.add(text.substring(start + PREFIX.length(), end));
+      parameters.add(true);
+      position = end + 1;
+    }
+
+    if (literal.length() > 0) {
+      parts.add(literal.toString());
+      parameters.add(false);
+    }
+
+    return new CompiledTemplate(parts, parameters);
+  }
+
+  /**
+   * Replaces placeholders with values of the given parameters.
+   */
+  String render(Map<String, String> values) {
+    StringBuilder builder = new StringBuilder(lengthEstimate);
+
+    for (int i = 0; i < parts.length; ++i) {
+      if (!parameters[i]) {
+        builder.append(parts[i]);
+        continue;
+      }
+
+      String value = values.get(parts[i]);
+
+      if (null == value) {
+        builder.append(PREFIX).append(parts[i]).append(SUFFIX);
+      } else {
+        builder.append(value);
+      }
+    }
+
+    return builder.toString();
+  }
+
+}
@@ -27,8 +27,7 @@ import org.openlmis.notification.domain.DigestConfiguration;
 import org.openlmis.notification.domain.DigestSubscription;
 import org.openlmis.notification.repository.DigestConfigurationRepository;
 import org.openlmis.notification.repository.DigestSubscriptionRepository;
-import org.openlmis.notification.service.referencedata.TogglzFeatureDto;
-import org.openlmis.notification.service.referencedata.TogglzReferenceDataService;
+import org.openlmis.notification.service.referencedata.TogglzFeatureCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -47,7 +46,7 @@ public class DigestFilter {
   static final String CONSOLIDATE_NOTIFICATIONS = "CONSOLIDATE_NOTIFICATIONS";
 
   @Autowired
-  private TogglzReferenceDataService togglzReferenceDataService;
+  private TogglzFeatureCache togglzFeatureCache;
 
   @Autowired
   private DigestConfigurationRepository digestConfigurationRepository;
@@ -67,7 +66,7 @@ public class DigestFilter {
       return SEND_NOW_PREPARE_CHANNEL;
     }
 
-    if (!isFeatureActive()) {
+    if (!togglzFeatureCache.isEnabled(CONSOLIDATE_NOTIFICATIONS)) {
       LOGGER.warn("Digest feature is disabled");
       return SEND_NOW_PREPARE_CHANNEL;
     }
@@ -100,14 +99,4 @@ public class DigestFilter {
     return SEND_NOW_POSTPONE_CHANNEL;
   }
 
-  private boolean isFeatureActive() {
-    return togglzReferenceDataService
-        .findAll()
-        .stream()
-        .filter(feature -> CONSOLIDATE_NOTIFICATIONS.equals(feature.getName()))
-        .findFirst()
-        .map(TogglzFeatureDto::isEnabled)
-        .orElse(false);
-  }
-
 }
@@ -79,7 +79,8 @@ public class DigestionService {
   @Autowired
   private BeanFactory beanFactory;
 
-  private Table<UUID, String, SourcePollingChannelAdapter> adapters;
+  // the send flow runs on many channel threads, so the table is only used under its own lock
+  private final Table<UUID, String, SourcePollingChannelAdapter> adapters;
 
   public DigestionService() {
     this(HashBasedTable.create());
@@ -117,8 +118,10 @@ public class DigestionService {
         new PostponeMessage(configuration, message.getBody(),
             message.getSubject(), recipient, channel));
 
-    if (!adapters.contains(recipient, tag)) {
-      setPollingAdapter(channel, configuration, recipient, sendTime);
+    synchronized (adapters) {
+      if (!adapters.contains(recipient, tag)) {
+        setPollingAdapter(channel, configuration, recipient, sendTime);
+      }
     }
   }
 
@@ -149,10 +152,12 @@ public class DigestionService {
    * Drops all existing polling adapters for the given user.
    */
   public void dropExistingPollingAdapters(UUID userId) {
-    Map<String, SourcePollingChannelAdapter> row = adapters.row(userId);
+    synchronized (adapters) {
+      Map<String, SourcePollingChannelAdapter> row = adapters.row(userId);
 
-    row.values().forEach(AbstractEndpoint::stop);
-    row.clear();
+      row.values().forEach(AbstractEndpoint::stop);
+      row.clear();
+    }
   }
 
 }
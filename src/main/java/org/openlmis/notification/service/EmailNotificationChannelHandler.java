@@ -17,9 +17,11 @@ package org.openlmis.notification.service;
 
 import static org.apache.commons.lang3.BooleanUtils.isTrue;
 import static org.openlmis.notification.service.NotificationChannelRouter.EMAIL_SEND_NOW_CHANNEL;
+import static org.openlmis.notification.service.NotificationToSendRetriever.EMAIL_OUTBOX_HEADER;
 import static org.openlmis.notification.service.NotificationToSendRetriever.IMPORTANT_HEADER;
 import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_HEADER;
 
+import java.util.List;
 import java.util.UUID;
 import org.openlmis.notification.domain.NotificationMessage;
 import org.openlmis.notification.domain.UserContactDetails;
@@ -43,17 +45,26 @@ public class EmailNotificationChannelHandler {
   private EmailSender emailSender;
 
   /**
-   * Tries to send a notification to a user by using email channel.
+   * Tries to send a notification to a user by using email channel. If the message carries an
+   * outbox, the email is added to it and sent later together with other emails of the batch.
    */
   @ServiceActivator(inputChannel = EMAIL_SEND_NOW_CHANNEL)
   public void handle(NotificationMessage payload,
       @Header(RECIPIENT_HEADER) UUID recipient,
-      @Header(value = IMPORTANT_HEADER, required = false) Boolean important) {
+      @Header(value = IMPORTANT_HEADER, required = false) Boolean important,
+      @Header(value = EMAIL_OUTBOX_HEADER, required = false) List<EmailMessage> outbox) {
     UserContactDetails contactDetails = userContactDetailsRepository.findOne(recipient);
 
-    if (shouldSendMessage(contactDetails, important)) {
+    if (!shouldSendMessage(contactDetails, important)) {
+      return;
+    }
+
+    if (null == outbox) {
       emailSender.sendMail(contactDetails.getEmailAddress(),
           payload.getSubject(), payload.getBody());
+    } else {
+      outbox.add(new EmailMessage(contactDetails.getEmailAddress(),
+          payload.getSubject(), payload.getBody()));
     }
   }
 
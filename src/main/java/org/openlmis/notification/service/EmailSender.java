@@ -17,6 +17,12 @@ package org.openlmis.notification.service;
 
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_SEND_MAIL_FAILURE;
 
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
@@ -35,6 +41,18 @@ class EmailSender {
   @Autowired
   private JavaMailSender mailSender;
 
+  @Autowired
+  private SmtpTransportPool transportPool;
+
+  @Autowired
+  private ProviderRateLimiters providerRateLimiters;
+
+  @Autowired
+  private CircuitBreakers circuitBreakers;
+
+  @Autowired
+  private ProviderRouters providerRouters;
+
   @Value("${email.noreply}")
   private String from;
 
@@ -44,18 +62,14 @@ class EmailSender {
     profiler.setLogger(XLOGGER);
 
     try {
-      profiler.start("CREATE_MAIL_MESSAGE");
-      MimeMessage mailMessage = mailSender.createMimeMessage();
+      profiler.start("WAIT_FOR_RATE_LIMIT");
+      providerRateLimiters.acquire(NotificationChannel.EMAIL, 1);
 
-      profiler.start("CREATE_MESSAGE_HELPER");
-      MimeMessageHelper helper = new MimeMessageHelper(mailMessage, false);
-      helper.setFrom(from);
-      helper.setTo(to);
-      helper.setSubject(subject);
-      helper.setText(body);
+      profiler.start("CREATE_MAIL_MESSAGE");
+      MimeMessage mailMessage = createMessage(new EmailMessage(to, subject, body));
 
       profiler.start("SEND_MESSAGE");
-      mailSender.send(mailMessage);
+      send(mailMessage);
 
       profiler.stop().log();
       XLOGGER.exit();
@@ -69,4 +83,117 @@ class EmailSender {
     }
   }
 
+  /**
+   * Sends the given emails one after another over a single SMTP connection. A failure of one
+   * email does not stop the rest. The emails are sent in chunks that fit into the burst size of
+   * the email rate limiter. Each chunk is sent by the fastest healthy SMTP server, and by the
+   * next one if that fails. If the email circuit breaker is open, the emails are not sent.
+   *
+   * @return a list with an error at the position of each email that could not be sent, and
+   *         null at the position of each email that was sent.
+   */
+  List<ServerException> sendMails(List<EmailMessage> emails) {
+    XLOGGER.entry(emails.size());
+    Profiler profiler = new Profiler("SEND_MAILS");
+    profiler.setLogger(XLOGGER);
+
+    profiler.start("CREATE_MAIL_MESSAGES");
+    List<ServerException> errors = new ArrayList<>(emails.size());
+    List<MimeMessage> mailMessages = new ArrayList<>(emails.size());
+
+    for (EmailMessage email : emails) {
+      try {
+        mailMessages.add(createMessage(email));
+        errors.add(null);
+      } catch (MessagingException exp) {
+        errors.add(new ServerException(exp, ERROR_SEND_MAIL_FAILURE));
+      }
+    }
+
+    profiler.start("SEND_MESSAGES");
+    List<MessagingException> sendErrors = new ArrayList<>(mailMessages.size());
+    int chunkSize = providerRateLimiters.getMaxPermits(NotificationChannel.EMAIL);
+
+    for (List<MimeMessage> chunk : Lists.partition(mailMessages, chunkSize)) {
+      sendErrors.addAll(send(chunk));
+    }
+
+    // messages that could not be created were not sent, so the positions have to be shifted
+    Iterator<MessagingException> sendError = sendErrors.iterator();
+
+    for (int i = 0; i < errors.size(); ++i) {
+      if (null == errors.get(i)) {
+        MessagingException exp = sendError.next();
+
+        if (null != exp) {
+          errors.set(i, new ServerException(exp, ERROR_SEND_MAIL_FAILURE));
+        }
+      }
+    }
+
+    profiler.stop().log();
+    XLOGGER.exit();
+
+    return errors;
+  }
+
+  private void send(MimeMessage mailMessage) throws MessagingException {
+    CircuitBreaker circuitBreaker = circuitBreakers.get(NotificationChannel.EMAIL);
+    circuitBreaker.acquirePermission();
+
+    try {
+      providerRouters
+          .get(NotificationChannel.EMAIL)
+          .execute(server -> {
+            transportPool.send(server, mailMessage);
+            return null;
+          });
+    } catch (MessagingException | CircuitBreakerOpenException exp) {
+      circuitBreaker.onFailure();
+      throw exp;
+    }
+
+    circuitBreaker.onSuccess();
+  }
+
+  private List<MessagingException> send(List<MimeMessage> mailMessages) {
+    CircuitBreaker circuitBreaker = circuitBreakers.get(NotificationChannel.EMAIL);
+
+    try {
+      providerRateLimiters.acquire(NotificationChannel.EMAIL, mailMessages.size());
+      circuitBreaker.acquirePermission();
+    } catch (IllegalStateException | CircuitBreakerOpenException exp) {
+      return Collections.nCopies(mailMessages.size(),
+          new MessagingException(exp.getMessage(), exp));
+    }
+
+    try {
+      List<MessagingException> errors = providerRouters
+          .get(NotificationChannel.EMAIL)
+          .execute(server -> transportPool.send(server, mailMessages));
+      // errors of single messages are caused by the messages, not by the SMTP server
+      circuitBreaker.onSuccess();
+      return errors;
+    } catch (MessagingException exp) {
+      circuitBreaker.onFailure();
+      return Collections.nCopies(mailMessages.size(), exp);
+    } catch (CircuitBreakerOpenException exp) {
+      circuitBreaker.onFailure();
+      return Collections.nCopies(mailMessages.size(),
+          new MessagingException(exp.getMessage(), exp));
+    }
+  }
+
+  private MimeMessage createMessage(EmailMessage email) throws MessagingException {
+    MimeMessage mailMessage = mailSender.createMimeMessage();
+
+    MimeMessageHelper helper = new MimeMessageHelper(mailMessage, false);
+    helper.setFrom(from);
+    helper.setTo(email.getTo());
+    helper.setSubject(email.getSubject());
+    helper.setText(email.getBody());
+
+    return mailMessage;
+  }
+
 }
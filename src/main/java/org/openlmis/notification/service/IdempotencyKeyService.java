@@ -0,0 +1,178 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.openlmis.notification.domain.IdempotentRequest;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.repository.NotificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Makes sure that a notification request repeated by the same caller with the same idempotency
+ * key is saved only once. A key that is used again for a request with a different body is
+ * rejected. Recently used keys are held in a bounded in-memory index, so a repeated request is
+ * usually answered without a database query. The unique constraint on the key in the database
+ * protects against requests handled at the same time or by other service instances.
+ */
+@Service
+public class IdempotencyKeyService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyKeyService.class);
+
+  @Autowired
+  private NotificationRepository notificationRepository;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${notifications.idempotencyKey.retention}")
+  private long retention;
+
+  @Value("${notifications.idempotencyKey.cacheSize}")
+  private long cacheSize;
+
+  private Cache<CallerKey, IdempotentRequest> index;
+
+  @PostConstruct
+  void init() {
+    index = CacheBuilder
+        .newBuilder()
+        .maximumSize(cacheSize)
+        .expireAfterWrite(retention, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Returns the id of the notification that was saved for the request with the given key sent by
+   * the given caller, or null if there is no such notification or the key is not set.
+   *
+   * @throws IdempotencyKeyReusedException if the key was used for a request with another body
+   */
+  public UUID findNotificationId(String caller, String idempotencyKey, Object payload) {
+    if (null == idempotencyKey) {
+      return null;
+    }
+
+    CallerKey key = new CallerKey(caller, idempotencyKey);
+    IdempotentRequest request = index.getIfPresent(key);
+
+    if (null == request) {
+      request = notificationRepository.findIdempotentRequest(caller, idempotencyKey);
+
+      if (null == request) {
+        return null;
+      }
+
+      index.put(key, request);
+    }
+
+    if (!request.hasPayload(hash(payload))) {
+      throw new IdempotencyKeyReusedException(idempotencyKey);
+    }
+
+    return request.getNotificationId();
+  }
+
+  /**
+   * Saves the notification with the given key by the given action. If another notification with
+   * the same key was saved in the meantime, the action is rolled back and the id of the other
+   * notification is returned.
+   *
+   * @return the id of the notification that was saved with the key
+   */
+  public UUID saveOnce(String caller, String idempotencyKey, Object payload,
+      Notification notification, Consumer<Notification> save) {
+    if (null == idempotencyKey) {
+      save.accept(notification);
+      return notification.getId();
+    }
+
+    String payloadHash = hash(payload);
+    notification.setIdempotencyKey(caller, idempotencyKey, payloadHash);
+
+    try {
+      save.accept(notification);
+    } catch (DataIntegrityViolationException exp) {
+      UUID notificationId = findNotificationId(caller, idempotencyKey, payload);
+
+      if (null == notificationId) {
+        throw exp;
+      }
+
+      LOGGER.info("Notification with idempotency key {} was already saved", idempotencyKey);
+      return notificationId;
+    }
+
+    index.put(new CallerKey(caller, idempotencyKey),
+        new IdempotentRequest(notification.getId(), payloadHash));
+
+    return notification.getId();
+  }
+
+  /**
+   * Removes keys older than the retention window, so they do not take space in the database
+   * forever and can be used again.
+   */
+  @Scheduled(fixedDelayString = "${notifications.idempotencyKey.cleanupInterval}")
+  @Transactional
+  public void removeExpiredKeys() {
+    int removed = notificationRepository
+        .removeIdempotencyKeysCreatedBefore(ZonedDateTime.now().minusSeconds(retention));
+
+    LOGGER.debug("Removed {} expired idempotency keys", removed);
+  }
+
+  private String hash(Object payload) {
+    try {
+      byte[] json = objectMapper
+          .writer()
+          .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+          .writeValueAsBytes(payload);
+
+      return Hashing.sha256().hashBytes(json).toString();
+    } catch (JsonProcessingException exp) {
+      throw new IllegalStateException(exp);
+    }
+  }
+
+  @AllArgsConstructor
+  @EqualsAndHashCode
+  private static final class CallerKey {
+    private final String caller;
+    private final String idempotencyKey;
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a separate, bounded thread pool for each notification channel, so a slow provider of
+ * one channel does not hold up notifications sent by other channels.
+ */
+@Component
+public class NotificationChannelExecutors implements PublicMetrics, DisposableBean {
+
+  private static final String METRIC_PREFIX = "notificationToSend.executor.";
+
+  @Value("${notificationToSend.email.poolSize}")
+  private int emailPoolSize;
+
+  @Value("${notificationToSend.email.queueCapacity}")
+  private int emailQueueCapacity;
+
+  @Value("${notificationToSend.sms.poolSize}")
+  private int smsPoolSize;
+
+  @Value("${notificationToSend.sms.queueCapacity}")
+  private int smsQueueCapacity;
+
+  private final Map<NotificationChannel, ThreadPoolTaskExecutor> executors =
+      new EnumMap<>(NotificationChannel.class);
+  private final Map<NotificationChannel, AtomicLong> rejections =
+      new EnumMap<>(NotificationChannel.class);
+
+  /**
+   * Creates thread pools for all notification channels.
+   */
+  @PostConstruct
+  public void initialize() {
+    register(NotificationChannel.EMAIL, emailPoolSize, emailQueueCapacity);
+    register(NotificationChannel.SMS, smsPoolSize, smsQueueCapacity);
+  }
+
+  /**
+   * Queues the given task in the thread pool of the given channel.
+   *
+   * @return false if the thread pool is saturated and the task was rejected.
+   */
+  public boolean execute(NotificationChannel channel, Runnable task) {
+    try {
+      executors.get(channel).execute(task);
+      return true;
+    } catch (TaskRejectedException exp) {
+      rejections.get(channel).incrementAndGet();
+      return false;
+    }
+  }
+
+  /**
+   * Returns the number of tasks that can be queued in the thread pool of the given channel right
+   * away without being rejected.
+   */
+  public int getRemainingCapacity(NotificationChannel channel) {
+    ThreadPoolExecutor pool = executors.get(channel).getThreadPoolExecutor();
+    return pool.getQueue().remainingCapacity() + pool.getMaximumPoolSize() - pool.getPoolSize();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+
+    executors.forEach((channel, executor) -> {
+      String prefix = METRIC_PREFIX + getName(channel) + '.';
+      ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+
+      metrics.add(new Metric<>(prefix + "poolSize", pool.getPoolSize()));
+      metrics.add(new Metric<>(prefix + "activeCount", pool.getActiveCount()));
+      metrics.add(new Metric<>(prefix + "queueSize", pool.getQueue().size()));
+      metrics.add(new Metric<>(prefix + "queueRemainingCapacity",
+          pool.getQueue().remainingCapacity()));
+      metrics.add(new Metric<>(prefix + "rejected", rejections.get(channel).get()));
+    });
+
+    return metrics;
+  }
+
+  @Override
+  public void destroy() {
+    executors.values().forEach(ThreadPoolTaskExecutor::shutdown);
+  }
+
+  private void register(NotificationChannel channel, int poolSize, int queueCapacity) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(poolSize);
+    executor.setMaxPoolSize(poolSize);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("notification-" + getName(channel) + '-');
+    executor.setWaitForTasksToCompleteOnShutdown(true);
+    executor.initialize();
+
+    executors.put(channel, executor);
+    rejections.put(channel, new AtomicLong());
+  }
+
+  private static String getName(NotificationChannel channel) {
+    return channel.name().toLowerCase(Locale.ENGLISH);
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import com.google.common.collect.Lists;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openlmis.notification.domain.NotificationPriority;
+import org.openlmis.notification.domain.PendingNotification;
+import org.openlmis.notification.domain.PendingNotification.Status;
+import org.openlmis.notification.repository.PendingNotificationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Splits claimed batches between the priority lanes of the sending queue and keeps statistics
+ * about each lane.
+ *
+ * <p>Batches are split with a smooth weighted round robin. Each lane gets a number of slots that
+ * is proportional to its weight, and because the state is kept between batches, even a lane with
+ * the lowest weight gets a slot every few batches when the batch size is small.
+ */
+@Component
+public class NotificationPriorityLanes implements PublicMetrics {
+
+  private static final String METRIC_PREFIX = "notificationToSend.lane.";
+
+  @Autowired
+  private PendingNotificationRepository pendingNotificationRepository;
+
+  private final Map<NotificationPriority, Integer> currentWeights =
+      new EnumMap<>(NotificationPriority.class);
+  private final Map<NotificationPriority, Statistics> statistics =
+      new EnumMap<>(NotificationPriority.class);
+
+  /**
+   * Creates a new instance with empty statistics.
+   */
+  public NotificationPriorityLanes() {
+    for (NotificationPriority priority : NotificationPriority.values()) {
+      currentWeights.put(priority, 0);
+      statistics.put(priority, new Statistics());
+    }
+  }
+
+  /**
+   * Returns how many notifications of each priority should be claimed in a batch of the given
+   * size.
+   */
+  public synchronized Map<NotificationPriority, Integer> getShares(int batchSize) {
+    Map<NotificationPriority, Integer> shares = new EnumMap<>(NotificationPriority.class);
+    int totalWeight = 0;
+
+    for (NotificationPriority priority : NotificationPriority.values()) {
+      shares.put(priority, 0);
+      totalWeight += priority.getWeight();
+    }
+
+    for (int slot = 0; slot < batchSize; ++slot) {
+      NotificationPriority selected = null;
+
+      for (NotificationPriority priority : NotificationPriority.values()) {
+        int weight = currentWeights.get(priority) + priority.getWeight();
+        currentWeights.put(priority, weight);
+
+        if (null == selected || weight > currentWeights.get(selected)) {
+          selected = priority;
+        }
+      }
+
+      currentWeights.put(selected, currentWeights.get(selected) - totalWeight);
+      shares.put(selected, shares.get(selected) + 1);
+    }
+
+    return shares;
+  }
+
+  /**
+   * Records how long the given notification waited in the sending queue before it was claimed.
+   * For retried notifications the time is counted from the moment they could be sent again.
+   */
+  public void recordClaimed(PendingNotification pending) {
+    ZonedDateTime readyDate = null == pending.getNextAttemptDate()
+        ? pending.getCreatedDate()
+        : pending.getNextAttemptDate();
+    long waitTime = Duration
+        .between(readyDate, ZonedDateTime.now())
+        .toMillis();
+
+    statistics.get(pending.getPriority()).record(waitTime);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+
+    statistics.forEach((priority, lane) -> {
+      String prefix = METRIC_PREFIX + priority.name().toLowerCase(Locale.ENGLISH) + '.';
+
+      metrics.add(new Metric<>(prefix + "depth",
+          pendingNotificationRepository.countByPriorityAndStatus(priority, Status.PENDING)));
+      metrics.add(new Metric<>(prefix + "claimed", lane.claimed.get()));
+      metrics.add(new Metric<>(prefix + "waitTime.last", lane.lastWaitTime.get()));
+      metrics.add(new Metric<>(prefix + "waitTime.total", lane.totalWaitTime.get()));
+    });
+
+    return metrics;
+  }
+
+  private static final class Statistics {
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong lastWaitTime = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+
+    void record(long waitTime) {
+      claimed.incrementAndGet();
+      lastWaitTime.set(waitTime);
+      totalWaitTime.addAndGet(waitTime);
+    }
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.PostConstruct;
+import org.openlmis.notification.domain.NotificationMessage;
+import org.openlmis.notification.domain.NotificationTemplate;
+import org.openlmis.notification.repository.NotificationTemplateRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+/**
+ * Stores notification templates and renders messages that refer to them. Templates are
+ * compiled when they are used for the first time and the compiled ones are cached, so a
+ * template is read from the database and parsed only once. Templates can't be changed, so the
+ * cache never has to be invalidated.
+ */
+@Service
+public class NotificationTemplateService implements PublicMetrics {
+
+  private static final String METRIC_PREFIX = "notificationTemplates.cache.";
+
+  @Autowired
+  private NotificationTemplateRepository notificationTemplateRepository;
+
+  @Value("${notificationTemplates.cacheSize}")
+  private long cacheSize;
+
+  private LoadingCache<UUID, CompiledMessage> cache;
+
+  /**
+   * Creates the cache of compiled templates.
+   */
+  @PostConstruct
+  public void initialize() {
+    cache = CacheBuilder
+        .newBuilder()
+        .maximumSize(cacheSize)
+        .recordStats()
+        .build(CacheLoader.from(this::load));
+  }
+
+  /**
+   * Saves the given template and puts its compiled version to the cache.
+   */
+  public NotificationTemplate create(NotificationTemplate template) {
+    NotificationTemplate saved = notificationTemplateRepository.save(template);
+    cache.put(saved.getId(), new CompiledMessage(saved));
+
+    return saved;
+  }
+
+  /**
+   * Checks whether a template with the given id exists.
+   */
+  public boolean exists(UUID id) {
+    return null != cache.getIfPresent(id) || notificationTemplateRepository.exists(id);
+  }
+
+  /**
+   * Renders the subject and the body of the given message from its template and the given
+   * parameters. A message without a template is returned as it is.
+   */
+  public NotificationMessage render(NotificationMessage message, Map<String, String> parameters) {
+    if (!message.isTemplated()) {
+      return message;
+    }
+
+    CompiledMessage compiled = cache.getUnchecked(message.getTemplateId());
+
+    return new NotificationMessage(message.getChannel(), compiled.body.render(parameters),
+        null == compiled.subject ? null : compiled.subject.render(parameters), message.getTag());
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    CacheStats stats = cache.stats();
+    List<Metric<?>> metrics = Lists.newArrayList();
+    metrics.add(new Metric<>(METRIC_PREFIX + "size", cache.size()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "hits", stats.hitCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "misses", stats.missCount()));
+
+    return metrics;
+  }
+
+  private CompiledMessage load(UUID id) {
+    NotificationTemplate template = notificationTemplateRepository.findOne(id);
+
+    if (null == template) {
+      throw new IllegalStateException("Notification template " + id + " does not exist");
+    }
+
+    return new CompiledMessage(template);
+  }
+
+  private static final class CompiledMessage {
+
+    private final CompiledTemplate subject;
+    private final CompiledTemplate body;
+
+    CompiledMessage(NotificationTemplate template) {
+      this.subject = CompiledTemplate.compile(template.getSubject());
+      this.body = CompiledTemplate.compile(template.getBody());
+    }
+
+  }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.openlmis.notification.service.NotificationToSendRetriever.CHANNEL_TO_USE_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.CLAIMED_CHANNEL;
+import static org.openlmis.notification.service.NotificationToSendRetriever.EMAIL_OUTBOX_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.IMPORTANT_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_VERIFIED_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.SMS_OUTBOX_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.START_CHANNEL;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.PendingNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.integration.annotation.MessageEndpoint;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+
+@MessageEndpoint
+public class NotificationToSendDispatcher {
+
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(NotificationToSendDispatcher.class);
+
+  @Autowired
+  private PendingNotificationService pendingNotificationService;
+
+  @Autowired
+  private NotificationChannelExecutors notificationChannelExecutors;
+
+  @Autowired
+  private ProviderRateLimiters providerRateLimiters;
+
+  @Autowired
+  private EmailSender emailSender;
+
+  @Autowired
+  private SmsBroadcaster smsBroadcaster;
+
+  @Value("${notificationToSend.email.batchSize}")
+  private int emailBatchSize;
+
+  @Autowired
+  @Qualifier(START_CHANNEL)
+  private MessageChannel startChannel;
+
+  private final Map<NotificationChannel, AtomicInteger> inFlight = createInFlightCounters();
+
+  /**
+   * Hands each claimed notification over to the thread pool of its channel, which sends it
+   * through the sending flow and records the outcome. A failure of one notification does not stop
+   * the rest of the batch. Email notifications are handed over in groups, so their emails can be
+   * sent over one SMTP connection. SMS messages with the same body are merged into broadcasts.
+   * Notifications that could not be queued because the thread pool is saturated are put back to
+   * the sending queue.
+   */
+  @ServiceActivator(inputChannel = CLAIMED_CHANNEL)
+  public void dispatch(List<PendingNotification> claimed) {
+    Map<Boolean, List<PendingNotification>> byEmail = claimed
+        .stream()
+        .collect(Collectors.partitioningBy(
+            pending -> NotificationChannel.EMAIL == pending.getChannel()));
+
+    for (List<PendingNotification> emails : Lists.partition(byEmail.get(true), emailBatchSize)) {
+      execute(NotificationChannel.EMAIL, emails, () -> sendEmails(emails));
+    }
+
+    for (PendingNotification pending : byEmail.get(false)) {
+      execute(pending.getChannel(), Collections.singletonList(pending), () -> sendSms(pending));
+    }
+  }
+
+  /**
+   * Returns the number of notifications of the given channel that can be handed over to its
+   * thread pool right away. More notifications of the channel should not be claimed, because
+   * they would be rejected and put back to the sending queue. The number is also limited by the
+   * send permits of the channel's provider that are not needed by notifications handed over
+   * before, so notifications are not claimed only to wait for a permit until the claim becomes
+   * stale. An SMS permit is taken by a whole broadcast, so for SMS the permits that are not
+   * needed by collected broadcasts are counted as full broadcasts.
+   */
+  public int getCapacity(NotificationChannel channel) {
+    int tasks = notificationChannelExecutors.getRemainingCapacity(channel);
+    long notifications = NotificationChannel.EMAIL == channel ? tasks * emailBatchSize : tasks;
+    long permits = providerRateLimiters.getAvailablePermits(channel);
+    int handedOver = inFlight.get(channel).get();
+
+    if (NotificationChannel.SMS == channel) {
+      int broadcastSize = smsBroadcaster.getMaxSize();
+      // notifications that did not reach the broadcaster yet may still join one broadcast
+      long broadcasts = permits - smsBroadcaster.getUnsentBroadcasts()
+          - (handedOver + broadcastSize - 1) / broadcastSize;
+
+      return (int) Math.max(0, Math.min(notifications, broadcasts * broadcastSize));
+    }
+
+    return (int) Math.max(0, Math.min(notifications, permits - handedOver));
+  }
+
+  private void execute(NotificationChannel channel, List<PendingNotification> pending,
+      Runnable task) {
+    AtomicInteger counter = inFlight.get(channel);
+    counter.addAndGet(pending.size());
+
+    Runnable counted = () -> {
+      try {
+        task.run();
+      } finally {
+        counter.addAndGet(-pending.size());
+      }
+    };
+
+    if (!notificationChannelExecutors.execute(channel, counted)) {
+      counter.addAndGet(-pending.size());
+
+      for (PendingNotification item : pending) {
+        LOGGER.warn("The {} thread pool is saturated, pending notification {} will be retried",
+            channel, item.getId());
+        pendingNotificationService.release(item.getId());
+      }
+    }
+  }
+
+  private void sendSms(PendingNotification pending) {
+    // the SMS handler puts the SMS to the outbox, so it can be merged into a broadcast
+    List<SmsMessage> outbox = new ArrayList<>(1);
+
+    try {
+      startChannel.send(MessageBuilder
+          .fromMessage(createMessage(pending))
+          .setHeader(SMS_OUTBOX_HEADER, outbox)
+          .build());
+    } catch (RuntimeException exp) {
+      fail(pending, exp, exp.getMessage());
+      return;
+    }
+
+    if (outbox.isEmpty()) {
+      pendingNotificationService.complete(pending.getId());
+    } else {
+      // the broadcaster completes the notification when the broadcast is sent
+      smsBroadcaster.add(pending.getId(), outbox.get(0));
+    }
+  }
+
+  private void sendEmails(List<PendingNotification> batch) {
+    List<PendingNotification> queued = new ArrayList<>(batch.size());
+    List<EmailMessage> emails = new ArrayList<>(batch.size());
+
+    for (PendingNotification pending : batch) {
+      // the email handler puts the email to the outbox instead of sending it right away
+      List<EmailMessage> outbox = new ArrayList<>(1);
+
+      try {
+        startChannel.send(MessageBuilder
+            .fromMessage(createMessage(pending))
+            .setHeader(EMAIL_OUTBOX_HEADER, outbox)
+            .build());
+      } catch (RuntimeException exp) {
+        fail(pending, exp, exp.getMessage());
+        continue;
+      }
+
+      if (outbox.isEmpty()) {
+        // there is nothing to send, e.g. the notification was postponed to a digest
+        pendingNotificationService.complete(pending.getId());
+      } else {
+        queued.add(pending);
+        emails.add(outbox.get(0));
+      }
+    }
+
+    if (!emails.isEmpty()) {
+      complete(queued, emailSender.sendMails(emails));
+    }
+  }
+
+  private void complete(List<PendingNotification> queued, List<ServerException> errors) {
+    for (int i = 0; i < queued.size(); ++i) {
+      PendingNotification pending = queued.get(i);
+      ServerException error = errors.get(i);
+
+      if (null == error) {
+        pendingNotificationService.complete(pending.getId());
+      } else {
+        fail(pending, error, ExceptionUtils.getRootCauseMessage(error));
+      }
+    }
+  }
+
+  private void fail(PendingNotification pending, Exception exp, String error) {
+    if (CircuitBreakerOpenException.isCauseOf(exp)) {
+      // the notification was not sent at all, so the attempt does not count
+      LOGGER.warn("The {} provider is unavailable, pending notification {} will be retried",
+          pending.getChannel(), pending.getId());
+      pendingNotificationService.release(pending.getId());
+    } else {
+      LOGGER.error("Can't send pending notification {}", pending.getId(), exp);
+      pendingNotificationService.fail(pending.getId(), error);
+    }
+  }
+
+  private static Map<NotificationChannel, AtomicInteger> createInFlightCounters() {
+    Map<NotificationChannel, AtomicInteger> counters = new EnumMap<>(NotificationChannel.class);
+
+    for (NotificationChannel channel : NotificationChannel.values()) {
+      counters.put(channel, new AtomicInteger());
+    }
+
+    return counters;
+  }
+
+  static Message<Notification> createMessage(PendingNotification pending) {
+    Notification notification = pending.getNotification();
+
+    return MessageBuilder
+        .withPayload(notification)
+        .setHeader(RECIPIENT_HEADER, pending.getRecipientId())
+        .setHeader(IMPORTANT_HEADER, notification.getImportant())
+        .setHeader(RECIPIENT_VERIFIED_HEADER, notification.isRecipientVerified())
+        .setHeader(CHANNEL_TO_USE_HEADER, pending.getChannel())
+        .build();
+  }
+
+}
@@ -15,75 +15,191 @@
 
 package org.openlmis.notification.service;
 
-import com.google.common.annotations.VisibleForTesting;
-import javax.persistence.EntityManager;
-import org.openlmis.notification.domain.Notification;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.openlmis.notification.domain.PendingNotification;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.integration.annotation.InboundChannelAdapter;
 import org.springframework.integration.annotation.MessageEndpoint;
-import org.springframework.integration.jpa.core.JpaExecutor;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
 
 @MessageEndpoint
 public class NotificationToSendRetriever {
 
+  static final String CLAIMED_CHANNEL = "notificationToSend.claimed";
   static final String START_CHANNEL = "notificationToSend.start";
 
   static final String RECIPIENT_HEADER = "recipient";
   static final String IMPORTANT_HEADER = "important";
+  static final String RECIPIENT_VERIFIED_HEADER = "recipientVerified";
   static final String CHANNEL_TO_USE_HEADER = "channelToUse";
+  static final String EMAIL_OUTBOX_HEADER = "emailOutbox";
+  static final String SMS_OUTBOX_HEADER = "smsOutbox";
 
-  private JpaExecutor jpaExecutor;
+  @Autowired
+  private PendingNotificationService pendingNotificationService;
 
   @Autowired
-  public NotificationToSendRetriever(EntityManager entityManager) {
-    prepareJpaExecutor(entityManager);
-  }
+  private CircuitBreakers circuitBreakers;
 
-  @VisibleForTesting
-  NotificationToSendRetriever(JpaExecutor jpaExecutor) {
-    this.jpaExecutor = jpaExecutor;
-  }
+  @Autowired
+  private NotificationToSendDispatcher notificationToSendDispatcher;
+
+  @Value("${notificationToSend.batchSize}")
+  private int batchSize;
+
+  @Value("${notificationToSend.expansionChunkSize}")
+  private int expansionChunkSize;
+
+  @Value("${notificationToSend.fallbackPollInterval}")
+  private long fallbackPollInterval;
+
+  private final AtomicBoolean wokenUp = new AtomicBoolean(true);
+  private volatile long lastClaimTime;
+  private volatile Set<NotificationChannel> pausedChannels =
+      EnumSet.noneOf(NotificationChannel.class);
 
   /**
-   * Finds the first notification that should be sent.
+   * Claims a batch of the oldest notifications that should be sent. The claim is committed
+   * before the notifications are sent, so other service instances skip them. The database is
+   * queried only if new notifications were added, the previous batch was full or the fallback
+   * poll interval has elapsed, so an idle queue causes almost no database load. A notification
+   * that failed on this instance wakes the retriever up when its retry is due. If the batch is
+   * not full, the next chunk of recipients of multi-recipient notifications is expanded into
+   * pending notifications, so they are claimed by the next poll. At most as many notifications
+   * of a channel are claimed as its thread pool and its provider rate limit can take right away,
+   * so claimed notifications neither go back to the queue nor wait for send permits until their
+   * claim becomes stale. Notifications of a channel whose provider circuit breaker is open are
+   * not claimed. A channel that is limited or blocked that way is paused. The first poll after
+   * it has room again, or after its breaker lets trial calls through, claims more notifications.
+   * Checking a paused channel does not query the database.
    */
   @InboundChannelAdapter(
-      channel = START_CHANNEL,
+      channel = CLAIMED_CHANNEL,
       autoStartup = "${notificationToSend.autoStartup:true}")
-  public Message<Notification> retrieve() {
-    Object item = jpaExecutor.poll();
+  public Message<List<PendingNotification>> retrieve() {
+    boolean fallbackPoll = System.currentTimeMillis() - lastClaimTime >= fallbackPollInterval;
+
+    if (!wokenUp.getAndSet(false) && !fallbackPoll && !pendingNotificationService.isRetryDue()
+        && !isPausedChannelResumed()) {
+      return null;
+    }
+
+    Set<NotificationChannel> paused = EnumSet.noneOf(NotificationChannel.class);
+    Map<NotificationChannel, Integer> capacities = getCapacities(paused);
 
-    if (!(item instanceof PendingNotification)) {
+    if (capacities.isEmpty()) {
+      pausedChannels = paused;
       return null;
     }
 
-    PendingNotification pending = (PendingNotification) item;
-    Notification notification = pending.getNotification();
+    lastClaimTime = System.currentTimeMillis();
+    List<PendingNotification> claimed = new ArrayList<>();
+    boolean full = claim(capacities, claimed, paused);
+    pausedChannels = paused;
+
+    if (full) {
+      // there are probably more notifications waiting
+      wakeUp();
+    } else if (pendingNotificationService.expandRecipients(expansionChunkSize) > 0) {
+      wakeUp();
+    }
+
+    if (claimed.isEmpty()) {
+      return null;
+    }
 
     return MessageBuilder
-        .withPayload(notification)
-        .setHeader(RECIPIENT_HEADER, notification.getUserId())
-        .setHeader(IMPORTANT_HEADER, notification.getImportant())
-        .setHeader(CHANNEL_TO_USE_HEADER, pending.getChannel())
+        .withPayload(claimed)
         .build();
   }
 
-  private void prepareJpaExecutor(EntityManager entityManager) {
-    jpaExecutor = new JpaExecutor(entityManager);
+  /**
+   * Makes the next poll claim pending notifications even if the fallback poll interval has not
+   * elapsed yet.
+   */
+  public void wakeUp() {
+    wokenUp.set(true);
+  }
+
+  /**
+   * Returns the capacities of the channels that can take more notifications. The other channels
+   * are added to the paused channels.
+   */
+  private Map<NotificationChannel, Integer> getCapacities(Set<NotificationChannel> paused) {
+    Map<NotificationChannel, Integer> capacities = new EnumMap<>(NotificationChannel.class);
+
+    for (NotificationChannel channel : NotificationChannel.values()) {
+      int capacity = getCapacity(channel);
+
+      if (capacity > 0) {
+        capacities.put(channel, capacity);
+      } else {
+        paused.add(channel);
+      }
+    }
+
+    return capacities;
+  }
 
-    jpaExecutor.setEntityClass(PendingNotification.class);
-    jpaExecutor.setNamedQuery(PendingNotification.GET_PENDING_NOTIFICATIONS_NAMED_QUERY);
+  private boolean isPausedChannelResumed() {
+    return pausedChannels
+        .stream()
+        .anyMatch(channel -> getCapacity(channel) > 0);
+  }
 
-    jpaExecutor.setExpectSingleResult(true);
-    jpaExecutor.setMaxNumberOfResults(1);
+  /**
+   * Returns the number of notifications of the given channel that can be sent right away. It is
+   * 0 while the circuit breaker of the channel's provider is open.
+   */
+  private int getCapacity(NotificationChannel channel) {
+    return circuitBreakers.get(channel).isCallPermitted()
+        ? notificationToSendDispatcher.getCapacity(channel)
+        : 0;
+  }
 
-    jpaExecutor.setUsePayloadAsParameterSource(true);
+  /**
+   * Claims notifications of the given channels, at most as many of a channel as it can take.
+   * Channels whose claim was limited by their capacity are added to the paused channels.
+   *
+   * @return true if the batch of channels that were not limited was full
+   */
+  private boolean claim(Map<NotificationChannel, Integer> capacities,
+      List<PendingNotification> claimed, Set<NotificationChannel> paused) {
+    Set<NotificationChannel> unlimited = EnumSet.noneOf(NotificationChannel.class);
+
+    capacities.forEach((channel, capacity) -> {
+      if (capacity >= batchSize) {
+        unlimited.add(channel);
+        return;
+      }
+
+      List<PendingNotification> found = pendingNotificationService
+          .claim(capacity, EnumSet.of(channel));
+      claimed.addAll(found);
+
+      if (found.size() >= capacity) {
+        // the channel may have more notifications, they are claimed when it has room again
+        paused.add(channel);
+      }
+    });
+
+    boolean full = false;
+
+    if (!unlimited.isEmpty()) {
+      List<PendingNotification> found = pendingNotificationService.claim(batchSize, unlimited);
+      claimed.addAll(found);
+      full = found.size() >= batchSize;
+    }
 
-    jpaExecutor.setDeleteAfterPoll(true);
-    jpaExecutor.setFlush(true);
-    jpaExecutor.setClearOnFlush(true);
+    return full;
   }
+
 }
@@ -15,7 +15,7 @@
 
 package org.openlmis.notification.service;
 
-import static org.openlmis.notification.service.AllowNotifyFilter.ALLOW_NOTIFY_CHANNEL;
+import static org.openlmis.notification.service.ActiveUserFilter.ACTIVE_USER_CHANNEL;
 import static org.openlmis.notification.service.ChannelFilter.FILTER_CHANNEL;
 import static org.openlmis.notification.service.NotificationToSendRetriever.CHANNEL_TO_USE_HEADER;
 
@@ -24,6 +24,7 @@ import org.openlmis.notification.domain.Notification;
 import org.openlmis.notification.domain.NotificationMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.integration.annotation.MessageEndpoint;
 import org.springframework.integration.annotation.Transformer;
 import org.springframework.integration.support.MessageBuilder;
@@ -37,10 +38,14 @@ public class NotificationTransformer {
   static final String CHANNEL_HEADER = "channel";
   static final String TAG_HEADER = "tag";
 
+  @Autowired
+  private NotificationTemplateService notificationTemplateService;
+
   /**
    * Split single notification into several messages. Skips messages that have been sent.
+   * Messages that refer to a template are rendered with the parameters of the notification.
    */
-  @Transformer(inputChannel = ALLOW_NOTIFY_CHANNEL, outputChannel = FILTER_CHANNEL)
+  @Transformer(inputChannel = ACTIVE_USER_CHANNEL, outputChannel = FILTER_CHANNEL)
   public Message extractNotificationMessage(Message<?> message) {
     NotificationChannel channel = message
         .getHeaders()
@@ -60,7 +65,8 @@ public class NotificationTransformer {
     }
 
     return MessageBuilder
-        .withPayload(notificationMessage)
+        .withPayload(notificationTemplateService
+            .render(notificationMessage, notification.getParameters()))
         .copyHeaders(message.getHeaders())
         .setHeader(CHANNEL_HEADER, notificationMessage.getChannel())
         .setHeader(TAG_HEADER, notificationMessage.getTag())
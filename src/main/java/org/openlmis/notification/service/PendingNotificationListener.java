@@ -0,0 +1,156 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listens for the Postgres notifications that are sent when new pending notifications are
+ * inserted and wakes the {@link NotificationToSendRetriever} up, so new notifications are sent
+ * without waiting for the next fallback poll. The listener uses its own database connection,
+ * so it does not take a connection from the pool.
+ */
+@Component
+public class PendingNotificationListener implements SmartLifecycle, Runnable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PendingNotificationListener.class);
+
+  static final String PENDING_NOTIFICATIONS_CHANNEL = "pending_notifications";
+
+  @Autowired
+  private NotificationToSendRetriever notificationToSendRetriever;
+
+  @Value("${spring.datasource.url}")
+  private String url;
+
+  @Value("${spring.datasource.username}")
+  private String username;
+
+  @Value("${spring.datasource.password}")
+  private String password;
+
+  @Value("${notificationToSend.autoStartup:true}")
+  private boolean autoStartup;
+
+  @Value("${notificationToSend.listener.timeout}")
+  private int timeout;
+
+  private volatile Thread thread;
+  private volatile boolean listening;
+
+  @Override
+  public void run() {
+    while (isRunning()) {
+      try (Connection connection = DriverManager.getConnection(url, username, password)) {
+        listen(connection);
+      } catch (SQLException exp) {
+        listening = false;
+        LOGGER.warn("Can't listen for new pending notifications, retrying in {} ms",
+            timeout, exp);
+        sleep();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void start() {
+    if (!isRunning()) {
+      thread = new Thread(this, "pending-notification-listener");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    Thread current = thread;
+    thread = null;
+
+    if (null != current) {
+      current.interrupt();
+    }
+
+    listening = false;
+  }
+
+  @Override
+  public void stop(Runnable callback) {
+    stop();
+    callback.run();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return null != thread;
+  }
+
+  @Override
+  public boolean isAutoStartup() {
+    return autoStartup;
+  }
+
+  @Override
+  public int getPhase() {
+    return Integer.MAX_VALUE;
+  }
+
+  private void listen(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("LISTEN " + PENDING_NOTIFICATIONS_CHANNEL);
+    }
+
+    LOGGER.info("Listening for new pending notifications");
+    PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+    // new notifications could have been added while the listener was not connected
+    notificationToSendRetriever.wakeUp();
+    listening = true;
+
+    while (isRunning()) {
+      PGNotification[] notifications = pgConnection.getNotifications(timeout);
+
+      if (null != notifications && notifications.length > 0) {
+        LOGGER.debug("Received {} notifications about new pending notifications",
+            notifications.length);
+        notificationToSendRetriever.wakeUp();
+      }
+    }
+  }
+
+  boolean isListening() {
+    return listening;
+  }
+
+  private void sleep() {
+    try {
+      Thread.sleep(timeout);
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,409 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+import org.hibernate.Hibernate;
+import org.openlmis.notification.domain.FailedNotification;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.NotificationMessage;
+import org.openlmis.notification.domain.NotificationPriority;
+import org.openlmis.notification.domain.NotificationRecipient;
+import org.openlmis.notification.domain.PendingNotification;
+import org.openlmis.notification.domain.PendingNotification.PendingNotificationId;
+import org.openlmis.notification.domain.UserContactDetails;
+import org.openlmis.notification.repository.FailedNotificationRepository;
+import org.openlmis.notification.repository.NotificationRecipientRepository;
+import org.openlmis.notification.repository.NotificationRepository;
+import org.openlmis.notification.repository.PendingNotificationRepository;
+import org.openlmis.notification.repository.UserContactDetailsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Manages the sending queue. Each method runs in a short transaction of its own, so no database
+ * connection is held while a notification is sent.
+ */
+@Service
+@SuppressWarnings("PMD.TooManyMethods")
+public class PendingNotificationService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PendingNotificationService.class);
+
+  @Autowired
+  private NotificationRepository notificationRepository;
+
+  @Autowired
+  private NotificationRecipientRepository notificationRecipientRepository;
+
+  @Autowired
+  private PendingNotificationRepository pendingNotificationRepository;
+
+  @Autowired
+  private UserContactDetailsRepository userContactDetailsRepository;
+
+  @Autowired
+  private FailedNotificationRepository failedNotificationRepository;
+
+  @Autowired
+  private NotificationPriorityLanes priorityLanes;
+
+  @Value("${notificationToSend.claimTimeout}")
+  private long claimTimeout;
+
+  @Value("${notificationToSend.retry.maxAttempts}")
+  private int maxAttempts;
+
+  @Value("${notificationToSend.retry.initialDelay}")
+  private long initialDelay;
+
+  @Value("${notificationToSend.retry.maxDelay}")
+  private long maxDelay;
+
+  // moving a notification back to the queue is not announced with NOTIFY, so the retriever is
+  // woken up when its next attempt is due; the times are kept in seconds like the retry delays
+  private final ConcurrentSkipListSet<Long> retryTimes = new ConcurrentSkipListSet<>();
+
+  /**
+   * Saves the given notifications and adds a pending notification for each of their messages to
+   * the sending queue. Everything is saved in one transaction, so the inserts can be sent to the
+   * database in JDBC batches. Contact details of all users are read with one query.
+   */
+  @Transactional
+  public List<Notification> enqueue(List<Notification> notifications) {
+    return enqueue(notifications, findContactDetails(notifications
+        .stream()
+        .map(Notification::getUserId)));
+  }
+
+  /**
+   * Saves the given notifications and adds a pending notification for each of their messages that
+   * can be delivered to the user to the sending queue. Messages of channels the user can't
+   * receive are saved with the notification, but they are not queued, so they do not go through
+   * the sending flow only to be dropped there. Messages of users whose contact details are not
+   * given are all queued and checked when they are sent.
+   *
+   * @param contactDetails contact details of the users by their ids
+   */
+  @Transactional
+  public List<Notification> enqueue(List<Notification> notifications,
+      Map<UUID, UserContactDetails> contactDetails) {
+    notificationRepository.save(notifications);
+
+    List<PendingNotification> pendingNotifications = new ArrayList<>();
+    int skipped = 0;
+
+    for (Notification notification : notifications) {
+      skipped += addPendingNotifications(notification, notification.getUserId(),
+          contactDetails.get(notification.getUserId()), pendingNotifications);
+    }
+
+    pendingNotificationRepository.save(pendingNotifications);
+
+    LOGGER.debug("Enqueued {} notifications, skipped {} undeliverable messages",
+        notifications.size(), skipped);
+    return notifications;
+  }
+
+  /**
+   * Saves the given notification once together with the list of its recipients. Pending
+   * notifications for the recipients are not created here, but only when the sending queue gets
+   * to them, see {@link #expandRecipients(int)}.
+   */
+  @Transactional
+  public Notification enqueue(Notification notification, Collection<UUID> recipientIds) {
+    notificationRepository.save(notification);
+
+    List<NotificationRecipient> recipients = recipientIds
+        .stream()
+        .map(recipientId -> new NotificationRecipient(notification.getId(), recipientId))
+        .collect(toList());
+
+    notificationRecipientRepository.save(recipients);
+
+    LOGGER.debug("Enqueued notification {} for {} recipients", notification.getId(),
+        recipients.size());
+    return notification;
+  }
+
+  /**
+   * Adds a pending notification for each message of the given number of recipients of
+   * multi-recipient notifications to the sending queue. Recipients of the oldest notifications
+   * are expanded first. Only the recipients in the chunk are held in memory, no matter how many
+   * recipients a notification has.
+   *
+   * @return the number of expanded recipients
+   */
+  @Transactional
+  public int expandRecipients(int chunkSize) {
+    List<NotificationRecipient> recipients = notificationRecipientRepository
+        .findRecipientsToExpand(chunkSize);
+
+    if (recipients.isEmpty()) {
+      return 0;
+    }
+
+    Set<UUID> notificationIds = recipients
+        .stream()
+        .map(NotificationRecipient::getNotificationId)
+        .collect(toSet());
+    Map<UUID, Notification> notifications = notificationRepository
+        .findAll(notificationIds)
+        .stream()
+        .collect(toMap(Notification::getId, notification -> notification));
+    Map<UUID, UserContactDetails> contactDetails = findContactDetails(recipients
+        .stream()
+        .map(NotificationRecipient::getUserId));
+
+    List<PendingNotification> pendingNotifications = new ArrayList<>();
+    int skipped = 0;
+
+    for (NotificationRecipient recipient : recipients) {
+      skipped += addPendingNotifications(notifications.get(recipient.getNotificationId()),
+          recipient.getUserId(), contactDetails.get(recipient.getUserId()),
+          pendingNotifications);
+      recipient.expand();
+    }
+
+    pendingNotificationRepository.save(pendingNotifications);
+
+    LOGGER.debug("Expanded {} recipients into {} pending notifications, skipped {} undeliverable"
+        + " messages", recipients.size(), pendingNotifications.size(), skipped);
+    return recipients.size();
+  }
+
+  /**
+   * Claims the given number of the oldest pending notifications. Each priority lane gets its
+   * share of the batch and the shares that are not used by a lane go to the other lanes, higher
+   * priorities first. The claimed notifications are marked as processed and will not be returned
+   * again until they are released or the claim becomes stale.
+   */
+  @Transactional
+  public List<PendingNotification> claim(int batchSize) {
+    return claim(batchSize, EnumSet.allOf(NotificationChannel.class));
+  }
+
+  /**
+   * Claims the given number of the oldest pending notifications that should be sent by one of
+   * the given channels. Notifications of other channels stay in the queue.
+   */
+  @Transactional
+  public List<PendingNotification> claim(int batchSize,
+      Collection<NotificationChannel> channels) {
+    List<String> channelNames = channels
+        .stream()
+        .map(NotificationChannel::name)
+        .collect(toList());
+    Map<NotificationPriority, Integer> shares = priorityLanes.getShares(batchSize);
+    List<NotificationPriority> notDrained = new ArrayList<>();
+    List<PendingNotification> claimed = new ArrayList<>();
+
+    for (NotificationPriority priority : NotificationPriority.values()) {
+      int share = shares.get(priority);
+      int found = share > 0 ? claimLane(priority, channelNames, share, claimed) : 0;
+
+      if (found == share) {
+        // the lane may have more notifications that could use shares of other lanes
+        notDrained.add(priority);
+      }
+    }
+
+    if (claimed.size() < batchSize && !notDrained.isEmpty()) {
+      // notifications claimed so far must not be returned by the next queries
+      pendingNotificationRepository.flush();
+
+      for (NotificationPriority priority : notDrained) {
+        int remaining = batchSize - claimed.size();
+
+        if (remaining <= 0) {
+          break;
+        }
+
+        claimLane(priority, channelNames, remaining, claimed);
+      }
+    }
+
+    LOGGER.debug("Claimed {} pending notifications", claimed.size());
+    return claimed;
+  }
+
+  /**
+   * Removes the notification from the sending queue.
+   */
+  @Transactional
+  public void complete(PendingNotificationId id) {
+    PendingNotification pending = pendingNotificationRepository.findOne(id);
+
+    if (null == pending) {
+      LOGGER.warn("Can't complete pending notification {} because it does not exist", id);
+      return;
+    }
+
+    pendingNotificationRepository.delete(pending);
+  }
+
+  /**
+   * Puts the notification back to the sending queue so it can be claimed again.
+   */
+  @Transactional
+  public void release(PendingNotificationId id) {
+    PendingNotification pending = pendingNotificationRepository.findOne(id);
+
+    if (null == pending) {
+      LOGGER.warn("Can't release pending notification {} because it does not exist", id);
+      return;
+    }
+
+    pending.release();
+  }
+
+  /**
+   * Records a failed attempt to send the notification. The notification is retried with an
+   * exponential backoff. After the maximum number of attempts it is moved to the failed
+   * notifications, so it does not take part in the sending queue anymore.
+   */
+  @Transactional
+  public void fail(PendingNotificationId id, String error) {
+    PendingNotification pending = pendingNotificationRepository.findOne(id);
+
+    if (null == pending) {
+      LOGGER.warn("Can't record failure of pending notification {} because it does not exist", id);
+      return;
+    }
+
+    if (pending.getAttempts() + 1 >= maxAttempts) {
+      LOGGER.error("Pending notification {} failed {} times and will not be retried",
+          id, maxAttempts);
+      failedNotificationRepository.save(FailedNotification.newInstance(pending, error));
+      pendingNotificationRepository.delete(pending);
+      return;
+    }
+
+    long delay = getRetryDelay(pending.getAttempts() + 1);
+    LOGGER.info("Pending notification {} will be retried in {} seconds", id, delay);
+
+    ZonedDateTime nextAttemptDate = ZonedDateTime.now().plusSeconds(delay);
+    pending.retryLater(nextAttemptDate);
+    retryTimes.add(nextAttemptDate.toEpochSecond());
+  }
+
+  /**
+   * Checks whether a notification that failed on this instance is due to be sent again. Each
+   * scheduled retry makes this method return true once, after its next attempt date.
+   */
+  public boolean isRetryDue() {
+    long now = System.currentTimeMillis() / 1000;
+    boolean due = false;
+    Long first;
+
+    while (null != (first = retryTimes.ceiling(Long.MIN_VALUE)) && first <= now) {
+      due |= retryTimes.remove(first);
+    }
+
+    return due;
+  }
+
+  /**
+   * Puts a failed notification back to the sending queue.
+   */
+  @Transactional
+  public PendingNotification requeue(FailedNotification failed) {
+    failedNotificationRepository.delete(failed);
+    // the failed notification has to be removed before a pending one with the same id is added
+    failedNotificationRepository.flush();
+
+    return pendingNotificationRepository.save(failed.requeue());
+  }
+
+  private Map<UUID, UserContactDetails> findContactDetails(Stream<UUID> userIds) {
+    Set<UUID> ids = userIds
+        .filter(Objects::nonNull)
+        .collect(toSet());
+
+    if (ids.isEmpty()) {
+      return new HashMap<>();
+    }
+
+    return userContactDetailsRepository
+        .findAll(ids)
+        .stream()
+        .collect(toMap(UserContactDetails::getReferenceDataUserId, details -> details));
+  }
+
+  private int addPendingNotifications(Notification notification, UUID recipientId,
+      UserContactDetails contactDetails, List<PendingNotification> pendingNotifications) {
+    Set<NotificationChannel> undeliverable = notification
+        .getUndeliverableChannels(contactDetails);
+
+    notification
+        .getMessages()
+        .stream()
+        .map(NotificationMessage::getChannel)
+        .filter(channel -> !undeliverable.contains(channel))
+        .forEach(channel -> pendingNotifications
+            .add(new PendingNotification(notification, channel, recipientId)));
+
+    return undeliverable.size();
+  }
+
+  private int claimLane(NotificationPriority priority, List<String> channels, int limit,
+      List<PendingNotification> claimed) {
+    List<PendingNotification> found = pendingNotificationRepository
+        .findPendingNotificationsToClaim(priority.name(), channels, limit, claimTimeout);
+
+    for (PendingNotification pending : found) {
+      pending.claim();
+      // notification details are needed after the transaction is committed
+      Hibernate.initialize(pending.getNotification());
+      priorityLanes.recordClaimed(pending);
+    }
+
+    claimed.addAll(found);
+    return found.size();
+  }
+
+  /**
+   * Returns a random delay between a half and the whole of the exponential backoff for the
+   * given attempt, so failed notifications are not retried all at the same moment.
+   */
+  long getRetryDelay(int attempt) {
+    long backoff = initialDelay << Math.min(attempt - 1, 30);
+    long delay = Math.min(backoff, maxDelay);
+
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+}
@@ -15,25 +15,50 @@
 
 package org.openlmis.notification.service;
 
-import static org.apache.commons.lang3.BooleanUtils.isNotTrue;
-
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
-import org.openlmis.notification.service.referencedata.RightDto;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import org.openlmis.notification.service.referencedata.UserDto;
 import org.openlmis.notification.service.referencedata.UserReferenceDataService;
 import org.openlmis.notification.util.AuthenticationHelper;
 import org.openlmis.notification.web.MissingPermissionException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.stereotype.Service;
 
+/**
+ * Checks whether the current request may access the endpoints. Decisions whether a user has a
+ * right are cached for a short time and right ids are cached for a long time, so repeated
+ * requests of the same user are authorized without calling referencedata. The caches are
+ * not invalidated when rights change, so a granted or revoked right takes effect only after
+ * the decision expires, at most {@code permissions.decisions.cacheTtl} milliseconds later.
+ */
 @Service
 @SuppressWarnings("PMD.TooManyMethods")
-public class PermissionService {
+public class PermissionService implements PublicMetrics {
   private static final String USERS_MANAGE = "USERS_MANAGE";
 
+  private static final long RIGHTS_CACHE_SIZE = 100;
+  private static final String DECISIONS_METRIC_PREFIX = "permissions.decisions.cache.";
+  private static final String RIGHTS_METRIC_PREFIX = "permissions.rights.cache.";
+
   @Autowired
   private UserReferenceDataService userReferenceDataService;
 
@@ -43,6 +68,38 @@ public class PermissionService {
   @Value("${auth.server.clientId}")
   private String serviceTokenClientId;
 
+  @Value("${permissions.decisions.cacheSize}")
+  private long decisionsCacheSize;
+
+  @Value("${permissions.decisions.cacheTtl}")
+  private long decisionsCacheTtl;
+
+  @Value("${permissions.rights.cacheTtl}")
+  private long rightsCacheTtl;
+
+  private LoadingCache<PermissionKey, Boolean> decisions;
+  private LoadingCache<String, UUID> rightIds;
+
+  /**
+   * Creates the caches of permission decisions and right ids.
+   */
+  @PostConstruct
+  public void initialize() {
+    decisions = CacheBuilder
+        .newBuilder()
+        .maximumSize(decisionsCacheSize)
+        .expireAfterWrite(decisionsCacheTtl, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build(CacheLoader.from(this::loadDecision));
+
+    rightIds = CacheBuilder
+        .newBuilder()
+        .maximumSize(RIGHTS_CACHE_SIZE)
+        .expireAfterWrite(rightsCacheTtl, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build(CacheLoader.from(name -> authenticationHelper.getRight(name).getId()));
+  }
+
   /**
    * Checks whether current request has access to viewing contact details of user with the given
    * userId.
@@ -73,6 +130,16 @@ public class PermissionService {
     }
   }
 
+  /**
+   * Checks whether current request has access to inspecting and requeuing notifications that
+   * could not be sent.
+   */
+  public void canManageSendingQueue() {
+    if (hasNoPermission(USERS_MANAGE, true)) {
+      throw new MissingPermissionException(USERS_MANAGE);
+    }
+  }
+
   private boolean isCurrentUser(UUID userId) {
     if (null == userId) {
       return false;
@@ -105,16 +172,57 @@ public class PermissionService {
 
   private boolean isNotValidUserToken(String rightName) {
     UserDto user = authenticationHelper.getCurrentUser();
-    RightDto right = authenticationHelper.getRight(rightName);
-    ResultDto<Boolean> result =  userReferenceDataService.hasRight(
-        user.getId(), right.getId(), null, null, null
+    UUID rightId = getUnchecked(rightIds, rightName);
+
+    return !getUnchecked(decisions, new PermissionKey(user.getId(), rightId, null, null, null));
+  }
+
+  private boolean loadDecision(PermissionKey key) {
+    ResultDto<Boolean> result = userReferenceDataService.hasRight(
+        key.user, key.right, key.program, key.facility, key.warehouse
     );
 
-    return null == result || isNotTrue(result.getResult());
+    return null != result && isTrue(result.getResult());
+  }
+
+  private <K, V> V getUnchecked(LoadingCache<K, V> cache, K key) {
+    try {
+      return cache.getUnchecked(key);
+    } catch (UncheckedExecutionException exp) {
+      // the loaders do not throw checked exceptions, so the original one can be rethrown
+      Throwables.throwIfUnchecked(exp.getCause());
+      throw exp;
+    }
   }
 
   private boolean isNotValidServiceToken(OAuth2Authentication authentication) {
     String clientId = authentication.getOAuth2Request().getClientId();
     return !serviceTokenClientId.equals(clientId);
   }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+    addMetrics(metrics, DECISIONS_METRIC_PREFIX, decisions);
+    addMetrics(metrics, RIGHTS_METRIC_PREFIX, rightIds);
+
+    return metrics;
+  }
+
+  private void addMetrics(List<Metric<?>> metrics, String prefix, LoadingCache<?, ?> cache) {
+    CacheStats stats = cache.stats();
+    metrics.add(new Metric<>(prefix + "size", cache.size()));
+    metrics.add(new Metric<>(prefix + "hits", stats.hitCount()));
+    metrics.add(new Metric<>(prefix + "misses", stats.missCount()));
+  }
+
+  @AllArgsConstructor
+  @EqualsAndHashCode
+  private static final class PermissionKey {
+    private final UUID user;
+    private final UUID right;
+    private final UUID program;
+    private final UUID facility;
+    private final UUID warehouse;
+  }
 }
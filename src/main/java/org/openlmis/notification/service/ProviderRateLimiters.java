@@ -0,0 +1,132 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits the rate at which messages are handed over to the provider of each notification
+ * channel (the SMTP relay and the SMS gateway), so the providers do not throttle or block the
+ * service when a backlog is drained. A channel without a configured rate is not limited.
+ */
+@Component
+public class ProviderRateLimiters implements PublicMetrics {
+
+  private static final String METRIC_PREFIX = "notificationToSend.rateLimit.";
+
+  @Value("${email.rateLimit.permitsPerSecond}")
+  private double emailPermitsPerSecond;
+
+  @Value("${email.rateLimit.burst}")
+  private int emailBurst;
+
+  @Value("${sms.rateLimit.permitsPerSecond}")
+  private double smsPermitsPerSecond;
+
+  @Value("${sms.rateLimit.burst}")
+  private int smsBurst;
+
+  private final Map<NotificationChannel, TokenBucket> buckets =
+      new EnumMap<>(NotificationChannel.class);
+  private final Map<NotificationChannel, AtomicLong> waitTimes =
+      new EnumMap<>(NotificationChannel.class);
+
+  /**
+   * Creates token buckets for channels with a configured rate.
+   */
+  @PostConstruct
+  public void initialize() {
+    register(NotificationChannel.EMAIL, emailPermitsPerSecond, emailBurst);
+    register(NotificationChannel.SMS, smsPermitsPerSecond, smsBurst);
+  }
+
+  /**
+   * Returns the number of messages that the given channel can send right away. A channel
+   * without a configured rate is not limited.
+   */
+  public int getAvailablePermits(NotificationChannel channel) {
+    TokenBucket bucket = buckets.get(channel);
+    return null == bucket ? Integer.MAX_VALUE : bucket.getAvailablePermits();
+  }
+
+  /**
+   * Returns the maximum number of permits that can be acquired at once for the given channel.
+   */
+  public int getMaxPermits(NotificationChannel channel) {
+    TokenBucket bucket = buckets.get(channel);
+    return null == bucket ? Integer.MAX_VALUE : bucket.getCapacity();
+  }
+
+  /**
+   * Waits until the given number of messages can be sent by the given channel.
+   *
+   * @throws IllegalStateException if the thread was interrupted while waiting
+   */
+  public void acquire(NotificationChannel channel, int permits) {
+    TokenBucket bucket = buckets.get(channel);
+
+    if (null == bucket) {
+      return;
+    }
+
+    long wait;
+
+    while ((wait = bucket.tryAcquire(permits)) > 0) {
+      waitTimes.get(channel).addAndGet(wait);
+
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      } catch (InterruptedException exp) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a send permit", exp);
+      }
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+
+    buckets.forEach((channel, bucket) -> {
+      String prefix = METRIC_PREFIX + channel.name().toLowerCase(Locale.ENGLISH) + '.';
+      metrics.add(new Metric<>(prefix + "availablePermits", bucket.getAvailablePermits()));
+      metrics.add(new Metric<>(prefix + "waitTime",
+          TimeUnit.NANOSECONDS.toMillis(waitTimes.get(channel).get())));
+    });
+
+    return metrics;
+  }
+
+  private void register(NotificationChannel channel, double permitsPerSecond, int burst) {
+    if (permitsPerSecond > 0) {
+      buckets.put(channel, new TokenBucket(permitsPerSecond, Math.max(1, burst)));
+      waitTimes.put(channel, new AtomicLong());
+    }
+  }
+
+}
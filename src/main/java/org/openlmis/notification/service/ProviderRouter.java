@@ -0,0 +1,324 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.notification.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads calls over several endpoints of the same provider, for example several SMTP relays.
+ * Each call goes to the healthy endpoint with the lowest average latency. If it fails, the call
+ * is repeated on the next endpoint, so a slow or broken endpoint does not stop the channel.
+ * Each endpoint has its own circuit breaker, and an endpoint whose breaker is open is skipped.
+ * An endpoint that was not used for longer than the probe interval is tried again, so traffic
+ * moves back to it once it is faster than the rest. Endpoints with the same latency are tried
+ * in the configured order. Calls can be made synchronously or asynchronously, and an
+ * asynchronous call is repeated on the next endpoint from the callback of the failed one.
+ */
+public final class ProviderRouter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProviderRouter.class);
+
+  private final String name;
+  private final List<Endpoint> endpoints;
+  private final double latencySmoothing;
+  private final long probeInterval;
+  private final LongSupplier clock;
+  private final AtomicLong failovers = new AtomicLong();
+
+  ProviderRouter(String name, List<String> endpoints,
+      Function<String, CircuitBreaker> circuitBreakers, double latencySmoothing,
+      long probeInterval) {
+    this(name, endpoints, circuitBreakers, latencySmoothing, probeInterval, System::nanoTime);
+  }
+
+  ProviderRouter(String name, List<String> endpoints,
+      Function<String, CircuitBreaker> circuitBreakers, double latencySmoothing,
+      long probeInterval, LongSupplier clock) {
+    if (endpoints.isEmpty()) {
+      throw new IllegalArgumentException("No endpoints configured for " + name);
+    }
+
+    this.name = name;
+    this.endpoints = new ArrayList<>(endpoints.size());
+    this.latencySmoothing = latencySmoothing;
+    this.probeInterval = TimeUnit.MILLISECONDS.toNanos(probeInterval);
+    this.clock = clock;
+
+    for (int i = 0; i < endpoints.size(); ++i) {
+      this.endpoints.add(new Endpoint(i, endpoints.get(i),
+          circuitBreakers.apply(name + '.' + i)));
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the number of calls that were repeated on another endpoint.
+   */
+  public long getFailovers() {
+    return failovers.get();
+  }
+
+  /**
+   * Returns the endpoints in the configured order.
+   */
+  public List<Endpoint> getEndpoints() {
+    return Collections.unmodifiableList(endpoints);
+  }
+
+  /**
+   * Makes the given call on the best endpoint and on the next ones until it succeeds. Request
+   * errors (see {@link CircuitBreaker#isRequestError(Throwable)}) would fail on every endpoint,
+   * so the call is not repeated for them.
+   *
+   * @throws CircuitBreakerOpenException if the breakers of all endpoints are open
+   * @throws E the error of the last endpoint if the call failed on all of them
+   */
+  @SuppressWarnings({"unchecked", "PMD.AvoidCatchingGenericException"})
+  public <T, E extends Exception> T execute(Call<T, E> call) throws E {
+    Iterator<Endpoint> endpoints = rank().iterator();
+    Exception lastError = null;
+    Endpoint endpoint;
+
+    while (null != (endpoint = acquireNext(endpoints, lastError))) {
+      long start = clock.getAsLong();
+
+      try {
+        T result = call.call(endpoint.getAddress());
+        endpoint.onSuccess(clock.getAsLong() - start);
+        return result;
+      } catch (Exception exp) {
+        if (CircuitBreaker.isRequestError(exp)) {
+          endpoint.onSuccess(clock.getAsLong() - start);
+          throw (E) exp;
+        }
+
+        endpoint.onFailure(clock.getAsLong() - start);
+        LOGGER.warn("Call of {} on {} failed", name, endpoint.getAddress(), exp);
+        lastError = exp;
+      }
+    }
+
+    if (null == lastError) {
+      throw new CircuitBreakerOpenException(name);
+    }
+
+    throw (E) lastError;
+  }
+
+  /**
+   * Makes the given asynchronous call like {@link #execute(Call)}, without waiting for it. The
+   * call is repeated on the next endpoint when the future of the previous one fails.
+   *
+   * @return a future that completes with the result of the first successful call, or fails
+   *         with the error of the last endpoint or {@link CircuitBreakerOpenException} if the
+   *         breakers of all endpoints are open
+   */
+  public <T> CompletableFuture<T> executeAsync(AsyncCall<T> call) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    executeAsync(call, rank().iterator(), null, result);
+
+    return result;
+  }
+
+  @SuppressWarnings("PMD.AvoidCatchingGenericException")
+  private <T> void executeAsync(AsyncCall<T> call, Iterator<Endpoint> endpoints,
+      Throwable lastError, CompletableFuture<T> result) {
+    Endpoint endpoint = acquireNext(endpoints, lastError);
+
+    if (null == endpoint) {
+      result.completeExceptionally(null == lastError
+          ? new CircuitBreakerOpenException(name)
+          : lastError);
+      return;
+    }
+
+    long start = clock.getAsLong();
+    CompletableFuture<T> future;
+
+    try {
+      future = call.call(endpoint.getAddress());
+    } catch (RuntimeException exp) {
+      future = new CompletableFuture<>();
+      future.completeExceptionally(exp);
+    }
+
+    future.whenComplete((value, error) -> {
+      long elapsed = clock.getAsLong() - start;
+
+      if (null == error) {
+        endpoint.onSuccess(elapsed);
+        result.complete(value);
+      } else if (CircuitBreaker.isRequestError(error)) {
+        endpoint.onSuccess(elapsed);
+        result.completeExceptionally(error);
+      } else {
+        endpoint.onFailure(elapsed);
+        LOGGER.warn("Call of {} on {} failed", name, endpoint.getAddress(), error);
+        executeAsync(call, endpoints, error, result);
+      }
+    });
+  }
+
+  /**
+   * Returns the endpoints whose breakers let calls through, the fastest first. Endpoints that
+   * have not been measured yet or were not used for longer than the probe interval come first,
+   * so they are measured again.
+   */
+  List<Endpoint> rank() {
+    long now = clock.getAsLong();
+
+    return endpoints
+        .stream()
+        .filter(endpoint -> endpoint.getCircuitBreaker().isCallPermitted())
+        .sorted(Comparator.comparingLong(endpoint -> endpoint.getScore(now)))
+        .collect(Collectors.toList());
+  }
+
+  private Endpoint acquireNext(Iterator<Endpoint> endpoints, Throwable lastError) {
+    while (endpoints.hasNext()) {
+      Endpoint endpoint = endpoints.next();
+
+      try {
+        endpoint.getCircuitBreaker().acquirePermission();
+
+        if (null != lastError) {
+          failovers.incrementAndGet();
+          LOGGER.debug("Repeating the call of {} on {}", name, endpoint.getAddress());
+        }
+
+        return endpoint;
+      } catch (CircuitBreakerOpenException exp) {
+        LOGGER.debug("Skipping {} of {}, its circuit breaker is open", endpoint.getAddress(),
+            name);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * A call made on a single endpoint.
+   */
+  @FunctionalInterface
+  public interface Call<T, E extends Exception> {
+
+    T call(String address) throws E;
+
+  }
+
+  /**
+   * An asynchronous call made on a single endpoint.
+   */
+  @FunctionalInterface
+  public interface AsyncCall<T> {
+
+    CompletableFuture<T> call(String address);
+
+  }
+
+  /**
+   * An endpoint with its circuit breaker and latency statistics.
+   */
+  public final class Endpoint {
+
+    private final int index;
+    private final String address;
+    private final CircuitBreaker circuitBreaker;
+
+    private long calls;
+    private long failures;
+    private double latency;
+    private long lastUsed;
+
+    Endpoint(int index, String address, CircuitBreaker circuitBreaker) {
+      this.index = index;
+      this.address = address;
+      this.circuitBreaker = circuitBreaker;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public String getAddress() {
+      return address;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+      return circuitBreaker;
+    }
+
+    public synchronized long getCalls() {
+      return calls;
+    }
+
+    public synchronized long getFailures() {
+      return failures;
+    }
+
+    /**
+     * Returns the exponentially weighted average latency of the calls in milliseconds.
+     */
+    public synchronized double getLatency() {
+      return latency / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    synchronized long getScore(long now) {
+      return 0 == calls || now - lastUsed > probeInterval ? 0 : (long) latency;
+    }
+
+    void onSuccess(long elapsed) {
+      circuitBreaker.onSuccess();
+      record(elapsed, false);
+    }
+
+    void onFailure(long elapsed) {
+      circuitBreaker.onFailure();
+      // a failure that came back quickly must not make the endpoint look like the fastest one
+      record(Math.max(elapsed, probeInterval), true);
+    }
+
+    private synchronized void record(long elapsed, boolean failure) {
+      latency = 0 == calls
+          ? elapsed
+          : latencySmoothing * elapsed + (1 - latencySmoothing) * latency;
+      lastUsed = clock.getAsLong();
+      ++calls;
+
+      if (failure) {
+        ++failures;
+      }
+    }
+
+  }
+
+}
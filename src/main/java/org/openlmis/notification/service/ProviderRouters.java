@@ -0,0 +1,120 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.notification.service;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a router over the endpoints of the provider of each notification channel (the SMTP
+ * relays and the SMS gateways). If no list of endpoints is configured for a channel, the single
+ * endpoint from the provider settings is used.
+ */
+@Component
+public class ProviderRouters implements PublicMetrics {
+
+  private static final String METRIC_PREFIX = "providerRouter.";
+
+  @Autowired
+  private JavaMailSenderImpl mailSender;
+
+  @Autowired
+  private CircuitBreakers circuitBreakers;
+
+  @Value("${email.hosts}")
+  private String emailHosts;
+
+  @Value("${sms.send.api.urls}")
+  private String smsSendApiUrls;
+
+  @Value("${sms.send.api.url}")
+  private String smsSendApiUrl;
+
+  @Value("${providerRouting.latencySmoothing}")
+  private double latencySmoothing;
+
+  @Value("${providerRouting.probeInterval}")
+  private long probeInterval;
+
+  private final Map<NotificationChannel, ProviderRouter> routers =
+      new EnumMap<>(NotificationChannel.class);
+
+  /**
+   * Creates routers for all channels.
+   */
+  @PostConstruct
+  public void initialize() {
+    register(NotificationChannel.EMAIL, emailHosts, mailSender.getHost());
+    register(NotificationChannel.SMS, smsSendApiUrls, smsSendApiUrl);
+  }
+
+  /**
+   * Returns the router of the provider of the given channel.
+   */
+  public ProviderRouter get(NotificationChannel channel) {
+    return routers.get(channel);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+
+    for (ProviderRouter router : routers.values()) {
+      String prefix = METRIC_PREFIX + router.getName() + '.';
+      metrics.add(new Metric<>(prefix + "failovers", router.getFailovers()));
+
+      for (ProviderRouter.Endpoint endpoint : router.getEndpoints()) {
+        String endpointPrefix = prefix + endpoint.getIndex() + '.';
+        metrics.add(new Metric<>(endpointPrefix + "latency", endpoint.getLatency()));
+        metrics.add(new Metric<>(endpointPrefix + "calls", endpoint.getCalls()));
+        metrics.add(new Metric<>(endpointPrefix + "failures", endpoint.getFailures()));
+      }
+    }
+
+    return metrics;
+  }
+
+  private void register(NotificationChannel channel, String endpoints, String defaultEndpoint) {
+    List<String> list = Splitter
+        .on(',')
+        .trimResults()
+        .omitEmptyStrings()
+        .splitToList(StringUtils.defaultString(endpoints));
+
+    if (list.isEmpty()) {
+      list = Collections.singletonList(StringUtils.defaultString(defaultEndpoint));
+    }
+
+    routers.put(channel, new ProviderRouter(channel.name().toLowerCase(Locale.ENGLISH), list,
+        circuitBreakers::get, latencySmoothing, probeInterval));
+  }
+
+}
@@ -0,0 +1,284 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.openlmis.notification.domain.PendingNotification.PendingNotificationId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+/**
+ * Collects SMS messages with the same body and sends them as one broadcast request to many
+ * phone numbers. A broadcast is sent when it reaches the max size or when the broadcast window
+ * has elapsed since its first message was added. Broadcasts are sent without waiting for the
+ * response of the SMS gateway, so a few threads can keep many requests in flight. The pending
+ * notifications of a broadcast are completed or failed together, by the callback of the request.
+ * A broadcast that the gateway rejects because of its recipients is split in halves and sent
+ * again, so only the recipients that caused the rejection are failed.
+ */
+@Component
+@SuppressWarnings("PMD.TooManyMethods")
+public class SmsBroadcaster implements DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SmsBroadcaster.class);
+
+  @Autowired
+  private SmsSender smsSender;
+
+  @Autowired
+  private PendingNotificationService pendingNotificationService;
+
+  @Autowired
+  private NotificationChannelExecutors notificationChannelExecutors;
+
+  @Value("${notificationToSend.sms.broadcastWindow}")
+  private long window;
+
+  @Value("${notificationToSend.sms.broadcastMaxSize}")
+  private int maxSize;
+
+  @Value("${notificationToSend.sms.rejectedRecipientStatuses}")
+  private int[] rejectedRecipientStatuses;
+
+  private final Map<String, Broadcast> broadcasts = new LinkedHashMap<>();
+
+  // broadcasts that were taken out of the map, but did not take a send permit yet
+  private final AtomicInteger sending = new AtomicInteger();
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Returns the number of broadcasts that are collected or about to be sent. Each of them will
+   * take one send permit of the SMS gateway.
+   */
+  public int getUnsentBroadcasts() {
+    synchronized (broadcasts) {
+      return broadcasts.size() + sending.get();
+    }
+  }
+
+  /**
+   * Adds the given message of the given pending notification to the broadcast with the same
+   * body. If the broadcast is full, it is sent right away by the calling thread.
+   */
+  public void add(PendingNotificationId pendingId, SmsMessage message) {
+    Broadcast full = null;
+
+    synchronized (broadcasts) {
+      Broadcast broadcast = broadcasts
+          .computeIfAbsent(message.getBody(), Broadcast::new);
+      broadcast.add(pendingId, message.getPhoneNumber());
+
+      if (broadcast.size() >= maxSize) {
+        broadcasts.remove(message.getBody());
+        sending.incrementAndGet();
+        full = broadcast;
+      }
+    }
+
+    if (null != full) {
+      send(full);
+    }
+  }
+
+  /**
+   * Hands broadcasts that are open for longer than the broadcast window over to the SMS thread
+   * pool. Broadcasts that could not be queued because the thread pool is saturated are put back
+   * to the sending queue.
+   */
+  @Scheduled(fixedDelayString = "${notificationToSend.sms.broadcastWindow}")
+  public void flush() {
+    long openedBefore = System.currentTimeMillis() - window;
+
+    removeBroadcasts(openedBefore).forEach(this::sendLater);
+  }
+
+  /**
+   * Puts notifications of broadcasts that were not sent yet back to the sending queue.
+   */
+  @Override
+  public void destroy() {
+    removeBroadcasts(Long.MAX_VALUE).forEach(this::release);
+  }
+
+  private List<Broadcast> removeBroadcasts(long openedBefore) {
+    List<Broadcast> removed = new ArrayList<>();
+
+    synchronized (broadcasts) {
+      Iterator<Broadcast> iterator = broadcasts.values().iterator();
+
+      while (iterator.hasNext()) {
+        Broadcast broadcast = iterator.next();
+
+        if (broadcast.getOpenedAt() <= openedBefore) {
+          iterator.remove();
+          removed.add(broadcast);
+        }
+      }
+
+      sending.addAndGet(removed.size());
+    }
+
+    return removed;
+  }
+
+  private void sendLater(Broadcast broadcast) {
+    boolean accepted = notificationChannelExecutors
+        .execute(NotificationChannel.SMS, () -> send(broadcast));
+
+    if (!accepted) {
+      LOGGER.warn("The SMS thread pool is saturated, {} pending notifications will be retried",
+          broadcast.size());
+      release(broadcast);
+    }
+  }
+
+  private void release(Broadcast broadcast) {
+    sending.decrementAndGet();
+    broadcast.getPendingIds().forEach(pendingNotificationService::release);
+  }
+
+  private void send(Broadcast broadcast) {
+    CompletableFuture<Void> response;
+
+    try {
+      response = smsSender.sendMessageAsync(broadcast.getPhoneNumbers(), broadcast.getBody());
+    } finally {
+      // the send permit is taken before the request is sent
+      sending.decrementAndGet();
+    }
+
+    response.whenComplete((result, exp) -> record(() -> {
+      if (null == exp) {
+        broadcast.getPendingIds().forEach(pendingNotificationService::complete);
+      } else {
+        onFailure(broadcast, exp);
+      }
+    }));
+  }
+
+  private void record(Runnable update) {
+    // the callback runs on an I/O thread of the HTTP client, which must not wait for the database
+    if (!notificationChannelExecutors.execute(NotificationChannel.SMS, update)) {
+      update.run();
+    }
+  }
+
+  private void onFailure(Broadcast broadcast, Throwable exp) {
+    if (CircuitBreakerOpenException.isCauseOf(exp)
+        || ExceptionUtils.indexOfType(exp, RejectedExecutionException.class) >= 0) {
+      // the broadcast was not sent at all, so the attempt does not count
+      LOGGER.warn("The SMS provider is unavailable, {} notifications will be retried",
+          broadcast.size());
+      broadcast.getPendingIds().forEach(pendingNotificationService::release);
+      return;
+    }
+
+    if (broadcast.size() > 1 && isRejectedRecipient(exp)) {
+      // one invalid phone number rejects the whole request, so the valid ones are sent again
+      LOGGER.warn("The SMS gateway rejected a broadcast to {} recipients, sending it in parts",
+          broadcast.size());
+      for (Broadcast part : broadcast.split()) {
+        sending.incrementAndGet();
+        sendLater(part);
+      }
+      return;
+    }
+
+    LOGGER.error("Can't send SMS broadcast to {} recipients", broadcast.size(), exp);
+    String error = ExceptionUtils.getRootCauseMessage(exp);
+    broadcast.getPendingIds().forEach(id -> pendingNotificationService.fail(id, error));
+  }
+
+  private boolean isRejectedRecipient(Throwable exp) {
+    // other client errors, like rejected credentials, would fail every part of the broadcast
+    return ExceptionUtils.getThrowableList(exp)
+        .stream()
+        .filter(HttpClientErrorException.class::isInstance)
+        .mapToInt(error -> ((HttpClientErrorException) error).getRawStatusCode())
+        .anyMatch(status -> IntStream.of(rejectedRecipientStatuses)
+            .anyMatch(rejected -> rejected == status));
+  }
+
+  private static final class Broadcast {
+
+    private final String body;
+    private final long openedAt = System.currentTimeMillis();
+    private final List<PendingNotificationId> pendingIds = new ArrayList<>();
+    private final List<String> phoneNumbers = new ArrayList<>();
+
+    Broadcast(String body) {
+      this.body = body;
+    }
+
+    void add(PendingNotificationId pendingId, String phoneNumber) {
+      pendingIds.add(pendingId);
+      phoneNumbers.add(phoneNumber);
+    }
+
+    int size() {
+      return pendingIds.size();
+    }
+
+    List<Broadcast> split() {
+      Broadcast first = new Broadcast(body);
+      Broadcast second = new Broadcast(body);
+      int half = size() / 2;
+
+      for (int i = 0; i < size(); ++i) {
+        (i < half ? first : second).add(pendingIds.get(i), phoneNumbers.get(i));
+      }
+
+      return Arrays.asList(first, second);
+    }
+
+    String getBody() {
+      return body;
+    }
+
+    long getOpenedAt() {
+      return openedAt;
+    }
+
+    List<PendingNotificationId> getPendingIds() {
+      return pendingIds;
+    }
+
+    List<String> getPhoneNumbers() {
+      return phoneNumbers;
+    }
+
+  }
+
+}
@@ -18,7 +18,9 @@ package org.openlmis.notification.service;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.openlmis.notification.service.NotificationChannelRouter.SMS_SEND_NOW_CHANNEL;
 import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.SMS_OUTBOX_HEADER;
 
+import java.util.List;
 import java.util.UUID;
 import org.openlmis.notification.domain.NotificationMessage;
 import org.openlmis.notification.domain.UserContactDetails;
@@ -42,15 +44,24 @@ public class SmsNotificationChannelHandler {
   private SmsSender smsSender;
 
   /**
-   * Tries to send a notification to a user by using email channel.
+   * Tries to send a notification to a user by using SMS channel. If the message carries an
+   * outbox, the SMS is added to it and sent later together with other SMS messages with the same
+   * body.
    */
   @ServiceActivator(inputChannel = SMS_SEND_NOW_CHANNEL)
   public void handle(NotificationMessage payload,
-      @Header(RECIPIENT_HEADER) UUID recipient) {
+      @Header(RECIPIENT_HEADER) UUID recipient,
+      @Header(value = SMS_OUTBOX_HEADER, required = false) List<SmsMessage> outbox) {
     UserContactDetails contactDetails = userContactDetailsRepository.findOne(recipient);
 
-    if (shouldSendMessage(contactDetails)) {
+    if (!shouldSendMessage(contactDetails)) {
+      return;
+    }
+
+    if (null == outbox) {
       smsSender.sendMessage(contactDetails.getPhoneNumber(), payload.getBody());
+    } else {
+      outbox.add(new SmsMessage(contactDetails.getPhoneNumber(), payload.getBody()));
     }
   }
 
@@ -17,62 +17,103 @@ package org.openlmis.notification.service;
 
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_SEND_SMS_FAILURE;
 
+import com.google.common.collect.Lists;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
 import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 @Component
-public class SmsSender {
+public class SmsSender implements PublicMetrics {
 
   private static final XLogger XLOGGER = XLoggerFactory.getXLogger(SmsSender.class);
+  private static final String METRIC_PREFIX = "sms.async.";
 
   @Autowired
   RestTemplate restTemplate;
 
-  @Value("${sms.send.api.url}")
-  private String smsSendApiUrl;
+  @Autowired
+  private AsyncRestTemplate asyncRestTemplate;
+
+  @Autowired
+  private ProviderRateLimiters providerRateLimiters;
+
+  @Autowired
+  private CircuitBreakers circuitBreakers;
+
+  @Autowired
+  private ProviderRouters providerRouters;
 
   @Value("${sms.send.api.token}")
   private String smsSendApiToken;
 
+  @Value("${sms.async.maxInFlight}")
+  private int maxInFlight;
+
+  @Value("${sms.async.maxWait}")
+  private long maxWait;
+
+  private Semaphore inFlight;
+
+  @PostConstruct
+  void init() {
+    inFlight = new Semaphore(maxInFlight, true);
+  }
+
   void sendMessage(String toPhoneNumber, String message) {
-    XLOGGER.entry(toPhoneNumber, message);
+    sendMessage(Collections.singletonList(toPhoneNumber), message);
+  }
+
+  /**
+   * Sends the given message to all of the given phone numbers with a single broadcast request.
+   * The request is sent to the fastest healthy SMS gateway, and to the next one if that fails.
+   */
+  void sendMessage(List<String> toPhoneNumbers, String message) {
+    XLOGGER.entry(toPhoneNumbers, message);
     Profiler profiler = new Profiler("SEND_SMS_MESSAGE");
     profiler.setLogger(XLOGGER);
 
     profiler.start("PREPARE_HTTP_REQUEST");
-    String toUrn = "tel:" + toPhoneNumber;
-    SmsRequestDto payload = new SmsRequestDto(message, Collections.singletonList(toUrn));
-    HttpHeaders headers = new HttpHeaders();
-    headers.setContentType(MediaType.APPLICATION_JSON);
-    headers.set("Authorization", "Token " + smsSendApiToken);
-    HttpEntity<SmsRequestDto> request = new HttpEntity<>(payload, headers);
+    HttpEntity<SmsRequestDto> request = createRequest(toPhoneNumbers, message);
 
     profiler.start("POST_TO_SMS_SEND_API");
-    SmsRequestDto requestBody = request.getBody();
-    XLOGGER.debug("request, url = {}, body = {}", smsSendApiUrl, requestBody.toString());
+    XLOGGER.debug("request, body = {}", request.getBody().toString());
 
     int responseCode;
     String responseBody;
     try {
-      ResponseEntity<String> response = restTemplate.postForEntity(
-          smsSendApiUrl, request, String.class);
+      providerRateLimiters.acquire(NotificationChannel.SMS, 1);
+      ResponseEntity<String> response = circuitBreakers
+          .get(NotificationChannel.SMS)
+          .execute(() -> providerRouters
+              .get(NotificationChannel.SMS)
+              .execute(url -> restTemplate.postForEntity(url, request, String.class)));
 
       responseCode = response.getStatusCodeValue();
       responseBody = response.getBody();
       XLOGGER.debug("Send successful, status code was {}, response = {}", responseCode,
           responseBody);
-    } catch (RestClientException rce) {
+    } catch (RestClientException | IllegalStateException | CircuitBreakerOpenException rce) {
       NotificationException exception = new ServerException(rce, ERROR_SEND_SMS_FAILURE);
 
       XLOGGER.throwing(exception);
@@ -84,4 +125,108 @@ public class SmsSender {
     profiler.stop().log();
     XLOGGER.exit();
   }
+
+  /**
+   * Sends the given message to all of the given phone numbers with a single broadcast request,
+   * without waiting for the response. The calling thread waits only if the max number of
+   * requests is already in flight or the rate limit is exhausted.
+   *
+   * @return a future that completes when the gateway accepted the request, or fails with
+   *         {@link ServerException} if it could not be sent. The cause is
+   *         {@link CircuitBreakerOpenException} if the gateway is unavailable, and
+   *         {@link RejectedExecutionException} if no request finished within the max wait time.
+   */
+  CompletableFuture<Void> sendMessageAsync(List<String> toPhoneNumbers, String message) {
+    HttpEntity<SmsRequestDto> request = createRequest(toPhoneNumbers, message);
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    CircuitBreaker circuitBreaker = circuitBreakers.get(NotificationChannel.SMS);
+
+    try {
+      acquireInFlightPermit();
+    } catch (RejectedExecutionException | IllegalStateException exp) {
+      result.completeExceptionally(new ServerException(exp, ERROR_SEND_SMS_FAILURE));
+      return result;
+    }
+
+    try {
+      providerRateLimiters.acquire(NotificationChannel.SMS, 1);
+      circuitBreaker.acquirePermission();
+    } catch (IllegalStateException | CircuitBreakerOpenException exp) {
+      inFlight.release();
+      result.completeExceptionally(new ServerException(exp, ERROR_SEND_SMS_FAILURE));
+      return result;
+    }
+
+    providerRouters
+        .get(NotificationChannel.SMS)
+        .executeAsync(url -> post(url, request))
+        .whenComplete((response, error) -> {
+          inFlight.release();
+
+          if (null == error) {
+            circuitBreaker.onSuccess();
+            XLOGGER.debug("Send successful, status code was {}, response = {}",
+                response.getStatusCodeValue(), response.getBody());
+            result.complete(null);
+            return;
+          }
+
+          if (CircuitBreaker.isRequestError(error)) {
+            circuitBreaker.onSuccess();
+          } else {
+            circuitBreaker.onFailure();
+          }
+
+          result.completeExceptionally(new ServerException(error, ERROR_SEND_SMS_FAILURE));
+        });
+
+    return result;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+    metrics.add(new Metric<>(METRIC_PREFIX + "maxInFlight", maxInFlight));
+    metrics.add(new Metric<>(METRIC_PREFIX + "inFlight",
+        maxInFlight - inFlight.availablePermits()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "waiting", inFlight.getQueueLength()));
+
+    return metrics;
+  }
+
+  private HttpEntity<SmsRequestDto> createRequest(List<String> toPhoneNumbers, String message) {
+    List<String> toUrns = toPhoneNumbers
+        .stream()
+        .map(toPhoneNumber -> "tel:" + toPhoneNumber)
+        .collect(Collectors.toList());
+    SmsRequestDto payload = new SmsRequestDto(message, toUrns);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    headers.set("Authorization", "Token " + smsSendApiToken);
+
+    return new HttpEntity<>(payload, headers);
+  }
+
+  private CompletableFuture<ResponseEntity<String>> post(String url,
+      HttpEntity<SmsRequestDto> request) {
+    CompletableFuture<ResponseEntity<String>> future = new CompletableFuture<>();
+    asyncRestTemplate
+        .postForEntity(url, request, String.class)
+        .addCallback(future::complete, future::completeExceptionally);
+
+    return future;
+  }
+
+  private void acquireInFlightPermit() {
+    try {
+      if (!inFlight.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+        throw new RejectedExecutionException(
+            "No SMS request finished in " + maxWait + " ms, " + maxInFlight + " are in flight");
+      }
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for an SMS request slot", exp);
+    }
+  }
+
 }
@@ -0,0 +1,385 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a bounded pool of connected and authenticated SMTP transports, so emails are not sent
+ * over a new connection with a full TLS handshake and login each time. A transport that was idle
+ * for a while is checked before it is used again, and transports that were not used for longer
+ * than the max idle time are closed. A transport is closed after a failure only if its
+ * connection was lost, because the server may reject a single message and still accept others.
+ * Transports to several SMTP servers can be kept in the pool at the same time. Each server is
+ * given as a host with an optional port, and the max size applies to all of them together: it
+ * bounds both the transports in use and all open connections, idle ones included. If a new
+ * connection is needed while the pool is full, the least recently used idle transport is closed
+ * to make room for it.
+ */
+@Component
+@SuppressWarnings("PMD.TooManyMethods")
+public class SmtpTransportPool implements PublicMetrics, DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SmtpTransportPool.class);
+  private static final String METRIC_PREFIX = "email.smtpPool.";
+
+  @Autowired
+  private JavaMailSenderImpl mailSender;
+
+  @Value("${email.pool.maxSize}")
+  private int maxSize;
+
+  @Value("${email.pool.maxWait}")
+  private long maxWait;
+
+  @Value("${email.pool.maxIdleTime}")
+  private long maxIdleTime;
+
+  @Value("${email.pool.validationInterval}")
+  private long validationInterval;
+
+  private final Map<String, BlockingDeque<PooledTransport>> idle = new ConcurrentHashMap<>();
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong destroyed = new AtomicLong();
+  private final AtomicLong borrowed = new AtomicLong();
+  private final AtomicLong failedValidations = new AtomicLong();
+  private Semaphore permits;
+  // held by each open transport, whether it is idle or in use
+  private Semaphore connections;
+
+  @PostConstruct
+  void init() {
+    permits = new Semaphore(maxSize, true);
+    connections = new Semaphore(maxSize, true);
+  }
+
+  /**
+   * Sends the given message with a transport to the given SMTP server from the pool.
+   *
+   * @throws MessagingException if a transport could not be obtained or the message could not
+   *                            be sent
+   */
+  public void send(String server, MimeMessage message) throws MessagingException {
+    MessagingException error = send(server, Collections.singletonList(message)).get(0);
+
+    if (null != error) {
+      throw error;
+    }
+  }
+
+  /**
+   * Sends the given messages one after another with a single transport to the given SMTP server
+   * from the pool. A failure
+   * of one message does not stop the rest. If the connection was lost, a new transport is opened
+   * for the remaining messages. The transport is returned to the pool afterwards.
+   *
+   * @return a list with an error at the position of each message that could not be sent, and
+   *         null at the position of each message that was sent.
+   * @throws MessagingException if a transport could not be obtained
+   */
+  public List<MessagingException> send(String server, List<MimeMessage> messages)
+      throws MessagingException {
+    List<MessagingException> errors = new ArrayList<>(messages.size());
+    PooledTransport transport = borrow(server);
+
+    try {
+      for (MimeMessage message : messages) {
+        if (null == transport) {
+          transport = create(server);
+        }
+
+        try {
+          sendMessage(transport.getTransport(), message);
+          errors.add(null);
+        } catch (MessagingException exp) {
+          errors.add(exp);
+
+          if (!transport.getTransport().isConnected()) {
+            close(transport);
+            transport = null;
+          }
+        }
+      }
+    } catch (MessagingException exp) {
+      // a new transport could not be opened, so the remaining messages can't be sent
+      errors.addAll(Collections.nCopies(messages.size() - errors.size(), exp));
+    } finally {
+      release(server, transport);
+    }
+
+    return errors;
+  }
+
+  /**
+   * Closes transports that were not used for longer than the max idle time.
+   */
+  @Scheduled(fixedDelayString = "${email.pool.evictionInterval}")
+  public void evictIdle() {
+    long now = System.currentTimeMillis();
+
+    for (BlockingDeque<PooledTransport> transports : idle.values()) {
+      Iterator<PooledTransport> iterator = transports.iterator();
+
+      while (iterator.hasNext()) {
+        PooledTransport transport = iterator.next();
+
+        if (now - transport.getLastUsed() > maxIdleTime && transports.remove(transport)) {
+          close(transport);
+        }
+      }
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+    metrics.add(new Metric<>(METRIC_PREFIX + "maxSize", maxSize));
+    metrics.add(new Metric<>(METRIC_PREFIX + "open", created.get() - destroyed.get()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "idle", getIdleCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "active", maxSize - permits.availablePermits()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "waiting", permits.getQueueLength()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "created", created.get()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "destroyed", destroyed.get()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "borrowed", borrowed.get()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "failedValidations", failedValidations.get()));
+
+    return metrics;
+  }
+
+  @Override
+  public void destroy() {
+    for (BlockingDeque<PooledTransport> transports : idle.values()) {
+      PooledTransport transport;
+
+      while (null != (transport = transports.pollFirst())) {
+        close(transport);
+      }
+    }
+  }
+
+  /**
+   * Opens and authenticates a new SMTP transport to the given server with the settings of the
+   * mail sender. The port of the mail sender is used if the server does not have one.
+   */
+  Transport connect(String server) throws MessagingException {
+    String host = StringUtils.defaultIfEmpty(StringUtils.substringBefore(server, ":"), null);
+    String port = StringUtils.substringAfter(server, ":");
+
+    Transport transport = mailSender.getSession().getTransport(mailSender.getProtocol());
+    transport.connect(host, port.isEmpty() ? mailSender.getPort() : Integer.parseInt(port),
+        mailSender.getUsername(), mailSender.getPassword());
+
+    return transport;
+  }
+
+  private int getIdleCount() {
+    return idle
+        .values()
+        .stream()
+        .mapToInt(BlockingDeque::size)
+        .sum();
+  }
+
+  private PooledTransport borrow(String server) throws MessagingException {
+    acquire(permits);
+
+    try {
+      PooledTransport transport = pollValid(server);
+
+      if (null == transport) {
+        transport = create(server);
+      }
+
+      borrowed.incrementAndGet();
+      return transport;
+    } catch (MessagingException | RuntimeException exp) {
+      permits.release();
+      throw exp;
+    }
+  }
+
+  private PooledTransport create(String server) throws MessagingException {
+    reserveConnection();
+
+    PooledTransport transport;
+
+    try {
+      transport = new PooledTransport(connect(server));
+    } catch (MessagingException | RuntimeException exp) {
+      connections.release();
+      throw exp;
+    }
+
+    created.incrementAndGet();
+    return transport;
+  }
+
+  private void reserveConnection() throws MessagingException {
+    while (!connections.tryAcquire()) {
+      PooledTransport leastRecentlyUsed = pollLeastRecentlyUsed();
+
+      if (null == leastRecentlyUsed) {
+        // all connections are in use, so one of them has to be closed by its borrower
+        acquire(connections);
+        return;
+      }
+
+      close(leastRecentlyUsed);
+    }
+  }
+
+  private PooledTransport pollLeastRecentlyUsed() {
+    BlockingDeque<PooledTransport> oldestDeque = null;
+    PooledTransport oldest = null;
+
+    for (BlockingDeque<PooledTransport> transports : idle.values()) {
+      PooledTransport transport = transports.peekLast();
+
+      if (null != transport && (null == oldest || transport.getLastUsed() < oldest.getLastUsed())) {
+        oldestDeque = transports;
+        oldest = transport;
+      }
+    }
+
+    if (null == oldest) {
+      return null;
+    }
+
+    // the transport may have been borrowed in the meantime, so another one is looked for
+    return oldestDeque.removeLastOccurrence(oldest) ? oldest : pollLeastRecentlyUsed();
+  }
+
+  private void acquire(Semaphore semaphore) throws MessagingException {
+    try {
+      if (!semaphore.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+        throw new MessagingException(
+            "Could not get an SMTP transport from the pool in " + maxWait + " ms");
+      }
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+      throw new MessagingException("Interrupted while waiting for an SMTP transport", exp);
+    }
+  }
+
+  private PooledTransport pollValid(String server) {
+    BlockingDeque<PooledTransport> transports = idle.get(server);
+
+    if (null == transports) {
+      return null;
+    }
+
+    PooledTransport transport;
+
+    // the most recently used transport is taken first, so the rest can become idle and evicted
+    while (null != (transport = transports.pollFirst())) {
+      long idleTime = System.currentTimeMillis() - transport.getLastUsed();
+
+      if (idleTime > maxIdleTime) {
+        close(transport);
+      } else if (idleTime > validationInterval && !transport.getTransport().isConnected()) {
+        // for SMTP the isConnected method sends NOOP to the server
+        failedValidations.incrementAndGet();
+        close(transport);
+      } else {
+        return transport;
+      }
+    }
+
+    return null;
+  }
+
+  private void sendMessage(Transport transport, MimeMessage message) throws MessagingException {
+    if (null == message.getSentDate()) {
+      message.setSentDate(new Date());
+    }
+
+    message.saveChanges();
+    transport.sendMessage(message, message.getAllRecipients());
+  }
+
+  private void release(String server, PooledTransport transport) {
+    if (null != transport) {
+      transport.setLastUsed(System.currentTimeMillis());
+      idle.computeIfAbsent(server, key -> new LinkedBlockingDeque<>()).offerFirst(transport);
+    }
+
+    permits.release();
+  }
+
+  private void close(PooledTransport transport) {
+    destroyed.incrementAndGet();
+    connections.release();
+
+    try {
+      transport.getTransport().close();
+    } catch (MessagingException exp) {
+      LOGGER.debug("Could not close SMTP transport", exp);
+    }
+  }
+
+  private static final class PooledTransport {
+
+    private final Transport transport;
+    private volatile long lastUsed;
+
+    PooledTransport(Transport transport) {
+      this.transport = transport;
+      this.lastUsed = System.currentTimeMillis();
+    }
+
+    Transport getTransport() {
+      return transport;
+    }
+
+    long getLastUsed() {
+      return lastUsed;
+    }
+
+    void setLastUsed(long lastUsed) {
+      this.lastUsed = lastUsed;
+    }
+
+  }
+
+}
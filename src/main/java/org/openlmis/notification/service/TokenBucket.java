@@ -0,0 +1,84 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket that is refilled at a constant rate up to its capacity. Tokens that are not
+ * used accumulate up to the capacity, so a short burst can be sent at once after a pause, while
+ * the average rate never exceeds the refill rate.
+ */
+final class TokenBucket {
+
+  private final double permitsPerNano;
+  private final int capacity;
+  private final LongSupplier clock;
+
+  private double tokens;
+  private long lastRefill;
+
+  TokenBucket(double permitsPerSecond, int capacity) {
+    this(permitsPerSecond, capacity, System::nanoTime);
+  }
+
+  TokenBucket(double permitsPerSecond, int capacity, LongSupplier clock) {
+    this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.capacity = capacity;
+    this.clock = clock;
+    this.tokens = capacity;
+    this.lastRefill = clock.getAsLong();
+  }
+
+  int getCapacity() {
+    return capacity;
+  }
+
+  synchronized int getAvailablePermits() {
+    refill();
+    return (int) tokens;
+  }
+
+  /**
+   * Takes the given number of permits if they are available.
+   *
+   * @return 0 if the permits were taken, otherwise the number of nanoseconds after which they
+   *         will be available.
+   */
+  synchronized long tryAcquire(int permits) {
+    if (permits > capacity) {
+      throw new IllegalArgumentException(
+          "Can't acquire " + permits + " permits from a bucket of " + capacity);
+    }
+
+    refill();
+
+    if (tokens >= permits) {
+      tokens -= permits;
+      return 0;
+    }
+
+    return Math.max(1, (long) Math.ceil((permits - tokens) / permitsPerNano));
+  }
+
+  private void refill() {
+    long now = clock.getAsLong();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+    lastRefill = now;
+  }
+
+}
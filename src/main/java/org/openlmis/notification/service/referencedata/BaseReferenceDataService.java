@@ -44,8 +44,8 @@ public abstract class BaseReferenceDataService<T> extends BaseCommunicationServi
     String url = getServiceUrl() + getUrl() + id;
 
     try {
-      ResponseEntity<T> responseEntity = restTemplate.exchange(
-          buildUri(url), HttpMethod.GET, createEntity(), getResultClass());
+      ResponseEntity<T> responseEntity = runWithTokenRetry(() -> restTemplate.exchange(
+          buildUri(url), HttpMethod.GET, createEntity(), getResultClass()));
       return responseEntity.getBody();
     } catch (HttpStatusCodeException ex) {
       // rest template will handle 404 as an exception, instead of returning null
@@ -61,8 +61,8 @@ public abstract class BaseReferenceDataService<T> extends BaseCommunicationServi
   <P> P get(Class<P> type, String resourceUrl, RequestParameters parameters) {
     String url = getServiceUrl() + getUrl() + resourceUrl;
 
-    ResponseEntity<P> response = restTemplate.exchange(createUri(url, parameters), HttpMethod.GET,
-            createEntity(), type);
+    ResponseEntity<P> response = runWithTokenRetry(() -> restTemplate.exchange(
+        createUri(url, parameters), HttpMethod.GET, createEntity(), type));
 
     return response.getBody();
   }
@@ -0,0 +1,102 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.notification.service.referencedata;
+
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a local snapshot of the feature flags from referencedata, so checking a flag does not
+ * make a remote call. The snapshot is replaced in the background on a fixed interval and reads
+ * keep using the previous snapshot until the new one is loaded. If referencedata can't be
+ * reached, the last snapshot stays in use. Before any snapshot was loaded, all features are
+ * reported as disabled.
+ */
+@Component
+public class TogglzFeatureCache implements PublicMetrics {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TogglzFeatureCache.class);
+  private static final String METRIC_PREFIX = "togglz.cache.";
+
+  @Autowired
+  private TogglzReferenceDataService togglzReferenceDataService;
+
+  private volatile Map<String, Boolean> features;
+  private volatile long loadedAt;
+  private final AtomicBoolean firstLoadAttempted = new AtomicBoolean();
+  private final AtomicLong refreshFailures = new AtomicLong();
+
+  /**
+   * Checks whether the feature with the given name is enabled in the current snapshot. If no
+   * snapshot was loaded yet, the first caller loads it.
+   */
+  public boolean isEnabled(String name) {
+    if (null == features && firstLoadAttempted.compareAndSet(false, true)) {
+      refresh();
+    }
+
+    Map<String, Boolean> snapshot = features;
+    return null != snapshot && snapshot.getOrDefault(name, false);
+  }
+
+  /**
+   * Loads a new snapshot of the feature flags. A failure is logged and the previous snapshot
+   * is kept.
+   */
+  @Scheduled(fixedDelayString = "${togglz.refreshInterval}")
+  public void refresh() {
+    try {
+      features = Collections.unmodifiableMap(togglzReferenceDataService
+          .findAll()
+          .stream()
+          .filter(feature -> null != feature.getName())
+          .collect(Collectors.toMap(TogglzFeatureDto::getName, TogglzFeatureDto::isEnabled,
+              (first, second) -> second)));
+      loadedAt = System.currentTimeMillis();
+    } catch (RuntimeException exp) {
+      refreshFailures.incrementAndGet();
+      LOGGER.warn("Could not refresh feature flags, the previous snapshot is kept", exp);
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+    Map<String, Boolean> snapshot = features;
+
+    metrics.add(new Metric<>(METRIC_PREFIX + "size", null == snapshot ? 0 : snapshot.size()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "age",
+        null == snapshot ? -1 : System.currentTimeMillis() - loadedAt));
+    metrics.add(new Metric<>(METRIC_PREFIX + "refreshFailures", refreshFailures.get()));
+
+    return metrics;
+  }
+
+}
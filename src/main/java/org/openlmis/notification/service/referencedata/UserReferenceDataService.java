@@ -15,14 +15,59 @@
 
 package org.openlmis.notification.service.referencedata;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
 import org.openlmis.notification.service.ResultDto;
 import org.openlmis.notification.service.request.RequestParameters;
 import org.openlmis.notification.util.BooleanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Service;
 
+/**
+ * Finds users in referencedata. Users found by id are cached for the configured time, so the
+ * current user and the recipients are not fetched on each request. Concurrent lookups of the
+ * same user that is not cached wait for a single request. Users that do not exist are cached
+ * as well, while failed lookups are not.
+ */
 @Service
-public class UserReferenceDataService extends BaseReferenceDataService<UserDto> {
+public class UserReferenceDataService extends BaseReferenceDataService<UserDto>
+    implements PublicMetrics {
+
+  private static final String METRIC_PREFIX = "referencedata.users.cache.";
+
+  @Value("${referencedata.users.cacheSize}")
+  private long cacheSize;
+
+  @Value("${referencedata.users.cacheTtl}")
+  private long cacheTtl;
+
+  private LoadingCache<UUID, Optional<UserDto>> cache;
+
+  /**
+   * Creates the cache of users found by id.
+   */
+  @PostConstruct
+  public void initialize() {
+    cache = CacheBuilder
+        .newBuilder()
+        .maximumSize(cacheSize)
+        .expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build(CacheLoader.from(id -> Optional.ofNullable(super.findOne(id))));
+  }
 
   @Override
   protected String getUrl() {
@@ -39,6 +84,40 @@ public class UserReferenceDataService extends BaseReferenceDataService<UserDto>
     return UserDto[].class;
   }
 
+  /**
+   * Returns the user with the given id from the cache, or finds it in referencedata if it is
+   * not cached.
+   *
+   * @param id id of the user to find
+   * @return the user or {@code null} if it does not exist
+   */
+  @Override
+  public UserDto findOne(UUID id) {
+    try {
+      return cache.getUnchecked(id).orElse(null);
+    } catch (UncheckedExecutionException exp) {
+      // the loader does not throw checked exceptions, so the original one can be rethrown
+      Throwables.throwIfUnchecked(exp.getCause());
+      throw exp;
+    }
+  }
+
+  /**
+   * Finds users with the given ids in a single request (or a few, if the ids do not fit into
+   * one URL). Users that do not exist are not returned.
+   *
+   * @param ids ids of users to find
+   * @return a list of found users
+   */
+  public List<UserDto> findByIds(Collection<UUID> ids) {
+    RequestParameters parameters = RequestParameters
+        .init()
+        .set("id", ids)
+        .set("size", ids.size());
+
+    return getPage("", parameters).getContent();
+  }
+
   /**
    * Check if user has a right with certain criteria.
    *
@@ -56,4 +135,18 @@ public class UserReferenceDataService extends BaseReferenceDataService<UserDto>
 
     return new ResultDto<>(BooleanUtils.toBoolean(result.getResult()));
   }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    CacheStats stats = cache.stats();
+    List<Metric<?>> metrics = Lists.newArrayList();
+    metrics.add(new Metric<>(METRIC_PREFIX + "size", cache.size()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "hits", stats.hitCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "misses", stats.missCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "evictions", stats.evictionCount()));
+    metrics.add(new Metric<>(METRIC_PREFIX + "loadFailures", stats.loadExceptionCount()));
+
+    return metrics;
+  }
+
 }
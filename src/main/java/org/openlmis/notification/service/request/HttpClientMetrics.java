@@ -0,0 +1,120 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service.request;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records the latency and errors of outbound HTTP requests per host, and exposes them together
+ * with the state of the connection pool of each host.
+ */
+@Component
+public class HttpClientMetrics implements ClientHttpRequestInterceptor, PublicMetrics {
+
+  private static final String METRIC_PREFIX = "http.client.";
+
+  @Autowired
+  private PoolingHttpClientConnectionManager connectionManager;
+
+  private final Map<String, HostStats> hosts = new ConcurrentHashMap<>();
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+      ClientHttpRequestExecution execution) throws IOException {
+    HostStats stats = hosts.computeIfAbsent(request.getURI().getHost(), host -> new HostStats());
+    long start = System.nanoTime();
+    boolean failed = true;
+
+    try {
+      ClientHttpResponse response = execution.execute(request, body);
+      failed = response.getStatusCode().is5xxServerError();
+
+      return response;
+    } finally {
+      stats.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed);
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = Lists.newArrayList();
+
+    hosts.forEach((host, stats) -> {
+      String prefix = METRIC_PREFIX + host + '.';
+      long requests = stats.requests.get();
+
+      metrics.add(new Metric<>(prefix + "requests", requests));
+      metrics.add(new Metric<>(prefix + "errors", stats.errors.get()));
+      metrics.add(new Metric<>(prefix + "latency.mean",
+          requests == 0 ? 0 : stats.totalLatency.get() / requests));
+      metrics.add(new Metric<>(prefix + "latency.max", stats.maxLatency.get()));
+    });
+
+    for (HttpRoute route : connectionManager.getRoutes()) {
+      addPoolMetrics(metrics, METRIC_PREFIX + route.getTargetHost().getHostName() + ".pool.",
+          connectionManager.getStats(route));
+    }
+
+    addPoolMetrics(metrics, METRIC_PREFIX + "pool.", connectionManager.getTotalStats());
+
+    return metrics;
+  }
+
+  private void addPoolMetrics(List<Metric<?>> metrics, String prefix, PoolStats stats) {
+    metrics.add(new Metric<>(prefix + "leased", stats.getLeased()));
+    metrics.add(new Metric<>(prefix + "available", stats.getAvailable()));
+    metrics.add(new Metric<>(prefix + "pending", stats.getPending()));
+    metrics.add(new Metric<>(prefix + "max", stats.getMax()));
+  }
+
+  private static final class HostStats {
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    void record(long latency, boolean failed) {
+      requests.incrementAndGet();
+      totalLatency.addAndGet(latency);
+      maxLatency.accumulateAndGet(latency, Math::max);
+
+      if (failed) {
+        errors.incrementAndGet();
+      }
+    }
+
+  }
+
+}
@@ -60,6 +60,19 @@ public class AuthenticationHelper {
     return user;
   }
 
+  /**
+   * Returns the id of the current user, or the client id if the request was made with a
+   * service-level token.
+   */
+  public String getCurrentCallerId() {
+    OAuth2Authentication authentication =
+        (OAuth2Authentication) SecurityContextHolder.getContext().getAuthentication();
+
+    return authentication.isClientOnly()
+        ? authentication.getOAuth2Request().getClientId()
+        : authentication.getPrincipal().toString();
+  }
+
   /**
    * Method returns a correct right and fetches his data from reference-data service.
    *
@@ -26,6 +26,8 @@ import java.util.Map;
 import javax.persistence.PersistenceException;
 import org.hibernate.exception.ConstraintViolationException;
 import org.openlmis.notification.i18n.Message;
+import org.openlmis.notification.service.CircuitBreakerOpenException;
+import org.openlmis.notification.service.IdempotencyKeyReusedException;
 import org.openlmis.notification.service.ServerException;
 import org.openlmis.notification.web.MissingPermissionException;
 import org.openlmis.notification.web.NotFoundException;
@@ -142,6 +144,35 @@ public class WebErrorHandling extends AbstractErrorHandling {
     return getLocalizedMessage(dive.getMessage());
   }
 
+  /**
+   * Handles the {@link CircuitBreakerOpenException} which signals that a required service is
+   * temporarily unavailable.
+   *
+   * @return the localized message
+   */
+  @ExceptionHandler(CircuitBreakerOpenException.class)
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  @ResponseBody
+  public Message.LocalizedMessage handleCircuitBreakerOpenException(
+      CircuitBreakerOpenException ex) {
+    logger.warn(ex.getMessage());
+    return getLocalizedMessage(ex.asMessage());
+  }
+
+  /**
+   * Handles the {@link IdempotencyKeyReusedException} which signals that an idempotency key was
+   * used again for a different request.
+   *
+   * @return the localized message
+   */
+  @ExceptionHandler(IdempotencyKeyReusedException.class)
+  @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+  @ResponseBody
+  public Message.LocalizedMessage handleIdempotencyKeyReusedException(
+      IdempotencyKeyReusedException ex) {
+    return getLocalizedMessage(ex.asMessage());
+  }
+
   @ExceptionHandler(ServerException.class)
   @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
   @ResponseBody
@@ -0,0 +1,54 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.web.failednotification;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.openlmis.notification.domain.FailedNotification;
+import org.openlmis.notification.service.NotificationChannel;
+import org.openlmis.notification.web.BaseDto;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public final class FailedNotificationDto extends BaseDto implements FailedNotification.Exporter {
+  private UUID notificationId;
+  private UUID recipientId;
+  private NotificationChannel channel;
+  private int attempts;
+  private String lastError;
+  private ZonedDateTime createdDate;
+  private ZonedDateTime failedDate;
+
+  /**
+   * Creates new instance based on domain object.
+   */
+  public static FailedNotificationDto newInstance(FailedNotification domain) {
+    FailedNotificationDto dto = new FailedNotificationDto();
+    domain.export(dto);
+
+    return dto;
+  }
+}
@@ -17,6 +17,7 @@ package org.openlmis.notification.web.notification;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import java.util.UUID;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -35,4 +36,9 @@ public final class MessageDto {
   private String subject;
   private String body;
   private String tag;
+  private UUID templateId;
+
+  public MessageDto(String subject, String body, String tag) {
+    this(subject, body, tag, null);
+  }
 }
@@ -15,22 +15,40 @@
 
 package org.openlmis.notification.web.notification;
 
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_IDEMPOTENCY_KEY_TOO_LONG;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_NULL;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_RECIPIENT_IDS_IN_BULK;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_TOO_MANY;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_TOO_MANY_RECIPIENTS;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_USER_CONTACT_DETAILS_NOT_FOUND;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_USER_NOT_ACTIVE_OR_NOT_FOUND;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.apache.commons.collections.MapUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.openlmis.notification.domain.Notification;
-import org.openlmis.notification.domain.PendingNotification;
 import org.openlmis.notification.domain.UserContactDetails;
+import org.openlmis.notification.i18n.Message;
+import org.openlmis.notification.i18n.MessageService;
 import org.openlmis.notification.repository.NotificationRepository;
-import org.openlmis.notification.repository.PendingNotificationRepository;
 import org.openlmis.notification.repository.UserContactDetailsRepository;
+import org.openlmis.notification.service.IdempotencyKeyService;
+import org.openlmis.notification.service.NotificationTemplateService;
+import org.openlmis.notification.service.PendingNotificationService;
 import org.openlmis.notification.service.PermissionService;
 import org.openlmis.notification.service.referencedata.UserDto;
 import org.openlmis.notification.service.referencedata.UserReferenceDataService;
+import org.openlmis.notification.util.AuthenticationHelper;
 import org.openlmis.notification.util.Pagination;
 import org.openlmis.notification.web.NotFoundException;
 import org.openlmis.notification.web.ValidationException;
@@ -38,10 +56,14 @@ import org.slf4j.ext.XLogger;
 import org.slf4j.ext.XLoggerFactory;
 import org.slf4j.profiler.Profiler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.CollectionUtils;
 import org.springframework.util.MultiValueMap;
+import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.validation.annotation.Validated;
@@ -50,6 +72,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -61,6 +84,9 @@ public class NotificationController {
 
   private static final XLogger XLOGGER = XLoggerFactory.getXLogger(NotificationController.class);
 
+  static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+  private static final int IDEMPOTENCY_KEY_MAX_LENGTH = 255;
+
   @Autowired
   private NotificationDtoValidator notificationValidator;
 
@@ -77,9 +103,27 @@ public class NotificationController {
   private NotificationRepository notificationRepository;
 
   @Autowired
-  private PendingNotificationRepository pendingNotificationRepository;
+  private PendingNotificationService pendingNotificationService;
+
+  @Autowired
+  private IdempotencyKeyService idempotencyKeyService;
+
+  @Autowired
+  private AuthenticationHelper authenticationHelper;
+
+  @Autowired
+  private MessageService messageService;
 
-  @InitBinder
+  @Autowired
+  private NotificationTemplateService notificationTemplateService;
+
+  @Value("${notifications.bulk.maxSize}")
+  private int bulkMaxSize;
+
+  @Value("${notifications.recipients.maxSize}")
+  private int recipientsMaxSize;
+
+  @InitBinder("notificationDto")
   private void initBinder(WebDataBinder binder) {
     binder.setValidator(notificationValidator);
   }
@@ -87,13 +131,34 @@ public class NotificationController {
   /**
    * Send an email notification.
    *
+   * <p>In the asynchronous mode only the request is validated before the notification is saved.
+   * Whether the user exists and is active is checked when the notification is sent, so the
+   * caller does not wait for the reference data service. The response then has the 202 status
+   * and contains the id of the saved notification.
+   *
+   * <p>Messages of channels the user can't receive, like an email to an address that is not
+   * verified or an SMS to a user without a phone number, are saved but not queued for sending.
+   * These channels are listed in the response.
+   *
+   * <p>A notification with the list of recipient ids instead of the user id is stored once and
+   * sent to each of the recipients in the background. Such notifications are always accepted in
+   * the asynchronous mode.
+   *
+   * <p>A request with the Idempotency-Key header is saved only once. If the caller already sent
+   * a request with the same key and body, the notification is not saved again and the response
+   * refers to the notification saved for the first request. A key that the caller already used
+   * for a different body is rejected.
+   *
    * @param notificationDto details of the message
+   * @param async whether the notification should be accepted without checking the user
+   * @param idempotencyKey the key that identifies repeated requests
    */
   @PostMapping("/notifications")
-  @ResponseStatus(HttpStatus.OK)
-  public void sendNotification(@RequestBody @Validated NotificationDto notificationDto,
-      BindingResult bindingResult) {
-    XLOGGER.entry(notificationDto);
+  public ResponseEntity<NotificationResultDto> sendNotification(
+      @RequestBody @Validated NotificationDto notificationDto, BindingResult bindingResult,
+      @RequestParam(value = "async", defaultValue = "false") boolean async,
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+    XLOGGER.entry(notificationDto, async, idempotencyKey);
     Profiler profiler = new Profiler("SEND_NOTIFICATION");
     profiler.setLogger(XLOGGER);
 
@@ -105,37 +170,122 @@ public class NotificationController {
       throw new ValidationException(fieldError.getDefaultMessage(), fieldError.getField());
     }
 
-    profiler.start("FIND_USER_CONTACT_DETAILS_BY_ID");
-    UserContactDetails contactDetails = userContactDetailsRepository
-        .findOne(notificationDto.getUserId());
+    if (StringUtils.length(idempotencyKey) > IDEMPOTENCY_KEY_MAX_LENGTH) {
+      throw new ValidationException(ERROR_IDEMPOTENCY_KEY_TOO_LONG,
+          String.valueOf(IDEMPOTENCY_KEY_MAX_LENGTH));
+    }
+
+    profiler.start("CHECK_TEMPLATES");
+    UUID missingTemplateId = findMissingTemplateId(notificationDto);
 
-    if (null == contactDetails) {
-      throw new NotFoundException(ERROR_USER_CONTACT_DETAILS_NOT_FOUND);
+    if (null != missingTemplateId) {
+      throw new ValidationException(ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND,
+          missingTemplateId.toString());
     }
 
-    profiler.start("FIND_USER_BY_ID");
-    UserDto user = userReferenceDataService.findOne(contactDetails.getReferenceDataUserId());
-    if (null == user || !user.isActive()) {
-      throw new ValidationException(ERROR_USER_NOT_ACTIVE_OR_NOT_FOUND);
+    boolean manyRecipients = !CollectionUtils.isEmpty(notificationDto.getRecipientIds());
+
+    profiler.start("FIND_NOTIFICATION_BY_IDEMPOTENCY_KEY");
+    String caller = null == idempotencyKey ? null : authenticationHelper.getCurrentCallerId();
+    UUID notificationId = idempotencyKeyService
+        .findNotificationId(caller, idempotencyKey, notificationDto);
+
+    NotificationResultDto result;
+
+    if (null != notificationId) {
+      result = NotificationResultDto.accepted(notificationDto.getUserId(), notificationId);
+    } else if (manyRecipients) {
+      result = NotificationResultDto.accepted(notificationDto.getUserId(),
+          sendToRecipients(notificationDto, caller, idempotencyKey, profiler));
+    } else {
+      result = sendToUser(notificationDto, async, caller, idempotencyKey, profiler);
     }
 
-    profiler.start("IMPORT_FROM_DTO");
-    Notification notification = Notification.newInstance(notificationDto);
+    ResponseEntity<NotificationResultDto> response = new ResponseEntity<>(result,
+        async || manyRecipients ? HttpStatus.ACCEPTED : HttpStatus.OK);
 
-    profiler.start("SAVE_NOTIFICATION");
-    notificationRepository.saveAndFlush(notification);
+    profiler.stop().log();
+    XLOGGER.exit(response.getStatusCode());
+    return response;
+  }
 
-    profiler.start("ADD_NOTIFICATION_TO_SENDING_QUEUE");
-    Set<PendingNotification> pendingNotifications = notification
-        .getMessages()
+  /**
+   * Send many notifications at once. All users are resolved with a single query and all
+   * notifications are saved in one transaction, with inserts sent to the database in JDBC
+   * batches. Invalid notifications do not stop the rest from being sent; the result of each
+   * notification is returned in the same order as the request. Messages of channels the user
+   * can't receive are not queued and are listed in the result.
+   *
+   * @param notificationDtos details of the messages
+   * @return the result of each notification
+   */
+  @PostMapping("/notifications/bulk")
+  @ResponseStatus(HttpStatus.OK)
+  public List<NotificationResultDto> sendNotifications(
+      @RequestBody List<NotificationDto> notificationDtos) {
+    XLOGGER.entry(notificationDtos.size());
+    Profiler profiler = new Profiler("SEND_NOTIFICATIONS");
+    profiler.setLogger(XLOGGER);
+
+    profiler.start("CHECK_PERMISSION");
+    permissionService.canSendNotification();
+
+    if (notificationDtos.size() > bulkMaxSize) {
+      throw new ValidationException(ERROR_NOTIFICATION_REQUEST_TOO_MANY,
+          String.valueOf(notificationDtos.size()), String.valueOf(bulkMaxSize));
+    }
+
+    profiler.start("VALIDATE");
+    List<NotificationResultDto> results = new ArrayList<>(notificationDtos.size());
+    notificationDtos.forEach(dto -> results.add(validate(dto)));
+
+    profiler.start("FIND_USER_CONTACT_DETAILS_BY_IDS");
+    Map<UUID, UserContactDetails> contactDetails = userContactDetailsRepository
+        .findAll(getUserIdsToSend(results))
         .stream()
-        .map(message -> new PendingNotification(notification, message.getChannel()))
-        .collect(Collectors.toSet());
+        .collect(Collectors.toMap(UserContactDetails::getReferenceDataUserId,
+            Function.identity()));
+
+    results.stream()
+        .filter(result -> null == result.getError())
+        .filter(result -> !contactDetails.containsKey(result.getUserId()))
+        .forEach(result -> result.setError(localize(ERROR_USER_CONTACT_DETAILS_NOT_FOUND)));
+
+    profiler.start("FIND_USERS_BY_IDS");
+    Map<UUID, UserDto> users = findUsers(getUserIdsToSend(results));
+
+    results.stream()
+        .filter(result -> null == result.getError())
+        .filter(result -> !isActive(users.get(result.getUserId())))
+        .forEach(result -> result.setError(localize(ERROR_USER_NOT_ACTIVE_OR_NOT_FOUND)));
 
-    pendingNotificationRepository.save(pendingNotifications);
+    profiler.start("IMPORT_FROM_DTOS");
+    List<NotificationResultDto> accepted = new ArrayList<>();
+    List<Notification> notifications = new ArrayList<>();
+
+    for (int i = 0; i < notificationDtos.size(); ++i) {
+      NotificationResultDto result = results.get(i);
+
+      if (null == result.getError()) {
+        Notification notification = Notification.newInstance(notificationDtos.get(i));
+        result.setSkippedChannels(notification
+            .getUndeliverableChannels(contactDetails.get(result.getUserId())));
+
+        accepted.add(result);
+        notifications.add(notification);
+      }
+    }
+
+    profiler.start("ADD_NOTIFICATIONS_TO_SENDING_QUEUE");
+    pendingNotificationService.enqueue(notifications, contactDetails);
+
+    for (int i = 0; i < notifications.size(); ++i) {
+      accepted.get(i).setNotificationId(notifications.get(i).getId());
+    }
 
     profiler.stop().log();
-    XLOGGER.exit();
+    XLOGGER.exit(notifications.size());
+    return results;
   }
 
   /**
@@ -175,6 +325,137 @@ public class NotificationController {
     return notificationDtosPage;
   }
 
+  private NotificationResultDto sendToUser(NotificationDto notificationDto, boolean async,
+      String caller, String idempotencyKey, Profiler profiler) {
+    profiler.start("FIND_USER_CONTACT_DETAILS_BY_ID");
+    UserContactDetails contactDetails = userContactDetailsRepository
+        .findOne(notificationDto.getUserId());
+
+    if (!async) {
+      if (null == contactDetails) {
+        throw new NotFoundException(ERROR_USER_CONTACT_DETAILS_NOT_FOUND);
+      }
+
+      profiler.start("FIND_USER_BY_ID");
+      UserDto user = userReferenceDataService.findOne(contactDetails.getReferenceDataUserId());
+      if (null == user || !user.isActive()) {
+        throw new ValidationException(ERROR_USER_NOT_ACTIVE_OR_NOT_FOUND);
+      }
+    }
+
+    profiler.start("IMPORT_FROM_DTO");
+    Notification notification = Notification.newInstance(notificationDto);
+
+    if (async) {
+      notification.deferRecipientVerification();
+    }
+
+    Map<UUID, UserContactDetails> contactDetailsById = null == contactDetails
+        ? Collections.emptyMap()
+        : Collections.singletonMap(notificationDto.getUserId(), contactDetails);
+
+    profiler.start("ADD_NOTIFICATION_TO_SENDING_QUEUE");
+    UUID notificationId = idempotencyKeyService.saveOnce(caller, idempotencyKey,
+        notificationDto, notification, saved -> pendingNotificationService
+            .enqueue(Collections.singletonList(saved), contactDetailsById));
+
+    NotificationResultDto result = NotificationResultDto
+        .accepted(notificationDto.getUserId(), notificationId);
+    result.setSkippedChannels(notification.getUndeliverableChannels(contactDetails));
+
+    return result;
+  }
+
+  private UUID sendToRecipients(NotificationDto notificationDto, String caller,
+      String idempotencyKey, Profiler profiler) {
+    Set<UUID> recipientIds = notificationDto.getRecipientIds();
+
+    if (recipientIds.size() > recipientsMaxSize) {
+      throw new ValidationException(ERROR_NOTIFICATION_REQUEST_TOO_MANY_RECIPIENTS,
+          String.valueOf(recipientIds.size()), String.valueOf(recipientsMaxSize));
+    }
+
+    profiler.start("IMPORT_FROM_DTO");
+    Notification notification = Notification.newInstance(notificationDto);
+    notification.deferRecipientVerification();
+
+    profiler.start("ADD_NOTIFICATION_TO_SENDING_QUEUE");
+    return idempotencyKeyService.saveOnce(caller, idempotencyKey, notificationDto, notification,
+        saved -> pendingNotificationService.enqueue(saved, recipientIds));
+  }
+
+  private NotificationResultDto validate(NotificationDto notificationDto) {
+    if (null == notificationDto) {
+      return NotificationResultDto.rejected(null, localize(ERROR_NOTIFICATION_REQUEST_NULL));
+    }
+
+    BindingResult bindingResult = new BeanPropertyBindingResult(notificationDto,
+        "notificationDto");
+    notificationValidator.validate(notificationDto, bindingResult);
+
+    if (bindingResult.getErrorCount() > 0) {
+      FieldError fieldError = bindingResult.getFieldError();
+      return NotificationResultDto.rejected(notificationDto.getUserId(),
+          messageService.localize(
+              new Message(fieldError.getDefaultMessage(), fieldError.getField())));
+    }
+
+    if (!CollectionUtils.isEmpty(notificationDto.getRecipientIds())) {
+      return NotificationResultDto.rejected(null,
+          localize(ERROR_NOTIFICATION_REQUEST_RECIPIENT_IDS_IN_BULK));
+    }
+
+    UUID missingTemplateId = findMissingTemplateId(notificationDto);
+
+    if (null != missingTemplateId) {
+      return NotificationResultDto.rejected(notificationDto.getUserId(),
+          messageService.localize(
+              new Message(ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND, missingTemplateId.toString())));
+    }
+
+    return NotificationResultDto.accepted(notificationDto.getUserId(), null);
+  }
+
+  private UUID findMissingTemplateId(NotificationDto notificationDto) {
+    return notificationDto
+        .getMessageMap()
+        .values()
+        .stream()
+        .filter(Objects::nonNull)
+        .map(MessageDto::getTemplateId)
+        .filter(Objects::nonNull)
+        .filter(templateId -> !notificationTemplateService.exists(templateId))
+        .findFirst()
+        .orElse(null);
+  }
+
+  private Set<UUID> getUserIdsToSend(List<NotificationResultDto> results) {
+    return results
+        .stream()
+        .filter(result -> null == result.getError())
+        .map(NotificationResultDto::getUserId)
+        .collect(Collectors.toSet());
+  }
+
+  private Map<UUID, UserDto> findUsers(Set<UUID> ids) {
+    if (ids.isEmpty()) {
+      return new HashMap<>();
+    }
+
+    return userReferenceDataService
+        .findByIds(ids)
+        .stream()
+        .collect(Collectors.toMap(UserDto::getId, Function.identity()));
+  }
+
+  private boolean isActive(UserDto user) {
+    return null != user && user.isActive();
+  }
+
+  private Message.LocalizedMessage localize(String messageKey) {
+    return messageService.localize(new Message(messageKey));
+  }
+
   private NotificationDto exportToDto(Notification notification) {
     NotificationDto dto = new NotificationDto();
     notification.export(dto);
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
@@ -31,6 +32,7 @@ import lombok.Setter;
 import lombok.ToString;
 import org.openlmis.notification.domain.Notification;
 import org.openlmis.notification.domain.NotificationMessage;
+import org.openlmis.notification.domain.NotificationPriority;
 import org.openlmis.notification.service.NotificationChannel;
 
 @Getter
@@ -43,12 +45,18 @@ public final class NotificationDto implements Notification.Exporter, Notificatio
 
   private UUID userId;
 
+  private Set<UUID> recipientIds;
+
   @JsonProperty("messages")
   private Map<String, MessageDto> messageMap = new HashMap<>();
 
   private Boolean important;
 
+  private NotificationPriority priority;
+
   private ZonedDateTime createdDate;
+
+  private Map<String, String> parameters;
   
   public void addMessage(String key, MessageDto message) {
     messageMap.put(key, message);
@@ -59,7 +67,7 @@ public final class NotificationDto implements Notification.Exporter, Notificatio
     this.messageMap = new HashMap<>();
     for (NotificationMessage message : messages) {
       MessageDto messageDto = new MessageDto(message.getSubject(),
-          message.getBody(), message.getTag());
+          message.getBody(), message.getTag(), message.getTemplateId());
       this.messageMap.put(message.getChannel().toString().toLowerCase(), messageDto);
     }
   }
@@ -72,7 +80,8 @@ public final class NotificationDto implements Notification.Exporter, Notificatio
       String key = entry.getKey();
       MessageDto messageDto = entry.getValue();
       messageList.add(new NotificationMessage(NotificationChannel.fromString(key),
-          messageDto.getBody(), messageDto.getSubject(), messageDto.getTag()));
+          messageDto.getBody(), messageDto.getSubject(), messageDto.getTag(),
+          messageDto.getTemplateId()));
     }
     return messageList;
   }
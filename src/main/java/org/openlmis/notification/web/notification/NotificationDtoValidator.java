@@ -19,6 +19,7 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_MESSAGES_EMPTY;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_NULL;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_USER_ID_AND_RECIPIENT_IDS;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_UNSUPPORTED_NOTIFICATION_CHANNEL;
 
 import java.util.Map;
@@ -31,6 +32,7 @@ import org.springframework.validation.Errors;
 @Component
 public class NotificationDtoValidator implements BaseValidator {
 
+  private static final String FIELD_NAME_USER_ID = "userId";
   private static final String FIELD_NAME_MESSAGES = "messages";
   
   @Override
@@ -41,11 +43,17 @@ public class NotificationDtoValidator implements BaseValidator {
   @Override
   public void validate(Object target, Errors errors) {
     verifyArguments(target, errors, ERROR_NOTIFICATION_REQUEST_NULL);
-    rejectIfEmptyOrWhitespace(errors, "userId", ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED);
+    NotificationDto dto = (NotificationDto) target;
 
-    if (!errors.hasErrors()) {
-      NotificationDto dto = (NotificationDto) target;
+    if (CollectionUtils.isEmpty(dto.getRecipientIds())) {
+      rejectIfEmptyOrWhitespace(errors, FIELD_NAME_USER_ID,
+          ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED);
+    } else if (null != dto.getUserId()) {
+      rejectValue(errors, FIELD_NAME_USER_ID,
+          ERROR_NOTIFICATION_REQUEST_USER_ID_AND_RECIPIENT_IDS);
+    }
 
+    if (!errors.hasErrors()) {
       if (CollectionUtils.isEmpty(dto.getMessageMap())) {
         rejectValue(errors, FIELD_NAME_MESSAGES, ERROR_NOTIFICATION_REQUEST_MESSAGES_EMPTY);
       } else {
@@ -62,7 +70,7 @@ public class NotificationDtoValidator implements BaseValidator {
         errors.rejectValue(FIELD_NAME_MESSAGES, ERROR_UNSUPPORTED_NOTIFICATION_CHANNEL,
             new String[]{key}, ERROR_UNSUPPORTED_NOTIFICATION_CHANNEL);
       }
-      if (isBlank(message.getBody())) {
+      if (null == message.getTemplateId() && isBlank(message.getBody())) {
         rejectValue(errors, FIELD_NAME_MESSAGES, ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED);
       }
     }
@@ -0,0 +1,66 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.web.notification;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Set;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.openlmis.notification.i18n.Message.LocalizedMessage;
+import org.openlmis.notification.service.NotificationChannel;
+import org.springframework.util.CollectionUtils;
+
+/**
+ * Result of a single notification. Either the id of the saved notification or the reason why it
+ * was rejected is set. Channels whose messages can't be delivered to the user are listed in the
+ * skipped channels; these messages are saved, but they are not sent.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class NotificationResultDto {
+
+  private UUID userId;
+
+  private UUID notificationId;
+
+  private LocalizedMessage error;
+
+  private Set<NotificationChannel> skippedChannels;
+
+  static NotificationResultDto accepted(UUID userId, UUID notificationId) {
+    return new NotificationResultDto(userId, notificationId, null, null);
+  }
+
+  static NotificationResultDto rejected(UUID userId, LocalizedMessage error) {
+    return new NotificationResultDto(userId, null, error, null);
+  }
+
+  /**
+   * Sets the channels whose messages were not queued. An empty set is not shown in the response.
+   */
+  void setSkippedChannels(Set<NotificationChannel> skippedChannels) {
+    this.skippedChannels = CollectionUtils.isEmpty(skippedChannels) ? null : skippedChannels;
+  }
+
+}
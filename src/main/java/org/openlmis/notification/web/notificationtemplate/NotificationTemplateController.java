@@ -0,0 +1,118 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.web.notificationtemplate;
+
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_TEMPLATE_FIELD_REQUIRED;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND;
+import static org.openlmis.notification.web.BaseController.API_PREFIX;
+import static org.openlmis.notification.web.notificationtemplate.NotificationTemplateController.RESOURCE_URL;
+
+import java.util.UUID;
+import org.apache.commons.lang3.StringUtils;
+import org.openlmis.notification.domain.NotificationTemplate;
+import org.openlmis.notification.repository.NotificationTemplateRepository;
+import org.openlmis.notification.service.NotificationTemplateService;
+import org.openlmis.notification.service.PermissionService;
+import org.openlmis.notification.web.BaseController;
+import org.openlmis.notification.web.NotFoundException;
+import org.openlmis.notification.web.ValidationException;
+import org.slf4j.profiler.Profiler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping(RESOURCE_URL)
+public class NotificationTemplateController extends BaseController {
+
+  public static final String RESOURCE_URL = API_PREFIX + "/notificationTemplates";
+
+  @Autowired
+  private NotificationTemplateRepository notificationTemplateRepository;
+
+  @Autowired
+  private NotificationTemplateService notificationTemplateService;
+
+  @Autowired
+  private PermissionService permissionService;
+
+  /**
+   * Creates a new notification template. Templates can't be changed later, so notifications
+   * that refer to a template are always sent with the text they were created with.
+   */
+  @PostMapping
+  @ResponseStatus(HttpStatus.CREATED)
+  public NotificationTemplateDto createNotificationTemplate(
+      @RequestBody NotificationTemplateDto dto) {
+    Profiler profiler = getProfiler("CREATE_NOTIFICATION_TEMPLATE", dto);
+
+    profiler.start("CHECK_PERMISSION");
+    permissionService.canSendNotification();
+
+    profiler.start("VALIDATE");
+    validateRequiredField(dto.getName(), "name", profiler);
+    validateRequiredField(dto.getBody(), "body", profiler);
+
+    profiler.start("CALL_DB");
+    NotificationTemplate template = notificationTemplateService
+        .create(NotificationTemplate.newInstance(dto));
+
+    profiler.start("CONVERT_TO_DTO");
+    NotificationTemplateDto created = NotificationTemplateDto.newInstance(template);
+
+    return stopProfilerAndReturnValue(profiler, created);
+  }
+
+  /**
+   * Gets single {@link NotificationTemplateDto} based on id.
+   */
+  @GetMapping("/{id}")
+  public NotificationTemplateDto getNotificationTemplate(@PathVariable("id") UUID id) {
+    Profiler profiler = getProfiler("GET_NOTIFICATION_TEMPLATE", id);
+
+    profiler.start("CHECK_PERMISSION");
+    permissionService.canSendNotification();
+
+    profiler.start("CALL_DB");
+    NotificationTemplate template = notificationTemplateRepository.findOne(id);
+
+    if (null == template) {
+      NotFoundException exception = new NotFoundException(ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND,
+          id.toString());
+      stopProfilerAndThrowException(profiler, exception);
+    }
+
+    profiler.start("CONVERT_TO_DTO");
+    NotificationTemplateDto dto = NotificationTemplateDto.newInstance(template);
+
+    return stopProfilerAndReturnValue(profiler, dto);
+  }
+
+  private void validateRequiredField(String value, String field, Profiler profiler) {
+    if (StringUtils.isBlank(value)) {
+      ValidationException exception = new ValidationException(
+          ERROR_NOTIFICATION_TEMPLATE_FIELD_REQUIRED, field);
+      stopProfilerAndThrowException(profiler, exception);
+    }
+  }
+
+}
@@ -0,0 +1,25 @@
+-- WHEN COMMITTING OR REVIEWING THIS FILE: Make sure that the timestamp in the file name (that serves as a version) is the latest timestamp, and that no new migration have been added in the meanwhile.
+-- Adding migrations out of order may cause this migration to never execute or behave in an unexpected way.
+-- Migrations should NOT BE EDITED. Add a new migration to apply changes.
+
+ALTER TABLE pending_notifications
+  ADD COLUMN attempts INTEGER NOT NULL DEFAULT 0,
+  ADD COLUMN nextAttemptDate timestamptz;
+
+CREATE TABLE failed_notifications (
+  id UUID PRIMARY KEY,
+  notificationId UUID NOT NULL,
+  channel VARCHAR(255) NOT NULL,
+  attempts INTEGER NOT NULL,
+  lastError text,
+  createdDate timestamptz NOT NULL,
+  failedDate timestamptz NOT NULL,
+  CONSTRAINT fKey_failed_notifications_notifications
+    FOREIGN KEY (notificationId)
+    REFERENCES notifications(id)
+);
+
+CREATE UNIQUE INDEX failed_notifications_unique_idx
+  ON failed_notifications (notificationId, channel);
+CREATE INDEX idx_failed_notifications_faileddate
+  ON failed_notifications (failedDate);
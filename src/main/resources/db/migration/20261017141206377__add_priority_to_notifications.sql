@@ -0,0 +1,21 @@
+-- WHEN COMMITTING OR REVIEWING THIS FILE: Make sure that the timestamp in the file name (that serves as a version) is the latest timestamp, and that no new migration have been added in the meanwhile.
+-- Adding migrations out of order may cause this migration to never execute or behave in an unexpected way.
+-- Migrations should NOT BE EDITED. Add a new migration to apply changes.
+
+ALTER TABLE notifications
+  ADD COLUMN priority VARCHAR(255) NOT NULL DEFAULT 'NORMAL';
+
+UPDATE notifications
+  SET priority = 'HIGH'
+  WHERE important = true;
+
+ALTER TABLE pending_notifications
+  ADD COLUMN priority VARCHAR(255) NOT NULL DEFAULT 'NORMAL';
+
+UPDATE pending_notifications AS p
+  SET priority = n.priority
+  FROM notifications AS n
+  WHERE n.id = p.notificationId;
+
+CREATE INDEX pending_notifications_priority_createddate_idx
+  ON pending_notifications (priority, createdDate);
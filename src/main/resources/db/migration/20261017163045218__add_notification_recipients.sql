@@ -0,0 +1,50 @@
+-- WHEN COMMITTING OR REVIEWING THIS FILE: Make sure that the timestamp in the file name (that serves as a version) is the latest timestamp, and that no new migration have been added in the meanwhile.
+-- Adding migrations out of order may cause this migration to never execute or behave in an unexpected way.
+-- Migrations should NOT BE EDITED. Add a new migration to apply changes.
+
+ALTER TABLE notifications ALTER COLUMN userId DROP NOT NULL;
+
+CREATE TABLE notification_recipients (
+  notificationId UUID NOT NULL,
+  userId UUID NOT NULL,
+  expanded BOOLEAN NOT NULL DEFAULT false,
+  CONSTRAINT pKey_notification_recipients
+    PRIMARY KEY (notificationId, userId),
+  CONSTRAINT fKey_notification_recipients_notifications
+    FOREIGN KEY (notificationId)
+    REFERENCES notifications(id)
+);
+
+CREATE INDEX notification_recipients_not_expanded_idx
+  ON notification_recipients (notificationId)
+  WHERE expanded = false;
+
+-- recipients are expanded into pending notifications by the same poller that claims them
+CREATE TRIGGER notification_recipients_notify
+  AFTER INSERT ON notification_recipients
+  FOR EACH STATEMENT
+  EXECUTE PROCEDURE notify_pending_notifications();
+
+ALTER TABLE pending_notifications ADD COLUMN recipientId UUID;
+UPDATE pending_notifications AS p
+  SET recipientId = n.userId
+  FROM notifications AS n
+  WHERE n.id = p.notificationId;
+ALTER TABLE pending_notifications ALTER COLUMN recipientId SET NOT NULL;
+
+DROP INDEX pending_notifications_unique_idx;
+ALTER TABLE pending_notifications
+  DROP CONSTRAINT pKey_pending_notifications,
+  ADD CONSTRAINT pKey_pending_notifications
+    PRIMARY KEY (notificationId, channel, recipientId);
+
+ALTER TABLE failed_notifications ADD COLUMN recipientId UUID;
+UPDATE failed_notifications AS f
+  SET recipientId = n.userId
+  FROM notifications AS n
+  WHERE n.id = f.notificationId;
+ALTER TABLE failed_notifications ALTER COLUMN recipientId SET NOT NULL;
+
+DROP INDEX failed_notifications_unique_idx;
+CREATE UNIQUE INDEX failed_notifications_unique_idx
+  ON failed_notifications (notificationId, channel, recipientId);
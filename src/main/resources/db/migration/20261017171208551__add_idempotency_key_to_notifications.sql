@@ -0,0 +1,12 @@
+-- WHEN COMMITTING OR REVIEWING THIS FILE: Make sure that the timestamp in the file name (that serves as a version) is the latest timestamp, and that no new migration have been added in the meanwhile.
+-- Adding migrations out of order may cause this migration to never execute or behave in an unexpected way.
+-- Migrations should NOT BE EDITED. Add a new migration to apply changes.
+
+ALTER TABLE notifications ADD COLUMN idempotencyKey VARCHAR(255);
+
+CREATE UNIQUE INDEX notifications_idempotencykey_unique_idx
+  ON notifications (idempotencyKey)
+  WHERE idempotencyKey IS NOT NULL;
+CREATE INDEX notifications_idempotencykey_createddate_idx
+  ON notifications (createdDate)
+  WHERE idempotencyKey IS NOT NULL;
@@ -0,0 +1,33 @@
+-- WHEN COMMITTING OR REVIEWING THIS FILE: Make sure that the timestamp in the file name (that serves as a version) is the latest timestamp, and that no new migration have been added in the meanwhile.
+-- Adding migrations out of order may cause this migration to never execute or behave in an unexpected way.
+-- Migrations should NOT BE EDITED. Add a new migration to apply changes.
+
+CREATE TABLE notification_templates (
+  id UUID NOT NULL,
+  name VARCHAR(255) NOT NULL,
+  subject TEXT,
+  body TEXT NOT NULL,
+  createdDate timestamptz NOT NULL,
+  CONSTRAINT pKey_notification_templates
+    PRIMARY KEY (id)
+);
+
+ALTER TABLE notification_messages
+  ALTER COLUMN body DROP NOT NULL,
+  ADD COLUMN templateId UUID,
+  ADD CONSTRAINT fKey_notification_messages_notification_templates
+    FOREIGN KEY (templateId)
+    REFERENCES notification_templates(id),
+  ADD CONSTRAINT chk_notification_messages_body_or_template
+    CHECK (body IS NOT NULL OR templateId IS NOT NULL);
+
+CREATE TABLE notification_parameters (
+  notificationId UUID NOT NULL,
+  name VARCHAR(255) NOT NULL,
+  value TEXT NOT NULL,
+  CONSTRAINT pKey_notification_parameters
+    PRIMARY KEY (notificationId, name),
+  CONSTRAINT fKey_notification_parameters_notifications
+    FOREIGN KEY (notificationId)
+    REFERENCES notifications(id)
+);
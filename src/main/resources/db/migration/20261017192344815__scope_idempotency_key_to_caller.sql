@@ -0,0 +1,14 @@
+-- WHEN COMMITTING OR REVIEWING THIS FILE: Make sure that the timestamp in the file name (that serves as a version) is the latest timestamp, and that no new migration have been added in the meanwhile.
+-- Adding migrations out of order may cause this migration to never execute or behave in an unexpected way.
+-- Migrations should NOT BE EDITED. Add a new migration to apply changes.
+
+ALTER TABLE notifications ADD COLUMN idempotencyCaller VARCHAR(255);
+ALTER TABLE notifications ADD COLUMN idempotencyPayloadHash VARCHAR(64);
+
+-- keys saved so far are not tied to a caller, so they can't be matched to repeated requests
+UPDATE notifications SET idempotencyKey = NULL WHERE idempotencyKey IS NOT NULL;
+
+DROP INDEX notifications_idempotencykey_unique_idx;
+CREATE UNIQUE INDEX notifications_idempotencycaller_idempotencykey_unique_idx
+  ON notifications (idempotencyCaller, idempotencyKey)
+  WHERE idempotencyKey IS NOT NULL;
@@ -0,0 +1,162 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.Maps;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import nl.jqno.equalsverifier.EqualsVerifier;
+import org.junit.Test;
+import org.openlmis.notification.service.NotificationChannel;
+import org.openlmis.notification.testutils.FailedNotificationDataBuilder;
+import org.openlmis.notification.testutils.PendingNotificationDataBuilder;
+import org.openlmis.notification.testutils.ToStringTestUtils;
+import org.openlmis.notification.util.NotificationDataBuilder;
+
+public class FailedNotificationTest {
+
+  private static final String ID = "id";
+  private static final String NOTIFICATION_ID = "notificationId";
+  private static final String RECIPIENT_ID = "recipientId";
+  private static final String CHANNEL = "channel";
+  private static final String ATTEMPTS = "attempts";
+  private static final String LAST_ERROR = "lastError";
+  private static final String CREATED_DATE = "createdDate";
+  private static final String FAILED_DATE = "failedDate";
+
+  @Test
+  public void shouldCreateInstanceBasedOnPendingNotification() {
+    // given
+    PendingNotification pending = new PendingNotificationDataBuilder()
+        .buildForEmailChannel(new NotificationDataBuilder().build());
+    pending.retryLater(ZonedDateTime.now());
+
+    // when
+    FailedNotification failed = FailedNotification.newInstance(pending, LAST_ERROR);
+
+    // then
+    assertThat(failed.getNotification()).isEqualTo(pending.getNotification());
+    assertThat(failed.getRecipientId()).isEqualTo(pending.getRecipientId());
+    assertThat(failed.getChannel()).isEqualTo(NotificationChannel.EMAIL);
+    assertThat(failed.getAttempts()).isEqualTo(2);
+    assertThat(failed.getLastError()).isEqualTo(LAST_ERROR);
+    assertThat(failed.getCreatedDate()).isEqualTo(pending.getCreatedDate());
+    assertThat(failed.getFailedDate()).isNotNull();
+  }
+
+  @Test
+  public void shouldCreatePendingNotificationWhenRequeued() {
+    // given
+    FailedNotification failed = new FailedNotificationDataBuilder().build();
+
+    // when
+    PendingNotification pending = failed.requeue();
+
+    // then
+    assertThat(pending.getNotification()).isEqualTo(failed.getNotification());
+    assertThat(pending.getChannel()).isEqualTo(failed.getChannel());
+    assertThat(pending.getRecipientId()).isEqualTo(failed.getRecipientId());
+    assertThat(pending.getAttempts()).isZero();
+    assertThat(pending.getStatus()).isEqualTo(PendingNotification.Status.PENDING);
+  }
+
+  @Test
+  public void shouldExportData() {
+    Map<String, Object> map = Maps.newHashMap();
+    DummyExporter exporter = new DummyExporter(map);
+
+    FailedNotification failed = new FailedNotificationDataBuilder().build();
+    failed.export(exporter);
+
+    assertThat(map)
+        .containsEntry(ID, failed.getId())
+        .containsEntry(NOTIFICATION_ID, failed.getNotification().getId())
+        .containsEntry(RECIPIENT_ID, failed.getRecipientId())
+        .containsEntry(CHANNEL, failed.getChannel())
+        .containsEntry(ATTEMPTS, failed.getAttempts())
+        .containsEntry(LAST_ERROR, failed.getLastError())
+        .containsEntry(CREATED_DATE, failed.getCreatedDate())
+        .containsEntry(FAILED_DATE, failed.getFailedDate());
+  }
+
+  @Test
+  public void equalsContract() {
+    Notification left = new NotificationDataBuilder().buildAsNew();
+    Notification right = new NotificationDataBuilder().build();
+
+    EqualsVerifier
+        .forClass(FailedNotification.class)
+        .withRedefinedSuperclass()
+        .withPrefabValues(Notification.class, left, right)
+        .verify();
+  }
+
+  @Test
+  public void shouldImplementToString() {
+    ToStringTestUtils.verify(FailedNotification.class, new FailedNotification(), "notification");
+  }
+
+  @AllArgsConstructor
+  private static final class DummyExporter implements FailedNotification.Exporter {
+
+    private Map<String, Object> map;
+
+    @Override
+    public void setId(UUID id) {
+      map.put(ID, id);
+    }
+
+    @Override
+    public void setNotificationId(UUID notificationId) {
+      map.put(NOTIFICATION_ID, notificationId);
+    }
+
+    @Override
+    public void setRecipientId(UUID recipientId) {
+      map.put(RECIPIENT_ID, recipientId);
+    }
+
+    @Override
+    public void setChannel(NotificationChannel channel) {
+      map.put(CHANNEL, channel);
+    }
+
+    @Override
+    public void setAttempts(int attempts) {
+      map.put(ATTEMPTS, attempts);
+    }
+
+    @Override
+    public void setLastError(String lastError) {
+      map.put(LAST_ERROR, lastError);
+    }
+
+    @Override
+    public void setCreatedDate(ZonedDateTime createdDate) {
+      map.put(CREATED_DATE, createdDate);
+    }
+
+    @Override
+    public void setFailedDate(ZonedDateTime failedDate) {
+      map.put(FAILED_DATE, failedDate);
+    }
+  }
+
+}
@@ -15,9 +15,15 @@
 
 package org.openlmis.notification.domain;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.UUID;
 import nl.jqno.equalsverifier.EqualsVerifier;
 import org.junit.Test;
 import org.openlmis.notification.service.NotificationChannel;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.openlmis.notification.util.UserContactDetailsDataBuilder;
 
 public class NotificationTest {
 
@@ -31,4 +37,49 @@ public class NotificationTest {
         .withRedefinedSuperclass()
         .verify();
   }
+
+  @Test
+  public void shouldUseHighPriorityForImportantNotificationByDefault() {
+    Notification notification = new Notification(UUID.randomUUID(), new ArrayList<>(), true);
+
+    assertThat(notification.getPriority()).isEqualTo(NotificationPriority.HIGH);
+  }
+
+  @Test
+  public void shouldUseNormalPriorityForOtherNotificationsByDefault() {
+    Notification notification = new Notification(UUID.randomUUID(), new ArrayList<>(), null);
+
+    assertThat(notification.getPriority()).isEqualTo(NotificationPriority.NORMAL);
+  }
+
+  @Test
+  public void shouldUseGivenPriority() {
+    Notification notification = new Notification(UUID.randomUUID(), new ArrayList<>(), true,
+        NotificationPriority.LOW);
+
+    assertThat(notification.getPriority()).isEqualTo(NotificationPriority.LOW);
+  }
+
+  @Test
+  public void shouldReturnChannelsThatCannotBeDelivered() {
+    Notification notification = new NotificationDataBuilder()
+        .withMessage(NotificationChannel.EMAIL, "body")
+        .withMessage(NotificationChannel.SMS, "body")
+        .build();
+    UserContactDetails contactDetails = new UserContactDetailsDataBuilder()
+        .withPhoneNumber(null)
+        .build();
+
+    assertThat(notification.getUndeliverableChannels(contactDetails))
+        .containsOnly(NotificationChannel.SMS);
+  }
+
+  @Test
+  public void shouldAssumeAllChannelsCanBeDeliveredIfContactDetailsAreUnknown() {
+    Notification notification = new NotificationDataBuilder()
+        .withMessage(NotificationChannel.EMAIL, "body")
+        .build();
+
+    assertThat(notification.getUndeliverableChannels(null)).isEmpty();
+  }
 }
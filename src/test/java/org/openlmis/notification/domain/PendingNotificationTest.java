@@ -15,8 +15,14 @@
 
 package org.openlmis.notification.domain;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
 import nl.jqno.equalsverifier.EqualsVerifier;
 import org.junit.Test;
+import org.openlmis.notification.domain.PendingNotification.Status;
+import org.openlmis.notification.service.NotificationChannel;
 import org.openlmis.notification.testutils.ToStringTestUtils;
 import org.openlmis.notification.util.NotificationDataBuilder;
 
@@ -39,4 +45,71 @@ public class PendingNotificationTest {
     ToStringTestUtils.verify(PendingNotification.class, new PendingNotification(), "notification");
   }
 
+  @Test
+  public void shouldBePendingWhenCreated() {
+    PendingNotification pending = new PendingNotification(
+        new NotificationDataBuilder().build(), NotificationChannel.EMAIL);
+
+    assertThat(pending.getStatus()).isEqualTo(Status.PENDING);
+    assertThat(pending.getClaimedDate()).isNull();
+  }
+
+  @Test
+  public void shouldBeSentToUserOfNotificationByDefault() {
+    Notification notification = new NotificationDataBuilder().build();
+    PendingNotification pending = new PendingNotification(notification, NotificationChannel.EMAIL);
+
+    assertThat(pending.getRecipientId()).isEqualTo(notification.getUserId());
+  }
+
+  @Test
+  public void shouldBeSentToGivenRecipient() {
+    UUID recipientId = UUID.randomUUID();
+    PendingNotification pending = new PendingNotification(new NotificationDataBuilder()
+        .withUserId(null)
+        .build(), NotificationChannel.EMAIL, recipientId);
+
+    assertThat(pending.getRecipientId()).isEqualTo(recipientId);
+  }
+
+  @Test
+  public void shouldTakePriorityFromNotification() {
+    PendingNotification pending = new PendingNotification(new NotificationDataBuilder()
+        .withPriority(NotificationPriority.LOW)
+        .build(), NotificationChannel.EMAIL);
+
+    assertThat(pending.getPriority()).isEqualTo(NotificationPriority.LOW);
+  }
+
+  @Test
+  public void shouldClaimAndRelease() {
+    PendingNotification pending = new PendingNotification(
+        new NotificationDataBuilder().build(), NotificationChannel.EMAIL);
+
+    pending.claim();
+
+    assertThat(pending.getStatus()).isEqualTo(Status.PROCESSING);
+    assertThat(pending.getClaimedDate()).isNotNull();
+
+    pending.release();
+
+    assertThat(pending.getStatus()).isEqualTo(Status.PENDING);
+    assertThat(pending.getClaimedDate()).isNull();
+  }
+
+  @Test
+  public void shouldCountAttemptWhenRetriedLater() {
+    PendingNotification pending = new PendingNotification(
+        new NotificationDataBuilder().build(), NotificationChannel.EMAIL);
+    ZonedDateTime nextAttemptDate = ZonedDateTime.now().plusMinutes(1);
+
+    pending.claim();
+    pending.retryLater(nextAttemptDate);
+
+    assertThat(pending.getAttempts()).isEqualTo(1);
+    assertThat(pending.getNextAttemptDate()).isEqualTo(nextAttemptDate);
+    assertThat(pending.getStatus()).isEqualTo(Status.PENDING);
+    assertThat(pending.getClaimedDate()).isNull();
+  }
+
 }
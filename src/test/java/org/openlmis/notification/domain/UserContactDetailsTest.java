@@ -23,6 +23,7 @@ import static org.hamcrest.Matchers.nullValue;
 import java.util.UUID;
 import nl.jqno.equalsverifier.EqualsVerifier;
 import org.junit.Test;
+import org.openlmis.notification.service.NotificationChannel;
 import org.openlmis.notification.testutils.ToStringTestUtils;
 import org.openlmis.notification.util.EmailDetailsDataBuilder;
 import org.openlmis.notification.util.UserContactDetailsDataBuilder;
@@ -135,6 +136,35 @@ public class UserContactDetailsTest {
     assertThat(contactDetails.getEmailDetails(), is(new EmailDetails()));
   }
 
+  @Test
+  public void shouldReceiveEmailIfEmailIsVerified() {
+    assertThat(contactDetails.canReceive(NotificationChannel.EMAIL, false), is(true));
+  }
+
+  @Test
+  public void shouldNotReceiveEmailIfEmailIsNotVerified() {
+    contactDetails.getEmailDetails().setEmailVerified(false);
+    assertThat(contactDetails.canReceive(NotificationChannel.EMAIL, false), is(false));
+  }
+
+  @Test
+  public void shouldReceiveImportantEmailIfEmailIsNotVerified() {
+    contactDetails.getEmailDetails().setEmailVerified(false);
+    assertThat(contactDetails.canReceive(NotificationChannel.EMAIL, true), is(true));
+  }
+
+  @Test
+  public void shouldNotReceiveImportantEmailIfEmailIsNotSet() {
+    contactDetails.getEmailDetails().setEmail(null);
+    assertThat(contactDetails.canReceive(NotificationChannel.EMAIL, true), is(false));
+  }
+
+  @Test
+  public void shouldNotReceiveSmsIfPhoneNumberIsNotSet() {
+    contactDetails.setPhoneNumber(" ");
+    assertThat(contactDetails.canReceive(NotificationChannel.SMS, true), is(false));
+  }
+
   @Test
   public void equalsContract() {
     EqualsVerifier
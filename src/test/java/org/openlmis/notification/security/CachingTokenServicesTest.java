@@ -0,0 +1,263 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.security;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.openlmis.notification.security.CustomUserAuthenticationConverter.REFERENCE_DATA_USER_ID;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestOperations;
+
+@RunWith(MockitoJUnitRunner.class)
+@SuppressWarnings("PMD.TooManyMethods")
+public class CachingTokenServicesTest {
+
+  private static final String CHECK_TOKEN_URL = "http://localhost/api/oauth/check_token";
+  private static final String CLIENT_ID = "trusted-client";
+  private static final String ACCESS_TOKEN = UUID.randomUUID().toString();
+  private static final int REQUESTS = 4;
+  private static final long TIMEOUT = 30;
+
+  @Mock
+  private RestOperations restTemplate;
+
+  @Captor
+  private ArgumentCaptor<HttpEntity<MultiValueMap<String, String>>> entityCaptor;
+
+  private CachingTokenServices tokenServices;
+  private UUID userId = UUID.randomUUID();
+
+  @Before
+  public void setUp() {
+    DefaultAccessTokenConverter accessTokenConverter = new DefaultAccessTokenConverter();
+    accessTokenConverter.setUserTokenConverter(new CustomUserAuthenticationConverter());
+
+    tokenServices = new CachingTokenServices(100, 60000, 60000);
+    tokenServices.setRestTemplate(restTemplate);
+    tokenServices.setCheckTokenEndpointUrl(CHECK_TOKEN_URL);
+    tokenServices.setClientId(CLIENT_ID);
+    tokenServices.setClientSecret("secret");
+    tokenServices.setAccessTokenConverter(accessTokenConverter);
+  }
+
+  @Test
+  public void shouldCheckTokenInAuthService() {
+    // given
+    mockCheckResults(validResult(expiresIn(3600)));
+
+    // when
+    OAuth2Authentication authentication = tokenServices.loadAuthentication(ACCESS_TOKEN);
+
+    // then
+    assertThat(authentication.getPrincipal(), is(userId));
+    assertThat(authentication.getOAuth2Request().getClientId(), is(CLIENT_ID));
+
+    verify(restTemplate).exchange(eq(CHECK_TOKEN_URL), eq(HttpMethod.POST),
+        entityCaptor.capture(), eq(Map.class));
+
+    HttpEntity<MultiValueMap<String, String>> entity = entityCaptor.getValue();
+    assertThat(entity.getBody().get("token"), contains(ACCESS_TOKEN));
+    assertThat(entity.getHeaders().get(HttpHeaders.AUTHORIZATION),
+        contains("Basic dHJ1c3RlZC1jbGllbnQ6c2VjcmV0"));
+  }
+
+  @Test
+  public void shouldCacheValidToken() {
+    // given
+    mockCheckResults(validResult(expiresIn(3600)));
+
+    // when
+    OAuth2Authentication first = tokenServices.loadAuthentication(ACCESS_TOKEN);
+    OAuth2Authentication second = tokenServices.loadAuthentication(ACCESS_TOKEN);
+
+    // then
+    assertThat(second, is(first));
+    verifyCheckRequests(1);
+    assertThat(getMetrics(), allOf(
+        hasEntry("auth.tokenCache.size", 1L),
+        hasEntry("auth.tokenCache.hits", 1L),
+        hasEntry("auth.tokenCache.misses", 1L)));
+  }
+
+  @Test
+  public void shouldCheckTokenAgainIfItHasExpired() {
+    // given
+    mockCheckResults(validResult(expiresIn(-1)));
+
+    // when
+    tokenServices.loadAuthentication(ACCESS_TOKEN);
+    tokenServices.loadAuthentication(ACCESS_TOKEN);
+
+    // then
+    verifyCheckRequests(2);
+  }
+
+  @Test
+  public void shouldCacheInvalidToken() {
+    // given
+    mockCheckResults(ImmutableMap.of("error", "invalid_token"));
+
+    // when
+    for (int i = 0; i < 2; ++i) {
+      try {
+        tokenServices.loadAuthentication(ACCESS_TOKEN);
+        fail("the token should be invalid");
+      } catch (InvalidTokenException exp) {
+        // expected
+      }
+    }
+
+    // then
+    verifyCheckRequests(1);
+    assertThat(getMetrics(), allOf(
+        hasEntry("auth.tokenCache.size", 0L),
+        hasEntry("auth.tokenCache.invalid.size", 1L),
+        hasEntry("auth.tokenCache.invalid.hits", 1L)));
+  }
+
+  @Test
+  public void shouldNotCacheFailedCheck() {
+    // given
+    when(restTemplate.exchange(eq(CHECK_TOKEN_URL), eq(HttpMethod.POST), any(HttpEntity.class),
+        eq(Map.class)))
+        .thenThrow(new ResourceAccessException("auth is down"))
+        .thenReturn(new ResponseEntity<>(validResult(expiresIn(3600)), HttpStatus.OK));
+
+    // when
+    try {
+      tokenServices.loadAuthentication(ACCESS_TOKEN);
+      fail("the check should fail");
+    } catch (ResourceAccessException exp) {
+      // expected
+    }
+
+    OAuth2Authentication authentication = tokenServices.loadAuthentication(ACCESS_TOKEN);
+
+    // then
+    assertThat(authentication.getPrincipal(), is(userId));
+    verifyCheckRequests(2);
+  }
+
+  @Test
+  public void shouldCheckTokenOnlyOnceForConcurrentRequests() throws Exception {
+    // given
+    CountDownLatch requestStarted = new CountDownLatch(1);
+    CountDownLatch responseReady = new CountDownLatch(1);
+    when(restTemplate.exchange(eq(CHECK_TOKEN_URL), eq(HttpMethod.POST), any(HttpEntity.class),
+        eq(Map.class)))
+        .thenAnswer(invocation -> {
+          requestStarted.countDown();
+          responseReady.await(TIMEOUT, TimeUnit.SECONDS);
+          return new ResponseEntity<>(validResult(expiresIn(3600)), HttpStatus.OK);
+        });
+
+    ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+
+    try {
+      // when
+      List<Future<OAuth2Authentication>> checks = Lists.newArrayList();
+      checks.add(executor.submit(() -> tokenServices.loadAuthentication(ACCESS_TOKEN)));
+      requestStarted.await(TIMEOUT, TimeUnit.SECONDS);
+
+      for (int i = 1; i < REQUESTS; ++i) {
+        checks.add(executor.submit(() -> tokenServices.loadAuthentication(ACCESS_TOKEN)));
+      }
+
+      responseReady.countDown();
+
+      // then
+      for (Future<OAuth2Authentication> check : checks) {
+        assertThat(check.get(TIMEOUT, TimeUnit.SECONDS).getPrincipal(), is(userId));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verifyCheckRequests(1);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldNotReadAccessToken() {
+    tokenServices.readAccessToken(ACCESS_TOKEN);
+  }
+
+  private long expiresIn(long seconds) {
+    return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + seconds;
+  }
+
+  private Map<String, Object> validResult(long exp) {
+    return ImmutableMap.of(
+        "client_id", CLIENT_ID,
+        REFERENCE_DATA_USER_ID, userId.toString(),
+        "exp", exp);
+  }
+
+  private void mockCheckResults(Map<String, Object> result) {
+    when(restTemplate.exchange(eq(CHECK_TOKEN_URL), eq(HttpMethod.POST), any(HttpEntity.class),
+        eq(Map.class)))
+        .thenReturn(new ResponseEntity<>(result, HttpStatus.OK));
+  }
+
+  private void verifyCheckRequests(int count) {
+    verify(restTemplate, times(count)).exchange(eq(CHECK_TOKEN_URL), eq(HttpMethod.POST),
+        any(HttpEntity.class), eq(Map.class));
+  }
+
+  private Map<String, Object> getMetrics() {
+    return tokenServices
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
+}
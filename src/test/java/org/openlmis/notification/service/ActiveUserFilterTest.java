@@ -0,0 +1,108 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.openlmis.notification.service.referencedata.UserDto;
+import org.openlmis.notification.service.referencedata.UserReferenceDataService;
+import org.openlmis.notification.testutils.UserDataBuilder;
+
+public class ActiveUserFilterTest {
+
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+  @Mock
+  private UserReferenceDataService userReferenceDataService;
+
+  @InjectMocks
+  private ActiveUserFilter filter;
+
+  private UserDto user = new UserDataBuilder().build();
+  private UUID recipient = user.getId();
+
+  @Before
+  public void setUp() {
+    given(userReferenceDataService.findOne(recipient)).willReturn(user);
+  }
+
+  @Test
+  public void shouldAcceptVerifiedRecipientWithoutCheckingUser() {
+    // when
+    boolean accepted = filter.accept(recipient, true);
+
+    // then
+    assertThat(accepted).isTrue();
+    verify(userReferenceDataService, never()).findOne(any(UUID.class));
+  }
+
+  @Test
+  public void shouldAcceptRecipientIfHeaderIsNotSet() {
+    // when
+    boolean accepted = filter.accept(recipient, null);
+
+    // then
+    assertThat(accepted).isTrue();
+    verify(userReferenceDataService, never()).findOne(any(UUID.class));
+  }
+
+  @Test
+  public void shouldAcceptUnverifiedRecipientIfUserIsActive() {
+    // when
+    boolean accepted = filter.accept(recipient, false);
+
+    // then
+    assertThat(accepted).isTrue();
+  }
+
+  @Test
+  public void shouldDeclineUnverifiedRecipientIfUserIsNotActive() {
+    // given
+    user.setActive(false);
+
+    // when
+    boolean accepted = filter.accept(recipient, false);
+
+    // then
+    assertThat(accepted).isFalse();
+  }
+
+  @Test
+  public void shouldDeclineUnverifiedRecipientIfUserDoesNotExist() {
+    // given
+    given(userReferenceDataService.findOne(recipient)).willReturn(null);
+
+    // when
+    boolean accepted = filter.accept(recipient, false);
+
+    // then
+    assertThat(accepted).isFalse();
+  }
+
+}
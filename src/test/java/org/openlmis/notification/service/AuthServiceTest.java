@@ -15,20 +15,31 @@
 
 package org.openlmis.notification.service;
 
+import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import java.net.URI;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -36,15 +47,21 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 @RunWith(MockitoJUnitRunner.class)
 public class AuthServiceTest {
   private static final String TOKEN = UUID.randomUUID().toString();
+  private static final String NEW_TOKEN = UUID.randomUUID().toString();
+  private static final long REFRESH_MARGIN = 60000;
+  private static final int CALLERS = 4;
+  private static final long TIMEOUT = 30;
   private static final String AUTHORIZATION_URL = "http://localhost/auth/oauth/token";
   private static final URI AUTHORIZATION_URI = URI.create(
       AUTHORIZATION_URL + "?grant_type=client_credentials"
@@ -66,6 +83,7 @@ public class AuthServiceTest {
     ReflectionTestUtils.setField(authService, "clientId", "trusted-client");
     ReflectionTestUtils.setField(authService, "clientSecret", "secret");
     ReflectionTestUtils.setField(authService, "authorizationUrl", AUTHORIZATION_URL);
+    ReflectionTestUtils.setField(authService, "refreshMargin", REFRESH_MARGIN);
   }
 
   @Test
@@ -92,4 +110,176 @@ public class AuthServiceTest {
         contains("Basic dHJ1c3RlZC1jbGllbnQ6c2VjcmV0")
     );
   }
+
+  @Test
+  public void shouldReuseTokenThatHasNotExpired() {
+    // given
+    mockTokenResponses(ImmutableMap.of("access_token", TOKEN, "expires_in", 3600));
+
+    // when
+    String first = authService.obtainAccessToken();
+    String second = authService.obtainAccessToken();
+
+    // then
+    assertThat(first, is(TOKEN));
+    assertThat(second, is(TOKEN));
+    verifyTokenRequests(1);
+  }
+
+  @Test
+  public void shouldObtainNewTokenIfTokenHasExpired() {
+    // given
+    mockTokenResponses(ImmutableMap.of("access_token", TOKEN, "expires_in", 0),
+        ImmutableMap.of("access_token", NEW_TOKEN, "expires_in", 3600));
+
+    // when
+    authService.obtainAccessToken();
+    String token = authService.obtainAccessToken();
+
+    // then
+    assertThat(token, is(NEW_TOKEN));
+    verifyTokenRequests(2);
+  }
+
+  @Test
+  public void shouldObtainNewTokenAfterCacheIsCleared() {
+    // given
+    mockTokenResponses(ImmutableMap.of("access_token", TOKEN),
+        ImmutableMap.of("access_token", NEW_TOKEN));
+    authService.obtainAccessToken();
+
+    // when
+    authService.clearTokenCache();
+    String token = authService.obtainAccessToken();
+
+    // then
+    assertThat(token, is(NEW_TOKEN));
+    verifyTokenRequests(2);
+  }
+
+  @Test
+  public void shouldRefreshTokenThatExpiresWithinRefreshMargin() {
+    // given
+    mockTokenResponses(ImmutableMap.of("access_token", TOKEN, "expires_in", 30),
+        ImmutableMap.of("access_token", NEW_TOKEN, "expires_in", 3600));
+    authService.obtainAccessToken();
+
+    // when
+    authService.refreshIfExpiring();
+    String token = authService.obtainAccessToken();
+
+    // then
+    assertThat(token, is(NEW_TOKEN));
+    verifyTokenRequests(2);
+    assertThat(getMetrics(), allOf(
+        hasEntry("auth.token.refreshes", 2L),
+        hasEntry("auth.token.refreshFailures", 0L)));
+  }
+
+  @Test
+  public void shouldNotRefreshTokenThatDoesNotExpireSoon() {
+    // given
+    mockTokenResponses(ImmutableMap.of("access_token", TOKEN, "expires_in", 3600));
+    authService.obtainAccessToken();
+
+    // when
+    authService.refreshIfExpiring();
+
+    // then
+    verifyTokenRequests(1);
+  }
+
+  @Test
+  public void shouldNotRefreshTokenInBackgroundIfThereIsNoToken() {
+    // when
+    authService.refreshIfExpiring();
+
+    // then
+    verifyTokenRequests(0);
+    assertThat(getMetrics(), hasEntry("auth.token.timeToExpiry", -1L));
+  }
+
+  @Test
+  public void shouldKeepTokenIfRefreshFails() {
+    // given
+    ResponseEntity<Object> response = mock(ResponseEntity.class);
+    when(response.getBody())
+        .thenReturn(ImmutableMap.of("access_token", TOKEN, "expires_in", 30));
+    when(restTemplate.exchange(
+        eq(AUTHORIZATION_URI), eq(HttpMethod.POST), any(HttpEntity.class), eq(Object.class)
+    ))
+        .thenReturn(response)
+        .thenThrow(new ResourceAccessException("auth is down"));
+    authService.obtainAccessToken();
+
+    // when
+    authService.refreshIfExpiring();
+    String token = authService.obtainAccessToken();
+
+    // then
+    assertThat(token, is(TOKEN));
+    assertThat(getMetrics(), hasEntry("auth.token.refreshFailures", 1L));
+  }
+
+  @Test
+  public void shouldObtainTokenOnlyOnceForConcurrentCallers() throws Exception {
+    // given
+    ResponseEntity<Object> response = mock(ResponseEntity.class);
+    when(response.getBody()).thenReturn(ImmutableMap.of("access_token", TOKEN));
+
+    CountDownLatch requestStarted = new CountDownLatch(1);
+    CountDownLatch responseReady = new CountDownLatch(1);
+    when(restTemplate.exchange(
+        eq(AUTHORIZATION_URI), eq(HttpMethod.POST), any(HttpEntity.class), eq(Object.class)
+    )).thenAnswer(invocation -> {
+      requestStarted.countDown();
+      responseReady.await(TIMEOUT, TimeUnit.SECONDS);
+      return response;
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    try {
+      // when
+      List<Future<String>> tokens = Lists.newArrayList();
+      tokens.add(executor.submit(authService::obtainAccessToken));
+      requestStarted.await(TIMEOUT, TimeUnit.SECONDS);
+
+      for (int i = 1; i < CALLERS; ++i) {
+        tokens.add(executor.submit(authService::obtainAccessToken));
+      }
+
+      responseReady.countDown();
+
+      // then
+      for (Future<String> token : tokens) {
+        assertThat(token.get(TIMEOUT, TimeUnit.SECONDS), is(TOKEN));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verifyTokenRequests(1);
+  }
+
+  private void mockTokenResponses(Map<String, Object> body, Map<String, Object>... nextBodies) {
+    ResponseEntity<Object> response = mock(ResponseEntity.class);
+    when(response.getBody()).thenReturn(body, (Object[]) nextBodies);
+    when(restTemplate.exchange(
+        eq(AUTHORIZATION_URI), eq(HttpMethod.POST), any(HttpEntity.class), eq(Object.class)
+    )).thenReturn(response);
+  }
+
+  private void verifyTokenRequests(int count) {
+    verify(restTemplate, times(count)).exchange(
+        eq(AUTHORIZATION_URI), eq(HttpMethod.POST), any(HttpEntity.class), eq(Object.class)
+    );
+  }
+
+  private Map<String, Object> getMetrics() {
+    return authService
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
 }
@@ -60,6 +60,11 @@ public abstract class BaseCommunicationServiceTest<T> {
   @Mock
   protected AuthService authService;
 
+  @Mock
+  protected CircuitBreakers circuitBreakers;
+
+  protected CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, 100, 60000, 1);
+
   @Mock
   @Getter
   private ResponseEntity arrayResponse;
@@ -78,6 +83,7 @@ public abstract class BaseCommunicationServiceTest<T> {
   @Before
   public void setUp() throws Exception {
     mockAuth();
+    when(circuitBreakers.get(any(String.class))).thenReturn(circuitBreaker);
   }
 
   @After
@@ -136,6 +142,7 @@ public abstract class BaseCommunicationServiceTest<T> {
     BaseCommunicationService service = getService();
     service.setRestTemplate(restTemplate);
     ReflectionTestUtils.setField(service, "authService", authService);
+    ReflectionTestUtils.setField(service, "circuitBreakers", circuitBreakers);
 
     ReflectionTestUtils.setField(service, "maxUrlLength", 2000);
 
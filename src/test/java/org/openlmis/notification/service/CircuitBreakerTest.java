@@ -0,0 +1,183 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+public class CircuitBreakerTest {
+
+  private static final int WINDOW_SIZE = 4;
+  private static final long OPEN_DURATION = 1000;
+
+  private AtomicLong clock = new AtomicLong();
+  private CircuitBreaker circuitBreaker =
+      new CircuitBreaker("test", WINDOW_SIZE, 50, OPEN_DURATION, 2, clock::get);
+
+  @Test
+  public void shouldStayClosedUntilWindowIsFull() {
+    // when
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+
+    // then
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(circuitBreaker.isCallPermitted()).isTrue();
+  }
+
+  @Test
+  public void shouldOpenWhenFailureRateReachesThreshold() {
+    // when
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+
+    // then
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(circuitBreaker.isCallPermitted()).isFalse();
+  }
+
+  @Test
+  public void shouldForgetOutcomesThatLeftWindow() {
+    // when
+    circuitBreaker.onFailure();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+
+    // then
+    assertThat(circuitBreaker.getFailureRate()).isEqualTo(25);
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  public void shouldRejectCallsWhenOpen() {
+    // given
+    open();
+
+    // when
+    try {
+      circuitBreaker.execute(() -> "result");
+    } catch (CircuitBreakerOpenException exp) {
+      // then
+      assertThat(circuitBreaker.getNotPermittedCalls()).isEqualTo(1);
+      return;
+    }
+
+    throw new AssertionError("The call should be rejected");
+  }
+
+  @Test
+  public void shouldLetTrialCallsThroughAfterOpenDuration() {
+    // given
+    open();
+
+    // when
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION));
+
+    // then
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    circuitBreaker.acquirePermission();
+    circuitBreaker.acquirePermission();
+    assertThat(circuitBreaker.isCallPermitted()).isFalse();
+  }
+
+  @Test
+  public void shouldCloseWhenTrialCallsSucceed() {
+    // given
+    open();
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION));
+
+    // when
+    circuitBreaker.execute(() -> "first");
+    circuitBreaker.execute(() -> "second");
+
+    // then
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(circuitBreaker.getFailureRate()).isZero();
+  }
+
+  @Test
+  public void shouldOpenAgainWhenTrialCallFails() {
+    // given
+    open();
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION));
+
+    // when
+    try {
+      circuitBreaker.execute(() -> {
+        throw new ResourceAccessException("timeout");
+      });
+    } catch (ResourceAccessException exp) {
+      // expected
+    }
+
+    // then
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void shouldNotCountClientErrorsAsFailures() {
+    // when
+    for (int i = 0; i < WINDOW_SIZE; ++i) {
+      try {
+        circuitBreaker.execute(() -> {
+          throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        });
+      } catch (HttpClientErrorException exp) {
+        // expected
+      }
+    }
+
+    // then
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(circuitBreaker.getFailureRate()).isZero();
+  }
+
+  @Test
+  public void shouldCountRejectedCredentialsAsFailures() {
+    // when
+    for (int i = 0; i < WINDOW_SIZE; ++i) {
+      try {
+        circuitBreaker.execute(() -> {
+          throw new HttpClientErrorException(HttpStatus.FORBIDDEN);
+        });
+      } catch (HttpClientErrorException exp) {
+        // expected
+      }
+    }
+
+    // then
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  private void open() {
+    for (int i = 0; i < WINDOW_SIZE; ++i) {
+      circuitBreaker.onFailure();
+    }
+  }
+
+}
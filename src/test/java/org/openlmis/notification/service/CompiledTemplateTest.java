@@ -0,0 +1,117 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import org.apache.commons.lang3.text.StrSubstitutor;
+import org.junit.Test;
+
+public class CompiledTemplateTest {
+
+  private Map<String, String> parameters = ImmutableMap.of("firstName", "John", "count", "5");
+
+  @Test
+  public void shouldReplacePlaceholdersWithParameters() {
+    // when
+    String text = CompiledTemplate
+        .compile("Dear ${firstName}, there are ${count} requisitions.")
+        .render(parameters);
+
+    // then
+    assertThat(text).isEqualTo("Dear John, there are 5 requisitions.");
+  }
+
+  @Test
+  public void shouldRenderTextWithoutPlaceholders() {
+    // when
+    String text = CompiledTemplate.compile("Plain text").render(parameters);
+
+    // then
+    assertThat(text).isEqualTo("Plain text");
+  }
+
+  @Test
+  public void shouldRenderPlaceholdersOnly() {
+    // when
+    String text = CompiledTemplate.compile("${firstName}${count}").render(parameters);
+
+    // then
+    assertThat(text).isEqualTo("John5");
+  }
+
+  @Test
+  public void shouldLeavePlaceholdersWithoutParameters() {
+    // when
+    String text = CompiledTemplate.compile("Dear ${lastName}").render(parameters);
+
+    // then
+    assertThat(text).isEqualTo("Dear ${lastName}");
+  }
+
+  @Test
+  public void shouldNotReplaceEscapedPlaceholders() {
+    // when
+    String text = CompiledTemplate.compile("$${firstName} is ${firstName}").render(parameters);
+
+    // then
+    assertThat(text).isEqualTo("${firstName} is John");
+  }
+
+  @Test
+  public void shouldKeepUnclosedPlaceholder() {
+    // when
+    String text = CompiledTemplate.compile("Dear ${firstName").render(parameters);
+
+    // then
+    assertThat(text).isEqualTo("Dear ${firstName");
+  }
+
+  @Test
+  public void shouldNotReplacePlaceholdersInParameterValues() {
+    // when
+    String text = CompiledTemplate
+        .compile("Dear ${firstName}")
+        .render(ImmutableMap.of("firstName", "${count}", "count", "5"));
+
+    // then
+    assertThat(text).isEqualTo("Dear ${count}");
+  }
+
+  @Test
+  public void shouldRenderTheSameTextAsStrSubstitutor() {
+    // given
+    String template = "Hi ${firstName},\n$${escaped} ${count} items, ${missing}. $ {x} ${";
+
+    // when
+    String text = CompiledTemplate.compile(template).render(parameters);
+
+    // then
+    assertThat(text).isEqualTo(StrSubstitutor.replace(template, parameters));
+  }
+
+  @Test
+  public void shouldReturnNullForNullText() {
+    // when
+    CompiledTemplate template = CompiledTemplate.compile(null);
+
+    // then
+    assertThat(template).isNull();
+  }
+
+}
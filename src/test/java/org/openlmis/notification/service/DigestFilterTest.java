@@ -17,9 +17,9 @@ package org.openlmis.notification.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willReturn;
 
 import java.util.UUID;
-import org.assertj.core.util.Lists;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -31,8 +31,7 @@ import org.openlmis.notification.domain.DigestConfiguration;
 import org.openlmis.notification.domain.DigestSubscription;
 import org.openlmis.notification.repository.DigestConfigurationRepository;
 import org.openlmis.notification.repository.DigestSubscriptionRepository;
-import org.openlmis.notification.service.referencedata.TogglzFeatureDto;
-import org.openlmis.notification.service.referencedata.TogglzReferenceDataService;
+import org.openlmis.notification.service.referencedata.TogglzFeatureCache;
 import org.openlmis.notification.testutils.DigestConfigurationDataBuilder;
 import org.openlmis.notification.testutils.DigestSubscriptionDataBuilder;
 
@@ -52,7 +51,7 @@ public class DigestFilterTest {
   public MockitoRule mockitoRule = MockitoJUnit.rule();
 
   @Mock
-  private TogglzReferenceDataService togglzReferenceDataService;
+  private TogglzFeatureCache togglzFeatureCache;
 
   @Mock
   private DigestConfigurationRepository digestConfigurationRepository;
@@ -81,12 +80,9 @@ public class DigestFilterTest {
       .withUseDigest(false)
       .build();
 
-  private TogglzFeatureDto digestFeature =
-      new TogglzFeatureDto(DigestFilter.CONSOLIDATE_NOTIFICATIONS, true, null, null);
-
   @Before
   public void setUp() {
-    given(togglzReferenceDataService.findAll()).willReturn(Lists.newArrayList(digestFeature));
+    given(togglzFeatureCache.isEnabled(DigestFilter.CONSOLIDATE_NOTIFICATIONS)).willReturn(true);
     given(digestConfigurationRepository.findByTag(CORRECT_TAG)).willReturn(digestConfiguration);
     given(digestConfigurationRepository.findByTag(CORRECT_NON_DIGEST_TAG))
         .willReturn(nonDigestConfiguration);
@@ -108,7 +104,8 @@ public class DigestFilterTest {
   @Test
   public void shouldReturnSendNowChannelIfDigestFeatureIsOff() {
     // given
-    digestFeature.setEnabled(false);
+    willReturn(false).given(togglzFeatureCache)
+        .isEnabled(DigestFilter.CONSOLIDATE_NOTIFICATIONS);
 
     // when
     String channelName = filter.route(RECIPIENT, UNIMPORTANT, CORRECT_TAG);
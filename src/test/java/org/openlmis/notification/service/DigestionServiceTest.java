@@ -28,6 +28,10 @@ import static org.openlmis.notification.service.NotificationChannel.EMAIL;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -155,6 +159,35 @@ public class DigestionServiceTest {
             recipient, subscription.getCronExpression());
   }
 
+  @Test
+  public void shouldSetOneAdapterForMessagesHandledAtTheSameTime() throws InterruptedException {
+    // given
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+
+    for (int i = 0; i < threads; ++i) {
+      executor.execute(() -> {
+        try {
+          start.await();
+          service.handleMessage(message, channel, recipient, tag);
+        } catch (InterruptedException exp) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+
+    // when
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+    // then
+    verify(service, times(1))
+        .setPollingAdapter(channel, configuration, recipient, subscription.getCronExpression());
+    assertThat(ADAPTERS.size()).isEqualTo(1);
+  }
+
   @Test
   public void shouldDropExistingPollingAdapters() {
     // given
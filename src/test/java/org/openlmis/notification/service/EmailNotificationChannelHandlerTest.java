@@ -15,11 +15,14 @@
 
 package org.openlmis.notification.service;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.openlmis.notification.service.NotificationChannel.EMAIL;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Rule;
@@ -65,7 +68,7 @@ public class EmailNotificationChannelHandlerTest {
   @Test
   public void shouldSendMessage() {
     // when
-    handler.handle(message, recipient, false);
+    handler.handle(message, recipient, false, null);
 
     // then
     verify(emailSender)
@@ -78,7 +81,7 @@ public class EmailNotificationChannelHandlerTest {
     contactDetails.getEmailDetails().setEmail(null);
 
     // when
-    handler.handle(message, recipient, false);
+    handler.handle(message, recipient, false, null);
 
     // then
     verifyZeroInteractions(emailSender);
@@ -90,7 +93,7 @@ public class EmailNotificationChannelHandlerTest {
     contactDetails.getEmailDetails().setEmailVerified(false);
 
     // when
-    handler.handle(message, recipient, false);
+    handler.handle(message, recipient, false, null);
 
     // then
     verifyZeroInteractions(emailSender);
@@ -102,11 +105,25 @@ public class EmailNotificationChannelHandlerTest {
     contactDetails.getEmailDetails().setEmailVerified(false);
 
     // when
-    handler.handle(message, recipient, true);
+    handler.handle(message, recipient, true, null);
 
     // then
     verify(emailSender)
         .sendMail(contactDetails.getEmailAddress(), message.getSubject(), message.getBody());
   }
 
+  @Test
+  public void shouldAddMessageToOutbox() {
+    // given
+    List<EmailMessage> outbox = new ArrayList<>();
+
+    // when
+    handler.handle(message, recipient, false, outbox);
+
+    // then
+    assertThat(outbox).containsExactly(new EmailMessage(contactDetails.getEmailAddress(),
+        message.getSubject(), message.getBody()));
+    verifyZeroInteractions(emailSender);
+  }
+
 }
@@ -17,12 +17,23 @@ package org.openlmis.notification.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_SEND_MAIL_FAILURE;
 
+import com.google.common.collect.Lists;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
@@ -32,11 +43,11 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
-import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.test.util.ReflectionTestUtils;
 
@@ -46,6 +57,8 @@ public class EmailSenderTest {
   private static final String TO = "user@send.to.me.com";
   private static final String SUBJECT = "Very important message";
   private static final String BODY = "I was kidding";
+  private static final String HOST = "smtp1.test.org";
+  private static final String OTHER_HOST = "smtp2.test.org";
 
   @Rule
   public MockitoRule mockitoRule = MockitoJUnit.rule();
@@ -56,17 +69,39 @@ public class EmailSenderTest {
   @Mock
   private JavaMailSender mailSender;
 
+  @Mock
+  private SmtpTransportPool transportPool;
+
+  @Mock
+  private ProviderRateLimiters providerRateLimiters;
+
+  @Mock
+  private CircuitBreakers circuitBreakers;
+
+  @Mock
+  private ProviderRouters providerRouters;
+
+  private CircuitBreaker circuitBreaker = new CircuitBreaker("email", 1, 100, 60000, 1);
+
   @InjectMocks
   private EmailSender sender;
 
   @Captor
   private ArgumentCaptor<MimeMessage> mimeMessageCaptor;
 
+  @Captor
+  private ArgumentCaptor<List<MimeMessage>> mimeMessagesCaptor;
+
   @Before
   public void setUp() {
     ReflectionTestUtils.setField(sender, "from", FROM);
 
     given(mailSender.createMimeMessage()).willReturn(new MimeMessage((Session) null));
+    given(providerRateLimiters.getMaxPermits(NotificationChannel.EMAIL))
+        .willReturn(Integer.MAX_VALUE);
+    given(circuitBreakers.get(NotificationChannel.EMAIL)).willReturn(circuitBreaker);
+    given(providerRouters.get(NotificationChannel.EMAIL))
+        .willReturn(newRouter(Collections.singletonList(HOST)));
   }
 
   @Test
@@ -75,7 +110,7 @@ public class EmailSenderTest {
     sender.sendMail(TO, SUBJECT, BODY);
 
     // then
-    verify(mailSender).send(mimeMessageCaptor.capture());
+    verify(transportPool).send(eq(HOST), mimeMessageCaptor.capture());
 
     MimeMessage value = mimeMessageCaptor.getValue();
     assertThat(value.getFrom()[0].toString()).isEqualTo(FROM);
@@ -85,14 +120,14 @@ public class EmailSenderTest {
   }
 
   @Test
-  public void shouldThrowExceptionIfMailCanNotBeSend() {
+  public void shouldThrowExceptionIfMailCanNotBeSend() throws MessagingException {
     // given
     exception.expect(ServerException.class);
     exception.expectMessage(ERROR_SEND_MAIL_FAILURE);
 
-    willThrow(new MailSendException("test-exception"))
-        .given(mailSender)
-        .send(any(MimeMessage.class));
+    willThrow(new MessagingException("test-exception"))
+        .given(transportPool)
+        .send(anyString(), any(MimeMessage.class));
 
     // when
     sender.sendMail(TO, SUBJECT, BODY);
@@ -101,4 +136,123 @@ public class EmailSenderTest {
     // the exception should be thrown
   }
 
+  @Test
+  public void shouldSendManyMessagesAndReportEachFailure() throws MessagingException {
+    // given
+    MessagingException error = new MessagingException("test-exception");
+    given(transportPool.send(anyString(), anyListOf(MimeMessage.class)))
+        .willReturn(Lists.newArrayList(null, error));
+
+    // when
+    List<ServerException> errors = sender.sendMails(Lists.newArrayList(
+        new EmailMessage(TO, SUBJECT, BODY), new EmailMessage("other@to.me.com", SUBJECT, BODY)));
+
+    // then
+    verify(transportPool).send(eq(HOST), mimeMessagesCaptor.capture());
+    assertThat(mimeMessagesCaptor.getValue()).hasSize(2);
+
+    assertThat(errors).hasSize(2);
+    assertThat(errors.get(0)).isNull();
+    assertThat(errors.get(1).getCause()).isSameAs(error);
+  }
+
+  @Test
+  public void shouldReportFailureOfAllMessagesIfTransportIsNotAvailable()
+      throws MessagingException {
+    // given
+    given(transportPool.send(anyString(), anyListOf(MimeMessage.class)))
+        .willThrow(new MessagingException("test-exception"));
+
+    // when
+    List<ServerException> errors = sender.sendMails(Lists.newArrayList(
+        new EmailMessage(TO, SUBJECT, BODY), new EmailMessage(TO, SUBJECT, BODY)));
+
+    // then
+    assertThat(errors).hasSize(2).doesNotContainNull();
+  }
+
+  @Test
+  public void shouldSendMessagesInChunksAllowedByRateLimiter() throws MessagingException {
+    // given
+    willReturn(2).given(providerRateLimiters).getMaxPermits(NotificationChannel.EMAIL);
+    given(transportPool.send(anyString(), anyListOf(MimeMessage.class)))
+        .willAnswer(invocation -> Arrays.asList(
+            new MessagingException[invocation.getArgumentAt(1, List.class).size()]));
+
+    // when
+    List<ServerException> errors = sender.sendMails(Lists.newArrayList(
+        new EmailMessage(TO, SUBJECT, BODY), new EmailMessage(TO, SUBJECT, BODY),
+        new EmailMessage(TO, SUBJECT, BODY)));
+
+    // then
+    assertThat(errors).hasSize(3).containsOnly((ServerException) null);
+
+    InOrder inOrder = inOrder(providerRateLimiters, transportPool);
+    inOrder.verify(providerRateLimiters).acquire(NotificationChannel.EMAIL, 2);
+    inOrder.verify(transportPool).send(eq(HOST), mimeMessagesCaptor.capture());
+    inOrder.verify(providerRateLimiters).acquire(NotificationChannel.EMAIL, 1);
+    inOrder.verify(transportPool).send(eq(HOST), mimeMessagesCaptor.capture());
+
+    assertThat(mimeMessagesCaptor.getAllValues().get(0)).hasSize(2);
+    assertThat(mimeMessagesCaptor.getAllValues().get(1)).hasSize(1);
+  }
+
+  @Test
+  public void shouldNotSendMessagesIfCircuitBreakerIsOpen() throws MessagingException {
+    // given
+    given(transportPool.send(anyString(), anyListOf(MimeMessage.class)))
+        .willThrow(new MessagingException("test-exception"));
+    sender.sendMails(Lists.newArrayList(new EmailMessage(TO, SUBJECT, BODY)));
+
+    // when
+    List<ServerException> errors = sender.sendMails(Lists.newArrayList(
+        new EmailMessage(TO, SUBJECT, BODY)));
+
+    // then
+    verify(transportPool, times(1)).send(anyString(), anyListOf(MimeMessage.class));
+    assertThat(errors).hasSize(1);
+    assertThat(CircuitBreakerOpenException.isCauseOf(errors.get(0))).isTrue();
+  }
+
+  @Test
+  public void shouldSendMessagesWithNextServerIfFirstOneFails() throws MessagingException {
+    // given
+    willReturn(newRouter(Arrays.asList(HOST, OTHER_HOST)))
+        .given(providerRouters).get(NotificationChannel.EMAIL);
+    given(transportPool.send(eq(HOST), anyListOf(MimeMessage.class)))
+        .willThrow(new MessagingException("test-exception"));
+    given(transportPool.send(eq(OTHER_HOST), anyListOf(MimeMessage.class)))
+        .willReturn(Collections.singletonList(null));
+
+    // when
+    List<ServerException> errors = sender.sendMails(Lists.newArrayList(
+        new EmailMessage(TO, SUBJECT, BODY)));
+
+    // then
+    assertThat(errors).containsExactly((ServerException) null);
+    assertThat(circuitBreaker.getFailureRate()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldSendMessageWithNextServerIfFirstOneFails() throws MessagingException {
+    // given
+    willReturn(newRouter(Arrays.asList(HOST, OTHER_HOST)))
+        .given(providerRouters).get(NotificationChannel.EMAIL);
+    willThrow(new MessagingException("test-exception"))
+        .given(transportPool)
+        .send(eq(HOST), any(MimeMessage.class));
+
+    // when
+    sender.sendMail(TO, SUBJECT, BODY);
+
+    // then
+    verify(transportPool).send(eq(OTHER_HOST), any(MimeMessage.class));
+    verify(transportPool, never()).send(anyString(), anyListOf(MimeMessage.class));
+  }
+
+  private ProviderRouter newRouter(List<String> hosts) {
+    return new ProviderRouter("email", hosts,
+        name -> new CircuitBreaker(name, 1, 100, 60000, 1), 0.3, 60000);
+  }
+
 }
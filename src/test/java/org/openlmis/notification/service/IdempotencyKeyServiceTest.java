@@ -0,0 +1,191 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.openlmis.notification.domain.IdempotentRequest;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.repository.NotificationRepository;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class IdempotencyKeyServiceTest {
+
+  private static final String CALLER = "caller";
+  private static final String KEY = "key";
+
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+  @Mock
+  private NotificationRepository notificationRepository;
+
+  @Spy
+  private ObjectMapper objectMapper = new ObjectMapper();
+
+  @InjectMocks
+  private IdempotencyKeyService idempotencyKeyService;
+
+  private Notification notification = new NotificationDataBuilder()
+      .withEmptyMessage(NotificationChannel.EMAIL)
+      .build();
+
+  private Map<String, String> payload = Collections.singletonMap("body", "payload");
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(idempotencyKeyService, "retention", 60L);
+    ReflectionTestUtils.setField(idempotencyKeyService, "cacheSize", 10L);
+    idempotencyKeyService.init();
+  }
+
+  @Test
+  public void shouldNotLookForNotificationIfKeyIsNotSet() {
+    // when
+    UUID notificationId = idempotencyKeyService.findNotificationId(CALLER, null, payload);
+
+    // then
+    assertThat(notificationId).isNull();
+    verify(notificationRepository, never()).findIdempotentRequest(anyString(), anyString());
+  }
+
+  @Test
+  public void shouldRememberKeyOfSavedNotification() {
+    // given
+    idempotencyKeyService.saveOnce(CALLER, KEY, payload, notification, saved -> { });
+
+    // when
+    UUID notificationId = idempotencyKeyService.findNotificationId(CALLER, KEY, payload);
+
+    // then
+    assertThat(notification.getIdempotencyCaller()).isEqualTo(CALLER);
+    assertThat(notification.getIdempotencyKey()).isEqualTo(KEY);
+    assertThat(notification.getIdempotencyPayloadHash()).isNotNull();
+    assertThat(notificationId).isEqualTo(notification.getId());
+    verify(notificationRepository, never()).findIdempotentRequest(anyString(), anyString());
+  }
+
+  @Test
+  public void shouldNotSetKeyOfNotificationSavedWithoutKey() {
+    // when
+    UUID notificationId = idempotencyKeyService
+        .saveOnce(CALLER, null, payload, notification, saved -> { });
+
+    // then
+    assertThat(notificationId).isEqualTo(notification.getId());
+    assertThat(notification.getIdempotencyKey()).isNull();
+    assertThat(notification.getIdempotencyPayloadHash()).isNull();
+  }
+
+  @Test
+  public void shouldNotShareKeysBetweenCallers() {
+    // given
+    idempotencyKeyService.saveOnce(CALLER, KEY, payload, notification, saved -> { });
+
+    // when
+    UUID notificationId = idempotencyKeyService.findNotificationId("other", KEY, payload);
+
+    // then
+    assertThat(notificationId).isNull();
+    verify(notificationRepository).findIdempotentRequest("other", KEY);
+  }
+
+  @Test(expected = IdempotencyKeyReusedException.class)
+  public void shouldRejectKeyReusedForDifferentPayload() {
+    // given
+    idempotencyKeyService.saveOnce(CALLER, KEY, payload, notification, saved -> { });
+
+    // when
+    idempotencyKeyService
+        .findNotificationId(CALLER, KEY, Collections.singletonMap("body", "other"));
+  }
+
+  @Test
+  public void shouldLookForNotificationInDatabaseOnlyOnce() {
+    // given
+    idempotencyKeyService.saveOnce(CALLER, KEY, payload, notification, saved -> { });
+    String payloadHash = notification.getIdempotencyPayloadHash();
+    idempotencyKeyService.init();
+
+    given(notificationRepository.findIdempotentRequest(CALLER, KEY))
+        .willReturn(new IdempotentRequest(notification.getId(), payloadHash));
+
+    // when
+    idempotencyKeyService.findNotificationId(CALLER, KEY, payload);
+    UUID notificationId = idempotencyKeyService.findNotificationId(CALLER, KEY, payload);
+
+    // then
+    assertThat(notificationId).isEqualTo(notification.getId());
+    verify(notificationRepository, times(1)).findIdempotentRequest(CALLER, KEY);
+  }
+
+  @Test
+  public void shouldReturnIdOfNotificationSavedConcurrentlyWithTheSameKey() {
+    // given
+    UUID existingId = UUID.randomUUID();
+    given(notificationRepository.findIdempotentRequest(CALLER, KEY))
+        .willAnswer(invocation -> new IdempotentRequest(existingId,
+            notification.getIdempotencyPayloadHash()));
+
+    // when
+    UUID notificationId = idempotencyKeyService
+        .saveOnce(CALLER, KEY, payload, notification, saved -> {
+          throw new DataIntegrityViolationException("duplicate key");
+        });
+
+    // then
+    assertThat(notificationId).isEqualTo(existingId);
+  }
+
+  @Test(expected = DataIntegrityViolationException.class)
+  public void shouldRethrowViolationNotCausedByTheKey() {
+    // when
+    idempotencyKeyService.saveOnce(CALLER, KEY, payload, notification, saved -> {
+      throw new DataIntegrityViolationException("other constraint");
+    });
+  }
+
+  @Test
+  public void shouldRemoveExpiredKeys() {
+    // when
+    idempotencyKeyService.removeExpiredKeys();
+
+    // then
+    verify(notificationRepository).removeIdempotencyKeysCreatedBefore(any(ZonedDateTime.class));
+  }
+
+}
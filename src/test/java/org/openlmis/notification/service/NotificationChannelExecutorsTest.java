@@ -0,0 +1,140 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class NotificationChannelExecutorsTest {
+
+  private static final long TIMEOUT = 10;
+
+  private NotificationChannelExecutors executors = new NotificationChannelExecutors();
+
+  private CountDownLatch release = new CountDownLatch(1);
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(executors, "emailPoolSize", 1);
+    ReflectionTestUtils.setField(executors, "emailQueueCapacity", 1);
+    ReflectionTestUtils.setField(executors, "smsPoolSize", 1);
+    ReflectionTestUtils.setField(executors, "smsQueueCapacity", 1);
+
+    executors.initialize();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executors.destroy();
+  }
+
+  @Test
+  public void shouldExecuteTaskInThreadPoolOfChannel() throws InterruptedException {
+    // given
+    CountDownLatch executed = new CountDownLatch(1);
+
+    // when
+    boolean accepted = executors.execute(NotificationChannel.SMS, executed::countDown);
+
+    // then
+    assertThat(accepted).isTrue();
+    assertThat(executed.await(TIMEOUT, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void shouldReturnRemainingCapacityOfThreadPool() {
+    // given
+    executors.execute(NotificationChannel.SMS, this::block);
+
+    // when
+    int smsCapacity = executors.getRemainingCapacity(NotificationChannel.SMS);
+    int emailCapacity = executors.getRemainingCapacity(NotificationChannel.EMAIL);
+
+    // then
+    assertThat(smsCapacity).isEqualTo(1);
+    assertThat(emailCapacity).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldRejectTaskIfThreadPoolIsSaturated() {
+    // given
+    executors.execute(NotificationChannel.SMS, this::block);
+    executors.execute(NotificationChannel.SMS, this::block);
+
+    // when
+    boolean accepted = executors.execute(NotificationChannel.SMS, this::block);
+
+    // then
+    assertThat(accepted).isFalse();
+    assertThat(getMetrics())
+        .containsEntry("notificationToSend.executor.sms.rejected", 1L)
+        .containsEntry("notificationToSend.executor.email.rejected", 0L);
+  }
+
+  @Test
+  public void shouldNotHoldUpOtherChannelsIfThreadPoolIsSaturated() {
+    // given
+    executors.execute(NotificationChannel.SMS, this::block);
+    executors.execute(NotificationChannel.SMS, this::block);
+
+    // when
+    boolean accepted = executors.execute(NotificationChannel.EMAIL, this::block);
+
+    // then
+    assertThat(accepted).isTrue();
+  }
+
+  @Test
+  public void shouldExposeMetricsForEachChannel() {
+    assertThat(getMetrics())
+        .containsKeys(
+            "notificationToSend.executor.email.poolSize",
+            "notificationToSend.executor.email.activeCount",
+            "notificationToSend.executor.email.queueSize",
+            "notificationToSend.executor.email.queueRemainingCapacity",
+            "notificationToSend.executor.email.rejected",
+            "notificationToSend.executor.sms.poolSize",
+            "notificationToSend.executor.sms.activeCount",
+            "notificationToSend.executor.sms.queueSize",
+            "notificationToSend.executor.sms.queueRemainingCapacity",
+            "notificationToSend.executor.sms.rejected");
+  }
+
+  private Map<String, Number> getMetrics() {
+    return executors
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
+
+  private void block() {
+    try {
+      release.await(TIMEOUT, TimeUnit.SECONDS);
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.openlmis.notification.domain.NotificationPriority;
+import org.openlmis.notification.domain.PendingNotification;
+import org.openlmis.notification.domain.PendingNotification.Status;
+import org.openlmis.notification.repository.PendingNotificationRepository;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.springframework.boot.actuate.metrics.Metric;
+
+public class NotificationPriorityLanesTest {
+
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+  @Mock
+  private PendingNotificationRepository pendingNotificationRepository;
+
+  @InjectMocks
+  private NotificationPriorityLanes priorityLanes;
+
+  @Test
+  public void shouldSplitBatchByWeights() {
+    // when
+    Map<NotificationPriority, Integer> shares = priorityLanes.getShares(10);
+
+    // then
+    assertThat(shares)
+        .containsEntry(NotificationPriority.HIGH, 6)
+        .containsEntry(NotificationPriority.NORMAL, 3)
+        .containsEntry(NotificationPriority.LOW, 1);
+  }
+
+  @Test
+  public void shouldNotStarveLowPriorityWhenBatchIsSmall() {
+    // given
+    Map<NotificationPriority, Integer> total = new EnumMap<>(NotificationPriority.class);
+
+    // when
+    for (int i = 0; i < 10; ++i) {
+      priorityLanes.getShares(1).forEach((priority, share) -> total.merge(priority, share,
+          Integer::sum));
+    }
+
+    // then
+    assertThat(total)
+        .containsEntry(NotificationPriority.HIGH, 6)
+        .containsEntry(NotificationPriority.NORMAL, 3)
+        .containsEntry(NotificationPriority.LOW, 1);
+  }
+
+  @Test
+  public void shouldReturnLaneMetrics() {
+    // given
+    given(pendingNotificationRepository
+        .countByPriorityAndStatus(NotificationPriority.HIGH, Status.PENDING))
+        .willReturn(5L);
+
+    PendingNotification pending = new PendingNotification(new NotificationDataBuilder()
+        .withPriority(NotificationPriority.HIGH)
+        .build(), NotificationChannel.EMAIL);
+    priorityLanes.recordClaimed(pending);
+
+    // when
+    Map<String, Number> metrics = priorityLanes
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+
+    // then
+    assertThat(metrics)
+        .containsEntry("notificationToSend.lane.high.depth", 5L)
+        .containsEntry("notificationToSend.lane.high.claimed", 1L)
+        .containsEntry("notificationToSend.lane.low.depth", 0L)
+        .containsEntry("notificationToSend.lane.low.claimed", 0L)
+        .containsKeys("notificationToSend.lane.high.waitTime.last",
+            "notificationToSend.lane.high.waitTime.total");
+  }
+
+}
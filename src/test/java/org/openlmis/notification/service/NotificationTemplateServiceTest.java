@@ -0,0 +1,192 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.openlmis.notification.domain.NotificationMessage;
+import org.openlmis.notification.domain.NotificationTemplate;
+import org.openlmis.notification.repository.NotificationTemplateRepository;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class NotificationTemplateServiceTest {
+
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+  @Mock
+  private NotificationTemplateRepository notificationTemplateRepository;
+
+  @InjectMocks
+  private NotificationTemplateService notificationTemplateService;
+
+  private NotificationTemplate template = new NotificationTemplate("name",
+      "Hello ${firstName}", "There are ${count} requisitions", ZonedDateTime.now());
+
+  private Map<String, String> parameters = ImmutableMap.of("firstName", "John", "count", "5");
+
+  private NotificationMessage message;
+
+  @Before
+  public void setUp() {
+    template.setId(UUID.randomUUID());
+    message = new NotificationMessage(NotificationChannel.EMAIL, null, null, "tag",
+        template.getId());
+
+    given(notificationTemplateRepository.findOne(template.getId())).willReturn(template);
+    given(notificationTemplateRepository.save(any(NotificationTemplate.class)))
+        .willReturn(template);
+
+    ReflectionTestUtils.setField(notificationTemplateService, "cacheSize", 10L);
+    notificationTemplateService.initialize();
+  }
+
+  @Test
+  public void shouldRenderMessageFromTemplate() {
+    // when
+    NotificationMessage rendered = notificationTemplateService.render(message, parameters);
+
+    // then
+    assertThat(rendered.getChannel()).isEqualTo(NotificationChannel.EMAIL);
+    assertThat(rendered.getSubject()).isEqualTo("Hello John");
+    assertThat(rendered.getBody()).isEqualTo("There are 5 requisitions");
+    assertThat(rendered.getTag()).isEqualTo("tag");
+    assertThat(rendered.isTemplated()).isFalse();
+  }
+
+  @Test
+  public void shouldRenderTemplateWithoutSubject() {
+    // given
+    template = new NotificationTemplate("name", null, "Hi ${firstName}", ZonedDateTime.now());
+    template.setId(message.getTemplateId());
+    given(notificationTemplateRepository.findOne(template.getId())).willReturn(template);
+
+    // when
+    NotificationMessage rendered = notificationTemplateService.render(message, parameters);
+
+    // then
+    assertThat(rendered.getSubject()).isNull();
+    assertThat(rendered.getBody()).isEqualTo("Hi John");
+  }
+
+  @Test
+  public void shouldReadTemplateOnlyOnce() {
+    // when
+    notificationTemplateService.render(message, parameters);
+    notificationTemplateService.render(message, ImmutableMap.of());
+
+    // then
+    verify(notificationTemplateRepository, times(1)).findOne(template.getId());
+  }
+
+  @Test
+  public void shouldNotReadCreatedTemplate() {
+    // given
+    notificationTemplateService.create(template);
+
+    // when
+    notificationTemplateService.render(message, parameters);
+
+    // then
+    verify(notificationTemplateRepository, never()).findOne(template.getId());
+  }
+
+  @Test
+  public void shouldReturnMessageWithoutTemplate() {
+    // given
+    NotificationMessage plain = new NotificationMessage(NotificationChannel.SMS, "body");
+
+    // when
+    NotificationMessage rendered = notificationTemplateService.render(plain, parameters);
+
+    // then
+    assertThat(rendered).isSameAs(plain);
+  }
+
+  @Test(expected = UncheckedExecutionException.class)
+  public void shouldThrowExceptionIfTemplateDoesNotExist() {
+    // given
+    message = new NotificationMessage(NotificationChannel.EMAIL, null, null, null,
+        UUID.randomUUID());
+
+    // when
+    notificationTemplateService.render(message, parameters);
+  }
+
+  @Test
+  public void shouldCheckCachedTemplatesBeforeRepository() {
+    // given
+    notificationTemplateService.create(template);
+
+    // when
+    boolean exists = notificationTemplateService.exists(template.getId());
+
+    // then
+    assertThat(exists).isTrue();
+    verify(notificationTemplateRepository, never()).exists(template.getId());
+  }
+
+  @Test
+  public void shouldCheckRepositoryIfTemplateIsNotCached() {
+    // given
+    given(notificationTemplateRepository.exists(template.getId())).willReturn(true);
+
+    // when
+    boolean exists = notificationTemplateService.exists(template.getId());
+
+    // then
+    assertThat(exists).isTrue();
+  }
+
+  @Test
+  public void shouldExposeCacheMetrics() {
+    // given
+    notificationTemplateService.render(message, parameters);
+    notificationTemplateService.render(message, parameters);
+
+    // when
+    Map<String, Number> metrics = notificationTemplateService
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+
+    // then
+    assertThat(metrics)
+        .containsEntry("notificationTemplates.cache.size", 1L)
+        .containsEntry("notificationTemplates.cache.hits", 1L)
+        .containsEntry("notificationTemplates.cache.misses", 1L);
+  }
+
+}
@@ -0,0 +1,399 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.openlmis.notification.service.NotificationToSendRetriever.CHANNEL_TO_USE_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.EMAIL_OUTBOX_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.IMPORTANT_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_VERIFIED_HEADER;
+import static org.openlmis.notification.service.NotificationToSendRetriever.SMS_OUTBOX_HEADER;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.mail.MessagingException;
+import org.assertj.core.util.Lists;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.PendingNotification;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@SuppressWarnings("unchecked")
+public class NotificationToSendDispatcherTest {
+
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+  @Mock
+  private PendingNotificationService pendingNotificationService;
+
+  @Mock
+  private NotificationChannelExecutors notificationChannelExecutors;
+
+  @Mock
+  private MessageChannel startChannel;
+
+  @Mock
+  private ProviderRateLimiters providerRateLimiters;
+
+  @Mock
+  private EmailSender emailSender;
+
+  @Mock
+  private SmsBroadcaster smsBroadcaster;
+
+  @InjectMocks
+  private NotificationToSendDispatcher dispatcher;
+
+  private Notification notification = new NotificationDataBuilder()
+      .withEmptyMessage(NotificationChannel.EMAIL)
+      .buildAsNew();
+
+  private PendingNotification pendingNotification =
+      new PendingNotification(notification, NotificationChannel.EMAIL);
+
+  private Notification smsNotification = new NotificationDataBuilder()
+      .withEmptyMessage(NotificationChannel.SMS)
+      .withImportant(true)
+      .buildAsNew();
+
+  private PendingNotification pendingSmsNotification =
+      new PendingNotification(smsNotification, NotificationChannel.SMS);
+
+  private Notification otherNotification = new NotificationDataBuilder()
+      .withEmptyMessage(NotificationChannel.EMAIL)
+      .buildAsNew();
+
+  private PendingNotification otherPendingNotification =
+      new PendingNotification(otherNotification, NotificationChannel.EMAIL);
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(dispatcher, "emailBatchSize", 2);
+
+    given(providerRateLimiters.getAvailablePermits(any(NotificationChannel.class)))
+        .willReturn(Integer.MAX_VALUE);
+    given(smsBroadcaster.getMaxSize()).willReturn(10);
+
+    given(notificationChannelExecutors.execute(any(NotificationChannel.class), any(Runnable.class)))
+        .willAnswer(invocation -> {
+          invocation.getArgumentAt(1, Runnable.class).run();
+          return true;
+        });
+  }
+
+  @Test
+  public void shouldReturnCapacityInNotifications() {
+    // given
+    given(notificationChannelExecutors.getRemainingCapacity(NotificationChannel.EMAIL))
+        .willReturn(3);
+    given(notificationChannelExecutors.getRemainingCapacity(NotificationChannel.SMS))
+        .willReturn(3);
+
+    // when
+    int emailCapacity = dispatcher.getCapacity(NotificationChannel.EMAIL);
+    int smsCapacity = dispatcher.getCapacity(NotificationChannel.SMS);
+
+    // then
+    assertThat(emailCapacity).isEqualTo(6);
+    assertThat(smsCapacity).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldLimitCapacityByAvailablePermits() {
+    // given
+    given(notificationChannelExecutors.getRemainingCapacity(NotificationChannel.EMAIL))
+        .willReturn(3);
+    willReturn(4).given(providerRateLimiters).getAvailablePermits(NotificationChannel.EMAIL);
+
+    // when
+    int capacity = dispatcher.getCapacity(NotificationChannel.EMAIL);
+
+    // then
+    assertThat(capacity).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldCountSmsPermitsInBroadcasts() {
+    // given
+    given(notificationChannelExecutors.getRemainingCapacity(NotificationChannel.SMS))
+        .willReturn(100);
+    willReturn(4).given(providerRateLimiters).getAvailablePermits(NotificationChannel.SMS);
+    given(smsBroadcaster.getUnsentBroadcasts()).willReturn(1);
+
+    // when
+    int capacity = dispatcher.getCapacity(NotificationChannel.SMS);
+
+    // then
+    assertThat(capacity).isEqualTo(30);
+  }
+
+  @Test
+  public void shouldNotCountSmsPermitsNeededByCollectedBroadcasts() {
+    // given
+    given(notificationChannelExecutors.getRemainingCapacity(NotificationChannel.SMS))
+        .willReturn(100);
+    willReturn(4).given(providerRateLimiters).getAvailablePermits(NotificationChannel.SMS);
+    given(smsBroadcaster.getUnsentBroadcasts()).willReturn(4);
+
+    // when
+    int capacity = dispatcher.getCapacity(NotificationChannel.SMS);
+
+    // then
+    assertThat(capacity).isZero();
+  }
+
+  @Test
+  public void shouldNotCountPermitsNeededByNotificationsWaitingToBeSent() {
+    // given
+    given(notificationChannelExecutors.getRemainingCapacity(NotificationChannel.EMAIL))
+        .willReturn(3);
+    willReturn(4).given(providerRateLimiters).getAvailablePermits(NotificationChannel.EMAIL);
+
+    List<Runnable> queued = new ArrayList<>();
+    willAnswer(invocation -> queued.add(invocation.getArgumentAt(1, Runnable.class)))
+        .given(notificationChannelExecutors)
+        .execute(any(NotificationChannel.class), any(Runnable.class));
+
+    // when
+    dispatcher.dispatch(Lists.newArrayList(pendingNotification, otherPendingNotification));
+    int whileQueued = dispatcher.getCapacity(NotificationChannel.EMAIL);
+    queued.forEach(Runnable::run);
+    int afterSent = dispatcher.getCapacity(NotificationChannel.EMAIL);
+
+    // then
+    assertThat(whileQueued).isEqualTo(2);
+    assertThat(afterSent).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldCompleteSentNotifications() {
+    // when
+    dispatcher.dispatch(Lists.newArrayList(pendingNotification, pendingSmsNotification));
+
+    // then
+    ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+    verify(startChannel, times(2)).send(captor.capture());
+
+    List<Message> messages = captor.getAllValues();
+    assertThat(messages.get(0).getPayload()).isEqualTo(notification);
+    assertThat(messages.get(1).getPayload()).isEqualTo(smsNotification);
+
+    verify(pendingNotificationService).complete(pendingNotification.getId());
+    verify(pendingNotificationService).complete(pendingSmsNotification.getId());
+    verify(pendingNotificationService, never()).release(any());
+  }
+
+  @Test
+  public void shouldRecordFailureOfNotificationThatCouldNotBeSent() {
+    // given
+    given(startChannel.send(any(Message.class))).willAnswer(invocation -> {
+      Message<?> message = invocation.getArgumentAt(0, Message.class);
+
+      if (notification.equals(message.getPayload())) {
+        throw new MessageDeliveryException(message, "test");
+      }
+
+      return true;
+    });
+
+    // when
+    dispatcher.dispatch(Lists.newArrayList(pendingNotification, pendingSmsNotification));
+
+    // then
+    verify(pendingNotificationService).fail(pendingNotification.getId(), "test");
+    verify(pendingNotificationService, never()).complete(pendingNotification.getId());
+
+    verify(pendingNotificationService).complete(pendingSmsNotification.getId());
+    verify(pendingNotificationService, never()).fail(eq(pendingSmsNotification.getId()), any());
+  }
+
+  @Test
+  public void shouldReleaseNotificationRejectedBySaturatedThreadPool() {
+    // given
+    willReturn(false)
+        .given(notificationChannelExecutors)
+        .execute(eq(NotificationChannel.SMS), any(Runnable.class));
+
+    // when
+    dispatcher.dispatch(Lists.newArrayList(pendingNotification, pendingSmsNotification));
+
+    // then
+    verify(pendingNotificationService).complete(pendingNotification.getId());
+
+    verify(pendingNotificationService).release(pendingSmsNotification.getId());
+    verify(pendingNotificationService, never()).complete(pendingSmsNotification.getId());
+  }
+
+  @Test
+  public void shouldSendEmailsOfBatchTogether() {
+    // given
+    EmailMessage email = new EmailMessage("to", "subject", "body");
+    EmailMessage otherEmail = new EmailMessage("other", "subject", "body");
+    given(startChannel.send(any(Message.class))).willAnswer(invocation -> {
+      Message<?> message = invocation.getArgumentAt(0, Message.class);
+      List<EmailMessage> outbox = (List<EmailMessage>) message
+          .getHeaders()
+          .get(EMAIL_OUTBOX_HEADER);
+      outbox.add(notification.equals(message.getPayload()) ? email : otherEmail);
+      return true;
+    });
+    ServerException error = new ServerException(new IllegalStateException("test"), "key");
+    given(emailSender.sendMails(anyListOf(EmailMessage.class)))
+        .willReturn(Lists.newArrayList(null, error));
+
+    // when
+    dispatcher.dispatch(Lists.newArrayList(pendingNotification, otherPendingNotification));
+
+    // then
+    verify(notificationChannelExecutors)
+        .execute(eq(NotificationChannel.EMAIL), any(Runnable.class));
+    verify(emailSender).sendMails(Lists.newArrayList(email, otherEmail));
+
+    verify(pendingNotificationService).complete(pendingNotification.getId());
+    verify(pendingNotificationService)
+        .fail(otherPendingNotification.getId(), "IllegalStateException: test");
+    verify(pendingNotificationService, never()).complete(otherPendingNotification.getId());
+  }
+
+  @Test
+  public void shouldReleaseEmailsRejectedByCircuitBreaker() {
+    // given
+    given(startChannel.send(any(Message.class))).willAnswer(invocation -> {
+      Message<?> message = invocation.getArgumentAt(0, Message.class);
+      ((List<EmailMessage>) message.getHeaders().get(EMAIL_OUTBOX_HEADER))
+          .add(new EmailMessage("to", "subject", "body"));
+      return true;
+    });
+    ServerException error = new ServerException(
+        new MessagingException("open", new CircuitBreakerOpenException("email")), "key");
+    given(emailSender.sendMails(anyListOf(EmailMessage.class)))
+        .willReturn(Lists.newArrayList(error, error));
+
+    // when
+    dispatcher.dispatch(Lists.newArrayList(pendingNotification, otherPendingNotification));
+
+    // then
+    verify(pendingNotificationService).release(pendingNotification.getId());
+    verify(pendingNotificationService).release(otherPendingNotification.getId());
+    verify(pendingNotificationService, never()).fail(any(), any());
+  }
+
+  @Test
+  public void shouldSplitEmailsIntoBatches() {
+    // given
+    PendingNotification third = new PendingNotification(new NotificationDataBuilder()
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .buildAsNew(), NotificationChannel.EMAIL);
+
+    // when
+    dispatcher.dispatch(
+        Lists.newArrayList(pendingNotification, otherPendingNotification, third));
+
+    // then
+    verify(notificationChannelExecutors, times(2))
+        .execute(eq(NotificationChannel.EMAIL), any(Runnable.class));
+    verify(emailSender, never()).sendMails(anyListOf(EmailMessage.class));
+    verify(pendingNotificationService, times(3)).complete(any());
+  }
+
+  @Test
+  public void shouldReleaseAllEmailsOfBatchRejectedBySaturatedThreadPool() {
+    // given
+    willReturn(false)
+        .given(notificationChannelExecutors)
+        .execute(eq(NotificationChannel.EMAIL), any(Runnable.class));
+
+    // when
+    dispatcher.dispatch(Lists.newArrayList(pendingNotification, otherPendingNotification));
+
+    // then
+    verify(pendingNotificationService).release(pendingNotification.getId());
+    verify(pendingNotificationService).release(otherPendingNotification.getId());
+    verify(startChannel, never()).send(any(Message.class));
+  }
+
+  @Test
+  public void shouldPassSmsToBroadcaster() {
+    // given
+    SmsMessage sms = new SmsMessage("123", "body");
+    given(startChannel.send(any(Message.class))).willAnswer(invocation -> {
+      Message<?> message = invocation.getArgumentAt(0, Message.class);
+      ((List<SmsMessage>) message.getHeaders().get(SMS_OUTBOX_HEADER)).add(sms);
+      return true;
+    });
+
+    // when
+    dispatcher.dispatch(Lists.newArrayList(pendingSmsNotification));
+
+    // then
+    verify(smsBroadcaster).add(pendingSmsNotification.getId(), sms);
+    verify(pendingNotificationService, never()).complete(any());
+  }
+
+  @Test
+  public void shouldCreateMessageWithHeaders() {
+    // when
+    Message<Notification> message = NotificationToSendDispatcher
+        .createMessage(pendingSmsNotification);
+
+    // then
+    assertThat(message.getPayload()).isEqualTo(smsNotification);
+    assertThat(message.getHeaders())
+        .containsEntry(RECIPIENT_HEADER, smsNotification.getUserId())
+        .containsEntry(IMPORTANT_HEADER, smsNotification.getImportant())
+        .containsEntry(CHANNEL_TO_USE_HEADER, pendingSmsNotification.getChannel())
+        .containsEntry(RECIPIENT_VERIFIED_HEADER, smsNotification.isRecipientVerified());
+  }
+
+  @Test
+  public void shouldSendMessageToRecipientOfPendingNotification() {
+    // given
+    UUID recipientId = UUID.randomUUID();
+    PendingNotification pending = new PendingNotification(new NotificationDataBuilder()
+        .withUserId(null)
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .build(), NotificationChannel.EMAIL, recipientId);
+
+    // when
+    Message<Notification> message = NotificationToSendDispatcher.createMessage(pending);
+
+    // then
+    assertThat(message.getHeaders()).containsEntry(RECIPIENT_HEADER, recipientId);
+  }
+}
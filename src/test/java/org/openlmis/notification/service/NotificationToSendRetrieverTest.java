@@ -17,30 +17,56 @@ package org.openlmis.notification.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
-import static org.openlmis.notification.service.NotificationToSendRetriever.CHANNEL_TO_USE_HEADER;
-import static org.openlmis.notification.service.NotificationToSendRetriever.IMPORTANT_HEADER;
-import static org.openlmis.notification.service.NotificationToSendRetriever.RECIPIENT_HEADER;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.assertj.core.util.Lists;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 import org.openlmis.notification.domain.Notification;
 import org.openlmis.notification.domain.PendingNotification;
 import org.openlmis.notification.util.NotificationDataBuilder;
-import org.springframework.integration.jpa.core.JpaExecutor;
 import org.springframework.messaging.Message;
+import org.springframework.test.util.ReflectionTestUtils;
 
 public class NotificationToSendRetrieverTest {
 
+  private static final int BATCH_SIZE = 2;
+  private static final int EXPANSION_CHUNK_SIZE = 5;
+  private static final long FALLBACK_POLL_INTERVAL = 60000;
+  private static final Set<NotificationChannel> ALL_CHANNELS =
+      EnumSet.allOf(NotificationChannel.class);
+
   @Rule
   public MockitoRule mockitoRule = MockitoJUnit.rule();
 
   @Mock
-  private JpaExecutor jpaExecutor;
+  private PendingNotificationService pendingNotificationService;
+
+  @Mock
+  private CircuitBreakers circuitBreakers;
+
+  @Mock
+  private NotificationToSendDispatcher notificationToSendDispatcher;
 
+  @InjectMocks
   private NotificationToSendRetriever retriever;
 
   private Notification notification = new NotificationDataBuilder()
@@ -50,37 +76,322 @@ public class NotificationToSendRetrieverTest {
   private PendingNotification pendingNotification =
       new PendingNotification(notification, NotificationChannel.EMAIL);
 
+  private PendingNotification pendingSmsNotification = new PendingNotification(
+      new NotificationDataBuilder().withEmptyMessage(NotificationChannel.SMS).buildAsNew(),
+      NotificationChannel.SMS);
+
   @Before
   public void setUp() {
-    retriever = new NotificationToSendRetriever(jpaExecutor);
+    ReflectionTestUtils.setField(retriever, "batchSize", BATCH_SIZE);
+    ReflectionTestUtils.setField(retriever, "expansionChunkSize", EXPANSION_CHUNK_SIZE);
+    ReflectionTestUtils.setField(retriever, "fallbackPollInterval", FALLBACK_POLL_INTERVAL);
+
+    given(circuitBreakers.get(any(NotificationChannel.class)))
+        .willAnswer(invocation -> new CircuitBreaker("test", 1, 100, 1000, 1));
+    given(notificationToSendDispatcher.getCapacity(any(NotificationChannel.class)))
+        .willReturn(Integer.MAX_VALUE);
   }
 
   @Test
-  public void shouldReturnFirstPendingNotificationReadyToSend() {
+  public void shouldClaimPendingNotificationsReadyToSend() {
     // given
-    given(jpaExecutor.poll()).willReturn(pendingNotification);
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Lists.newArrayList(pendingNotification));
 
     // when
-    Message<Notification> message = retriever.retrieve();
+    Message<List<PendingNotification>> message = retriever.retrieve();
 
     // then
     assertThat(message).isNotNull();
-    assertThat(message.getPayload()).isEqualTo(notification);
-    assertThat(message.getHeaders())
-        .containsEntry(RECIPIENT_HEADER, notification.getUserId())
-        .containsEntry(IMPORTANT_HEADER, notification.getImportant())
-        .containsEntry(CHANNEL_TO_USE_HEADER, pendingNotification.getChannel());
+    assertThat(message.getPayload()).containsExactly(pendingNotification);
   }
 
   @Test
   public void shouldReturnNullValueIfThereIsNoPendingNotification() {
     // given
-    given(jpaExecutor.poll()).willReturn(null);
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Collections.emptyList());
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNull();
+  }
+
+  @Test
+  public void shouldNotQueryDatabaseIfNotWokenUpBeforeFallbackPoll() {
+    // given
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Lists.newArrayList(pendingNotification));
+    retriever.retrieve();
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNull();
+    verify(pendingNotificationService, times(1)).claim(BATCH_SIZE, ALL_CHANNELS);
+  }
+
+  @Test
+  public void shouldQueryDatabaseIfWokenUp() {
+    // given
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Lists.newArrayList(pendingNotification));
+    retriever.retrieve();
+
+    // when
+    retriever.wakeUp();
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNotNull();
+    verify(pendingNotificationService, times(2)).claim(BATCH_SIZE, ALL_CHANNELS);
+  }
+
+  @Test
+  public void shouldQueryDatabaseIfRetryIsDue() {
+    // given
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Lists.newArrayList(pendingNotification));
+    retriever.retrieve();
+    given(pendingNotificationService.isRetryDue()).willReturn(true);
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNotNull();
+    verify(pendingNotificationService, times(2)).claim(BATCH_SIZE, ALL_CHANNELS);
+  }
+
+  @Test
+  public void shouldQueryDatabaseIfFallbackPollIntervalElapsed() {
+    // given
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Lists.newArrayList(pendingNotification));
+    retriever.retrieve();
+    ReflectionTestUtils.setField(retriever, "fallbackPollInterval", 0L);
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNotNull();
+    verify(pendingNotificationService, times(2)).claim(BATCH_SIZE, ALL_CHANNELS);
+  }
+
+  @Test
+  public void shouldQueryDatabaseAgainIfBatchWasFull() {
+    // given
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Lists.newArrayList(pendingNotification, pendingNotification));
+    retriever.retrieve();
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNotNull();
+    verify(pendingNotificationService, times(2)).claim(BATCH_SIZE, ALL_CHANNELS);
+  }
+
+  @Test
+  public void shouldExpandRecipientsIfBatchWasNotFull() {
+    // given
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Lists.newArrayList(pendingNotification));
+    given(pendingNotificationService.expandRecipients(EXPANSION_CHUNK_SIZE)).willReturn(1);
+    retriever.retrieve();
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNotNull();
+    verify(pendingNotificationService, times(2)).claim(BATCH_SIZE, ALL_CHANNELS);
+    verify(pendingNotificationService, times(2)).expandRecipients(EXPANSION_CHUNK_SIZE);
+  }
+
+  @Test
+  public void shouldNotExpandRecipientsIfBatchWasFull() {
+    // given
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Lists.newArrayList(pendingNotification, pendingNotification));
+
+    // when
+    retriever.retrieve();
+
+    // then
+    verify(pendingNotificationService, never()).expandRecipients(anyInt());
+  }
+
+  @Test
+  public void shouldNotQueryDatabaseAgainWhileChannelHasNoPermits() {
+    // given
+    willReturn(0).given(notificationToSendDispatcher).getCapacity(NotificationChannel.SMS);
+    Set<NotificationChannel> channels = EnumSet.of(NotificationChannel.EMAIL);
+    given(pendingNotificationService.claim(BATCH_SIZE, channels))
+        .willReturn(Lists.newArrayList(pendingNotification));
+    retriever.retrieve();
 
     // when
-    Message<Notification> message = retriever.retrieve();
+    Message<List<PendingNotification>> message = retriever.retrieve();
 
     // then
     assertThat(message).isNull();
+    verify(pendingNotificationService, times(1)).claim(BATCH_SIZE, channels);
+  }
+
+  @Test
+  public void shouldNotClaimNotificationsOfChannelsWithOpenCircuitBreaker() {
+    // given
+    CircuitBreaker circuitBreaker = new CircuitBreaker("sms", 1, 100, 60000, 1);
+    circuitBreaker.onFailure();
+    willReturn(circuitBreaker).given(circuitBreakers).get(NotificationChannel.SMS);
+
+    // when
+    retriever.retrieve();
+
+    // then
+    verify(pendingNotificationService)
+        .claim(BATCH_SIZE, EnumSet.of(NotificationChannel.EMAIL));
+  }
+
+  @Test
+  public void shouldNotQueryDatabaseAgainWhileCircuitBreakerIsOpen() {
+    // given
+    CircuitBreaker circuitBreaker = new CircuitBreaker("sms", 1, 100, 60000, 1);
+    circuitBreaker.onFailure();
+    willReturn(circuitBreaker).given(circuitBreakers).get(NotificationChannel.SMS);
+    retriever.retrieve();
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNull();
+    verify(pendingNotificationService, times(1))
+        .claim(BATCH_SIZE, EnumSet.of(NotificationChannel.EMAIL));
+  }
+
+  @Test
+  public void shouldClaimAgainWhenCircuitBreakerLetsTrialCallsThrough() {
+    // given
+    AtomicLong clock = new AtomicLong();
+    CircuitBreaker circuitBreaker = new CircuitBreaker("sms", 1, 100, 1000, 1, clock::get);
+    circuitBreaker.onFailure();
+    willReturn(circuitBreaker).given(circuitBreakers).get(NotificationChannel.SMS);
+    retriever.retrieve();
+
+    // when
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    retriever.retrieve();
+
+    // then
+    verify(pendingNotificationService).claim(BATCH_SIZE, ALL_CHANNELS);
+  }
+
+  @Test
+  public void shouldNotQueryDatabaseIfNoChannelHasPermits() {
+    // given
+    willReturn(0).given(notificationToSendDispatcher).getCapacity(any(NotificationChannel.class));
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNull();
+    verify(pendingNotificationService, never()).claim(anyInt(), anyCollectionOf(
+        NotificationChannel.class));
+    verify(pendingNotificationService, never()).expandRecipients(anyInt());
+  }
+
+  @Test
+  public void shouldClaimAgainWhenChannelHasPermitsAgain() {
+    // given
+    willReturn(0).given(notificationToSendDispatcher).getCapacity(any(NotificationChannel.class));
+    retriever.retrieve();
+    willReturn(Integer.MAX_VALUE)
+        .given(notificationToSendDispatcher).getCapacity(any(NotificationChannel.class));
+    given(pendingNotificationService.claim(BATCH_SIZE, ALL_CHANNELS))
+        .willReturn(Lists.newArrayList(pendingNotification));
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNotNull();
+  }
+
+  @Test
+  public void shouldNotClaimNotificationsOfChannelWithSaturatedThreadPool() {
+    // given
+    willReturn(0).given(notificationToSendDispatcher).getCapacity(NotificationChannel.SMS);
+
+    // when
+    retriever.retrieve();
+
+    // then
+    verify(pendingNotificationService)
+        .claim(BATCH_SIZE, EnumSet.of(NotificationChannel.EMAIL));
+    verify(pendingNotificationService, never())
+        .claim(anyInt(), eq(EnumSet.of(NotificationChannel.SMS)));
+  }
+
+  @Test
+  public void shouldLimitClaimToCapacityOfThreadPool() {
+    // given
+    willReturn(1).given(notificationToSendDispatcher).getCapacity(NotificationChannel.SMS);
+    given(pendingNotificationService.claim(1, EnumSet.of(NotificationChannel.SMS)))
+        .willReturn(Lists.newArrayList(pendingSmsNotification));
+    given(pendingNotificationService.claim(BATCH_SIZE, EnumSet.of(NotificationChannel.EMAIL)))
+        .willReturn(Lists.newArrayList(pendingNotification));
+
+    // when
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNotNull();
+    assertThat(message.getPayload()).containsOnly(pendingSmsNotification, pendingNotification);
+  }
+
+  @Test
+  public void shouldNotQueryDatabaseAgainIfClaimWasLimitedByCapacity() {
+    // given
+    willReturn(1).given(notificationToSendDispatcher).getCapacity(NotificationChannel.SMS);
+    given(pendingNotificationService.claim(1, EnumSet.of(NotificationChannel.SMS)))
+        .willReturn(Lists.newArrayList(pendingSmsNotification));
+    retriever.retrieve();
+
+    // when
+    willReturn(0).given(notificationToSendDispatcher).getCapacity(NotificationChannel.SMS);
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNull();
+    verify(pendingNotificationService, times(1))
+        .claim(1, EnumSet.of(NotificationChannel.SMS));
+  }
+
+  @Test
+  public void shouldClaimAgainWhenPausedChannelHasRoom() {
+    // given
+    willReturn(0).given(notificationToSendDispatcher).getCapacity(NotificationChannel.SMS);
+    retriever.retrieve();
+    retriever.retrieve();
+
+    // when
+    willReturn(1).given(notificationToSendDispatcher).getCapacity(NotificationChannel.SMS);
+    given(pendingNotificationService.claim(1, EnumSet.of(NotificationChannel.SMS)))
+        .willReturn(Lists.newArrayList(pendingSmsNotification));
+    Message<List<PendingNotification>> message = retriever.retrieve();
+
+    // then
+    assertThat(message).isNotNull();
+    assertThat(message.getPayload()).containsExactly(pendingSmsNotification);
+    verify(pendingNotificationService, times(1))
+        .claim(1, EnumSet.of(NotificationChannel.SMS));
   }
 }
@@ -16,18 +16,32 @@
 package org.openlmis.notification.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
 import static org.openlmis.notification.service.NotificationToSendRetriever.CHANNEL_TO_USE_HEADER;
 import static org.openlmis.notification.service.NotificationTransformer.CHANNEL_HEADER;
 
+import java.util.UUID;
+import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
 import org.openlmis.notification.domain.Notification;
 import org.openlmis.notification.domain.NotificationMessage;
 import org.openlmis.notification.util.NotificationDataBuilder;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
 
+@RunWith(MockitoJUnitRunner.class)
 public class NotificationTransformerTest {
 
+  @Mock
+  private NotificationTemplateService notificationTemplateService;
+
+  @InjectMocks
   private NotificationTransformer transformer = new NotificationTransformer();
 
   private Notification notification = new NotificationDataBuilder()
@@ -39,6 +53,13 @@ public class NotificationTransformerTest {
       .setHeader(CHANNEL_TO_USE_HEADER, NotificationChannel.EMAIL)
       .build();
 
+  @Before
+  public void setUp() {
+    given(notificationTemplateService
+        .render(any(NotificationMessage.class), anyMapOf(String.class, String.class)))
+        .willAnswer(invocation -> invocation.getArguments()[0]);
+  }
+
   @Test
   public void shouldExtractNotificationMessages() {
     // when
@@ -53,6 +74,35 @@ public class NotificationTransformerTest {
         .doesNotContainKey(CHANNEL_TO_USE_HEADER);
   }
 
+  @Test
+  public void shouldRenderTemplatedNotificationMessages() {
+    // given
+    notification = new NotificationDataBuilder()
+        .withMessage(new NotificationMessage(NotificationChannel.EMAIL, null, null, null,
+            UUID.randomUUID()))
+        .build();
+    notification.getParameters().put("name", "John");
+
+    message = MessageBuilder
+        .withPayload(notification)
+        .copyHeaders(message.getHeaders())
+        .build();
+
+    NotificationMessage rendered = new NotificationMessage(NotificationChannel.EMAIL,
+        "Hello John");
+    given(notificationTemplateService
+        .render(notification.getMessages().get(0), notification.getParameters()))
+        .willReturn(rendered);
+
+    // when
+    Message<?> newMessage = transformer.extractNotificationMessage(message);
+
+    // then
+    assertThat(newMessage.getPayload()).isEqualTo(rendered);
+    assertThat(newMessage.getHeaders())
+        .containsEntry(CHANNEL_HEADER, NotificationChannel.EMAIL);
+  }
+
   @Test
   public void shouldReturnNullIfThereIsNoMessageForGivenChannel() {
     // given
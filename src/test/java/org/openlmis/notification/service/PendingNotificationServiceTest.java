@@ -0,0 +1,527 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import org.assertj.core.util.Lists;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.openlmis.notification.domain.FailedNotification;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.NotificationPriority;
+import org.openlmis.notification.domain.NotificationRecipient;
+import org.openlmis.notification.domain.PendingNotification;
+import org.openlmis.notification.domain.PendingNotification.Status;
+import org.openlmis.notification.domain.UserContactDetails;
+import org.openlmis.notification.repository.FailedNotificationRepository;
+import org.openlmis.notification.repository.NotificationRecipientRepository;
+import org.openlmis.notification.repository.NotificationRepository;
+import org.openlmis.notification.repository.PendingNotificationRepository;
+import org.openlmis.notification.repository.UserContactDetailsRepository;
+import org.openlmis.notification.testutils.FailedNotificationDataBuilder;
+import org.openlmis.notification.util.EmailDetailsDataBuilder;
+import org.openlmis.notification.util.NotificationDataBuilder;
+import org.openlmis.notification.util.UserContactDetailsDataBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class PendingNotificationServiceTest {
+
+  private static final int BATCH_SIZE = 5;
+  private static final long CLAIM_TIMEOUT = 60;
+  private static final int MAX_ATTEMPTS = 3;
+  private static final long INITIAL_DELAY = 10;
+  private static final long MAX_DELAY = 100;
+  private static final String ERROR = "error";
+
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+  @Mock
+  private PendingNotificationRepository pendingNotificationRepository;
+
+  @Mock
+  private FailedNotificationRepository failedNotificationRepository;
+
+  @Mock
+  private NotificationRepository notificationRepository;
+
+  @Mock
+  private NotificationRecipientRepository notificationRecipientRepository;
+
+  @Mock
+  private UserContactDetailsRepository userContactDetailsRepository;
+
+  @Spy
+  private NotificationPriorityLanes priorityLanes = new NotificationPriorityLanes();
+
+  @InjectMocks
+  private PendingNotificationService pendingNotificationService;
+
+  private PendingNotification pendingNotification = new PendingNotification(
+      new NotificationDataBuilder().withEmptyMessage(NotificationChannel.EMAIL).build(),
+      NotificationChannel.EMAIL);
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(pendingNotificationService, "claimTimeout", CLAIM_TIMEOUT);
+    ReflectionTestUtils.setField(pendingNotificationService, "maxAttempts", MAX_ATTEMPTS);
+    ReflectionTestUtils.setField(pendingNotificationService, "initialDelay", INITIAL_DELAY);
+    ReflectionTestUtils.setField(pendingNotificationService, "maxDelay", MAX_DELAY);
+  }
+
+  @Test
+  public void shouldEnqueueNotificationForEachChannel() {
+    // given
+    Notification notification = new NotificationDataBuilder()
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .withEmptyMessage(NotificationChannel.SMS)
+        .build();
+
+    // when
+    pendingNotificationService.enqueue(Lists.newArrayList(notification));
+
+    // then
+    verify(notificationRepository).save(Lists.newArrayList(notification));
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingNotificationRepository).save(captor.capture());
+    assertThat(captor.getValue()).hasSize(2);
+  }
+
+  @Test
+  public void shouldNotEnqueueMessagesThatCannotBeDelivered() {
+    // given
+    Notification notification = new NotificationDataBuilder()
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .withEmptyMessage(NotificationChannel.SMS)
+        .build();
+    UserContactDetails contactDetails = new UserContactDetailsDataBuilder()
+        .withReferenceDataUserId(notification.getUserId())
+        .withPhoneNumber(null)
+        .build();
+
+    given(userContactDetailsRepository.findAll(Collections.singleton(notification.getUserId())))
+        .willReturn(Lists.newArrayList(contactDetails));
+
+    // when
+    pendingNotificationService.enqueue(Lists.newArrayList(notification));
+
+    // then
+    verify(notificationRepository).save(Lists.newArrayList(notification));
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingNotificationRepository).save(captor.capture());
+
+    List<PendingNotification> pending = captor.getValue();
+    assertThat(pending)
+        .extracting(PendingNotification::getChannel)
+        .containsExactly(NotificationChannel.EMAIL);
+  }
+
+  @Test
+  public void shouldNotReadContactDetailsThatWereGiven() {
+    // given
+    Notification notification = new NotificationDataBuilder()
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .build();
+    UserContactDetails contactDetails = new UserContactDetailsDataBuilder()
+        .withReferenceDataUserId(notification.getUserId())
+        .withEmailDetails(new EmailDetailsDataBuilder().withUnverifiedFlag().build())
+        .build();
+
+    // when
+    pendingNotificationService.enqueue(Lists.newArrayList(notification),
+        Collections.singletonMap(notification.getUserId(), contactDetails));
+
+    // then
+    verify(userContactDetailsRepository, never()).findAll(anyCollectionOf(UUID.class));
+    verify(pendingNotificationRepository).save(Collections.emptyList());
+  }
+
+  @Test
+  public void shouldEnqueueNotificationOnceForManyRecipients() {
+    // given
+    Notification notification = new NotificationDataBuilder()
+        .withUserId(null)
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .build();
+    List<UUID> recipientIds = Lists.newArrayList(UUID.randomUUID(), UUID.randomUUID());
+
+    // when
+    pendingNotificationService.enqueue(notification, recipientIds);
+
+    // then
+    verify(notificationRepository).save(notification);
+    verify(pendingNotificationRepository, never()).save(anyListOf(PendingNotification.class));
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(notificationRecipientRepository).save(captor.capture());
+    assertThat(captor.getValue()).containsExactly(
+        new NotificationRecipient(notification.getId(), recipientIds.get(0)),
+        new NotificationRecipient(notification.getId(), recipientIds.get(1)));
+  }
+
+  @Test
+  public void shouldExpandRecipientsIntoPendingNotifications() {
+    // given
+    Notification notification = new NotificationDataBuilder()
+        .withUserId(null)
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .withEmptyMessage(NotificationChannel.SMS)
+        .build();
+    NotificationRecipient first = new NotificationRecipient(notification.getId(),
+        UUID.randomUUID());
+    NotificationRecipient second = new NotificationRecipient(notification.getId(),
+        UUID.randomUUID());
+
+    given(notificationRecipientRepository.findRecipientsToExpand(BATCH_SIZE))
+        .willReturn(Lists.newArrayList(first, second));
+    given(notificationRepository.findAll(Collections.singleton(notification.getId())))
+        .willReturn(Lists.newArrayList(notification));
+
+    // when
+    int expanded = pendingNotificationService.expandRecipients(BATCH_SIZE);
+
+    // then
+    assertThat(expanded).isEqualTo(2);
+    assertThat(first.isExpanded()).isTrue();
+    assertThat(second.isExpanded()).isTrue();
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingNotificationRepository).save(captor.capture());
+
+    List<PendingNotification> pending = captor.getValue();
+    assertThat(pending).hasSize(4);
+    assertThat(pending)
+        .extracting(PendingNotification::getRecipientId)
+        .containsOnly(first.getUserId(), second.getUserId());
+    assertThat(pending)
+        .extracting(PendingNotification::getNotification)
+        .containsOnly(notification);
+  }
+
+  @Test
+  public void shouldNotExpandMessagesThatCannotBeDelivered() {
+    // given
+    Notification notification = new NotificationDataBuilder()
+        .withUserId(null)
+        .withEmptyMessage(NotificationChannel.EMAIL)
+        .withEmptyMessage(NotificationChannel.SMS)
+        .build();
+    NotificationRecipient recipient = new NotificationRecipient(notification.getId(),
+        UUID.randomUUID());
+    UserContactDetails contactDetails = new UserContactDetailsDataBuilder()
+        .withReferenceDataUserId(recipient.getUserId())
+        .withEmailDetails(new EmailDetailsDataBuilder().withUnverifiedFlag().build())
+        .build();
+
+    given(notificationRecipientRepository.findRecipientsToExpand(BATCH_SIZE))
+        .willReturn(Lists.newArrayList(recipient));
+    given(notificationRepository.findAll(Collections.singleton(notification.getId())))
+        .willReturn(Lists.newArrayList(notification));
+    given(userContactDetailsRepository.findAll(Collections.singleton(recipient.getUserId())))
+        .willReturn(Lists.newArrayList(contactDetails));
+
+    // when
+    int expanded = pendingNotificationService.expandRecipients(BATCH_SIZE);
+
+    // then
+    assertThat(expanded).isEqualTo(1);
+    assertThat(recipient.isExpanded()).isTrue();
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingNotificationRepository).save(captor.capture());
+
+    List<PendingNotification> pending = captor.getValue();
+    assertThat(pending)
+        .extracting(PendingNotification::getChannel)
+        .containsExactly(NotificationChannel.SMS);
+  }
+
+  @Test
+  public void shouldNotExpandAnythingIfThereAreNoRecipients() {
+    // given
+    given(notificationRecipientRepository.findRecipientsToExpand(BATCH_SIZE))
+        .willReturn(Collections.emptyList());
+
+    // when
+    int expanded = pendingNotificationService.expandRecipients(BATCH_SIZE);
+
+    // then
+    assertThat(expanded).isZero();
+    verify(pendingNotificationRepository, never()).save(anyListOf(PendingNotification.class));
+  }
+
+  @Test
+  public void shouldMarkClaimedNotificationsAsProcessing() {
+    // given
+    given(pendingNotificationRepository
+        .findPendingNotificationsToClaim(eq(NotificationPriority.NORMAL.name()),
+            anyCollectionOf(String.class), anyInt(), eq(CLAIM_TIMEOUT)))
+        .willReturn(Lists.newArrayList(pendingNotification));
+
+    // when
+    List<PendingNotification> claimed = pendingNotificationService.claim(BATCH_SIZE);
+
+    // then
+    assertThat(claimed).containsExactly(pendingNotification);
+    assertThat(pendingNotification.getStatus()).isEqualTo(Status.PROCESSING);
+    assertThat(pendingNotification.getClaimedDate()).isNotNull();
+  }
+
+  @Test
+  public void shouldClaimShareOfEachPriority() {
+    // given
+    given(pendingNotificationRepository
+        .findPendingNotificationsToClaim(any(String.class), anyCollectionOf(String.class),
+            anyInt(), anyLong()))
+        .willAnswer(invocation -> createPendingNotifications(
+            invocation.getArgumentAt(0, String.class),
+            invocation.getArgumentAt(2, Integer.class)));
+
+    // when
+    List<PendingNotification> claimed = pendingNotificationService.claim(10);
+
+    // then
+    assertThat(claimed).hasSize(10);
+    assertThat(countByPriority(claimed, NotificationPriority.HIGH)).isEqualTo(6);
+    assertThat(countByPriority(claimed, NotificationPriority.NORMAL)).isEqualTo(3);
+    assertThat(countByPriority(claimed, NotificationPriority.LOW)).isEqualTo(1);
+    verify(pendingNotificationRepository, never()).flush();
+  }
+
+  @Test
+  public void shouldGiveUnusedSharesToOtherPriorities() {
+    // given
+    given(pendingNotificationRepository
+        .findPendingNotificationsToClaim(eq(NotificationPriority.LOW.name()),
+            anyCollectionOf(String.class), anyInt(), anyLong()))
+        .willAnswer(invocation -> createPendingNotifications(
+            invocation.getArgumentAt(0, String.class),
+            invocation.getArgumentAt(2, Integer.class)));
+
+    // when
+    List<PendingNotification> claimed = pendingNotificationService.claim(10);
+
+    // then
+    assertThat(claimed).hasSize(10);
+    assertThat(countByPriority(claimed, NotificationPriority.LOW)).isEqualTo(10);
+    verify(pendingNotificationRepository).flush();
+  }
+
+  @Test
+  public void shouldClaimNotificationsOfGivenChannelsOnly() {
+    // given
+    given(pendingNotificationRepository
+        .findPendingNotificationsToClaim(any(String.class), anyCollectionOf(String.class),
+            anyInt(), anyLong()))
+        .willReturn(Collections.emptyList());
+
+    // when
+    pendingNotificationService.claim(BATCH_SIZE, EnumSet.of(NotificationChannel.SMS));
+
+    // then
+    verify(pendingNotificationRepository, atLeastOnce()).findPendingNotificationsToClaim(
+        any(String.class), eq(Collections.singletonList(NotificationChannel.SMS.name())),
+        anyInt(), anyLong());
+    verify(pendingNotificationRepository, never()).findPendingNotificationsToClaim(
+        any(String.class), eq(Collections.singletonList(NotificationChannel.EMAIL.name())),
+        anyInt(), anyLong());
+  }
+
+  @Test
+  public void shouldDeleteCompletedNotification() {
+    // given
+    given(pendingNotificationRepository.findOne(pendingNotification.getId()))
+        .willReturn(pendingNotification);
+
+    // when
+    pendingNotificationService.complete(pendingNotification.getId());
+
+    // then
+    verify(pendingNotificationRepository).delete(pendingNotification);
+  }
+
+  @Test
+  public void shouldNotFailIfCompletedNotificationDoesNotExist() {
+    // when
+    pendingNotificationService.complete(pendingNotification.getId());
+
+    // then
+    verify(pendingNotificationRepository, never()).delete(any(PendingNotification.class));
+  }
+
+  @Test
+  public void shouldPutReleasedNotificationBackToQueue() {
+    // given
+    pendingNotification.claim();
+    given(pendingNotificationRepository.findOne(pendingNotification.getId()))
+        .willReturn(pendingNotification);
+
+    // when
+    pendingNotificationService.release(pendingNotification.getId());
+
+    // then
+    assertThat(pendingNotification.getStatus()).isEqualTo(Status.PENDING);
+    assertThat(pendingNotification.getClaimedDate()).isNull();
+  }
+
+  @Test
+  public void shouldRetryFailedNotificationLater() {
+    // given
+    pendingNotification.claim();
+    given(pendingNotificationRepository.findOne(pendingNotification.getId()))
+        .willReturn(pendingNotification);
+
+    // when
+    pendingNotificationService.fail(pendingNotification.getId(), ERROR);
+
+    // then
+    assertThat(pendingNotification.getStatus()).isEqualTo(Status.PENDING);
+    assertThat(pendingNotification.getAttempts()).isEqualTo(1);
+    assertThat(pendingNotification.getNextAttemptDate().isAfter(ZonedDateTime.now())).isTrue();
+
+    verify(pendingNotificationRepository, never()).delete(any(PendingNotification.class));
+    verify(failedNotificationRepository, never()).save(any(FailedNotification.class));
+  }
+
+  @Test
+  public void shouldMakeRetryDueOnceAfterNextAttemptDate() {
+    // given
+    ReflectionTestUtils.setField(pendingNotificationService, "initialDelay", 0L);
+    given(pendingNotificationRepository.findOne(pendingNotification.getId()))
+        .willReturn(pendingNotification);
+
+    // when
+    pendingNotificationService.fail(pendingNotification.getId(), ERROR);
+
+    // then
+    assertThat(pendingNotificationService.isRetryDue()).isTrue();
+    assertThat(pendingNotificationService.isRetryDue()).isFalse();
+  }
+
+  @Test
+  public void shouldNotMakeRetryDueBeforeNextAttemptDate() {
+    // given
+    given(pendingNotificationRepository.findOne(pendingNotification.getId()))
+        .willReturn(pendingNotification);
+
+    // when
+    pendingNotificationService.fail(pendingNotification.getId(), ERROR);
+
+    // then
+    assertThat(pendingNotificationService.isRetryDue()).isFalse();
+  }
+
+  @Test
+  public void shouldMoveNotificationToFailedAfterMaxAttempts() {
+    // given
+    for (int i = 1; i < MAX_ATTEMPTS; ++i) {
+      pendingNotification.retryLater(ZonedDateTime.now());
+    }
+
+    given(pendingNotificationRepository.findOne(pendingNotification.getId()))
+        .willReturn(pendingNotification);
+
+    // when
+    pendingNotificationService.fail(pendingNotification.getId(), ERROR);
+
+    // then
+    ArgumentCaptor<FailedNotification> captor = ArgumentCaptor.forClass(FailedNotification.class);
+    verify(failedNotificationRepository).save(captor.capture());
+    verify(pendingNotificationRepository).delete(pendingNotification);
+
+    assertThat(captor.getValue().getAttempts()).isEqualTo(MAX_ATTEMPTS);
+    assertThat(captor.getValue().getLastError()).isEqualTo(ERROR);
+  }
+
+  @Test
+  public void shouldIncreaseRetryDelayExponentially() {
+    for (int i = 0; i < 100; ++i) {
+      assertThat(pendingNotificationService.getRetryDelay(1)).isBetween(5L, 10L);
+      assertThat(pendingNotificationService.getRetryDelay(2)).isBetween(10L, 20L);
+      assertThat(pendingNotificationService.getRetryDelay(3)).isBetween(20L, 40L);
+    }
+  }
+
+  @Test
+  public void shouldNotExceedMaxRetryDelay() {
+    for (int i = 0; i < 100; ++i) {
+      assertThat(pendingNotificationService.getRetryDelay(10)).isBetween(50L, MAX_DELAY);
+      assertThat(pendingNotificationService.getRetryDelay(100)).isBetween(50L, MAX_DELAY);
+    }
+  }
+
+  @Test
+  public void shouldRequeueFailedNotification() {
+    // given
+    FailedNotification failed = new FailedNotificationDataBuilder().build();
+    given(pendingNotificationRepository.save(any(PendingNotification.class)))
+        .willAnswer(invocation -> invocation.getArgumentAt(0, PendingNotification.class));
+
+    // when
+    PendingNotification requeued = pendingNotificationService.requeue(failed);
+
+    // then
+    verify(failedNotificationRepository).delete(failed);
+    assertThat(requeued.getNotificationId()).isEqualTo(failed.getNotification().getId());
+    assertThat(requeued.getChannel()).isEqualTo(failed.getChannel());
+  }
+
+  private List<PendingNotification> createPendingNotifications(String priority, int count) {
+    List<PendingNotification> result = Lists.newArrayList();
+
+    for (int i = 0; i < count; ++i) {
+      result.add(new PendingNotification(new NotificationDataBuilder()
+          .withPriority(NotificationPriority.valueOf(priority))
+          .build(), NotificationChannel.EMAIL));
+    }
+
+    return result;
+  }
+
+  private long countByPriority(List<PendingNotification> notifications,
+      NotificationPriority priority) {
+    return notifications
+        .stream()
+        .filter(pending -> pending.getPriority() == priority)
+        .count();
+  }
+
+}
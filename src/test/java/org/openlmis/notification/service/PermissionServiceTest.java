@@ -15,15 +15,24 @@
 
 package org.openlmis.notification.service;
 
+import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.openlmis.notification.i18n.MessageKeys.PERMISSION_MISSING;
 import static org.openlmis.notification.i18n.MessageKeys.PERMISSION_MISSING_GENERIC;
 import static org.openlmis.notification.testutils.OAuth2AuthenticationDataBuilder.SERVICE_CLIENT_ID;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -38,8 +47,10 @@ import org.openlmis.notification.service.referencedata.UserReferenceDataService;
 import org.openlmis.notification.testutils.OAuth2AuthenticationDataBuilder;
 import org.openlmis.notification.testutils.RightDataBuilder;
 import org.openlmis.notification.testutils.UserDataBuilder;
+import org.openlmis.notification.util.AuthenticationException;
 import org.openlmis.notification.util.AuthenticationHelper;
 import org.openlmis.notification.web.MissingPermissionException;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
@@ -79,6 +90,10 @@ public class PermissionServiceTest {
     userDto = new UserDataBuilder().build();
     rightDto = new RightDataBuilder().build();
     ReflectionTestUtils.setField(permissionService, "serviceTokenClientId", SERVICE_CLIENT_ID);
+    ReflectionTestUtils.setField(permissionService, "decisionsCacheSize", 100L);
+    ReflectionTestUtils.setField(permissionService, "decisionsCacheTtl", 30000L);
+    ReflectionTestUtils.setField(permissionService, "rightsCacheTtl", 3600000L);
+    permissionService.initialize();
   }
 
   @Test
@@ -179,6 +194,134 @@ public class PermissionServiceTest {
     permissionService.canSendNotification();
   }
 
+  @Test
+  public void shouldAllowOtherServiceToManageSendingQueue() {
+    when(securityContext.getAuthentication()).thenReturn(serviceAuthentication);
+
+    permissionService.canManageSendingQueue();
+  }
+
+  @Test
+  public void shouldAllowUserWithUsersManageRightToManageSendingQueue() {
+    when(securityContext.getAuthentication()).thenReturn(userAuthentication);
+    when(authenticationHelper.getCurrentUser()).thenReturn(userDto);
+    when(authenticationHelper.getRight(eq(USERS_MANAGE))).thenReturn(rightDto);
+    when(userReferenceDataService.hasRight(userDto.getId(), rightDto.getId(), null, null, null))
+        .thenReturn(new ResultDto<>(true));
+
+    permissionService.canManageSendingQueue();
+  }
+
+  @Test
+  public void shouldNotAllowUserWithoutUsersManageRightToManageSendingQueue() {
+    when(securityContext.getAuthentication()).thenReturn(userAuthentication);
+    when(authenticationHelper.getCurrentUser()).thenReturn(userDto);
+    when(authenticationHelper.getRight(eq(USERS_MANAGE))).thenReturn(rightDto);
+    when(userReferenceDataService.hasRight(userDto.getId(), rightDto.getId(), null, null, null))
+        .thenReturn(new ResultDto<>(false));
+
+    expectException();
+
+    permissionService.canManageSendingQueue();
+  }
+
+  @Test
+  public void shouldCachePermissionDecisions() {
+    // given
+    mockUserWithUsersManageRight(true);
+
+    // when
+    permissionService.canManageSendingQueue();
+    permissionService.canManageUserContactDetails(UUID.randomUUID());
+    permissionService.canManageUserSubscriptions(UUID.randomUUID());
+
+    // then
+    verify(authenticationHelper, times(1)).getRight(USERS_MANAGE);
+    verify(userReferenceDataService, times(1))
+        .hasRight(userDto.getId(), rightDto.getId(), null, null, null);
+    assertThat(getMetrics(), allOf(
+        hasEntry("permissions.decisions.cache.size", 1L),
+        hasEntry("permissions.decisions.cache.hits", 2L),
+        hasEntry("permissions.decisions.cache.misses", 1L),
+        hasEntry("permissions.rights.cache.hits", 2L)));
+  }
+
+  @Test
+  public void shouldCacheDeniedPermissionDecisions() {
+    // given
+    mockUserWithUsersManageRight(false);
+
+    // when
+    for (int i = 0; i < 2; ++i) {
+      try {
+        permissionService.canManageSendingQueue();
+        fail("the permission should be missing");
+      } catch (MissingPermissionException exp) {
+        // expected
+      }
+    }
+
+    // then
+    verify(userReferenceDataService, times(1))
+        .hasRight(userDto.getId(), rightDto.getId(), null, null, null);
+  }
+
+  @Test
+  public void shouldCachePermissionDecisionsOfEachUserSeparately() {
+    // given
+    mockUserWithUsersManageRight(false);
+    UserDto otherUser = new UserDataBuilder().build();
+    when(userReferenceDataService.hasRight(otherUser.getId(), rightDto.getId(), null, null, null))
+        .thenReturn(new ResultDto<>(true));
+
+    // when
+    permissionService.canManageUserContactDetails(userDto.getId());
+
+    willReturn(otherUser).given(authenticationHelper).getCurrentUser();
+    permissionService.canManageSendingQueue();
+
+    // then
+    verify(userReferenceDataService, times(1))
+        .hasRight(otherUser.getId(), rightDto.getId(), null, null, null);
+  }
+
+  @Test
+  public void shouldNotCacheRightThatCouldNotBeFound() {
+    // given
+    mockUserWithUsersManageRight(true);
+    when(authenticationHelper.getRight(USERS_MANAGE))
+        .thenThrow(new AuthenticationException("not found"))
+        .thenReturn(rightDto);
+
+    // when
+    try {
+      permissionService.canManageSendingQueue();
+      fail("the right should not be found");
+    } catch (AuthenticationException exp) {
+      // expected
+    }
+
+    permissionService.canManageSendingQueue();
+
+    // then
+    verify(authenticationHelper, times(2)).getRight(USERS_MANAGE);
+  }
+
+  private void mockUserWithUsersManageRight(boolean hasRight) {
+    when(securityContext.getAuthentication()).thenReturn(userAuthentication);
+    when(authenticationHelper.getCurrentUser()).thenReturn(userDto);
+    when(authenticationHelper.getRight(eq(USERS_MANAGE))).thenReturn(rightDto);
+    when(userReferenceDataService.hasRight(userDto.getId(), rightDto.getId(), null, null, null))
+        .thenReturn(new ResultDto<>(hasRight));
+  }
+
+  private Map<String, Object> getMetrics() {
+    return permissionService
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
+
   private void expectException() {
     exception.expect(MissingPermissionException.class);
     exception.expect(hasProperty("params", arrayContaining(USERS_MANAGE)));
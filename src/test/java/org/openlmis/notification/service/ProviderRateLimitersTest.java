@@ -0,0 +1,81 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ProviderRateLimitersTest {
+
+  private static final int EMAIL_BURST = 2;
+
+  private ProviderRateLimiters rateLimiters = new ProviderRateLimiters();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(rateLimiters, "emailPermitsPerSecond", 0.001);
+    ReflectionTestUtils.setField(rateLimiters, "emailBurst", EMAIL_BURST);
+    ReflectionTestUtils.setField(rateLimiters, "smsPermitsPerSecond", 0);
+    ReflectionTestUtils.setField(rateLimiters, "smsBurst", 10);
+
+    rateLimiters.initialize();
+  }
+
+  @Test
+  public void shouldReturnBurstAsAvailablePermitsOfIdleChannel() {
+    assertThat(rateLimiters.getAvailablePermits(NotificationChannel.EMAIL))
+        .isEqualTo(EMAIL_BURST);
+  }
+
+  @Test
+  public void shouldNotReturnAcquiredPermitsAsAvailable() {
+    // given
+    rateLimiters.acquire(NotificationChannel.EMAIL, EMAIL_BURST);
+
+    // when & then
+    assertThat(rateLimiters.getAvailablePermits(NotificationChannel.EMAIL)).isZero();
+  }
+
+  @Test
+  public void shouldNotLimitChannelWithoutConfiguredRate() {
+    // when
+    for (int i = 0; i < 100; ++i) {
+      rateLimiters.acquire(NotificationChannel.SMS, 1);
+    }
+
+    // then
+    assertThat(rateLimiters.getAvailablePermits(NotificationChannel.SMS))
+        .isEqualTo(Integer.MAX_VALUE);
+    assertThat(rateLimiters.getMaxPermits(NotificationChannel.SMS)).isEqualTo(Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void shouldReturnBurstAsMaxPermits() {
+    assertThat(rateLimiters.getMaxPermits(NotificationChannel.EMAIL)).isEqualTo(EMAIL_BURST);
+  }
+
+  @Test
+  public void shouldReturnMetricsOfLimitedChannels() {
+    assertThat(rateLimiters.metrics())
+        .extracting("name")
+        .containsOnly("notificationToSend.rateLimit.email.availablePermits",
+            "notificationToSend.rateLimit.email.waitTime");
+  }
+
+}
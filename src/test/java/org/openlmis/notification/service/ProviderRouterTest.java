@@ -0,0 +1,285 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+public class ProviderRouterTest {
+
+  private static final String FIRST = "first";
+  private static final String SECOND = "second";
+  private static final String THIRD = "third";
+  private static final long PROBE_INTERVAL = 1000;
+
+  private AtomicLong clock = new AtomicLong();
+  private List<String> called = Lists.newArrayList();
+  private ProviderRouter router = new ProviderRouter("test",
+      Lists.newArrayList(FIRST, SECOND, THIRD),
+      name -> new CircuitBreaker(name, 1, 100, 60000, 1), 0.5, PROBE_INTERVAL, clock::get);
+
+  @Test
+  public void shouldTryEndpointsInConfiguredOrderBeforeTheyAreMeasured() {
+    // when
+    List<String> ranked = rank();
+
+    // then
+    assertThat(ranked).containsExactly(FIRST, SECOND, THIRD);
+  }
+
+  @Test
+  public void shouldRouteCallsToFastestEndpoint() {
+    // given
+    call(FIRST, 30);
+    call(SECOND, 10);
+    call(THIRD, 20);
+
+    // when
+    String result = router.execute(address -> address);
+
+    // then
+    assertThat(result).isEqualTo(SECOND);
+    assertThat(rank()).containsExactly(SECOND, THIRD, FIRST);
+  }
+
+  @Test
+  public void shouldAverageLatencyOfCalls() {
+    // when
+    call(FIRST, 10);
+    call(FIRST, 30);
+
+    // then
+    assertThat(router.getEndpoints().get(0).getLatency()).isEqualTo(20.0);
+    assertThat(router.getEndpoints().get(0).getCalls()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldRepeatCallOnNextEndpointIfItFails() {
+    // when
+    String result = router.execute(address -> {
+      called.add(address);
+
+      if (FIRST.equals(address)) {
+        throw new ResourceAccessException("test");
+      }
+
+      return address;
+    });
+
+    // then
+    assertThat(result).isEqualTo(SECOND);
+    assertThat(called).containsExactly(FIRST, SECOND);
+    assertThat(router.getFailovers()).isEqualTo(1);
+    assertThat(router.getEndpoints().get(0).getFailures()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldSkipEndpointWhoseCircuitBreakerIsOpen() {
+    // given
+    router.getEndpoints().get(0).getCircuitBreaker().onFailure();
+
+    // when
+    String result = router.execute(address -> address);
+
+    // then
+    assertThat(result).isEqualTo(SECOND);
+    assertThat(rank()).containsExactly(SECOND, THIRD);
+  }
+
+  @Test
+  public void shouldMoveFailedEndpointBehindWorkingOnes() {
+    // given
+    ProviderRouter other = new ProviderRouter("test", Lists.newArrayList(FIRST, SECOND),
+        name -> new CircuitBreaker(name, 10, 100, 60000, 1), 0.5, PROBE_INTERVAL, clock::get);
+    call(other, SECOND, 50);
+
+    // when
+    other.execute(address -> {
+      if (FIRST.equals(address)) {
+        throw new ResourceAccessException("test");
+      }
+
+      return address;
+    });
+
+    // then
+    assertThat(other.rank().get(0).getAddress()).isEqualTo(SECOND);
+    assertThat(other.rank().get(1).getAddress()).isEqualTo(FIRST);
+  }
+
+  @Test
+  public void shouldProbeEndpointThatWasNotUsedForProbeInterval() {
+    // given
+    call(FIRST, 30);
+    call(SECOND, 10);
+    call(THIRD, 20);
+
+    // when
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL / 2));
+    call(SECOND, 10);
+    call(THIRD, 20);
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL / 2 + 1));
+
+    // then
+    assertThat(rank()).containsExactly(FIRST, SECOND, THIRD);
+  }
+
+  @Test
+  public void shouldNotRepeatCallIfRequestWasRejected() {
+    // given
+    HttpClientErrorException error = new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+
+    // when
+    try {
+      router.execute(address -> {
+        called.add(address);
+        throw error;
+      });
+    } catch (HttpClientErrorException exp) {
+      assertThat(exp).isSameAs(error);
+    }
+
+    // then
+    assertThat(called).containsExactly(FIRST);
+    assertThat(router.getEndpoints().get(0).getCircuitBreaker().isCallPermitted()).isTrue();
+  }
+
+  @Test
+  public void shouldRepeatCallOnNextEndpointIfCredentialsWereRejected() {
+    // when
+    String result = router.execute(address -> {
+      called.add(address);
+
+      if (FIRST.equals(address)) {
+        throw new HttpClientErrorException(HttpStatus.UNAUTHORIZED);
+      }
+
+      return address;
+    });
+
+    // then
+    assertThat(result).isEqualTo(SECOND);
+    assertThat(called).containsExactly(FIRST, SECOND);
+  }
+
+  @Test(expected = ResourceAccessException.class)
+  public void shouldThrowLastErrorIfCallFailsOnAllEndpoints() {
+    // when
+    router.execute(address -> {
+      throw new ResourceAccessException(address);
+    });
+  }
+
+  @Test(expected = CircuitBreakerOpenException.class)
+  public void shouldThrowExceptionIfCircuitBreakersOfAllEndpointsAreOpen() {
+    // given
+    router.getEndpoints().forEach(endpoint -> endpoint.getCircuitBreaker().onFailure());
+
+    // when
+    router.execute(address -> address);
+  }
+
+  @Test
+  public void shouldRepeatAsyncCallOnNextEndpointWhenItsFutureFails() {
+    // given
+    CompletableFuture<String> firstResponse = new CompletableFuture<>();
+
+    // when
+    CompletableFuture<String> result = router.executeAsync(address -> {
+      called.add(address);
+      return FIRST.equals(address) ? firstResponse : CompletableFuture.completedFuture(address);
+    });
+
+    assertThat(result.isDone()).isFalse();
+    firstResponse.completeExceptionally(new ResourceAccessException("test"));
+
+    // then
+    assertThat(result.join()).isEqualTo(SECOND);
+    assertThat(called).containsExactly(FIRST, SECOND);
+    assertThat(router.getFailovers()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotRepeatAsyncCallIfRequestWasRejected() {
+    // given
+    HttpClientErrorException error = new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+
+    // when
+    CompletableFuture<String> result = router.executeAsync(address -> {
+      called.add(address);
+      CompletableFuture<String> future = new CompletableFuture<>();
+      future.completeExceptionally(error);
+      return future;
+    });
+
+    // then
+    assertThat(result.isCompletedExceptionally()).isTrue();
+    assertThat(called).containsExactly(FIRST);
+  }
+
+  @Test
+  public void shouldFailAsyncCallIfCircuitBreakersOfAllEndpointsAreOpen() {
+    // given
+    router.getEndpoints().forEach(endpoint -> endpoint.getCircuitBreaker().onFailure());
+
+    // when
+    CompletableFuture<String> result = router.executeAsync(CompletableFuture::completedFuture);
+
+    // then
+    assertThatThrownBy(result::join).hasCauseInstanceOf(CircuitBreakerOpenException.class);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRequireAtLeastOneEndpoint() {
+    // when
+    new ProviderRouter("test", Lists.newArrayList(), name -> null, 0.5, PROBE_INTERVAL);
+  }
+
+  private void call(String endpoint, long latency) {
+    call(router, endpoint, latency);
+  }
+
+  private void call(ProviderRouter target, String endpoint, long latency) {
+    // records a successful call with the given latency on the given endpoint
+    target.getEndpoints()
+        .stream()
+        .filter(item -> item.getAddress().equals(endpoint))
+        .findFirst()
+        .orElseThrow(IllegalArgumentException::new)
+        .onSuccess(TimeUnit.MILLISECONDS.toNanos(latency));
+  }
+
+  private List<String> rank() {
+    return router
+        .rank()
+        .stream()
+        .map(ProviderRouter.Endpoint::getAddress)
+        .collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,337 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.openlmis.notification.domain.PendingNotification.PendingNotificationId;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+public class SmsBroadcasterTest {
+
+  private static final String BODY = "body";
+
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+  @Mock
+  private SmsSender smsSender;
+
+  @Mock
+  private PendingNotificationService pendingNotificationService;
+
+  @Mock
+  private NotificationChannelExecutors notificationChannelExecutors;
+
+  @InjectMocks
+  private SmsBroadcaster broadcaster;
+
+  private PendingNotificationId firstId = newId();
+  private PendingNotificationId secondId = newId();
+  private PendingNotificationId thirdId = newId();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(broadcaster, "window", -1L);
+    ReflectionTestUtils.setField(broadcaster, "maxSize", 3);
+    ReflectionTestUtils.setField(broadcaster, "rejectedRecipientStatuses", new int[]{400, 422});
+
+    given(notificationChannelExecutors.execute(any(NotificationChannel.class), any(Runnable.class)))
+        .willAnswer(invocation -> {
+          invocation.getArgumentAt(1, Runnable.class).run();
+          return true;
+        });
+    given(smsSender.sendMessageAsync(anyListOf(String.class), anyString()))
+        .willReturn(CompletableFuture.completedFuture(null));
+  }
+
+  @Test
+  public void shouldSendMessagesWithTheSameBodyAsOneBroadcast() {
+    // given
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.add(secondId, new SmsMessage("2", BODY));
+
+    // when
+    broadcaster.flush();
+
+    // then
+    verify(smsSender).sendMessageAsync(Lists.newArrayList("1", "2"), BODY);
+    verify(pendingNotificationService).complete(firstId);
+    verify(pendingNotificationService).complete(secondId);
+  }
+
+  @Test
+  public void shouldSendMessagesWithDifferentBodiesSeparately() {
+    // given
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.add(secondId, new SmsMessage("2", "other"));
+
+    // when
+    broadcaster.flush();
+
+    // then
+    verify(smsSender).sendMessageAsync(Lists.newArrayList("1"), BODY);
+    verify(smsSender).sendMessageAsync(Lists.newArrayList("2"), "other");
+  }
+
+  @Test
+  public void shouldNotSendBroadcastBeforeWindowHasElapsed() {
+    // given
+    ReflectionTestUtils.setField(broadcaster, "window", 60000L);
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+
+    // when
+    broadcaster.flush();
+
+    // then
+    verify(smsSender, never()).sendMessageAsync(anyListOf(String.class), anyString());
+    verify(pendingNotificationService, never()).complete(any());
+  }
+
+  @Test
+  public void shouldCountCollectedBroadcastsUntilTheyAreSent() {
+    // given
+    ReflectionTestUtils.setField(broadcaster, "window", 60000L);
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.add(secondId, new SmsMessage("2", BODY));
+    broadcaster.add(thirdId, new SmsMessage("3", "other"));
+
+    // when
+    int collected = broadcaster.getUnsentBroadcasts();
+    ReflectionTestUtils.setField(broadcaster, "window", -1L);
+    broadcaster.flush();
+
+    // then
+    assertThat(collected).isEqualTo(2);
+    assertThat(broadcaster.getUnsentBroadcasts()).isZero();
+  }
+
+  @Test
+  public void shouldSendFullBroadcastRightAway() {
+    // given
+    ReflectionTestUtils.setField(broadcaster, "maxSize", 2);
+
+    // when
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.add(secondId, new SmsMessage("2", BODY));
+
+    // then
+    verify(smsSender).sendMessageAsync(Lists.newArrayList("1", "2"), BODY);
+    verify(pendingNotificationService).complete(firstId);
+    verify(pendingNotificationService).complete(secondId);
+  }
+
+  @Test
+  public void shouldFailAllNotificationsOfBroadcastThatCouldNotBeSent() {
+    // given
+    willReturn(failed(new IllegalStateException("test")))
+        .given(smsSender)
+        .sendMessageAsync(anyListOf(String.class), eq(BODY));
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.add(secondId, new SmsMessage("2", BODY));
+
+    // when
+    broadcaster.flush();
+
+    // then
+    verify(pendingNotificationService).fail(firstId, "IllegalStateException: test");
+    verify(pendingNotificationService).fail(secondId, "IllegalStateException: test");
+    verify(pendingNotificationService, never()).complete(any());
+  }
+
+  @Test
+  public void shouldFailOnlyNotificationsOfRecipientsRejectedByGateway() {
+    // given
+    willAnswer(invocation -> invocation.getArgumentAt(0, List.class).contains("2")
+        ? failed(new ServerException(new HttpClientErrorException(HttpStatus.BAD_REQUEST), "key"))
+        : CompletableFuture.completedFuture(null))
+        .given(smsSender)
+        .sendMessageAsync(anyListOf(String.class), eq(BODY));
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.add(secondId, new SmsMessage("2", BODY));
+
+    // when
+    broadcaster.add(thirdId, new SmsMessage("3", BODY));
+
+    // then
+    verify(smsSender).sendMessageAsync(Lists.newArrayList("1", "2", "3"), BODY);
+    verify(smsSender).sendMessageAsync(Lists.newArrayList("1"), BODY);
+    verify(smsSender).sendMessageAsync(Lists.newArrayList("2", "3"), BODY);
+    verify(smsSender).sendMessageAsync(Lists.newArrayList("2"), BODY);
+    verify(smsSender).sendMessageAsync(Lists.newArrayList("3"), BODY);
+    verify(pendingNotificationService).complete(firstId);
+    verify(pendingNotificationService).complete(thirdId);
+    verify(pendingNotificationService).fail(eq(secondId), anyString());
+    verify(pendingNotificationService, never()).complete(secondId);
+  }
+
+  @Test
+  public void shouldNotSplitBroadcastRejectedForOtherReasonThanRecipients() {
+    // given
+    willReturn(failed(new ServerException(
+        new HttpClientErrorException(HttpStatus.UNAUTHORIZED), "key")))
+        .given(smsSender)
+        .sendMessageAsync(anyListOf(String.class), eq(BODY));
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.add(secondId, new SmsMessage("2", BODY));
+
+    // when
+    broadcaster.flush();
+
+    // then
+    verify(smsSender, times(1)).sendMessageAsync(anyListOf(String.class), anyString());
+    verify(pendingNotificationService).fail(eq(firstId), anyString());
+    verify(pendingNotificationService).fail(eq(secondId), anyString());
+  }
+
+  @Test
+  public void shouldReleaseAllNotificationsOfBroadcastRejectedByCircuitBreaker() {
+    // given
+    willReturn(failed(new ServerException(new CircuitBreakerOpenException("sms"), "key")))
+        .given(smsSender)
+        .sendMessageAsync(anyListOf(String.class), eq(BODY));
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.add(secondId, new SmsMessage("2", BODY));
+
+    // when
+    broadcaster.flush();
+
+    // then
+    verify(pendingNotificationService).release(firstId);
+    verify(pendingNotificationService).release(secondId);
+    verify(pendingNotificationService, never()).fail(any(), any());
+  }
+
+  @Test
+  public void shouldReleaseAllNotificationsOfBroadcastWithoutFreeRequestSlot() {
+    // given
+    willReturn(failed(new ServerException(new RejectedExecutionException("test"), "key")))
+        .given(smsSender)
+        .sendMessageAsync(anyListOf(String.class), eq(BODY));
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+
+    // when
+    broadcaster.flush();
+
+    // then
+    verify(pendingNotificationService).release(firstId);
+    verify(pendingNotificationService, never()).fail(any(), any());
+  }
+
+  @Test
+  public void shouldCompleteNotificationsOnlyAfterGatewayResponded() {
+    // given
+    CompletableFuture<Void> response = new CompletableFuture<>();
+    willReturn(response)
+        .given(smsSender)
+        .sendMessageAsync(anyListOf(String.class), eq(BODY));
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.flush();
+    verify(pendingNotificationService, never()).complete(any());
+
+    // when
+    response.complete(null);
+
+    // then
+    verify(pendingNotificationService).complete(firstId);
+  }
+
+  @Test
+  public void shouldRecordOutcomeOnCallbackThreadIfThreadPoolIsSaturated() {
+    // given
+    CompletableFuture<Void> response = new CompletableFuture<>();
+    willReturn(response)
+        .given(smsSender)
+        .sendMessageAsync(anyListOf(String.class), eq(BODY));
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+    broadcaster.flush();
+
+    willReturn(false)
+        .given(notificationChannelExecutors)
+        .execute(any(NotificationChannel.class), any(Runnable.class));
+
+    // when
+    response.complete(null);
+
+    // then
+    verify(pendingNotificationService).complete(firstId);
+  }
+
+  @Test
+  public void shouldReleaseBroadcastRejectedBySaturatedThreadPool() {
+    // given
+    willReturn(false)
+        .given(notificationChannelExecutors)
+        .execute(any(NotificationChannel.class), any(Runnable.class));
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+
+    // when
+    broadcaster.flush();
+
+    // then
+    verify(pendingNotificationService).release(firstId);
+    verify(smsSender, never()).sendMessageAsync(anyListOf(String.class), anyString());
+  }
+
+  @Test
+  public void shouldReleaseUnsentBroadcastsOnDestroy() {
+    // given
+    ReflectionTestUtils.setField(broadcaster, "window", 60000L);
+    broadcaster.add(firstId, new SmsMessage("1", BODY));
+
+    // when
+    broadcaster.destroy();
+
+    // then
+    verify(pendingNotificationService).release(firstId);
+  }
+
+  private static CompletableFuture<Void> failed(Throwable exp) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    future.completeExceptionally(exp);
+    return future;
+  }
+
+  private static PendingNotificationId newId() {
+    return new PendingNotificationId(UUID.randomUUID(), NotificationChannel.SMS,
+        UUID.randomUUID());
+  }
+
+}
@@ -15,11 +15,14 @@
 
 package org.openlmis.notification.service;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.openlmis.notification.service.NotificationChannel.SMS;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
@@ -62,7 +65,7 @@ public class SmsNotificationChannelHandlerTest {
   @Test
   public void shouldSendMessage() {
     // when
-    handler.handle(message, userId);
+    handler.handle(message, userId, null);
 
     // then
     verify(smsSender).sendMessage(contactDetails.getPhoneNumber(), message.getBody());
@@ -74,9 +77,23 @@ public class SmsNotificationChannelHandlerTest {
     contactDetails.setPhoneNumber(null);
 
     // when
-    handler.handle(message, userId);
+    handler.handle(message, userId, null);
 
     // then
     verifyZeroInteractions(smsSender);
   }
+
+  @Test
+  public void shouldAddMessageToOutbox() {
+    // given
+    List<SmsMessage> outbox = new ArrayList<>();
+
+    // when
+    handler.handle(message, userId, outbox);
+
+    // then
+    assertThat(outbox)
+        .containsExactly(new SmsMessage(contactDetails.getPhoneNumber(), message.getBody()));
+    verifyZeroInteractions(smsSender);
+  }
 }
@@ -16,12 +16,24 @@
 package org.openlmis.notification.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.isA;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_SEND_SMS_FAILURE;
 
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,15 +41,21 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -45,6 +63,7 @@ import org.springframework.web.client.RestTemplate;
 public class SmsSenderTest {
 
   private static final String SMS_SEND_API_URL = "http://localhost/api/send";
+  private static final String OTHER_SMS_SEND_API_URL = "http://localhost:8080/api/send";
   private static final String SMS_SEND_API_TOKEN = "token";
   private static final String MESSAGE = "This is an SMS message";
   private static final String TO_PHONE_NUMBER = "12065551234";
@@ -55,6 +74,18 @@ public class SmsSenderTest {
   @Mock
   private RestTemplate restTemplate;
 
+  @Mock
+  private AsyncRestTemplate asyncRestTemplate;
+
+  @Mock
+  private ProviderRateLimiters providerRateLimiters;
+
+  @Mock
+  private CircuitBreakers circuitBreakers;
+
+  @Mock
+  private ProviderRouters providerRouters;
+
   @InjectMocks
   private SmsSender sender;
   
@@ -66,12 +97,18 @@ public class SmsSenderTest {
 
   @Before
   public void setUp() {
-    ReflectionTestUtils.setField(sender, "smsSendApiUrl", SMS_SEND_API_URL);
     ReflectionTestUtils.setField(sender, "smsSendApiToken", SMS_SEND_API_TOKEN);
+    ReflectionTestUtils.setField(sender, "maxInFlight", 1);
+    ReflectionTestUtils.setField(sender, "maxWait", 0L);
+    sender.init();
 
     given(restTemplate.postForEntity(
         any(String.class), any(HttpEntity.class), eq(String.class)))
         .willReturn(new ResponseEntity<>("Successful", HttpStatus.CREATED));
+    given(circuitBreakers.get(NotificationChannel.SMS))
+        .willReturn(new CircuitBreaker("sms", 1, 100, 60000, 1));
+    given(providerRouters.get(NotificationChannel.SMS))
+        .willReturn(newRouter(SMS_SEND_API_URL));
   }
 
   @Test
@@ -97,6 +134,33 @@ public class SmsSenderTest {
     assertThat(requestBody.getUrns()).contains("tel:" + TO_PHONE_NUMBER);
   }
   
+  @Test
+  public void sendMessageShouldSendOneRequestToManyPhoneNumbers() {
+    // when
+    sender.sendMessage(Lists.newArrayList(TO_PHONE_NUMBER, "12065554321"), MESSAGE);
+
+    // then
+    verify(restTemplate).postForEntity(urlCaptor.capture(), requestCaptor.capture(),
+        eq(String.class));
+
+    SmsRequestDto requestBody = (SmsRequestDto) requestCaptor.getValue().getBody();
+    assertThat(requestBody.getText()).isEqualTo(MESSAGE);
+    assertThat(requestBody.getUrns())
+        .containsExactly("tel:" + TO_PHONE_NUMBER, "tel:12065554321");
+  }
+
+  @Test
+  public void sendMessageShouldWaitForRateLimiterBeforeSendingRequest() {
+    // when
+    sender.sendMessage(TO_PHONE_NUMBER, MESSAGE);
+
+    // then
+    InOrder inOrder = inOrder(providerRateLimiters, restTemplate);
+    inOrder.verify(providerRateLimiters).acquire(NotificationChannel.SMS, 1);
+    inOrder.verify(restTemplate).postForEntity(any(String.class), any(HttpEntity.class),
+        eq(String.class));
+  }
+
   @Test
   public void sendMessageShouldThrowExceptionIfServiceReturnsAnErrorCode() {
     // given
@@ -109,4 +173,172 @@ public class SmsSenderTest {
     // when
     sender.sendMessage(TO_PHONE_NUMBER, MESSAGE);
   }
+
+  @Test
+  public void sendMessageShouldFailFastIfCircuitBreakerIsOpen() {
+    // given
+    CircuitBreaker circuitBreaker = new CircuitBreaker("sms", 1, 100, 60000, 1);
+    circuitBreaker.onFailure();
+    willReturn(circuitBreaker).given(circuitBreakers).get(NotificationChannel.SMS);
+
+    exception.expect(ServerException.class);
+    exception.expectCause(isA(CircuitBreakerOpenException.class));
+
+    // when
+    sender.sendMessage(TO_PHONE_NUMBER, MESSAGE);
+  }
+
+  @Test
+  public void sendMessageShouldSendRequestToNextGatewayIfFirstOneFails() {
+    // given
+    willReturn(newRouter(SMS_SEND_API_URL, OTHER_SMS_SEND_API_URL))
+        .given(providerRouters).get(NotificationChannel.SMS);
+    given(restTemplate.postForEntity(
+        eq(SMS_SEND_API_URL), any(HttpEntity.class), eq(String.class)))
+        .willThrow(new RestClientException("Gateway timeout"));
+
+    // when
+    sender.sendMessage(TO_PHONE_NUMBER, MESSAGE);
+
+    // then
+    verify(restTemplate).postForEntity(eq(OTHER_SMS_SEND_API_URL), any(HttpEntity.class),
+        eq(String.class));
+  }
+
+  @Test
+  public void sendMessageAsyncShouldCompleteWhenGatewayResponds() {
+    // given
+    final SettableListenableFuture<ResponseEntity<String>> response = mockAsyncResponse();
+
+    // when
+    CompletableFuture<Void> result = sender
+        .sendMessageAsync(Lists.newArrayList(TO_PHONE_NUMBER), MESSAGE);
+
+    // then
+    assertThat(result.isDone()).isFalse();
+    verify(asyncRestTemplate).postForEntity(eq(SMS_SEND_API_URL), requestCaptor.capture(),
+        eq(String.class));
+    SmsRequestDto requestBody = (SmsRequestDto) requestCaptor.getValue().getBody();
+    assertThat(requestBody.getUrns()).containsExactly("tel:" + TO_PHONE_NUMBER);
+
+    response.set(new ResponseEntity<>("Successful", HttpStatus.CREATED));
+    assertThat(result.isDone()).isTrue();
+    assertThat(result.isCompletedExceptionally()).isFalse();
+    assertThat(getMetrics()).containsEntry("sms.async.inFlight", 0);
+  }
+
+  @Test
+  public void sendMessageAsyncShouldFailIfGatewayReturnsAnError() {
+    // given
+    SettableListenableFuture<ResponseEntity<String>> response = mockAsyncResponse();
+
+    // when
+    CompletableFuture<Void> result = sender
+        .sendMessageAsync(Lists.newArrayList(TO_PHONE_NUMBER), MESSAGE);
+    response.setException(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+
+    // then
+    assertThat(getError(result)).isInstanceOf(ServerException.class);
+    assertThat(circuitBreakers.get(NotificationChannel.SMS).getState())
+        .isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void sendMessageAsyncShouldNotOpenCircuitBreakerIfGatewayRejectsRequest() {
+    // given
+    SettableListenableFuture<ResponseEntity<String>> response = mockAsyncResponse();
+
+    // when
+    CompletableFuture<Void> result = sender
+        .sendMessageAsync(Lists.newArrayList(TO_PHONE_NUMBER), MESSAGE);
+    response.setException(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+
+    // then
+    assertThat(getError(result)).hasCauseInstanceOf(HttpClientErrorException.class);
+    assertThat(circuitBreakers.get(NotificationChannel.SMS).getState())
+        .isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  public void sendMessageAsyncShouldOpenCircuitBreakerIfGatewayRejectsToken() {
+    // given
+    SettableListenableFuture<ResponseEntity<String>> response = mockAsyncResponse();
+
+    // when
+    CompletableFuture<Void> result = sender
+        .sendMessageAsync(Lists.newArrayList(TO_PHONE_NUMBER), MESSAGE);
+    response.setException(new HttpClientErrorException(HttpStatus.UNAUTHORIZED));
+
+    // then
+    assertThat(getError(result)).hasCauseInstanceOf(HttpClientErrorException.class);
+    assertThat(circuitBreakers.get(NotificationChannel.SMS).getState())
+        .isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void sendMessageAsyncShouldRejectRequestIfMaxRequestsAreInFlight() {
+    // given
+    mockAsyncResponse();
+    sender.sendMessageAsync(Lists.newArrayList(TO_PHONE_NUMBER), MESSAGE);
+
+    // when
+    CompletableFuture<Void> result = sender
+        .sendMessageAsync(Lists.newArrayList(TO_PHONE_NUMBER), MESSAGE);
+
+    // then
+    assertThat(getError(result)).hasCauseInstanceOf(RejectedExecutionException.class);
+    verify(asyncRestTemplate, times(1)).postForEntity(any(String.class),
+        any(HttpEntity.class), eq(String.class));
+    assertThat(getMetrics()).containsEntry("sms.async.inFlight", 1);
+  }
+
+  @Test
+  public void sendMessageAsyncShouldFailFastIfCircuitBreakerIsOpen() {
+    // given
+    CircuitBreaker circuitBreaker = new CircuitBreaker("sms", 1, 100, 60000, 1);
+    circuitBreaker.onFailure();
+    willReturn(circuitBreaker).given(circuitBreakers).get(NotificationChannel.SMS);
+
+    // when
+    CompletableFuture<Void> result = sender
+        .sendMessageAsync(Lists.newArrayList(TO_PHONE_NUMBER), MESSAGE);
+
+    // then
+    assertThat(getError(result)).hasCauseInstanceOf(CircuitBreakerOpenException.class);
+    verifyZeroInteractions(asyncRestTemplate);
+    assertThat(getMetrics()).containsEntry("sms.async.inFlight", 0);
+  }
+
+  private SettableListenableFuture<ResponseEntity<String>> mockAsyncResponse() {
+    SettableListenableFuture<ResponseEntity<String>> response = new SettableListenableFuture<>();
+    given(asyncRestTemplate.postForEntity(
+        any(String.class), any(HttpEntity.class), eq(String.class)))
+        .willReturn(response);
+
+    return response;
+  }
+
+  private Throwable getError(CompletableFuture<Void> result) {
+    assertThat(result.isCompletedExceptionally()).isTrue();
+
+    try {
+      result.join();
+    } catch (CompletionException exp) {
+      return exp.getCause();
+    }
+
+    return null;
+  }
+
+  private Map<String, Object> getMetrics() {
+    return sender
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
+
+  private ProviderRouter newRouter(String... urls) {
+    return new ProviderRouter("sms", Arrays.asList(urls),
+        name -> new CircuitBreaker(name, 1, 100, 60000, 1), 0.3, 60000);
+  }
 }
@@ -0,0 +1,303 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.mail.Address;
+import javax.mail.Message.RecipientType;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@SuppressWarnings("PMD.TooManyMethods")
+public class SmtpTransportPoolTest {
+
+  private static final String HOST = "smtp1.openlmis.org";
+
+  private SmtpTransportPool pool = spy(new SmtpTransportPool());
+  private Transport transport = mock(Transport.class);
+  private MimeMessage message = new MimeMessage((Session) null);
+
+  @Before
+  public void setUp() throws MessagingException {
+    ReflectionTestUtils.setField(pool, "maxSize", 2);
+    ReflectionTestUtils.setField(pool, "maxWait", 0L);
+    ReflectionTestUtils.setField(pool, "maxIdleTime", 60000L);
+    ReflectionTestUtils.setField(pool, "validationInterval", 10000L);
+    pool.init();
+
+    doReturn(transport).when(pool).connect(HOST);
+    given(transport.isConnected()).willReturn(true);
+    message.setRecipient(RecipientType.TO, new InternetAddress("user@openlmis.org"));
+  }
+
+  @Test
+  public void shouldReuseTransportForConsecutiveMessages() throws MessagingException {
+    // when
+    pool.send(HOST, message);
+    pool.send(HOST, message);
+
+    // then
+    verify(pool, times(1)).connect(HOST);
+    verify(transport, times(2)).sendMessage(eq(message), any(Address[].class));
+    verify(transport, never()).close();
+    assertThat(getMetrics()).containsEntry("email.smtpPool.idle", 1)
+        .containsEntry("email.smtpPool.created", 1L)
+        .containsEntry("email.smtpPool.borrowed", 2L);
+  }
+
+  @Test
+  public void shouldKeepSeparateTransportsForEachServer() throws MessagingException {
+    // given
+    Transport other = mock(Transport.class);
+    doReturn(other).when(pool).connect("smtp2.openlmis.org:587");
+
+    // when
+    pool.send(HOST, message);
+    pool.send("smtp2.openlmis.org:587", message);
+    pool.send(HOST, message);
+
+    // then
+    verify(pool, times(1)).connect(HOST);
+    verify(transport, times(2)).sendMessage(eq(message), any(Address[].class));
+    verify(other).sendMessage(eq(message), any(Address[].class));
+    assertThat(getMetrics()).containsEntry("email.smtpPool.idle", 2)
+        .containsEntry("email.smtpPool.created", 2L);
+  }
+
+  @Test
+  public void shouldCloseLeastRecentlyUsedIdleTransportIfPoolIsFull()
+      throws MessagingException, InterruptedException {
+    // given
+    Transport second = mock(Transport.class);
+    Transport third = mock(Transport.class);
+    doReturn(second).when(pool).connect("smtp2.openlmis.org");
+    doReturn(third).when(pool).connect("smtp3.openlmis.org");
+
+    pool.send(HOST, message);
+    Thread.sleep(5);
+    pool.send("smtp2.openlmis.org", message);
+
+    // when
+    pool.send("smtp3.openlmis.org", message);
+
+    // then
+    verify(transport).close();
+    verify(second, never()).close();
+    verify(third).sendMessage(eq(message), any(Address[].class));
+    assertThat(getMetrics()).containsEntry("email.smtpPool.idle", 2)
+        .containsEntry("email.smtpPool.open", 2L);
+  }
+
+  @Test
+  public void shouldCloseTransportIfConnectionWasLost() throws MessagingException {
+    // given
+    willThrow(new MessagingException("test-exception"))
+        .given(transport)
+        .sendMessage(eq(message), any(Address[].class));
+    given(transport.isConnected()).willReturn(false);
+
+    // when
+    try {
+      pool.send(HOST, message);
+    } catch (MessagingException exp) {
+      // expected
+    }
+
+    // then
+    verify(transport).close();
+    assertThat(getMetrics()).containsEntry("email.smtpPool.idle", 0)
+        .containsEntry("email.smtpPool.open", 0L)
+        .containsEntry("email.smtpPool.active", 0);
+  }
+
+  @Test
+  public void shouldKeepTransportIfServerRejectedMessage() throws MessagingException {
+    // given
+    willThrow(new MessagingException("test-exception"))
+        .given(transport)
+        .sendMessage(eq(message), any(Address[].class));
+
+    // when
+    try {
+      pool.send(HOST, message);
+    } catch (MessagingException exp) {
+      // expected
+    }
+
+    // then
+    verify(transport, never()).close();
+    assertThat(getMetrics()).containsEntry("email.smtpPool.idle", 1);
+  }
+
+  @Test
+  public void shouldSendManyMessagesWithOneTransport() throws MessagingException {
+    // given
+    MimeMessage rejected = new MimeMessage((Session) null);
+    rejected.setRecipient(RecipientType.TO, new InternetAddress("rejected@openlmis.org"));
+
+    MessagingException error = new MessagingException("test-exception");
+    willThrow(error)
+        .given(transport)
+        .sendMessage(eq(rejected), any(Address[].class));
+
+    // when
+    List<MessagingException> errors = pool
+        .send(HOST, Lists.newArrayList(message, rejected, message));
+
+    // then
+    assertThat(errors).containsExactly(null, error, null);
+    verify(pool, times(1)).connect(HOST);
+    verify(transport, times(2)).sendMessage(eq(message), any(Address[].class));
+    assertThat(getMetrics()).containsEntry("email.smtpPool.borrowed", 1L);
+  }
+
+  @Test
+  public void shouldOpenNewTransportForRemainingMessagesIfConnectionWasLost()
+      throws MessagingException {
+    // given
+    Transport other = mock(Transport.class);
+    doReturn(transport).doReturn(other).when(pool).connect(HOST);
+
+    willThrow(new MessagingException("test-exception"))
+        .given(transport)
+        .sendMessage(eq(message), any(Address[].class));
+    given(transport.isConnected()).willReturn(false);
+
+    // when
+    List<MessagingException> errors = pool.send(HOST, Lists.newArrayList(message, message));
+
+    // then
+    assertThat(errors.get(0)).isNotNull();
+    assertThat(errors.get(1)).isNull();
+    verify(transport).close();
+    verify(other).sendMessage(eq(message), any(Address[].class));
+  }
+
+  @Test
+  public void shouldFailRemainingMessagesIfNewTransportCouldNotBeOpened()
+      throws MessagingException {
+    // given
+    MessagingException connectError = new MessagingException("connect");
+    doReturn(transport).doThrow(connectError).when(pool).connect(HOST);
+
+    willThrow(new MessagingException("test-exception"))
+        .given(transport)
+        .sendMessage(eq(message), any(Address[].class));
+    given(transport.isConnected()).willReturn(false);
+
+    // when
+    List<MessagingException> errors = pool
+        .send(HOST, Lists.newArrayList(message, message, message));
+
+    // then
+    assertThat(errors).hasSize(3);
+    assertThat(errors.subList(1, 3)).containsOnly(connectError);
+    assertThat(getMetrics()).containsEntry("email.smtpPool.active", 0);
+  }
+
+  @Test
+  public void shouldReplaceTransportThatFailedValidation() throws MessagingException {
+    // given
+    ReflectionTestUtils.setField(pool, "validationInterval", -1L);
+    pool.send(HOST, message);
+    given(transport.isConnected()).willReturn(false);
+
+    // when
+    pool.send(HOST, message);
+
+    // then
+    verify(pool, times(2)).connect(HOST);
+    verify(transport).close();
+    assertThat(getMetrics()).containsEntry("email.smtpPool.failedValidations", 1L);
+  }
+
+  @Test
+  public void shouldNotValidateRecentlyUsedTransport() throws MessagingException {
+    // when
+    pool.send(HOST, message);
+    pool.send(HOST, message);
+
+    // then
+    verify(transport, never()).isConnected();
+  }
+
+  @Test
+  public void shouldEvictIdleTransports() throws MessagingException {
+    // given
+    pool.send(HOST, message);
+    ReflectionTestUtils.setField(pool, "maxIdleTime", -1L);
+
+    // when
+    pool.evictIdle();
+
+    // then
+    verify(transport).close();
+    assertThat(getMetrics()).containsEntry("email.smtpPool.idle", 0)
+        .containsEntry("email.smtpPool.destroyed", 1L);
+  }
+
+  @Test(expected = MessagingException.class)
+  public void shouldThrowExceptionIfNoTransportIsAvailable() throws MessagingException {
+    // given
+    ReflectionTestUtils.setField(pool, "maxSize", 0);
+    pool.init();
+
+    // when
+    pool.send(HOST, message);
+  }
+
+  @Test
+  public void shouldCloseIdleTransportsOnDestroy() throws MessagingException {
+    // given
+    pool.send(HOST, message);
+
+    // when
+    pool.destroy();
+
+    // then
+    verify(transport).close();
+  }
+
+  private Map<String, Object> getMetrics() {
+    return pool
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private AtomicLong clock = new AtomicLong();
+  private TokenBucket bucket = new TokenBucket(2, 4, clock::get);
+
+  @Test
+  public void shouldAllowBurstUpToCapacity() {
+    // when
+    long wait = bucket.tryAcquire(4);
+
+    // then
+    assertThat(wait).isZero();
+    assertThat(bucket.getAvailablePermits()).isZero();
+  }
+
+  @Test
+  public void shouldReturnTimeToWaitForMissingPermits() {
+    // given
+    bucket.tryAcquire(4);
+
+    // when
+    long wait = bucket.tryAcquire(1);
+
+    // then
+    assertThat(wait).isEqualTo(SECOND / 2);
+  }
+
+  @Test
+  public void shouldRefillPermitsAtConfiguredRate() {
+    // given
+    bucket.tryAcquire(4);
+
+    // when
+    clock.addAndGet(SECOND);
+
+    // then
+    assertThat(bucket.getAvailablePermits()).isEqualTo(2);
+    assertThat(bucket.tryAcquire(2)).isZero();
+    assertThat(bucket.tryAcquire(1)).isPositive();
+  }
+
+  @Test
+  public void shouldNotRefillAboveCapacity() {
+    // when
+    clock.addAndGet(SECOND * 10);
+
+    // then
+    assertThat(bucket.getAvailablePermits()).isEqualTo(4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAcquireMorePermitsThanCapacity() {
+    bucket.tryAcquire(5);
+  }
+
+}
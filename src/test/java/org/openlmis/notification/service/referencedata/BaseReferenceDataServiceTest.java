@@ -22,6 +22,7 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -30,6 +31,8 @@ import java.util.UUID;
 import org.junit.Test;
 import org.openlmis.notification.service.BaseCommunicationService;
 import org.openlmis.notification.service.BaseCommunicationServiceTest;
+import org.openlmis.notification.service.CircuitBreaker;
+import org.openlmis.notification.service.CircuitBreakerOpenException;
 import org.openlmis.notification.service.DataRetrievalException;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
@@ -117,6 +120,57 @@ public abstract class BaseReferenceDataServiceTest<T> extends BaseCommunicationS
     service.findOne(id);
   }
 
+  @Test
+  public void shouldRetryFindingByIdWithNewAccessToken() throws Exception {
+    // given
+    BaseReferenceDataService<T> service = prepareService();
+    T instance = generateInstance();
+    ResponseEntity<T> response = mock(ResponseEntity.class);
+    when(response.getBody()).thenReturn(instance);
+
+    // when
+    when(restTemplate.exchange(
+        any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class), eq(service.getResultClass())
+    ))
+        .thenThrow(new HttpClientErrorException(HttpStatus.UNAUTHORIZED))
+        .thenReturn(response);
+
+    T found = service.findOne(UUID.randomUUID());
+
+    // then
+    assertThat(found, is(instance));
+    verify(authService, times(1)).clearTokenCache();
+    verify(authService, times(2)).obtainAccessToken();
+  }
+
+  @Test
+  public void shouldNotCallServiceIfCircuitBreakerIsOpen() throws Exception {
+    // given
+    circuitBreaker.onFailure();
+    checkAuth = false;
+    BaseReferenceDataService<T> service = prepareService();
+
+    // when
+    expectedException.expect(CircuitBreakerOpenException.class);
+    service.findOne(UUID.randomUUID());
+  }
+
+  @Test
+  public void shouldNotCountNotFoundResponseAsFailure() throws Exception {
+    // given
+    BaseReferenceDataService<T> service = prepareService();
+
+    // when
+    when(restTemplate.exchange(
+        any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class), eq(service.getResultClass())
+    )).thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+    service.findOne(UUID.randomUUID());
+
+    // then
+    assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+  }
+
   @Override
   protected BaseReferenceDataService<T> prepareService() {
     BaseCommunicationService service = super.prepareService();
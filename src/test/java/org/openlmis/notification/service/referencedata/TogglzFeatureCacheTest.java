@@ -0,0 +1,148 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.notification.service.referencedata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import com.google.common.collect.Lists;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.client.ResourceAccessException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TogglzFeatureCacheTest {
+
+  private static final String FEATURE = "FEATURE";
+
+  @Mock
+  private TogglzReferenceDataService togglzReferenceDataService;
+
+  @InjectMocks
+  private TogglzFeatureCache cache;
+
+  @Test
+  public void shouldLoadSnapshotOnFirstCheck() {
+    // given
+    given(togglzReferenceDataService.findAll())
+        .willReturn(Lists.newArrayList(new TogglzFeatureDto(FEATURE, true, null, null)));
+
+    // when
+    boolean first = cache.isEnabled(FEATURE);
+    boolean second = cache.isEnabled(FEATURE);
+
+    // then
+    assertThat(first).isTrue();
+    assertThat(second).isTrue();
+    verify(togglzReferenceDataService, times(1)).findAll();
+  }
+
+  @Test
+  public void shouldUseRefreshedSnapshot() {
+    // given
+    given(togglzReferenceDataService.findAll())
+        .willReturn(Lists.newArrayList(new TogglzFeatureDto(FEATURE, true, null, null)));
+    cache.refresh();
+
+    willReturn(Lists.newArrayList(new TogglzFeatureDto(FEATURE, false, null, null)))
+        .given(togglzReferenceDataService).findAll();
+
+    // when
+    cache.refresh();
+
+    // then
+    assertThat(cache.isEnabled(FEATURE)).isFalse();
+  }
+
+  @Test
+  public void shouldKeepPreviousSnapshotIfReferenceDataIsUnreachable() {
+    // given
+    given(togglzReferenceDataService.findAll())
+        .willReturn(Lists.newArrayList(new TogglzFeatureDto(FEATURE, true, null, null)));
+    cache.refresh();
+
+    willThrow(new ResourceAccessException("test")).given(togglzReferenceDataService).findAll();
+
+    // when
+    cache.refresh();
+
+    // then
+    assertThat(cache.isEnabled(FEATURE)).isTrue();
+    assertThat(getMetrics()).containsEntry("togglz.cache.refreshFailures", 1L)
+        .containsEntry("togglz.cache.size", 1);
+  }
+
+  @Test
+  public void shouldReportFeatureAsDisabledIfNoSnapshotCouldBeLoaded() {
+    // given
+    given(togglzReferenceDataService.findAll()).willThrow(new ResourceAccessException("test"));
+
+    // when
+    boolean first = cache.isEnabled(FEATURE);
+    boolean second = cache.isEnabled(FEATURE);
+
+    // then
+    assertThat(first).isFalse();
+    assertThat(second).isFalse();
+    // only the first check waits for referencedata, the next ones wait for the scheduled refresh
+    verify(togglzReferenceDataService, times(1)).findAll();
+  }
+
+  @Test
+  public void shouldReportUnknownFeatureAsDisabled() {
+    // given
+    given(togglzReferenceDataService.findAll())
+        .willReturn(Lists.newArrayList(new TogglzFeatureDto(FEATURE, true, null, null)));
+    cache.refresh();
+
+    // when
+    boolean enabled = cache.isEnabled("OTHER");
+
+    // then
+    assertThat(enabled).isFalse();
+  }
+
+  @Test
+  public void shouldNotCallReferenceDataBeforeFirstCheck() {
+    // when
+    Map<String, Object> metrics = getMetrics();
+
+    // then
+    assertThat(metrics).containsEntry("togglz.cache.size", 0)
+        .containsEntry("togglz.cache.age", -1L);
+    verifyZeroInteractions(togglzReferenceDataService);
+  }
+
+  private Map<String, Object> getMetrics() {
+    return cache
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
+
+}
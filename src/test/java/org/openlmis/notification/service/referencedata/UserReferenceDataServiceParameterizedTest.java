@@ -45,6 +45,7 @@ import org.openlmis.notification.service.ResultDto;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @RunWith(Parameterized.class)
 public class UserReferenceDataServiceParameterizedTest
@@ -55,7 +56,12 @@ public class UserReferenceDataServiceParameterizedTest
 
   @Override
   protected BaseReferenceDataService<UserDto> getService() {
-    return new UserReferenceDataService();
+    UserReferenceDataService service = new UserReferenceDataService();
+    ReflectionTestUtils.setField(service, "cacheSize", 100L);
+    ReflectionTestUtils.setField(service, "cacheTtl", 60000L);
+    service.initialize();
+
+    return service;
   }
 
   @Override
@@ -0,0 +1,248 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service.referencedata;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.openlmis.notification.service.DataRetrievalException;
+import org.openlmis.notification.service.PageDto;
+import org.openlmis.notification.testutils.UserDataBuilder;
+import org.openlmis.notification.util.Pagination;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+public class UserReferenceDataServiceTest extends BaseReferenceDataServiceTest<UserDto> {
+
+  private static final int LOOKUPS = 4;
+  private static final long TIMEOUT = 30;
+
+  @Override
+  protected BaseReferenceDataService<UserDto> getService() {
+    UserReferenceDataService service = new UserReferenceDataService();
+    ReflectionTestUtils.setField(service, "cacheSize", 100L);
+    ReflectionTestUtils.setField(service, "cacheTtl", 60000L);
+    service.initialize();
+
+    return service;
+  }
+
+  @Override
+  protected UserDto generateInstance() {
+    return new UserDataBuilder().build();
+  }
+
+  @Test
+  public void shouldFindUsersByIds() {
+    // given
+    UserReferenceDataService service = (UserReferenceDataService) prepareService();
+    UserDto user = generateInstance();
+    ResponseEntity<PageDto<UserDto>> response = mock(ResponseEntity.class);
+
+    when(response.getBody())
+        .thenReturn(new PageDto<>(Pagination.getPage(Lists.newArrayList(user))));
+    when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+        any(ParameterizedTypeReference.class)))
+        .thenReturn(response);
+
+    // when
+    List<UserDto> found = service.findByIds(Lists.newArrayList(user.getId(), UUID.randomUUID()));
+
+    // then
+    assertThat(found, contains(user));
+
+    verify(restTemplate).exchange(uriCaptor.capture(), eq(HttpMethod.GET),
+        entityCaptor.capture(), any(ParameterizedTypeReference.class));
+
+    assertThat(uriCaptor.getValue().toString(), containsString("id=" + user.getId()));
+    assertAuthHeader(entityCaptor.getValue());
+  }
+
+  @Test
+  public void shouldReturnCachedUser() {
+    // given
+    UserReferenceDataService service = (UserReferenceDataService) prepareService();
+    UserDto user = generateInstance();
+    mockFindOneResponse(user);
+
+    // when
+    UserDto first = service.findOne(user.getId());
+    UserDto second = service.findOne(user.getId());
+
+    // then
+    assertThat(first, is(user));
+    assertThat(second, is(user));
+    verify(restTemplate, times(1)).exchange(any(URI.class), eq(HttpMethod.GET),
+        any(HttpEntity.class), eq(UserDto.class));
+    assertThat(getMetrics(service), allOf(hasEntry("referencedata.users.cache.hits", 1L),
+        hasEntry("referencedata.users.cache.misses", 1L)));
+  }
+
+  @Test
+  public void shouldCacheUserThatDoesNotExist() {
+    // given
+    UserReferenceDataService service = (UserReferenceDataService) prepareService();
+    UUID id = UUID.randomUUID();
+    when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+        eq(UserDto.class)))
+        .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+    // when
+    UserDto first = service.findOne(id);
+    UserDto second = service.findOne(id);
+
+    // then
+    assertThat(first, is(nullValue()));
+    assertThat(second, is(nullValue()));
+    verify(restTemplate, times(1)).exchange(any(URI.class), eq(HttpMethod.GET),
+        any(HttpEntity.class), eq(UserDto.class));
+  }
+
+  @Test
+  public void shouldNotCacheFailedLookup() {
+    // given
+    UserReferenceDataService service = (UserReferenceDataService) prepareService();
+    UserDto user = generateInstance();
+    ResponseEntity<UserDto> response = mock(ResponseEntity.class);
+    when(response.getBody()).thenReturn(user);
+    when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+        eq(UserDto.class)))
+        .thenThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST))
+        .thenReturn(response);
+
+    // when
+    try {
+      service.findOne(user.getId());
+      fail("the first lookup should fail");
+    } catch (DataRetrievalException exp) {
+      // expected
+    }
+
+    UserDto found = service.findOne(user.getId());
+
+    // then
+    assertThat(found, is(user));
+    assertThat(getMetrics(service), hasEntry("referencedata.users.cache.loadFailures", 1L));
+  }
+
+  @Test
+  public void shouldFindUserOnlyOnceForConcurrentLookups() throws Exception {
+    // given
+    UserReferenceDataService service = (UserReferenceDataService) prepareService();
+    UserDto user = generateInstance();
+    ResponseEntity<UserDto> response = mock(ResponseEntity.class);
+    when(response.getBody()).thenReturn(user);
+
+    CountDownLatch requestStarted = new CountDownLatch(1);
+    CountDownLatch responseReady = new CountDownLatch(1);
+    when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+        eq(UserDto.class)))
+        .thenAnswer(invocation -> {
+          requestStarted.countDown();
+          responseReady.await(TIMEOUT, TimeUnit.SECONDS);
+          return response;
+        });
+
+    ExecutorService executor = Executors.newFixedThreadPool(LOOKUPS);
+
+    try {
+      // when
+      List<Future<UserDto>> lookups = Lists.newArrayList();
+      lookups.add(executor.submit(() -> service.findOne(user.getId())));
+      requestStarted.await(TIMEOUT, TimeUnit.SECONDS);
+
+      for (int i = 1; i < LOOKUPS; ++i) {
+        lookups.add(executor.submit(() -> service.findOne(user.getId())));
+      }
+
+      responseReady.countDown();
+
+      // then
+      for (Future<UserDto> lookup : lookups) {
+        assertThat(lookup.get(TIMEOUT, TimeUnit.SECONDS), is(user));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verify(restTemplate, times(1)).exchange(any(URI.class), eq(HttpMethod.GET),
+        any(HttpEntity.class), eq(UserDto.class));
+  }
+
+  @Test
+  public void shouldNotCacheUsersIfTtlIsZero() {
+    // given
+    UserReferenceDataService service = (UserReferenceDataService) prepareService();
+    ReflectionTestUtils.setField(service, "cacheTtl", 0L);
+    service.initialize();
+    UserDto user = generateInstance();
+    mockFindOneResponse(user);
+
+    // when
+    service.findOne(user.getId());
+    service.findOne(user.getId());
+
+    // then
+    verify(restTemplate, times(2)).exchange(any(URI.class), eq(HttpMethod.GET),
+        any(HttpEntity.class), eq(UserDto.class));
+  }
+
+  private void mockFindOneResponse(UserDto user) {
+    ResponseEntity<UserDto> response = mock(ResponseEntity.class);
+    when(response.getBody()).thenReturn(user);
+    when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+        eq(UserDto.class)))
+        .thenReturn(response);
+  }
+
+  private Map<String, Object> getMetrics(UserReferenceDataService service) {
+    return service
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.service.request;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+
+public class HttpClientMetricsTest {
+
+  private static final String HOST = "referencedata";
+
+  @Rule
+  public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+  @Mock
+  private PoolingHttpClientConnectionManager connectionManager;
+
+  @Mock
+  private ClientHttpRequestExecution execution;
+
+  @InjectMocks
+  private HttpClientMetrics metrics;
+
+  private HttpRequest request = new MockClientHttpRequest(HttpMethod.GET,
+      URI.create("http://" + HOST + "/api/users"));
+
+  private HttpRoute route = new HttpRoute(new HttpHost(HOST));
+
+  @Before
+  public void setUp() {
+    given(connectionManager.getRoutes()).willReturn(Sets.newHashSet(route));
+    given(connectionManager.getStats(route)).willReturn(new PoolStats(1, 0, 2, 20));
+    given(connectionManager.getTotalStats()).willReturn(new PoolStats(1, 0, 2, 50));
+  }
+
+  @Test
+  public void shouldRecordRequestsAndErrorsPerHost() throws IOException {
+    // given
+    ClientHttpResponse ok = mock(ClientHttpResponse.class);
+    given(ok.getStatusCode()).willReturn(HttpStatus.OK);
+    ClientHttpResponse error = mock(ClientHttpResponse.class);
+    given(error.getStatusCode()).willReturn(HttpStatus.BAD_GATEWAY);
+    given(execution.execute(any(HttpRequest.class), any(byte[].class)))
+        .willReturn(ok)
+        .willReturn(error);
+
+    // when
+    metrics.intercept(request, new byte[0], execution);
+    metrics.intercept(request, new byte[0], execution);
+
+    // then
+    assertThat(getMetrics())
+        .containsEntry("http.client." + HOST + ".requests", 2L)
+        .containsEntry("http.client." + HOST + ".errors", 1L)
+        .containsKey("http.client." + HOST + ".latency.mean")
+        .containsKey("http.client." + HOST + ".latency.max");
+  }
+
+  @Test
+  public void shouldRecordRequestThatThrewExceptionAsError() throws IOException {
+    // given
+    given(execution.execute(any(HttpRequest.class), any(byte[].class)))
+        .willThrow(new IOException("Read timed out"));
+
+    // when
+    try {
+      metrics.intercept(request, new byte[0], execution);
+    } catch (IOException exp) {
+      // expected
+    }
+
+    // then
+    assertThat(getMetrics())
+        .containsEntry("http.client." + HOST + ".requests", 1L)
+        .containsEntry("http.client." + HOST + ".errors", 1L);
+  }
+
+  @Test
+  public void shouldExposeConnectionPoolStats() {
+    // when
+    Map<String, Object> values = getMetrics();
+
+    // then
+    assertThat(values)
+        .containsEntry("http.client." + HOST + ".pool.leased", 1)
+        .containsEntry("http.client." + HOST + ".pool.available", 2)
+        .containsEntry("http.client." + HOST + ".pool.max", 20)
+        .containsEntry("http.client.pool.max", 50);
+  }
+
+  private Map<String, Object> getMetrics() {
+    return metrics
+        .metrics()
+        .stream()
+        .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
+
+}
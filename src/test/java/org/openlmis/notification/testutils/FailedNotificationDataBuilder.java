@@ -0,0 +1,68 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.testutils;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import org.openlmis.notification.domain.FailedNotification;
+import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.service.NotificationChannel;
+import org.openlmis.notification.util.NotificationDataBuilder;
+
+public class FailedNotificationDataBuilder {
+
+  private UUID id = UUID.randomUUID();
+  private Notification notification = new NotificationDataBuilder()
+      .withEmptyMessage(NotificationChannel.EMAIL)
+      .build();
+  private UUID recipientId = notification.getUserId();
+  private NotificationChannel channel = NotificationChannel.EMAIL;
+  private int attempts = 10;
+  private String lastError = "Cannot send a mail.";
+  private ZonedDateTime createdDate = ZonedDateTime.now().minusDays(1);
+  private ZonedDateTime failedDate = ZonedDateTime.now();
+
+  /**
+   * Sets the notification and sends the failed notification to the user of it.
+   */
+  public FailedNotificationDataBuilder withNotification(Notification notification) {
+    this.notification = notification;
+    this.recipientId = notification.getUserId();
+    return this;
+  }
+
+  public FailedNotificationDataBuilder withChannel(NotificationChannel channel) {
+    this.channel = channel;
+    return this;
+  }
+
+  public FailedNotification buildAsNew() {
+    return new FailedNotification(notification, recipientId, channel, attempts, lastError,
+        createdDate, failedDate);
+  }
+
+  /**
+   * Creates new instance of {@link FailedNotification} with passed values from the builder, the
+   * id field is also set.
+   */
+  public FailedNotification build() {
+    FailedNotification built = buildAsNew();
+    built.setId(id);
+
+    return built;
+  }
+
+}
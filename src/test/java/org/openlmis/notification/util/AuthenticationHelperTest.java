@@ -40,6 +40,7 @@ import org.openlmis.notification.service.referencedata.UserReferenceDataService;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
 
 @RunWith(MockitoJUnitRunner.class)
 public class AuthenticationHelperTest {
@@ -105,6 +106,33 @@ public class AuthenticationHelperTest {
     verify(authentication, never()).getPrincipal();
   }
 
+  @Test
+  public void shouldReturnUserIdAsCallerId() {
+    // given
+    when(authentication.isClientOnly()).thenReturn(false);
+
+    // when
+    String callerId = authenticationHelper.getCurrentCallerId();
+
+    // then
+    assertEquals(userId.toString(), callerId);
+  }
+
+  @Test
+  public void shouldReturnClientIdAsCallerIdIfAuthenticationIsClientOnly() {
+    // given
+    OAuth2Request request = new OAuth2Request(null, "client", null, true, null, null, null,
+        null, null);
+    when(authentication.isClientOnly()).thenReturn(true);
+    when(authentication.getOAuth2Request()).thenReturn(request);
+
+    // when
+    String callerId = authenticationHelper.getCurrentCallerId();
+
+    // then
+    assertEquals("client", callerId);
+  }
+
   @Test
   public void shouldReturnRight() throws Exception {
     // given
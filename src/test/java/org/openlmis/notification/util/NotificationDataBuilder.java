@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.UUID;
 import org.openlmis.notification.domain.Notification;
 import org.openlmis.notification.domain.NotificationMessage;
+import org.openlmis.notification.domain.NotificationPriority;
 import org.openlmis.notification.service.NotificationChannel;
 
 public class NotificationDataBuilder {
@@ -28,6 +29,7 @@ public class NotificationDataBuilder {
   private UUID userId;
   private List<NotificationMessage> messages;
   private Boolean important;
+  private NotificationPriority priority;
 
   /**
    * Default constructor.
@@ -71,13 +73,18 @@ public class NotificationDataBuilder {
     return this;
   }
 
+  public NotificationDataBuilder withPriority(NotificationPriority priority) {
+    this.priority = priority;
+    return this;
+  }
+
   /**
    * Build a new notification based on parameters from the builder without id field.
    * 
    * @return new notification
    */
   public Notification buildAsNew() {
-    return new Notification(userId, messages, important);
+    return new Notification(userId, messages, important, priority);
   }
 
   /**
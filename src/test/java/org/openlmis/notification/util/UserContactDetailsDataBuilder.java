@@ -32,6 +32,11 @@ public class UserContactDetailsDataBuilder {
     return this;
   }
 
+  public UserContactDetailsDataBuilder withPhoneNumber(String phoneNumber) {
+    this.phoneNumber = phoneNumber;
+    return this;
+  }
+
   public UserContactDetailsDataBuilder withEmailDetails(EmailDetails emailDetails) {
     this.emailDetails = emailDetails;
     return this;
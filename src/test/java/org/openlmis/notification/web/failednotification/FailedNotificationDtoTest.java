@@ -0,0 +1,62 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.notification.web.failednotification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import nl.jqno.equalsverifier.EqualsVerifier;
+import nl.jqno.equalsverifier.Warning;
+import org.junit.Test;
+import org.openlmis.notification.domain.FailedNotification;
+import org.openlmis.notification.testutils.FailedNotificationDataBuilder;
+import org.openlmis.notification.testutils.ToStringTestUtils;
+
+public class FailedNotificationDtoTest {
+
+  @Test
+  public void shouldCreateInstanceBasedOnDomain() {
+    // given
+    FailedNotification domain = new FailedNotificationDataBuilder().build();
+
+    // when
+    FailedNotificationDto dto = FailedNotificationDto.newInstance(domain);
+
+    // then
+    assertThat(dto).isNotNull();
+    assertThat(dto.getId()).isEqualTo(domain.getId());
+    assertThat(dto.getNotificationId()).isEqualTo(domain.getNotification().getId());
+    assertThat(dto.getChannel()).isEqualTo(domain.getChannel());
+    assertThat(dto.getAttempts()).isEqualTo(domain.getAttempts());
+    assertThat(dto.getLastError()).isEqualTo(domain.getLastError());
+    assertThat(dto.getCreatedDate()).isEqualTo(domain.getCreatedDate());
+    assertThat(dto.getFailedDate()).isEqualTo(domain.getFailedDate());
+  }
+
+  @Test
+  public void equalsContract() {
+    EqualsVerifier
+        .forClass(FailedNotificationDto.class)
+        .withRedefinedSuperclass()
+        .suppress(Warning.NONFINAL_FIELDS)
+        .verify();
+  }
+
+  @Test
+  public void shouldImplementToString() {
+    ToStringTestUtils.verify(FailedNotificationDto.class, new FailedNotificationDto());
+  }
+
+}
@@ -15,38 +15,77 @@
 
 package org.openlmis.notification.web.notification;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_IDEMPOTENCY_KEY_TOO_LONG;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_RECIPIENT_IDS_IN_BULK;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_TOO_MANY;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_TOO_MANY_RECIPIENTS;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_USER_CONTACT_DETAILS_NOT_FOUND;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_USER_NOT_ACTIVE_OR_NOT_FOUND;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 import org.openlmis.notification.domain.Notification;
+import org.openlmis.notification.domain.NotificationMessage;
 import org.openlmis.notification.domain.UserContactDetails;
+import org.openlmis.notification.i18n.Message;
+import org.openlmis.notification.i18n.MessageService;
 import org.openlmis.notification.repository.NotificationRepository;
-import org.openlmis.notification.repository.PendingNotificationRepository;
 import org.openlmis.notification.repository.UserContactDetailsRepository;
+import org.openlmis.notification.service.IdempotencyKeyService;
 import org.openlmis.notification.service.NotificationChannel;
+import org.openlmis.notification.service.NotificationTemplateService;
+import org.openlmis.notification.service.PendingNotificationService;
 import org.openlmis.notification.service.PermissionService;
 import org.openlmis.notification.service.referencedata.UserDto;
 import org.openlmis.notification.service.referencedata.UserReferenceDataService;
 import org.openlmis.notification.testutils.UserDataBuilder;
+import org.openlmis.notification.util.AuthenticationHelper;
+import org.openlmis.notification.util.EmailDetailsDataBuilder;
 import org.openlmis.notification.util.NotificationDataBuilder;
 import org.openlmis.notification.util.UserContactDetailsDataBuilder;
 import org.openlmis.notification.web.NotFoundException;
 import org.openlmis.notification.web.ValidationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.BindingResult;
+import org.springframework.validation.Errors;
 
-@SuppressWarnings("PMD.UnusedPrivateField")
+@SuppressWarnings({"PMD.UnusedPrivateField", "PMD.TooManyMethods"})
 public class NotificationControllerTest {
 
+  private static final int BULK_MAX_SIZE = 3;
+  private static final int RECIPIENTS_MAX_SIZE = 3;
+
   @Rule
   public MockitoRule mockitoRule = MockitoJUnit.rule();
 
@@ -69,7 +108,19 @@ public class NotificationControllerTest {
   private NotificationRepository notificationRepository;
 
   @Mock
-  private PendingNotificationRepository pendingNotificationRepository;
+  private PendingNotificationService pendingNotificationService;
+
+  @Mock
+  private MessageService messageService;
+
+  @Mock
+  private IdempotencyKeyService idempotencyKeyService;
+
+  @Mock
+  private NotificationTemplateService notificationTemplateService;
+
+  @Mock
+  private AuthenticationHelper authenticationHelper;
 
   @InjectMocks
   private NotificationController controller;
@@ -94,6 +145,32 @@ public class NotificationControllerTest {
         .willReturn(contactDetails);
     given(userReferenceDataService.findOne(contactDetails.getReferenceDataUserId()))
         .willReturn(userDto);
+
+    userDto.setId(contactDetails.getReferenceDataUserId());
+    given(userContactDetailsRepository.findAll(anyCollectionOf(UUID.class)))
+        .willReturn(Lists.newArrayList(contactDetails));
+    given(userReferenceDataService.findByIds(anyCollectionOf(UUID.class)))
+        .willReturn(Lists.newArrayList(userDto));
+    given(pendingNotificationService.enqueue(anyListOf(Notification.class),
+        anyMapOf(UUID.class, UserContactDetails.class)))
+        .willAnswer(invocation -> {
+          List<Notification> notifications = invocation.getArgumentAt(0, List.class);
+          notifications.forEach(saved -> saved.setId(UUID.randomUUID()));
+          return notifications;
+        });
+    given(idempotencyKeyService.saveOnce(anyString(), anyString(), any(),
+        any(Notification.class), any(Consumer.class)))
+        .willAnswer(invocation -> {
+          Notification saved = invocation.getArgumentAt(3, Notification.class);
+          invocation.getArgumentAt(4, Consumer.class).accept(saved);
+          return saved.getId();
+        });
+    given(authenticationHelper.getCurrentCallerId()).willReturn("caller");
+    given(messageService.localize(any(Message.class)))
+        .willAnswer(invocation -> invocation.getArgumentAt(0, Message.class).localMessage("msg"));
+
+    ReflectionTestUtils.setField(controller, "bulkMaxSize", BULK_MAX_SIZE);
+    ReflectionTestUtils.setField(controller, "recipientsMaxSize", RECIPIENTS_MAX_SIZE);
   }
 
   @Test
@@ -105,7 +182,7 @@ public class NotificationControllerTest {
     given(userContactDetailsRepository.findOne(notification.getUserId())).willReturn(null);
 
     // when
-    controller.sendNotification(notificationDto, bindingResult);
+    controller.sendNotification(notificationDto, bindingResult, false, null);
 
     // then
     // the exception should be thrown
@@ -121,7 +198,7 @@ public class NotificationControllerTest {
         .willReturn(null);
 
     // when
-    controller.sendNotification(notificationDto, bindingResult);
+    controller.sendNotification(notificationDto, bindingResult, false, null);
 
     // then
     // the exception should be thrown
@@ -136,7 +213,334 @@ public class NotificationControllerTest {
     userDto.setActive(false);
 
     // when
-    controller.sendNotification(notificationDto, bindingResult);
+    controller.sendNotification(notificationDto, bindingResult, false, null);
+
+    // then
+    // the exception should be thrown
+  }
+
+  @Test
+  public void shouldSendNotification() {
+    // when
+    ResponseEntity<NotificationResultDto> response = controller
+        .sendNotification(notificationDto, bindingResult, false, null);
+
+    // then
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingNotificationService).enqueue(captor.capture(),
+        anyMapOf(UUID.class, UserContactDetails.class));
+    assertThat(((Notification) captor.getValue().get(0)).isRecipientVerified()).isTrue();
+  }
+
+  @Test
+  public void shouldAcceptNotificationWithoutCheckingUserInAsyncMode() {
+    // given
+    given(userContactDetailsRepository.findOne(notification.getUserId())).willReturn(null);
+
+    // when
+    ResponseEntity<NotificationResultDto> response = controller
+        .sendNotification(notificationDto, bindingResult, true, null);
+
+    // then
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+    assertThat(response.getBody().getNotificationId()).isNotNull();
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingNotificationService).enqueue(captor.capture(),
+        anyMapOf(UUID.class, UserContactDetails.class));
+    assertThat(((Notification) captor.getValue().get(0)).isRecipientVerified()).isFalse();
+    verify(userReferenceDataService, never()).findOne(any(UUID.class));
+  }
+
+  @Test
+  public void shouldAcceptNotificationForManyRecipients() {
+    // given
+    Set<UUID> recipientIds = Sets.newHashSet(UUID.randomUUID(), UUID.randomUUID());
+    notificationDto.setUserId(null);
+    notificationDto.setRecipientIds(recipientIds);
+    given(pendingNotificationService.enqueue(any(Notification.class), eq(recipientIds)))
+        .willAnswer(invocation -> {
+          Notification saved = invocation.getArgumentAt(0, Notification.class);
+          saved.setId(UUID.randomUUID());
+          return saved;
+        });
+
+    // when
+    ResponseEntity<NotificationResultDto> response = controller
+        .sendNotification(notificationDto, bindingResult, false, null);
+
+    // then
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+    assertThat(response.getBody().getNotificationId()).isNotNull();
+
+    ArgumentCaptor<Notification> captor = ArgumentCaptor.forClass(Notification.class);
+    verify(pendingNotificationService).enqueue(captor.capture(), eq(recipientIds));
+    assertThat(captor.getValue().getUserId()).isNull();
+    assertThat(captor.getValue().isRecipientVerified()).isFalse();
+    verify(userReferenceDataService, never()).findOne(any(UUID.class));
+  }
+
+  @Test
+  public void shouldThrowExceptionWhenNotificationHasTooManyRecipients() {
+    // given
+    exception.expect(ValidationException.class);
+    exception.expectMessage(ERROR_NOTIFICATION_REQUEST_TOO_MANY_RECIPIENTS);
+
+    notificationDto.setUserId(null);
+    notificationDto.setRecipientIds(Sets.newHashSet());
+    for (int i = 0; i <= RECIPIENTS_MAX_SIZE; ++i) {
+      notificationDto.getRecipientIds().add(UUID.randomUUID());
+    }
+
+    // when
+    controller.sendNotification(notificationDto, bindingResult, false, null);
+
+    // then
+    // the exception should be thrown
+  }
+
+  @Test
+  public void shouldNotSendNotificationAgainIfIdempotencyKeyWasUsed() {
+    // given
+    UUID notificationId = UUID.randomUUID();
+    given(idempotencyKeyService.findNotificationId("caller", "key", notificationDto))
+        .willReturn(notificationId);
+
+    // when
+    ResponseEntity<NotificationResultDto> response = controller
+        .sendNotification(notificationDto, bindingResult, true, "key");
+
+    // then
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+    assertThat(response.getBody().getNotificationId()).isEqualTo(notificationId);
+
+    verify(pendingNotificationService, never())
+        .enqueue(anyListOf(Notification.class), anyMapOf(UUID.class, UserContactDetails.class));
+  }
+
+  @Test
+  public void shouldSaveNotificationWithIdempotencyKey() {
+    // when
+    ResponseEntity<NotificationResultDto> response = controller
+        .sendNotification(notificationDto, bindingResult, true, "key");
+
+    // then
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+    verify(idempotencyKeyService)
+        .saveOnce(eq("caller"), eq("key"), eq(notificationDto), any(Notification.class),
+            any(Consumer.class));
+    verify(pendingNotificationService)
+        .enqueue(anyListOf(Notification.class), anyMapOf(UUID.class, UserContactDetails.class));
+  }
+
+  @Test
+  public void shouldThrowExceptionWhenIdempotencyKeyIsTooLong() {
+    // given
+    exception.expect(ValidationException.class);
+    exception.expectMessage(ERROR_IDEMPOTENCY_KEY_TOO_LONG);
+
+    // when
+    controller.sendNotification(notificationDto, bindingResult, false,
+        StringUtils.repeat('k', 256));
+
+    // then
+    // the exception should be thrown
+  }
+
+  @Test
+  public void shouldReportChannelsThatCannotBeDelivered() {
+    // given
+    contactDetails.setEmailDetails(new EmailDetailsDataBuilder().withUnverifiedFlag().build());
+
+    // when
+    ResponseEntity<NotificationResultDto> response = controller
+        .sendNotification(notificationDto, bindingResult, false, null);
+
+    // then
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(response.getBody().getSkippedChannels()).containsOnly(NotificationChannel.EMAIL);
+    verify(pendingNotificationService).enqueue(anyListOf(Notification.class),
+        eq(Collections.singletonMap(notification.getUserId(), contactDetails)));
+  }
+
+  @Test
+  public void shouldNotReportChannelsThatCanBeDelivered() {
+    // when
+    ResponseEntity<NotificationResultDto> response = controller
+        .sendNotification(notificationDto, bindingResult, false, null);
+
+    // then
+    assertThat(response.getBody().getSkippedChannels()).isNull();
+  }
+
+  @Test
+  public void shouldThrowExceptionWhenTemplateDoesNotExist() {
+    // given
+    exception.expect(ValidationException.class);
+    exception.expectMessage(ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND);
+
+    notificationDto.addMessage("email", new MessageDto(null, null, null, UUID.randomUUID()));
+
+    // when
+    controller.sendNotification(notificationDto, bindingResult, false, null);
+
+    // then
+    // the exception should be thrown
+  }
+
+  @Test
+  public void shouldSendNotificationWithExistingTemplate() {
+    // given
+    UUID templateId = UUID.randomUUID();
+    notificationDto.addMessage("email", new MessageDto(null, null, null, templateId));
+    given(notificationTemplateService.exists(templateId)).willReturn(true);
+
+    // when
+    controller.sendNotification(notificationDto, bindingResult, false, null);
+
+    // then
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingNotificationService).enqueue(captor.capture(),
+        anyMapOf(UUID.class, UserContactDetails.class));
+    assertThat(((Notification) captor.getValue().get(0)).getMessages())
+        .extracting(NotificationMessage::getTemplateId)
+        .contains(templateId);
+  }
+
+  @Test
+  public void shouldSendNotificationsInBulk() {
+    // when
+    List<NotificationResultDto> results = controller
+        .sendNotifications(Lists.newArrayList(notificationDto, notificationDto));
+
+    // then
+    assertThat(results).hasSize(2);
+    assertThat(results).extracting(NotificationResultDto::getNotificationId).doesNotContainNull();
+    assertThat(results.get(0).getError()).isNull();
+    assertThat(results.get(1).getError()).isNull();
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingNotificationService).enqueue(captor.capture(),
+        anyMapOf(UUID.class, UserContactDetails.class));
+    assertThat(captor.getValue()).hasSize(2);
+  }
+
+  @Test
+  public void shouldReportChannelsThatCannotBeDeliveredInBulk() {
+    // given
+    contactDetails.setEmailDetails(new EmailDetailsDataBuilder().withEmail(null).build());
+
+    // when
+    List<NotificationResultDto> results = controller
+        .sendNotifications(Lists.newArrayList(notificationDto));
+
+    // then
+    assertThat(results.get(0).getNotificationId()).isNotNull();
+    assertThat(results.get(0).getSkippedChannels()).containsOnly(NotificationChannel.EMAIL);
+  }
+
+  @Test
+  public void shouldRejectNotificationsOfUsersWithoutContactDetailsInBulk() {
+    // given
+    NotificationDto unknown = new NotificationDto();
+    new NotificationDataBuilder()
+        .withMessage(NotificationChannel.EMAIL, "subject", "body")
+        .build()
+        .export(unknown);
+
+    // when
+    List<NotificationResultDto> results = controller
+        .sendNotifications(Lists.newArrayList(notificationDto, unknown));
+
+    // then
+    assertThat(results.get(0).getNotificationId()).isNotNull();
+    assertThat(results.get(0).getError()).isNull();
+    assertThat(results.get(1).getUserId()).isEqualTo(unknown.getUserId());
+    assertThat(results.get(1).getNotificationId()).isNull();
+    assertThat(results.get(1).getError().toString())
+        .startsWith(ERROR_USER_CONTACT_DETAILS_NOT_FOUND);
+  }
+
+  @Test
+  public void shouldRejectNotificationsOfInactiveUsersInBulk() {
+    // given
+    userDto.setActive(false);
+
+    // when
+    List<NotificationResultDto> results = controller
+        .sendNotifications(Lists.newArrayList(notificationDto));
+
+    // then
+    assertThat(results.get(0).getNotificationId()).isNull();
+    assertThat(results.get(0).getError().toString())
+        .startsWith(ERROR_USER_NOT_ACTIVE_OR_NOT_FOUND);
+  }
+
+  @Test
+  public void shouldRejectInvalidNotificationsInBulk() {
+    // given
+    willAnswer(invocation -> {
+      invocation.getArgumentAt(1, Errors.class).rejectValue("userId",
+          ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED, ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED);
+      return null;
+    }).given(notificationValidator).validate(any(), any(Errors.class));
+
+    // when
+    List<NotificationResultDto> results = controller
+        .sendNotifications(Lists.newArrayList(notificationDto));
+
+    // then
+    assertThat(results.get(0).getNotificationId()).isNull();
+    assertThat(results.get(0).getError().toString())
+        .startsWith(ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED);
+  }
+
+  @Test
+  public void shouldRejectNotificationsForManyRecipientsInBulk() {
+    // given
+    notificationDto.setUserId(null);
+    notificationDto.setRecipientIds(Sets.newHashSet(UUID.randomUUID()));
+
+    // when
+    List<NotificationResultDto> results = controller
+        .sendNotifications(Lists.newArrayList(notificationDto));
+
+    // then
+    assertThat(results.get(0).getNotificationId()).isNull();
+    assertThat(results.get(0).getError().toString())
+        .startsWith(ERROR_NOTIFICATION_REQUEST_RECIPIENT_IDS_IN_BULK);
+  }
+
+  @Test
+  public void shouldRejectNotificationsWithMissingTemplateInBulk() {
+    // given
+    notificationDto.addMessage("email", new MessageDto(null, null, null, UUID.randomUUID()));
+
+    // when
+    List<NotificationResultDto> results = controller
+        .sendNotifications(Lists.newArrayList(notificationDto));
+
+    // then
+    assertThat(results.get(0).getNotificationId()).isNull();
+    assertThat(results.get(0).getError().toString())
+        .startsWith(ERROR_NOTIFICATION_TEMPLATE_NOT_FOUND);
+  }
+
+  @Test
+  public void shouldThrowExceptionWhenBulkIsTooLarge() {
+    // given
+    exception.expect(ValidationException.class);
+    exception.expectMessage(ERROR_NOTIFICATION_REQUEST_TOO_MANY);
+
+    List<NotificationDto> notificationDtos = Lists.newArrayList();
+    for (int i = 0; i <= BULK_MAX_SIZE; ++i) {
+      notificationDtos.add(notificationDto);
+    }
+
+    // when
+    controller.sendNotifications(notificationDtos);
 
     // then
     // the exception should be thrown
@@ -18,9 +18,11 @@ package org.openlmis.notification.web.notification;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_MESSAGES_EMPTY;
+import static org.openlmis.notification.i18n.MessageKeys.ERROR_NOTIFICATION_REQUEST_USER_ID_AND_RECIPIENT_IDS;
 import static org.openlmis.notification.i18n.MessageKeys.ERROR_UNSUPPORTED_NOTIFICATION_CHANNEL;
 
 import java.util.Collections;
+import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
 import org.openlmis.notification.domain.Notification;
@@ -60,6 +62,23 @@ public class NotificationDtoValidatorTest extends BaseValidatorTest {
     assertErrorMessage(errors, "userId", ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED);
   }
 
+  @Test
+  public void shouldValidateIfRecipientIdsAreSetInsteadOfUserId() {
+    request.setUserId(null);
+    request.setRecipientIds(Collections.singleton(UUID.randomUUID()));
+
+    validator.validate(request, errors);
+    assertThat(errors.getErrorCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldRejectIfBothUserIdAndRecipientIdsAreSet() {
+    request.setRecipientIds(Collections.singleton(UUID.randomUUID()));
+
+    validator.validate(request, errors);
+    assertErrorMessage(errors, "userId", ERROR_NOTIFICATION_REQUEST_USER_ID_AND_RECIPIENT_IDS);
+  }
+
   @Test
   public void shouldRejectIfMessagesAreNotSet() {
     request.setMessages(Collections.emptyList());
@@ -77,6 +96,15 @@ public class NotificationDtoValidatorTest extends BaseValidatorTest {
     assertErrorMessage(errors, "messages", ERROR_NOTIFICATION_REQUEST_FIELD_REQUIRED);
   }
 
+  @Test
+  public void shouldValidateIfMessageHasTemplateInsteadOfBody() {
+    request.setMessages(Collections.singletonList(
+        new NotificationMessage(NotificationChannel.EMAIL, null, null, null, UUID.randomUUID())));
+
+    validator.validate(request, errors);
+    assertThat(errors.getErrorCount()).isEqualTo(0);
+  }
+
   @Test
   public void shouldRejectIfChannelIsNotSupported() {
     request.setMessageMap(Collections.singletonMap("ab", new MessageDto()));